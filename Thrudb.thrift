@@ -72,5 +72,5 @@ service Thrudb {
 	 * @param kbLimit
 	 *			  The max response size of the messages (not strict)</pre> 
 	 */
-	list<logEntry>    getLogSince(1:string server, 2:string bucket, 3:string lsn, 3:i32 kbLimit);
+	list<logEntry>    getLogSince(1:string server, 2:string bucket, 3:string lsn, 4:i32 kbLimit);
 }
\ No newline at end of file
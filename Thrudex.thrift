@@ -61,14 +61,19 @@ struct SearchQuery
         7: bool                   randomize = 0,
         8: bool                   payload   = 0,
         9: Analyzer               defaultAnalyzer = STANDARD,
-        10: map<string, Analyzer> fieldAnalyzers = {}
+        10: map<string, Analyzer> fieldAnalyzers = {},
+        11: bool                  refresh   = 0,  #see every write made before this search
+        12: bool                  cache     = 0,  #may reuse the result of an identical search on the same snapshot
+        13: list<string>          filters,        #queries results must also match, cached and not scored
+        14: string                cursor          #from the previous page's response, "" starts; offset is ignored
 }
 
 struct SearchResponse
 {
         1: i32              total = -1,   #total across the entire index
         2: list<Element>    elements,
-        3: ThrudexException ex
+        3: ThrudexException ex,
+        4: string           cursor        #where the next page starts, set for cursor searches
 }
 
 service Thrudex
@@ -10,6 +10,13 @@ exception InvalidBucketException{}
 exception InvalidKeyException{}
 exception InvalidParametersException{}
 
+struct Entity
+{
+    1: string bucket,
+    2: string key,
+    3: optional binary value
+}
+
 
 service Thrudoc
 {
@@ -49,6 +56,15 @@ service Thrudoc
     list<string> scan(1:string bucket, 2:string seed, 3:i32 limit)    throws(1:ThrudocException ex1, 2:InvalidBucketException ex2),
 
 
+    # batch operations, the entities may span buckets. writes are applied
+    # in one transaction per bucket and logged as a single entry.
+    # get_multi returns the entities in request order, value is unset for
+    # missing keys.
+    list<Entity> get_multi(1:list<Entity> entities)    throws(1:ThrudocException ex1, 2:InvalidBucketException ex2),
+    void         put_multi(1:list<Entity> entities)    throws(1:ThrudocException ex1, 2:InvalidBucketException ex2),
+    void         remove_multi(1:list<Entity> entities) throws(1:ThrudocException ex1, 2:InvalidBucketException ex2),
+
+
     # the following is protected api, it us only to be used by administrative
     # programs and people who really know what they're doing.
     string admin(1:string op, 2:string data)                          throws(1:ThrudocException e)
@@ -64,10 +64,12 @@ public class Thrudb {
      * @param kbLimit
      * 		  The max response size of the messages (not strict)
      * 
+     * @param server
+     * @param bucket
      * @param lsn
      * @param kbLimit
      */
-    public List<logEntry> getLogFrom(String lsn, int kbLimit) throws TException;
+    public List<logEntry> getLogSince(String server, String bucket, String lsn, int kbLimit) throws TException;
 
   }
 
@@ -159,16 +161,18 @@ public class Thrudb {
       return;
     }
 
-    public List<logEntry> getLogFrom(String lsn, int kbLimit) throws TException
+    public List<logEntry> getLogSince(String server, String bucket, String lsn, int kbLimit) throws TException
     {
-      send_getLogFrom(lsn, kbLimit);
-      return recv_getLogFrom();
+      send_getLogSince(server, bucket, lsn, kbLimit);
+      return recv_getLogSince();
     }
 
-    public void send_getLogFrom(String lsn, int kbLimit) throws TException
+    public void send_getLogSince(String server, String bucket, String lsn, int kbLimit) throws TException
     {
-      oprot_.writeMessageBegin(new TMessage("getLogFrom", TMessageType.CALL, seqid_));
-      getLogFrom_args args = new getLogFrom_args();
+      oprot_.writeMessageBegin(new TMessage("getLogSince", TMessageType.CALL, seqid_));
+      getLogSince_args args = new getLogSince_args();
+      args.server = server;
+      args.bucket = bucket;
       args.lsn = lsn;
       args.kbLimit = kbLimit;
       args.write(oprot_);
@@ -176,7 +180,7 @@ public class Thrudb {
       oprot_.getTransport().flush();
     }
 
-    public List<logEntry> recv_getLogFrom() throws TException
+    public List<logEntry> recv_getLogSince() throws TException
     {
       TMessage msg = iprot_.readMessageBegin();
       if (msg.type == TMessageType.EXCEPTION) {
@@ -184,13 +188,13 @@ public class Thrudb {
         iprot_.readMessageEnd();
         throw x;
       }
-      getLogFrom_result result = new getLogFrom_result();
+      getLogSince_result result = new getLogSince_result();
       result.read(iprot_);
       iprot_.readMessageEnd();
       if (result.isSetSuccess()) {
         return result.success;
       }
-      throw new TApplicationException(TApplicationException.MISSING_RESULT, "getLogFrom failed: unknown result");
+      throw new TApplicationException(TApplicationException.MISSING_RESULT, "getLogSince failed: unknown result");
     }
 
   }
@@ -200,7 +204,7 @@ public class Thrudb {
       iface_ = iface;
       processMap_.put("getServiceStats", new getServiceStats());
       processMap_.put("ping", new ping());
-      processMap_.put("getLogFrom", new getLogFrom());
+      processMap_.put("getLogSince", new getLogSince());
     }
 
     protected static interface ProcessFunction {
@@ -260,15 +264,15 @@ public class Thrudb {
 
     }
 
-    private class getLogFrom implements ProcessFunction {
+    private class getLogSince implements ProcessFunction {
       public void process(int seqid, TProtocol iprot, TProtocol oprot) throws TException
       {
-        getLogFrom_args args = new getLogFrom_args();
+        getLogSince_args args = new getLogSince_args();
         args.read(iprot);
         iprot.readMessageEnd();
-        getLogFrom_result result = new getLogFrom_result();
-        result.success = iface_.getLogFrom(args.lsn, args.kbLimit);
-        oprot.writeMessageBegin(new TMessage("getLogFrom", TMessageType.REPLY, seqid));
+        getLogSince_result result = new getLogSince_result();
+        result.success = iface_.getLogSince(args.server, args.bucket, args.lsn, args.kbLimit);
+        oprot.writeMessageBegin(new TMessage("getLogSince", TMessageType.REPLY, seqid));
         result.write(oprot);
         oprot.writeMessageEnd();
         oprot.getTransport().flush();
@@ -864,15 +868,21 @@ public class Thrudb {
 
   }
 
-  public static class getLogFrom_args implements TBase, java.io.Serializable, Cloneable   {
-    private static final TStruct STRUCT_DESC = new TStruct("getLogFrom_args");
-    private static final TField LSN_FIELD_DESC = new TField("lsn", TType.STRING, (short)1);
-    private static final TField KB_LIMIT_FIELD_DESC = new TField("kbLimit", TType.I32, (short)2);
-
+  public static class getLogSince_args implements TBase, java.io.Serializable, Cloneable   {
+    private static final TStruct STRUCT_DESC = new TStruct("getLogSince_args");
+    private static final TField SERVER_FIELD_DESC = new TField("server", TType.STRING, (short)1);
+    private static final TField BUCKET_FIELD_DESC = new TField("bucket", TType.STRING, (short)2);
+    private static final TField LSN_FIELD_DESC = new TField("lsn", TType.STRING, (short)3);
+    private static final TField KB_LIMIT_FIELD_DESC = new TField("kbLimit", TType.I32, (short)4);
+
+    public String server;
+    public static final int SERVER = 1;
+    public String bucket;
+    public static final int BUCKET = 2;
     public String lsn;
-    public static final int LSN = 1;
+    public static final int LSN = 3;
     public int kbLimit;
-    public static final int KBLIMIT = 2;
+    public static final int KB_LIMIT = 4;
 
     private final Isset __isset = new Isset();
     private static final class Isset implements java.io.Serializable {
@@ -880,24 +890,32 @@ public class Thrudb {
     }
 
     public static final Map<Integer, FieldMetaData> metaDataMap = Collections.unmodifiableMap(new HashMap<Integer, FieldMetaData>() {{
+      put(SERVER, new FieldMetaData("server", TFieldRequirementType.DEFAULT, 
+          new FieldValueMetaData(TType.STRING)));
+      put(BUCKET, new FieldMetaData("bucket", TFieldRequirementType.DEFAULT, 
+          new FieldValueMetaData(TType.STRING)));
       put(LSN, new FieldMetaData("lsn", TFieldRequirementType.DEFAULT, 
           new FieldValueMetaData(TType.STRING)));
-      put(KBLIMIT, new FieldMetaData("kbLimit", TFieldRequirementType.DEFAULT, 
+      put(KB_LIMIT, new FieldMetaData("kbLimit", TFieldRequirementType.DEFAULT, 
           new FieldValueMetaData(TType.I32)));
     }});
 
     static {
-      FieldMetaData.addStructMetaDataMap(getLogFrom_args.class, metaDataMap);
+      FieldMetaData.addStructMetaDataMap(getLogSince_args.class, metaDataMap);
     }
 
-    public getLogFrom_args() {
+    public getLogSince_args() {
     }
 
-    public getLogFrom_args(
+    public getLogSince_args(
+      String server,
+      String bucket,
       String lsn,
       int kbLimit)
     {
       this();
+      this.server = server;
+      this.bucket = bucket;
       this.lsn = lsn;
       this.kbLimit = kbLimit;
       this.__isset.kbLimit = true;
@@ -906,7 +924,13 @@ public class Thrudb {
     /**
      * Performs a deep copy on <i>other</i>.
      */
-    public getLogFrom_args(getLogFrom_args other) {
+    public getLogSince_args(getLogSince_args other) {
+      if (other.isSetServer()) {
+        this.server = other.server;
+      }
+      if (other.isSetBucket()) {
+        this.bucket = other.bucket;
+      }
       if (other.isSetLsn()) {
         this.lsn = other.lsn;
       }
@@ -915,8 +939,54 @@ public class Thrudb {
     }
 
     @Override
-    public getLogFrom_args clone() {
-      return new getLogFrom_args(this);
+    public getLogSince_args clone() {
+      return new getLogSince_args(this);
+    }
+
+    public String getServer() {
+      return this.server;
+    }
+
+    public void setServer(String server) {
+      this.server = server;
+    }
+
+    public void unsetServer() {
+      this.server = null;
+    }
+
+    // Returns true if field server is set (has been asigned a value) and false otherwise
+    public boolean isSetServer() {
+      return this.server != null;
+    }
+
+    public void setServerIsSet(boolean value) {
+      if (!value) {
+        this.server = null;
+      }
+    }
+
+    public String getBucket() {
+      return this.bucket;
+    }
+
+    public void setBucket(String bucket) {
+      this.bucket = bucket;
+    }
+
+    public void unsetBucket() {
+      this.bucket = null;
+    }
+
+    // Returns true if field bucket is set (has been asigned a value) and false otherwise
+    public boolean isSetBucket() {
+      return this.bucket != null;
+    }
+
+    public void setBucketIsSet(boolean value) {
+      if (!value) {
+        this.bucket = null;
+      }
     }
 
     public String getLsn() {
@@ -966,6 +1036,22 @@ public class Thrudb {
 
     public void setFieldValue(int fieldID, Object value) {
       switch (fieldID) {
+      case SERVER:
+        if (value == null) {
+          unsetServer();
+        } else {
+          setServer((String)value);
+        }
+        break;
+
+      case BUCKET:
+        if (value == null) {
+          unsetBucket();
+        } else {
+          setBucket((String)value);
+        }
+        break;
+
       case LSN:
         if (value == null) {
           unsetLsn();
@@ -974,7 +1060,7 @@ public class Thrudb {
         }
         break;
 
-      case KBLIMIT:
+      case KB_LIMIT:
         if (value == null) {
           unsetKbLimit();
         } else {
@@ -989,10 +1075,16 @@ public class Thrudb {
 
     public Object getFieldValue(int fieldID) {
       switch (fieldID) {
+      case SERVER:
+        return getServer();
+
+      case BUCKET:
+        return getBucket();
+
       case LSN:
         return getLsn();
 
-      case KBLIMIT:
+      case KB_LIMIT:
         return new Integer(getKbLimit());
 
       default:
@@ -1003,9 +1095,13 @@ public class Thrudb {
     // Returns true if field corresponding to fieldID is set (has been asigned a value) and false otherwise
     public boolean isSet(int fieldID) {
       switch (fieldID) {
+      case SERVER:
+        return isSetServer();
+      case BUCKET:
+        return isSetBucket();
       case LSN:
         return isSetLsn();
-      case KBLIMIT:
+      case KB_LIMIT:
         return isSetKbLimit();
       default:
         throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
@@ -1016,15 +1112,33 @@ public class Thrudb {
     public boolean equals(Object that) {
       if (that == null)
         return false;
-      if (that instanceof getLogFrom_args)
-        return this.equals((getLogFrom_args)that);
+      if (that instanceof getLogSince_args)
+        return this.equals((getLogSince_args)that);
       return false;
     }
 
-    public boolean equals(getLogFrom_args that) {
+    public boolean equals(getLogSince_args that) {
       if (that == null)
         return false;
 
+      boolean this_present_server = true && this.isSetServer();
+      boolean that_present_server = true && that.isSetServer();
+      if (this_present_server || that_present_server) {
+        if (!(this_present_server && that_present_server))
+          return false;
+        if (!this.server.equals(that.server))
+          return false;
+      }
+
+      boolean this_present_bucket = true && this.isSetBucket();
+      boolean that_present_bucket = true && that.isSetBucket();
+      if (this_present_bucket || that_present_bucket) {
+        if (!(this_present_bucket && that_present_bucket))
+          return false;
+        if (!this.bucket.equals(that.bucket))
+          return false;
+      }
+
       boolean this_present_lsn = true && this.isSetLsn();
       boolean that_present_lsn = true && that.isSetLsn();
       if (this_present_lsn || that_present_lsn) {
@@ -1062,6 +1176,20 @@ public class Thrudb {
         }
         switch (field.id)
         {
+          case SERVER:
+            if (field.type == TType.STRING) {
+              this.server = iprot.readString();
+            } else { 
+              TProtocolUtil.skip(iprot, field.type);
+            }
+            break;
+          case BUCKET:
+            if (field.type == TType.STRING) {
+              this.bucket = iprot.readString();
+            } else { 
+              TProtocolUtil.skip(iprot, field.type);
+            }
+            break;
           case LSN:
             if (field.type == TType.STRING) {
               this.lsn = iprot.readString();
@@ -1069,7 +1197,7 @@ public class Thrudb {
               TProtocolUtil.skip(iprot, field.type);
             }
             break;
-          case KBLIMIT:
+          case KB_LIMIT:
             if (field.type == TType.I32) {
               this.kbLimit = iprot.readI32();
               this.__isset.kbLimit = true;
@@ -1094,6 +1222,16 @@ public class Thrudb {
       validate();
 
       oprot.writeStructBegin(STRUCT_DESC);
+      if (this.server != null) {
+        oprot.writeFieldBegin(SERVER_FIELD_DESC);
+        oprot.writeString(this.server);
+        oprot.writeFieldEnd();
+      }
+      if (this.bucket != null) {
+        oprot.writeFieldBegin(BUCKET_FIELD_DESC);
+        oprot.writeString(this.bucket);
+        oprot.writeFieldEnd();
+      }
       if (this.lsn != null) {
         oprot.writeFieldBegin(LSN_FIELD_DESC);
         oprot.writeString(this.lsn);
@@ -1108,9 +1246,25 @@ public class Thrudb {
 
     @Override
     public String toString() {
-      StringBuilder sb = new StringBuilder("getLogFrom_args(");
+      StringBuilder sb = new StringBuilder("getLogSince_args(");
       boolean first = true;
 
+      sb.append("server:");
+      if (this.server == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.server);
+      }
+      first = false;
+      if (!first) sb.append(", ");
+      sb.append("bucket:");
+      if (this.bucket == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.bucket);
+      }
+      first = false;
+      if (!first) sb.append(", ");
       sb.append("lsn:");
       if (this.lsn == null) {
         sb.append("null");
@@ -1133,8 +1287,8 @@ public class Thrudb {
 
   }
 
-  public static class getLogFrom_result implements TBase, java.io.Serializable, Cloneable   {
-    private static final TStruct STRUCT_DESC = new TStruct("getLogFrom_result");
+  public static class getLogSince_result implements TBase, java.io.Serializable, Cloneable   {
+    private static final TStruct STRUCT_DESC = new TStruct("getLogSince_result");
     private static final TField SUCCESS_FIELD_DESC = new TField("success", TType.LIST, (short)0);
 
     public List<logEntry> success;
@@ -1151,13 +1305,13 @@ public class Thrudb {
     }});
 
     static {
-      FieldMetaData.addStructMetaDataMap(getLogFrom_result.class, metaDataMap);
+      FieldMetaData.addStructMetaDataMap(getLogSince_result.class, metaDataMap);
     }
 
-    public getLogFrom_result() {
+    public getLogSince_result() {
     }
 
-    public getLogFrom_result(
+    public getLogSince_result(
       List<logEntry> success)
     {
       this();
@@ -1167,7 +1321,7 @@ public class Thrudb {
     /**
      * Performs a deep copy on <i>other</i>.
      */
-    public getLogFrom_result(getLogFrom_result other) {
+    public getLogSince_result(getLogSince_result other) {
       if (other.isSetSuccess()) {
         List<logEntry> __this__success = new ArrayList<logEntry>();
         for (logEntry other_element : other.success) {
@@ -1178,8 +1332,8 @@ public class Thrudb {
     }
 
     @Override
-    public getLogFrom_result clone() {
-      return new getLogFrom_result(this);
+    public getLogSince_result clone() {
+      return new getLogSince_result(this);
     }
 
     public int getSuccessSize() {
@@ -1259,12 +1413,12 @@ public class Thrudb {
     public boolean equals(Object that) {
       if (that == null)
         return false;
-      if (that instanceof getLogFrom_result)
-        return this.equals((getLogFrom_result)that);
+      if (that instanceof getLogSince_result)
+        return this.equals((getLogSince_result)that);
       return false;
     }
 
-    public boolean equals(getLogFrom_result that) {
+    public boolean equals(getLogSince_result that) {
       if (that == null)
         return false;
 
@@ -1299,14 +1453,14 @@ public class Thrudb {
           case SUCCESS:
             if (field.type == TType.LIST) {
               {
-                TList _list5 = iprot.readListBegin();
-                this.success = new ArrayList<logEntry>(_list5.size);
-                for (int _i6 = 0; _i6 < _list5.size; ++_i6)
+                TList _list9 = iprot.readListBegin();
+                this.success = new ArrayList<logEntry>(_list9.size);
+                for (int _i10 = 0; _i10 < _list9.size; ++_i10)
                 {
-                  logEntry _elem7;
-                  _elem7 = new logEntry();
-                  _elem7.read(iprot);
-                  this.success.add(_elem7);
+                  logEntry _elem11;
+                  _elem11 = new logEntry();
+                  _elem11.read(iprot);
+                  this.success.add(_elem11);
                 }
                 iprot.readListEnd();
               }
@@ -1334,8 +1488,8 @@ public class Thrudb {
         oprot.writeFieldBegin(SUCCESS_FIELD_DESC);
         {
           oprot.writeListBegin(new TList(TType.STRUCT, this.success.size()));
-          for (logEntry _iter8 : this.success)          {
-            _iter8.write(oprot);
+          for (logEntry _iter12 : this.success)          {
+            _iter12.write(oprot);
           }
           oprot.writeListEnd();
         }
@@ -1347,7 +1501,7 @@ public class Thrudb {
 
     @Override
     public String toString() {
-      StringBuilder sb = new StringBuilder("getLogFrom_result(");
+      StringBuilder sb = new StringBuilder("getLogSince_result(");
       boolean first = true;
 
       sb.append("success:");
@@ -29,6 +29,10 @@ public class SearchQuery implements TBase, java.io.Serializable, Cloneable {
   private static final TField PAYLOAD_FIELD_DESC = new TField("payload", TType.BOOL, (short)8);
   private static final TField DEFAULT_ANALYZER_FIELD_DESC = new TField("defaultAnalyzer", TType.I32, (short)9);
   private static final TField FIELD_ANALYZERS_FIELD_DESC = new TField("fieldAnalyzers", TType.MAP, (short)10);
+  private static final TField REFRESH_FIELD_DESC = new TField("refresh", TType.BOOL, (short)11);
+  private static final TField CACHE_FIELD_DESC = new TField("cache", TType.BOOL, (short)12);
+  private static final TField FILTERS_FIELD_DESC = new TField("filters", TType.LIST, (short)13);
+  private static final TField CURSOR_FIELD_DESC = new TField("cursor", TType.STRING, (short)14);
 
   public String index;
   public static final int INDEX = 1;
@@ -50,6 +54,14 @@ public class SearchQuery implements TBase, java.io.Serializable, Cloneable {
   public static final int DEFAULTANALYZER = 9;
   public Map<String,Integer> fieldAnalyzers;
   public static final int FIELDANALYZERS = 10;
+  public boolean refresh;
+  public static final int REFRESH = 11;
+  public boolean cache;
+  public static final int CACHE = 12;
+  public List<String> filters;
+  public static final int FILTERS = 13;
+  public String cursor;
+  public static final int CURSOR = 14;
 
   private final Isset __isset = new Isset();
   private static final class Isset implements java.io.Serializable {
@@ -59,6 +71,8 @@ public class SearchQuery implements TBase, java.io.Serializable, Cloneable {
     public boolean randomize = false;
     public boolean payload = false;
     public boolean defaultAnalyzer = false;
+    public boolean refresh = false;
+    public boolean cache = false;
   }
 
   public static final Map<Integer, FieldMetaData> metaDataMap = Collections.unmodifiableMap(new HashMap<Integer, FieldMetaData>() {{
@@ -84,6 +98,15 @@ public class SearchQuery implements TBase, java.io.Serializable, Cloneable {
         new MapMetaData(TType.MAP, 
             new FieldValueMetaData(TType.STRING), 
             new FieldValueMetaData(TType.I32))));
+    put(REFRESH, new FieldMetaData("refresh", TFieldRequirementType.DEFAULT, 
+        new FieldValueMetaData(TType.BOOL)));
+    put(CACHE, new FieldMetaData("cache", TFieldRequirementType.DEFAULT, 
+        new FieldValueMetaData(TType.BOOL)));
+    put(FILTERS, new FieldMetaData("filters", TFieldRequirementType.DEFAULT, 
+        new ListMetaData(TType.LIST, 
+            new FieldValueMetaData(TType.STRING))));
+    put(CURSOR, new FieldMetaData("cursor", TFieldRequirementType.DEFAULT, 
+        new FieldValueMetaData(TType.STRING)));
   }});
 
   static {
@@ -105,6 +128,10 @@ public class SearchQuery implements TBase, java.io.Serializable, Cloneable {
 
     this.fieldAnalyzers = new HashMap<String,Integer>();
 
+    this.refresh = false;
+
+    this.cache = false;
+
   }
 
   public SearchQuery(
@@ -117,7 +144,11 @@ public class SearchQuery implements TBase, java.io.Serializable, Cloneable {
     boolean randomize,
     boolean payload,
     int defaultAnalyzer,
-    Map<String,Integer> fieldAnalyzers)
+    Map<String,Integer> fieldAnalyzers,
+    boolean refresh,
+    boolean cache,
+    List<String> filters,
+    String cursor)
   {
     this();
     this.index = index;
@@ -136,6 +167,12 @@ public class SearchQuery implements TBase, java.io.Serializable, Cloneable {
     this.defaultAnalyzer = defaultAnalyzer;
     this.__isset.defaultAnalyzer = true;
     this.fieldAnalyzers = fieldAnalyzers;
+    this.refresh = refresh;
+    this.__isset.refresh = true;
+    this.cache = cache;
+    this.__isset.cache = true;
+    this.filters = filters;
+    this.cursor = cursor;
   }
 
   /**
@@ -178,6 +215,20 @@ public class SearchQuery implements TBase, java.io.Serializable, Cloneable {
       }
       this.fieldAnalyzers = __this__fieldAnalyzers;
     }
+    __isset.refresh = other.__isset.refresh;
+    this.refresh = other.refresh;
+    __isset.cache = other.__isset.cache;
+    this.cache = other.cache;
+    if (other.isSetFilters()) {
+      List<String> __this__filters = new ArrayList<String>();
+      for (String other_element : other.filters) {
+        __this__filters.add(other_element);
+      }
+      this.filters = __this__filters;
+    }
+    if (other.isSetCursor()) {
+      this.cursor = other.cursor;
+    }
   }
 
   @Override
@@ -420,6 +471,111 @@ public class SearchQuery implements TBase, java.io.Serializable, Cloneable {
     }
   }
 
+  public boolean isRefresh() {
+    return this.refresh;
+  }
+
+  public void setRefresh(boolean refresh) {
+    this.refresh = refresh;
+    this.__isset.refresh = true;
+  }
+
+  public void unsetRefresh() {
+    this.__isset.refresh = false;
+  }
+
+  // Returns true if field refresh is set (has been asigned a value) and false otherwise
+  public boolean isSetRefresh() {
+    return this.__isset.refresh;
+  }
+
+  public void setRefreshIsSet(boolean value) {
+    this.__isset.refresh = value;
+  }
+
+  public boolean isCache() {
+    return this.cache;
+  }
+
+  public void setCache(boolean cache) {
+    this.cache = cache;
+    this.__isset.cache = true;
+  }
+
+  public void unsetCache() {
+    this.__isset.cache = false;
+  }
+
+  // Returns true if field cache is set (has been asigned a value) and false otherwise
+  public boolean isSetCache() {
+    return this.__isset.cache;
+  }
+
+  public void setCacheIsSet(boolean value) {
+    this.__isset.cache = value;
+  }
+
+  public int getFiltersSize() {
+    return (this.filters == null) ? 0 : this.filters.size();
+  }
+
+  public java.util.Iterator<String> getFiltersIterator() {
+    return (this.filters == null) ? null : this.filters.iterator();
+  }
+
+  public void addToFilters(String elem) {
+    if (this.filters == null) {
+      this.filters = new ArrayList<String>();
+    }
+    this.filters.add(elem);
+  }
+
+  public List<String> getFilters() {
+    return this.filters;
+  }
+
+  public void setFilters(List<String> filters) {
+    this.filters = filters;
+  }
+
+  public void unsetFilters() {
+    this.filters = null;
+  }
+
+  // Returns true if field filters is set (has been asigned a value) and false otherwise
+  public boolean isSetFilters() {
+    return this.filters != null;
+  }
+
+  public void setFiltersIsSet(boolean value) {
+    if (!value) {
+      this.filters = null;
+    }
+  }
+
+  public String getCursor() {
+    return this.cursor;
+  }
+
+  public void setCursor(String cursor) {
+    this.cursor = cursor;
+  }
+
+  public void unsetCursor() {
+    this.cursor = null;
+  }
+
+  // Returns true if field cursor is set (has been asigned a value) and false otherwise
+  public boolean isSetCursor() {
+    return this.cursor != null;
+  }
+
+  public void setCursorIsSet(boolean value) {
+    if (!value) {
+      this.cursor = null;
+    }
+  }
+
   public void setFieldValue(int fieldID, Object value) {
     switch (fieldID) {
     case INDEX:
@@ -502,6 +658,38 @@ public class SearchQuery implements TBase, java.io.Serializable, Cloneable {
       }
       break;
 
+    case REFRESH:
+      if (value == null) {
+        unsetRefresh();
+      } else {
+        setRefresh((Boolean)value);
+      }
+      break;
+
+    case CACHE:
+      if (value == null) {
+        unsetCache();
+      } else {
+        setCache((Boolean)value);
+      }
+      break;
+
+    case FILTERS:
+      if (value == null) {
+        unsetFilters();
+      } else {
+        setFilters((List<String>)value);
+      }
+      break;
+
+    case CURSOR:
+      if (value == null) {
+        unsetCursor();
+      } else {
+        setCursor((String)value);
+      }
+      break;
+
     default:
       throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
     }
@@ -539,6 +727,18 @@ public class SearchQuery implements TBase, java.io.Serializable, Cloneable {
     case FIELDANALYZERS:
       return getFieldAnalyzers();
 
+    case REFRESH:
+      return new Boolean(isRefresh());
+
+    case CACHE:
+      return new Boolean(isCache());
+
+    case FILTERS:
+      return getFilters();
+
+    case CURSOR:
+      return getCursor();
+
     default:
       throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
     }
@@ -567,6 +767,14 @@ public class SearchQuery implements TBase, java.io.Serializable, Cloneable {
       return isSetDefaultAnalyzer();
     case FIELDANALYZERS:
       return isSetFieldAnalyzers();
+    case REFRESH:
+      return isSetRefresh();
+    case CACHE:
+      return isSetCache();
+    case FILTERS:
+      return isSetFilters();
+    case CURSOR:
+      return isSetCursor();
     default:
       throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
     }
@@ -675,6 +883,42 @@ public class SearchQuery implements TBase, java.io.Serializable, Cloneable {
         return false;
     }
 
+    boolean this_present_refresh = true;
+    boolean that_present_refresh = true;
+    if (this_present_refresh || that_present_refresh) {
+      if (!(this_present_refresh && that_present_refresh))
+        return false;
+      if (this.refresh != that.refresh)
+        return false;
+    }
+
+    boolean this_present_cache = true;
+    boolean that_present_cache = true;
+    if (this_present_cache || that_present_cache) {
+      if (!(this_present_cache && that_present_cache))
+        return false;
+      if (this.cache != that.cache)
+        return false;
+    }
+
+    boolean this_present_filters = true && this.isSetFilters();
+    boolean that_present_filters = true && that.isSetFilters();
+    if (this_present_filters || that_present_filters) {
+      if (!(this_present_filters && that_present_filters))
+        return false;
+      if (!this.filters.equals(that.filters))
+        return false;
+    }
+
+    boolean this_present_cursor = true && this.isSetCursor();
+    boolean that_present_cursor = true && that.isSetCursor();
+    if (this_present_cursor || that_present_cursor) {
+      if (!(this_present_cursor && that_present_cursor))
+        return false;
+      if (!this.cursor.equals(that.cursor))
+        return false;
+    }
+
     return true;
   }
 
@@ -782,6 +1026,46 @@ public class SearchQuery implements TBase, java.io.Serializable, Cloneable {
             TProtocolUtil.skip(iprot, field.type);
           }
           break;
+        case REFRESH:
+          if (field.type == TType.BOOL) {
+            this.refresh = iprot.readBool();
+            this.__isset.refresh = true;
+          } else { 
+            TProtocolUtil.skip(iprot, field.type);
+          }
+          break;
+        case CACHE:
+          if (field.type == TType.BOOL) {
+            this.cache = iprot.readBool();
+            this.__isset.cache = true;
+          } else { 
+            TProtocolUtil.skip(iprot, field.type);
+          }
+          break;
+        case FILTERS:
+          if (field.type == TType.LIST) {
+            {
+              TList _list9 = iprot.readListBegin();
+              this.filters = new ArrayList<String>(_list9.size);
+              for (int _i10 = 0; _i10 < _list9.size; ++_i10)
+              {
+                String _elem11;
+                _elem11 = iprot.readString();
+                this.filters.add(_elem11);
+              }
+              iprot.readListEnd();
+            }
+          } else { 
+            TProtocolUtil.skip(iprot, field.type);
+          }
+          break;
+        case CURSOR:
+          if (field.type == TType.STRING) {
+            this.cursor = iprot.readString();
+          } else { 
+            TProtocolUtil.skip(iprot, field.type);
+          }
+          break;
         default:
           TProtocolUtil.skip(iprot, field.type);
           break;
@@ -844,6 +1128,28 @@ public class SearchQuery implements TBase, java.io.Serializable, Cloneable {
       }
       oprot.writeFieldEnd();
     }
+    oprot.writeFieldBegin(REFRESH_FIELD_DESC);
+    oprot.writeBool(this.refresh);
+    oprot.writeFieldEnd();
+    oprot.writeFieldBegin(CACHE_FIELD_DESC);
+    oprot.writeBool(this.cache);
+    oprot.writeFieldEnd();
+    if (this.filters != null) {
+      oprot.writeFieldBegin(FILTERS_FIELD_DESC);
+      {
+        oprot.writeListBegin(new TList(TType.STRING, this.filters.size()));
+        for (String _iter12 : this.filters)        {
+          oprot.writeString(_iter12);
+        }
+        oprot.writeListEnd();
+      }
+      oprot.writeFieldEnd();
+    }
+    if (this.cursor != null) {
+      oprot.writeFieldBegin(CURSOR_FIELD_DESC);
+      oprot.writeString(this.cursor);
+      oprot.writeFieldEnd();
+    }
     oprot.writeFieldStop();
     oprot.writeStructEnd();
   }
@@ -916,6 +1222,30 @@ public class SearchQuery implements TBase, java.io.Serializable, Cloneable {
       sb.append(this.fieldAnalyzers);
     }
     first = false;
+    if (!first) sb.append(", ");
+    sb.append("refresh:");
+    sb.append(this.refresh);
+    first = false;
+    if (!first) sb.append(", ");
+    sb.append("cache:");
+    sb.append(this.cache);
+    first = false;
+    if (!first) sb.append(", ");
+    sb.append("filters:");
+    if (this.filters == null) {
+      sb.append("null");
+    } else {
+      sb.append(this.filters);
+    }
+    first = false;
+    if (!first) sb.append(", ");
+    sb.append("cursor:");
+    if (this.cursor == null) {
+      sb.append("null");
+    } else {
+      sb.append(this.cursor);
+    }
+    first = false;
     sb.append(")");
     return sb.toString();
   }
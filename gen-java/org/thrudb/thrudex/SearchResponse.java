@@ -22,6 +22,7 @@ public class SearchResponse implements TBase, java.io.Serializable, Cloneable {
   private static final TField TOTAL_FIELD_DESC = new TField("total", TType.I32, (short)1);
   private static final TField ELEMENTS_FIELD_DESC = new TField("elements", TType.LIST, (short)2);
   private static final TField EX_FIELD_DESC = new TField("ex", TType.STRUCT, (short)3);
+  private static final TField CURSOR_FIELD_DESC = new TField("cursor", TType.STRING, (short)4);
 
   public int total;
   public static final int TOTAL = 1;
@@ -29,6 +30,8 @@ public class SearchResponse implements TBase, java.io.Serializable, Cloneable {
   public static final int ELEMENTS = 2;
   public ThrudexException ex;
   public static final int EX = 3;
+  public String cursor;
+  public static final int CURSOR = 4;
 
   private final Isset __isset = new Isset();
   private static final class Isset implements java.io.Serializable {
@@ -43,6 +46,8 @@ public class SearchResponse implements TBase, java.io.Serializable, Cloneable {
             new StructMetaData(TType.STRUCT, Element.class))));
     put(EX, new FieldMetaData("ex", TFieldRequirementType.DEFAULT, 
         new FieldValueMetaData(TType.STRUCT)));
+    put(CURSOR, new FieldMetaData("cursor", TFieldRequirementType.DEFAULT, 
+        new FieldValueMetaData(TType.STRING)));
   }});
 
   static {
@@ -57,13 +62,15 @@ public class SearchResponse implements TBase, java.io.Serializable, Cloneable {
   public SearchResponse(
     int total,
     List<Element> elements,
-    ThrudexException ex)
+    ThrudexException ex,
+    String cursor)
   {
     this();
     this.total = total;
     this.__isset.total = true;
     this.elements = elements;
     this.ex = ex;
+    this.cursor = cursor;
   }
 
   /**
@@ -82,6 +89,9 @@ public class SearchResponse implements TBase, java.io.Serializable, Cloneable {
     if (other.isSetEx()) {
       this.ex = new ThrudexException(other.ex);
     }
+    if (other.isSetCursor()) {
+      this.cursor = other.cursor;
+    }
   }
 
   @Override
@@ -172,6 +182,29 @@ public class SearchResponse implements TBase, java.io.Serializable, Cloneable {
     }
   }
 
+  public String getCursor() {
+    return this.cursor;
+  }
+
+  public void setCursor(String cursor) {
+    this.cursor = cursor;
+  }
+
+  public void unsetCursor() {
+    this.cursor = null;
+  }
+
+  // Returns true if field cursor is set (has been asigned a value) and false otherwise
+  public boolean isSetCursor() {
+    return this.cursor != null;
+  }
+
+  public void setCursorIsSet(boolean value) {
+    if (!value) {
+      this.cursor = null;
+    }
+  }
+
   public void setFieldValue(int fieldID, Object value) {
     switch (fieldID) {
     case TOTAL:
@@ -198,6 +231,14 @@ public class SearchResponse implements TBase, java.io.Serializable, Cloneable {
       }
       break;
 
+    case CURSOR:
+      if (value == null) {
+        unsetCursor();
+      } else {
+        setCursor((String)value);
+      }
+      break;
+
     default:
       throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
     }
@@ -214,6 +255,9 @@ public class SearchResponse implements TBase, java.io.Serializable, Cloneable {
     case EX:
       return getEx();
 
+    case CURSOR:
+      return getCursor();
+
     default:
       throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
     }
@@ -228,6 +272,8 @@ public class SearchResponse implements TBase, java.io.Serializable, Cloneable {
       return isSetElements();
     case EX:
       return isSetEx();
+    case CURSOR:
+      return isSetCursor();
     default:
       throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
     }
@@ -273,6 +319,15 @@ public class SearchResponse implements TBase, java.io.Serializable, Cloneable {
         return false;
     }
 
+    boolean this_present_cursor = true && this.isSetCursor();
+    boolean that_present_cursor = true && that.isSetCursor();
+    if (this_present_cursor || that_present_cursor) {
+      if (!(this_present_cursor && that_present_cursor))
+        return false;
+      if (!this.cursor.equals(that.cursor))
+        return false;
+    }
+
     return true;
   }
 
@@ -326,6 +381,13 @@ public class SearchResponse implements TBase, java.io.Serializable, Cloneable {
             TProtocolUtil.skip(iprot, field.type);
           }
           break;
+        case CURSOR:
+          if (field.type == TType.STRING) {
+            this.cursor = iprot.readString();
+          } else { 
+            TProtocolUtil.skip(iprot, field.type);
+          }
+          break;
         default:
           TProtocolUtil.skip(iprot, field.type);
           break;
@@ -362,6 +424,11 @@ public class SearchResponse implements TBase, java.io.Serializable, Cloneable {
       this.ex.write(oprot);
       oprot.writeFieldEnd();
     }
+    if (this.cursor != null) {
+      oprot.writeFieldBegin(CURSOR_FIELD_DESC);
+      oprot.writeString(this.cursor);
+      oprot.writeFieldEnd();
+    }
     oprot.writeFieldStop();
     oprot.writeStructEnd();
   }
@@ -390,6 +457,14 @@ public class SearchResponse implements TBase, java.io.Serializable, Cloneable {
       sb.append(this.ex);
     }
     first = false;
+    if (!first) sb.append(", ");
+    sb.append("cursor:");
+    if (this.cursor == null) {
+      sb.append("null");
+    } else {
+      sb.append(this.cursor);
+    }
+    first = false;
     sb.append(")");
     return sb.toString();
   }
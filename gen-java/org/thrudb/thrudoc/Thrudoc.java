@@ -59,6 +59,12 @@ public class Thrudoc {
 
     public List<String> scan(String bucket, String seed, int limit) throws ThrudocException, InvalidBucketException, TException;
 
+    public List<Entity> get_multi(List<Entity> entities) throws ThrudocException, InvalidBucketException, TException;
+
+    public void put_multi(List<Entity> entities) throws ThrudocException, InvalidBucketException, TException;
+
+    public void remove_multi(List<Entity> entities) throws ThrudocException, InvalidBucketException, TException;
+
     public String admin(String op, String data) throws ThrudocException, TException;
 
   }
@@ -811,6 +817,117 @@ public class Thrudoc {
       throw new TApplicationException(TApplicationException.MISSING_RESULT, "scan failed: unknown result");
     }
 
+    public List<Entity> get_multi(List<Entity> entities) throws ThrudocException, InvalidBucketException, TException
+    {
+      send_get_multi(entities);
+      return recv_get_multi();
+    }
+
+    public void send_get_multi(List<Entity> entities) throws TException
+    {
+      oprot_.writeMessageBegin(new TMessage("get_multi", TMessageType.CALL, seqid_));
+      get_multi_args args = new get_multi_args();
+      args.entities = entities;
+      args.write(oprot_);
+      oprot_.writeMessageEnd();
+      oprot_.getTransport().flush();
+    }
+
+    public List<Entity> recv_get_multi() throws ThrudocException, InvalidBucketException, TException
+    {
+      TMessage msg = iprot_.readMessageBegin();
+      if (msg.type == TMessageType.EXCEPTION) {
+        TApplicationException x = TApplicationException.read(iprot_);
+        iprot_.readMessageEnd();
+        throw x;
+      }
+      get_multi_result result = new get_multi_result();
+      result.read(iprot_);
+      iprot_.readMessageEnd();
+      if (result.isSetSuccess()) {
+        return result.success;
+      }
+      if (result.ex1 != null) {
+        throw result.ex1;
+      }
+      if (result.ex2 != null) {
+        throw result.ex2;
+      }
+      throw new TApplicationException(TApplicationException.MISSING_RESULT, "get_multi failed: unknown result");
+    }
+
+    public void put_multi(List<Entity> entities) throws ThrudocException, InvalidBucketException, TException
+    {
+      send_put_multi(entities);
+      recv_put_multi();
+    }
+
+    public void send_put_multi(List<Entity> entities) throws TException
+    {
+      oprot_.writeMessageBegin(new TMessage("put_multi", TMessageType.CALL, seqid_));
+      put_multi_args args = new put_multi_args();
+      args.entities = entities;
+      args.write(oprot_);
+      oprot_.writeMessageEnd();
+      oprot_.getTransport().flush();
+    }
+
+    public void recv_put_multi() throws ThrudocException, InvalidBucketException, TException
+    {
+      TMessage msg = iprot_.readMessageBegin();
+      if (msg.type == TMessageType.EXCEPTION) {
+        TApplicationException x = TApplicationException.read(iprot_);
+        iprot_.readMessageEnd();
+        throw x;
+      }
+      put_multi_result result = new put_multi_result();
+      result.read(iprot_);
+      iprot_.readMessageEnd();
+      if (result.ex1 != null) {
+        throw result.ex1;
+      }
+      if (result.ex2 != null) {
+        throw result.ex2;
+      }
+      return;
+    }
+
+    public void remove_multi(List<Entity> entities) throws ThrudocException, InvalidBucketException, TException
+    {
+      send_remove_multi(entities);
+      recv_remove_multi();
+    }
+
+    public void send_remove_multi(List<Entity> entities) throws TException
+    {
+      oprot_.writeMessageBegin(new TMessage("remove_multi", TMessageType.CALL, seqid_));
+      remove_multi_args args = new remove_multi_args();
+      args.entities = entities;
+      args.write(oprot_);
+      oprot_.writeMessageEnd();
+      oprot_.getTransport().flush();
+    }
+
+    public void recv_remove_multi() throws ThrudocException, InvalidBucketException, TException
+    {
+      TMessage msg = iprot_.readMessageBegin();
+      if (msg.type == TMessageType.EXCEPTION) {
+        TApplicationException x = TApplicationException.read(iprot_);
+        iprot_.readMessageEnd();
+        throw x;
+      }
+      remove_multi_result result = new remove_multi_result();
+      result.read(iprot_);
+      iprot_.readMessageEnd();
+      if (result.ex1 != null) {
+        throw result.ex1;
+      }
+      if (result.ex2 != null) {
+        throw result.ex2;
+      }
+      return;
+    }
+
     public String admin(String op, String data) throws ThrudocException, TException
     {
       send_admin(op, data);
@@ -873,6 +990,9 @@ public class Thrudoc {
       processMap_.put("range", new range());
       processMap_.put("length", new length());
       processMap_.put("scan", new scan());
+      processMap_.put("get_multi", new get_multi());
+      processMap_.put("put_multi", new put_multi());
+      processMap_.put("remove_multi", new remove_multi());
       processMap_.put("admin", new admin());
     }
 
@@ -1311,6 +1431,72 @@ public class Thrudoc {
 
     }
 
+    private class get_multi implements ProcessFunction {
+      public void process(int seqid, TProtocol iprot, TProtocol oprot) throws TException
+      {
+        get_multi_args args = new get_multi_args();
+        args.read(iprot);
+        iprot.readMessageEnd();
+        get_multi_result result = new get_multi_result();
+        try {
+          result.success = iface_.get_multi(args.entities);
+        } catch (ThrudocException ex1) {
+          result.ex1 = ex1;
+        } catch (InvalidBucketException ex2) {
+          result.ex2 = ex2;
+        }
+        oprot.writeMessageBegin(new TMessage("get_multi", TMessageType.REPLY, seqid));
+        result.write(oprot);
+        oprot.writeMessageEnd();
+        oprot.getTransport().flush();
+      }
+
+    }
+
+    private class put_multi implements ProcessFunction {
+      public void process(int seqid, TProtocol iprot, TProtocol oprot) throws TException
+      {
+        put_multi_args args = new put_multi_args();
+        args.read(iprot);
+        iprot.readMessageEnd();
+        put_multi_result result = new put_multi_result();
+        try {
+          iface_.put_multi(args.entities);
+        } catch (ThrudocException ex1) {
+          result.ex1 = ex1;
+        } catch (InvalidBucketException ex2) {
+          result.ex2 = ex2;
+        }
+        oprot.writeMessageBegin(new TMessage("put_multi", TMessageType.REPLY, seqid));
+        result.write(oprot);
+        oprot.writeMessageEnd();
+        oprot.getTransport().flush();
+      }
+
+    }
+
+    private class remove_multi implements ProcessFunction {
+      public void process(int seqid, TProtocol iprot, TProtocol oprot) throws TException
+      {
+        remove_multi_args args = new remove_multi_args();
+        args.read(iprot);
+        iprot.readMessageEnd();
+        remove_multi_result result = new remove_multi_result();
+        try {
+          iface_.remove_multi(args.entities);
+        } catch (ThrudocException ex1) {
+          result.ex1 = ex1;
+        } catch (InvalidBucketException ex2) {
+          result.ex2 = ex2;
+        }
+        oprot.writeMessageBegin(new TMessage("remove_multi", TMessageType.REPLY, seqid));
+        result.write(oprot);
+        oprot.writeMessageEnd();
+        oprot.getTransport().flush();
+      }
+
+    }
+
     private class admin implements ProcessFunction {
       public void process(int seqid, TProtocol iprot, TProtocol oprot) throws TException
       {
@@ -13195,6 +13381,1647 @@ public class Thrudoc {
 
   }
 
+  public static class get_multi_args implements TBase, java.io.Serializable, Cloneable   {
+    private static final TStruct STRUCT_DESC = new TStruct("get_multi_args");
+    private static final TField ENTITIES_FIELD_DESC = new TField("entities", TType.LIST, (short)1);
+
+    public List<Entity> entities;
+    public static final int ENTITIES = 1;
+
+    private final Isset __isset = new Isset();
+    private static final class Isset implements java.io.Serializable {
+    }
+
+    public static final Map<Integer, FieldMetaData> metaDataMap = Collections.unmodifiableMap(new HashMap<Integer, FieldMetaData>() {{
+      put(ENTITIES, new FieldMetaData("entities", TFieldRequirementType.DEFAULT, 
+          new ListMetaData(TType.LIST, 
+              new StructMetaData(TType.STRUCT, Entity.class))));
+    }});
+
+    static {
+      FieldMetaData.addStructMetaDataMap(get_multi_args.class, metaDataMap);
+    }
+
+    public get_multi_args() {
+    }
+
+    public get_multi_args(
+      List<Entity> entities)
+    {
+      this();
+      this.entities = entities;
+    }
+
+    /**
+     * Performs a deep copy on <i>other</i>.
+     */
+    public get_multi_args(get_multi_args other) {
+      if (other.isSetEntities()) {
+        List<Entity> __this__entities = new ArrayList<Entity>();
+        for (Entity other_element : other.entities) {
+          __this__entities.add(new Entity(other_element));
+        }
+        this.entities = __this__entities;
+      }
+    }
+
+    @Override
+    public get_multi_args clone() {
+      return new get_multi_args(this);
+    }
+
+    public int getEntitiesSize() {
+      return (this.entities == null) ? 0 : this.entities.size();
+    }
+
+    public java.util.Iterator<Entity> getEntitiesIterator() {
+      return (this.entities == null) ? null : this.entities.iterator();
+    }
+
+    public void addToEntities(Entity elem) {
+      if (this.entities == null) {
+        this.entities = new ArrayList<Entity>();
+      }
+      this.entities.add(elem);
+    }
+
+    public List<Entity> getEntities() {
+      return this.entities;
+    }
+
+    public void setEntities(List<Entity> entities) {
+      this.entities = entities;
+    }
+
+    public void unsetEntities() {
+      this.entities = null;
+    }
+
+    // Returns true if field entities is set (has been asigned a value) and false otherwise
+    public boolean isSetEntities() {
+      return this.entities != null;
+    }
+
+    public void setEntitiesIsSet(boolean value) {
+      if (!value) {
+        this.entities = null;
+      }
+    }
+
+    public void setFieldValue(int fieldID, Object value) {
+      switch (fieldID) {
+      case ENTITIES:
+        if (value == null) {
+          unsetEntities();
+        } else {
+          setEntities((List<Entity>)value);
+        }
+        break;
+
+      default:
+        throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
+      }
+    }
+
+    public Object getFieldValue(int fieldID) {
+      switch (fieldID) {
+      case ENTITIES:
+        return getEntities();
+
+      default:
+        throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
+      }
+    }
+
+    // Returns true if field corresponding to fieldID is set (has been asigned a value) and false otherwise
+    public boolean isSet(int fieldID) {
+      switch (fieldID) {
+      case ENTITIES:
+        return isSetEntities();
+      default:
+        throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
+      }
+    }
+
+    @Override
+    public boolean equals(Object that) {
+      if (that == null)
+        return false;
+      if (that instanceof get_multi_args)
+        return this.equals((get_multi_args)that);
+      return false;
+    }
+
+    public boolean equals(get_multi_args that) {
+      if (that == null)
+        return false;
+
+      boolean this_present_entities = true && this.isSetEntities();
+      boolean that_present_entities = true && that.isSetEntities();
+      if (this_present_entities || that_present_entities) {
+        if (!(this_present_entities && that_present_entities))
+          return false;
+        if (!this.entities.equals(that.entities))
+          return false;
+      }
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+
+    public void read(TProtocol iprot) throws TException {
+      TField field;
+      iprot.readStructBegin();
+      while (true)
+      {
+        field = iprot.readFieldBegin();
+        if (field.type == TType.STOP) { 
+          break;
+        }
+        switch (field.id)
+        {
+          case ENTITIES:
+            if (field.type == TType.LIST) {
+              {
+                TList _list12 = iprot.readListBegin();
+                this.entities = new ArrayList<Entity>(_list12.size);
+                for (int _i13 = 0; _i13 < _list12.size; ++_i13)
+                {
+                  Entity _elem14;
+                  _elem14 = new Entity();
+                  _elem14.read(iprot);
+                  this.entities.add(_elem14);
+                }
+                iprot.readListEnd();
+              }
+            } else { 
+              TProtocolUtil.skip(iprot, field.type);
+            }
+            break;
+          default:
+            TProtocolUtil.skip(iprot, field.type);
+            break;
+        }
+        iprot.readFieldEnd();
+      }
+      iprot.readStructEnd();
+
+
+      // check for required fields of primitive type, which can't be checked in the validate method
+      validate();
+    }
+
+    public void write(TProtocol oprot) throws TException {
+      validate();
+
+      oprot.writeStructBegin(STRUCT_DESC);
+      if (this.entities != null) {
+        oprot.writeFieldBegin(ENTITIES_FIELD_DESC);
+        {
+          oprot.writeListBegin(new TList(TType.STRUCT, this.entities.size()));
+          for (Entity _iter15 : this.entities)          {
+            _iter15.write(oprot);
+          }
+          oprot.writeListEnd();
+        }
+        oprot.writeFieldEnd();
+      }
+      oprot.writeFieldStop();
+      oprot.writeStructEnd();
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("get_multi_args(");
+      boolean first = true;
+
+      sb.append("entities:");
+      if (this.entities == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.entities);
+      }
+      first = false;
+      sb.append(")");
+      return sb.toString();
+    }
+
+    public void validate() throws TException {
+      // check for required fields
+      // check that fields of type enum have valid values
+    }
+
+  }
+
+  public static class get_multi_result implements TBase, java.io.Serializable, Cloneable   {
+    private static final TStruct STRUCT_DESC = new TStruct("get_multi_result");
+    private static final TField SUCCESS_FIELD_DESC = new TField("success", TType.LIST, (short)0);
+    private static final TField EX1_FIELD_DESC = new TField("ex1", TType.STRUCT, (short)1);
+    private static final TField EX2_FIELD_DESC = new TField("ex2", TType.STRUCT, (short)2);
+
+    public List<Entity> success;
+    public static final int SUCCESS = 0;
+    public ThrudocException ex1;
+    public static final int EX1 = 1;
+    public InvalidBucketException ex2;
+    public static final int EX2 = 2;
+
+    private final Isset __isset = new Isset();
+    private static final class Isset implements java.io.Serializable {
+    }
+
+    public static final Map<Integer, FieldMetaData> metaDataMap = Collections.unmodifiableMap(new HashMap<Integer, FieldMetaData>() {{
+      put(SUCCESS, new FieldMetaData("success", TFieldRequirementType.DEFAULT, 
+          new ListMetaData(TType.LIST, 
+              new StructMetaData(TType.STRUCT, Entity.class))));
+      put(EX1, new FieldMetaData("ex1", TFieldRequirementType.DEFAULT, 
+          new FieldValueMetaData(TType.STRUCT)));
+      put(EX2, new FieldMetaData("ex2", TFieldRequirementType.DEFAULT, 
+          new FieldValueMetaData(TType.STRUCT)));
+    }});
+
+    static {
+      FieldMetaData.addStructMetaDataMap(get_multi_result.class, metaDataMap);
+    }
+
+    public get_multi_result() {
+    }
+
+    public get_multi_result(
+      List<Entity> success,
+      ThrudocException ex1,
+      InvalidBucketException ex2)
+    {
+      this();
+      this.success = success;
+      this.ex1 = ex1;
+      this.ex2 = ex2;
+    }
+
+    /**
+     * Performs a deep copy on <i>other</i>.
+     */
+    public get_multi_result(get_multi_result other) {
+      if (other.isSetSuccess()) {
+        List<Entity> __this__success = new ArrayList<Entity>();
+        for (Entity other_element : other.success) {
+          __this__success.add(new Entity(other_element));
+        }
+        this.success = __this__success;
+      }
+      if (other.isSetEx1()) {
+        this.ex1 = new ThrudocException(other.ex1);
+      }
+      if (other.isSetEx2()) {
+        this.ex2 = new InvalidBucketException(other.ex2);
+      }
+    }
+
+    @Override
+    public get_multi_result clone() {
+      return new get_multi_result(this);
+    }
+
+    public int getSuccessSize() {
+      return (this.success == null) ? 0 : this.success.size();
+    }
+
+    public java.util.Iterator<Entity> getSuccessIterator() {
+      return (this.success == null) ? null : this.success.iterator();
+    }
+
+    public void addToSuccess(Entity elem) {
+      if (this.success == null) {
+        this.success = new ArrayList<Entity>();
+      }
+      this.success.add(elem);
+    }
+
+    public List<Entity> getSuccess() {
+      return this.success;
+    }
+
+    public void setSuccess(List<Entity> success) {
+      this.success = success;
+    }
+
+    public void unsetSuccess() {
+      this.success = null;
+    }
+
+    // Returns true if field success is set (has been asigned a value) and false otherwise
+    public boolean isSetSuccess() {
+      return this.success != null;
+    }
+
+    public void setSuccessIsSet(boolean value) {
+      if (!value) {
+        this.success = null;
+      }
+    }
+
+    public ThrudocException getEx1() {
+      return this.ex1;
+    }
+
+    public void setEx1(ThrudocException ex1) {
+      this.ex1 = ex1;
+    }
+
+    public void unsetEx1() {
+      this.ex1 = null;
+    }
+
+    // Returns true if field ex1 is set (has been asigned a value) and false otherwise
+    public boolean isSetEx1() {
+      return this.ex1 != null;
+    }
+
+    public void setEx1IsSet(boolean value) {
+      if (!value) {
+        this.ex1 = null;
+      }
+    }
+
+    public InvalidBucketException getEx2() {
+      return this.ex2;
+    }
+
+    public void setEx2(InvalidBucketException ex2) {
+      this.ex2 = ex2;
+    }
+
+    public void unsetEx2() {
+      this.ex2 = null;
+    }
+
+    // Returns true if field ex2 is set (has been asigned a value) and false otherwise
+    public boolean isSetEx2() {
+      return this.ex2 != null;
+    }
+
+    public void setEx2IsSet(boolean value) {
+      if (!value) {
+        this.ex2 = null;
+      }
+    }
+
+    public void setFieldValue(int fieldID, Object value) {
+      switch (fieldID) {
+      case SUCCESS:
+        if (value == null) {
+          unsetSuccess();
+        } else {
+          setSuccess((List<Entity>)value);
+        }
+        break;
+
+      case EX1:
+        if (value == null) {
+          unsetEx1();
+        } else {
+          setEx1((ThrudocException)value);
+        }
+        break;
+
+      case EX2:
+        if (value == null) {
+          unsetEx2();
+        } else {
+          setEx2((InvalidBucketException)value);
+        }
+        break;
+
+      default:
+        throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
+      }
+    }
+
+    public Object getFieldValue(int fieldID) {
+      switch (fieldID) {
+      case SUCCESS:
+        return getSuccess();
+
+      case EX1:
+        return getEx1();
+
+      case EX2:
+        return getEx2();
+
+      default:
+        throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
+      }
+    }
+
+    // Returns true if field corresponding to fieldID is set (has been asigned a value) and false otherwise
+    public boolean isSet(int fieldID) {
+      switch (fieldID) {
+      case SUCCESS:
+        return isSetSuccess();
+      case EX1:
+        return isSetEx1();
+      case EX2:
+        return isSetEx2();
+      default:
+        throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
+      }
+    }
+
+    @Override
+    public boolean equals(Object that) {
+      if (that == null)
+        return false;
+      if (that instanceof get_multi_result)
+        return this.equals((get_multi_result)that);
+      return false;
+    }
+
+    public boolean equals(get_multi_result that) {
+      if (that == null)
+        return false;
+
+      boolean this_present_success = true && this.isSetSuccess();
+      boolean that_present_success = true && that.isSetSuccess();
+      if (this_present_success || that_present_success) {
+        if (!(this_present_success && that_present_success))
+          return false;
+        if (!this.success.equals(that.success))
+          return false;
+      }
+
+      boolean this_present_ex1 = true && this.isSetEx1();
+      boolean that_present_ex1 = true && that.isSetEx1();
+      if (this_present_ex1 || that_present_ex1) {
+        if (!(this_present_ex1 && that_present_ex1))
+          return false;
+        if (!this.ex1.equals(that.ex1))
+          return false;
+      }
+
+      boolean this_present_ex2 = true && this.isSetEx2();
+      boolean that_present_ex2 = true && that.isSetEx2();
+      if (this_present_ex2 || that_present_ex2) {
+        if (!(this_present_ex2 && that_present_ex2))
+          return false;
+        if (!this.ex2.equals(that.ex2))
+          return false;
+      }
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+
+    public void read(TProtocol iprot) throws TException {
+      TField field;
+      iprot.readStructBegin();
+      while (true)
+      {
+        field = iprot.readFieldBegin();
+        if (field.type == TType.STOP) { 
+          break;
+        }
+        switch (field.id)
+        {
+          case SUCCESS:
+            if (field.type == TType.LIST) {
+              {
+                TList _list16 = iprot.readListBegin();
+                this.success = new ArrayList<Entity>(_list16.size);
+                for (int _i17 = 0; _i17 < _list16.size; ++_i17)
+                {
+                  Entity _elem18;
+                  _elem18 = new Entity();
+                  _elem18.read(iprot);
+                  this.success.add(_elem18);
+                }
+                iprot.readListEnd();
+              }
+            } else { 
+              TProtocolUtil.skip(iprot, field.type);
+            }
+            break;
+          case EX1:
+            if (field.type == TType.STRUCT) {
+              this.ex1 = new ThrudocException();
+              this.ex1.read(iprot);
+            } else { 
+              TProtocolUtil.skip(iprot, field.type);
+            }
+            break;
+          case EX2:
+            if (field.type == TType.STRUCT) {
+              this.ex2 = new InvalidBucketException();
+              this.ex2.read(iprot);
+            } else { 
+              TProtocolUtil.skip(iprot, field.type);
+            }
+            break;
+          default:
+            TProtocolUtil.skip(iprot, field.type);
+            break;
+        }
+        iprot.readFieldEnd();
+      }
+      iprot.readStructEnd();
+
+
+      // check for required fields of primitive type, which can't be checked in the validate method
+      validate();
+    }
+
+    public void write(TProtocol oprot) throws TException {
+      oprot.writeStructBegin(STRUCT_DESC);
+
+      if (this.isSetSuccess()) {
+        oprot.writeFieldBegin(SUCCESS_FIELD_DESC);
+        {
+          oprot.writeListBegin(new TList(TType.STRUCT, this.success.size()));
+          for (Entity _iter19 : this.success)          {
+            _iter19.write(oprot);
+          }
+          oprot.writeListEnd();
+        }
+        oprot.writeFieldEnd();
+      } else if (this.isSetEx1()) {
+        oprot.writeFieldBegin(EX1_FIELD_DESC);
+        this.ex1.write(oprot);
+        oprot.writeFieldEnd();
+      } else if (this.isSetEx2()) {
+        oprot.writeFieldBegin(EX2_FIELD_DESC);
+        this.ex2.write(oprot);
+        oprot.writeFieldEnd();
+      }
+      oprot.writeFieldStop();
+      oprot.writeStructEnd();
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("get_multi_result(");
+      boolean first = true;
+
+      sb.append("success:");
+      if (this.success == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.success);
+      }
+      first = false;
+      if (!first) sb.append(", ");
+      sb.append("ex1:");
+      if (this.ex1 == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.ex1);
+      }
+      first = false;
+      if (!first) sb.append(", ");
+      sb.append("ex2:");
+      if (this.ex2 == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.ex2);
+      }
+      first = false;
+      sb.append(")");
+      return sb.toString();
+    }
+
+    public void validate() throws TException {
+      // check for required fields
+      // check that fields of type enum have valid values
+    }
+
+  }
+
+  public static class put_multi_args implements TBase, java.io.Serializable, Cloneable   {
+    private static final TStruct STRUCT_DESC = new TStruct("put_multi_args");
+    private static final TField ENTITIES_FIELD_DESC = new TField("entities", TType.LIST, (short)1);
+
+    public List<Entity> entities;
+    public static final int ENTITIES = 1;
+
+    private final Isset __isset = new Isset();
+    private static final class Isset implements java.io.Serializable {
+    }
+
+    public static final Map<Integer, FieldMetaData> metaDataMap = Collections.unmodifiableMap(new HashMap<Integer, FieldMetaData>() {{
+      put(ENTITIES, new FieldMetaData("entities", TFieldRequirementType.DEFAULT, 
+          new ListMetaData(TType.LIST, 
+              new StructMetaData(TType.STRUCT, Entity.class))));
+    }});
+
+    static {
+      FieldMetaData.addStructMetaDataMap(put_multi_args.class, metaDataMap);
+    }
+
+    public put_multi_args() {
+    }
+
+    public put_multi_args(
+      List<Entity> entities)
+    {
+      this();
+      this.entities = entities;
+    }
+
+    /**
+     * Performs a deep copy on <i>other</i>.
+     */
+    public put_multi_args(put_multi_args other) {
+      if (other.isSetEntities()) {
+        List<Entity> __this__entities = new ArrayList<Entity>();
+        for (Entity other_element : other.entities) {
+          __this__entities.add(new Entity(other_element));
+        }
+        this.entities = __this__entities;
+      }
+    }
+
+    @Override
+    public put_multi_args clone() {
+      return new put_multi_args(this);
+    }
+
+    public int getEntitiesSize() {
+      return (this.entities == null) ? 0 : this.entities.size();
+    }
+
+    public java.util.Iterator<Entity> getEntitiesIterator() {
+      return (this.entities == null) ? null : this.entities.iterator();
+    }
+
+    public void addToEntities(Entity elem) {
+      if (this.entities == null) {
+        this.entities = new ArrayList<Entity>();
+      }
+      this.entities.add(elem);
+    }
+
+    public List<Entity> getEntities() {
+      return this.entities;
+    }
+
+    public void setEntities(List<Entity> entities) {
+      this.entities = entities;
+    }
+
+    public void unsetEntities() {
+      this.entities = null;
+    }
+
+    // Returns true if field entities is set (has been asigned a value) and false otherwise
+    public boolean isSetEntities() {
+      return this.entities != null;
+    }
+
+    public void setEntitiesIsSet(boolean value) {
+      if (!value) {
+        this.entities = null;
+      }
+    }
+
+    public void setFieldValue(int fieldID, Object value) {
+      switch (fieldID) {
+      case ENTITIES:
+        if (value == null) {
+          unsetEntities();
+        } else {
+          setEntities((List<Entity>)value);
+        }
+        break;
+
+      default:
+        throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
+      }
+    }
+
+    public Object getFieldValue(int fieldID) {
+      switch (fieldID) {
+      case ENTITIES:
+        return getEntities();
+
+      default:
+        throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
+      }
+    }
+
+    // Returns true if field corresponding to fieldID is set (has been asigned a value) and false otherwise
+    public boolean isSet(int fieldID) {
+      switch (fieldID) {
+      case ENTITIES:
+        return isSetEntities();
+      default:
+        throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
+      }
+    }
+
+    @Override
+    public boolean equals(Object that) {
+      if (that == null)
+        return false;
+      if (that instanceof put_multi_args)
+        return this.equals((put_multi_args)that);
+      return false;
+    }
+
+    public boolean equals(put_multi_args that) {
+      if (that == null)
+        return false;
+
+      boolean this_present_entities = true && this.isSetEntities();
+      boolean that_present_entities = true && that.isSetEntities();
+      if (this_present_entities || that_present_entities) {
+        if (!(this_present_entities && that_present_entities))
+          return false;
+        if (!this.entities.equals(that.entities))
+          return false;
+      }
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+
+    public void read(TProtocol iprot) throws TException {
+      TField field;
+      iprot.readStructBegin();
+      while (true)
+      {
+        field = iprot.readFieldBegin();
+        if (field.type == TType.STOP) { 
+          break;
+        }
+        switch (field.id)
+        {
+          case ENTITIES:
+            if (field.type == TType.LIST) {
+              {
+                TList _list20 = iprot.readListBegin();
+                this.entities = new ArrayList<Entity>(_list20.size);
+                for (int _i21 = 0; _i21 < _list20.size; ++_i21)
+                {
+                  Entity _elem22;
+                  _elem22 = new Entity();
+                  _elem22.read(iprot);
+                  this.entities.add(_elem22);
+                }
+                iprot.readListEnd();
+              }
+            } else { 
+              TProtocolUtil.skip(iprot, field.type);
+            }
+            break;
+          default:
+            TProtocolUtil.skip(iprot, field.type);
+            break;
+        }
+        iprot.readFieldEnd();
+      }
+      iprot.readStructEnd();
+
+
+      // check for required fields of primitive type, which can't be checked in the validate method
+      validate();
+    }
+
+    public void write(TProtocol oprot) throws TException {
+      validate();
+
+      oprot.writeStructBegin(STRUCT_DESC);
+      if (this.entities != null) {
+        oprot.writeFieldBegin(ENTITIES_FIELD_DESC);
+        {
+          oprot.writeListBegin(new TList(TType.STRUCT, this.entities.size()));
+          for (Entity _iter23 : this.entities)          {
+            _iter23.write(oprot);
+          }
+          oprot.writeListEnd();
+        }
+        oprot.writeFieldEnd();
+      }
+      oprot.writeFieldStop();
+      oprot.writeStructEnd();
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("put_multi_args(");
+      boolean first = true;
+
+      sb.append("entities:");
+      if (this.entities == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.entities);
+      }
+      first = false;
+      sb.append(")");
+      return sb.toString();
+    }
+
+    public void validate() throws TException {
+      // check for required fields
+      // check that fields of type enum have valid values
+    }
+
+  }
+
+  public static class put_multi_result implements TBase, java.io.Serializable, Cloneable   {
+    private static final TStruct STRUCT_DESC = new TStruct("put_multi_result");
+    private static final TField EX1_FIELD_DESC = new TField("ex1", TType.STRUCT, (short)1);
+    private static final TField EX2_FIELD_DESC = new TField("ex2", TType.STRUCT, (short)2);
+
+    public ThrudocException ex1;
+    public static final int EX1 = 1;
+    public InvalidBucketException ex2;
+    public static final int EX2 = 2;
+
+    private final Isset __isset = new Isset();
+    private static final class Isset implements java.io.Serializable {
+    }
+
+    public static final Map<Integer, FieldMetaData> metaDataMap = Collections.unmodifiableMap(new HashMap<Integer, FieldMetaData>() {{
+      put(EX1, new FieldMetaData("ex1", TFieldRequirementType.DEFAULT, 
+          new FieldValueMetaData(TType.STRUCT)));
+      put(EX2, new FieldMetaData("ex2", TFieldRequirementType.DEFAULT, 
+          new FieldValueMetaData(TType.STRUCT)));
+    }});
+
+    static {
+      FieldMetaData.addStructMetaDataMap(put_multi_result.class, metaDataMap);
+    }
+
+    public put_multi_result() {
+    }
+
+    public put_multi_result(
+      ThrudocException ex1,
+      InvalidBucketException ex2)
+    {
+      this();
+      this.ex1 = ex1;
+      this.ex2 = ex2;
+    }
+
+    /**
+     * Performs a deep copy on <i>other</i>.
+     */
+    public put_multi_result(put_multi_result other) {
+      if (other.isSetEx1()) {
+        this.ex1 = new ThrudocException(other.ex1);
+      }
+      if (other.isSetEx2()) {
+        this.ex2 = new InvalidBucketException(other.ex2);
+      }
+    }
+
+    @Override
+    public put_multi_result clone() {
+      return new put_multi_result(this);
+    }
+
+    public ThrudocException getEx1() {
+      return this.ex1;
+    }
+
+    public void setEx1(ThrudocException ex1) {
+      this.ex1 = ex1;
+    }
+
+    public void unsetEx1() {
+      this.ex1 = null;
+    }
+
+    // Returns true if field ex1 is set (has been asigned a value) and false otherwise
+    public boolean isSetEx1() {
+      return this.ex1 != null;
+    }
+
+    public void setEx1IsSet(boolean value) {
+      if (!value) {
+        this.ex1 = null;
+      }
+    }
+
+    public InvalidBucketException getEx2() {
+      return this.ex2;
+    }
+
+    public void setEx2(InvalidBucketException ex2) {
+      this.ex2 = ex2;
+    }
+
+    public void unsetEx2() {
+      this.ex2 = null;
+    }
+
+    // Returns true if field ex2 is set (has been asigned a value) and false otherwise
+    public boolean isSetEx2() {
+      return this.ex2 != null;
+    }
+
+    public void setEx2IsSet(boolean value) {
+      if (!value) {
+        this.ex2 = null;
+      }
+    }
+
+    public void setFieldValue(int fieldID, Object value) {
+      switch (fieldID) {
+      case EX1:
+        if (value == null) {
+          unsetEx1();
+        } else {
+          setEx1((ThrudocException)value);
+        }
+        break;
+
+      case EX2:
+        if (value == null) {
+          unsetEx2();
+        } else {
+          setEx2((InvalidBucketException)value);
+        }
+        break;
+
+      default:
+        throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
+      }
+    }
+
+    public Object getFieldValue(int fieldID) {
+      switch (fieldID) {
+      case EX1:
+        return getEx1();
+
+      case EX2:
+        return getEx2();
+
+      default:
+        throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
+      }
+    }
+
+    // Returns true if field corresponding to fieldID is set (has been asigned a value) and false otherwise
+    public boolean isSet(int fieldID) {
+      switch (fieldID) {
+      case EX1:
+        return isSetEx1();
+      case EX2:
+        return isSetEx2();
+      default:
+        throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
+      }
+    }
+
+    @Override
+    public boolean equals(Object that) {
+      if (that == null)
+        return false;
+      if (that instanceof put_multi_result)
+        return this.equals((put_multi_result)that);
+      return false;
+    }
+
+    public boolean equals(put_multi_result that) {
+      if (that == null)
+        return false;
+
+      boolean this_present_ex1 = true && this.isSetEx1();
+      boolean that_present_ex1 = true && that.isSetEx1();
+      if (this_present_ex1 || that_present_ex1) {
+        if (!(this_present_ex1 && that_present_ex1))
+          return false;
+        if (!this.ex1.equals(that.ex1))
+          return false;
+      }
+
+      boolean this_present_ex2 = true && this.isSetEx2();
+      boolean that_present_ex2 = true && that.isSetEx2();
+      if (this_present_ex2 || that_present_ex2) {
+        if (!(this_present_ex2 && that_present_ex2))
+          return false;
+        if (!this.ex2.equals(that.ex2))
+          return false;
+      }
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+
+    public void read(TProtocol iprot) throws TException {
+      TField field;
+      iprot.readStructBegin();
+      while (true)
+      {
+        field = iprot.readFieldBegin();
+        if (field.type == TType.STOP) { 
+          break;
+        }
+        switch (field.id)
+        {
+          case EX1:
+            if (field.type == TType.STRUCT) {
+              this.ex1 = new ThrudocException();
+              this.ex1.read(iprot);
+            } else { 
+              TProtocolUtil.skip(iprot, field.type);
+            }
+            break;
+          case EX2:
+            if (field.type == TType.STRUCT) {
+              this.ex2 = new InvalidBucketException();
+              this.ex2.read(iprot);
+            } else { 
+              TProtocolUtil.skip(iprot, field.type);
+            }
+            break;
+          default:
+            TProtocolUtil.skip(iprot, field.type);
+            break;
+        }
+        iprot.readFieldEnd();
+      }
+      iprot.readStructEnd();
+
+
+      // check for required fields of primitive type, which can't be checked in the validate method
+      validate();
+    }
+
+    public void write(TProtocol oprot) throws TException {
+      oprot.writeStructBegin(STRUCT_DESC);
+
+      if (this.isSetEx1()) {
+        oprot.writeFieldBegin(EX1_FIELD_DESC);
+        this.ex1.write(oprot);
+        oprot.writeFieldEnd();
+      } else if (this.isSetEx2()) {
+        oprot.writeFieldBegin(EX2_FIELD_DESC);
+        this.ex2.write(oprot);
+        oprot.writeFieldEnd();
+      }
+      oprot.writeFieldStop();
+      oprot.writeStructEnd();
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("put_multi_result(");
+      boolean first = true;
+
+      sb.append("ex1:");
+      if (this.ex1 == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.ex1);
+      }
+      first = false;
+      if (!first) sb.append(", ");
+      sb.append("ex2:");
+      if (this.ex2 == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.ex2);
+      }
+      first = false;
+      sb.append(")");
+      return sb.toString();
+    }
+
+    public void validate() throws TException {
+      // check for required fields
+      // check that fields of type enum have valid values
+    }
+
+  }
+
+  public static class remove_multi_args implements TBase, java.io.Serializable, Cloneable   {
+    private static final TStruct STRUCT_DESC = new TStruct("remove_multi_args");
+    private static final TField ENTITIES_FIELD_DESC = new TField("entities", TType.LIST, (short)1);
+
+    public List<Entity> entities;
+    public static final int ENTITIES = 1;
+
+    private final Isset __isset = new Isset();
+    private static final class Isset implements java.io.Serializable {
+    }
+
+    public static final Map<Integer, FieldMetaData> metaDataMap = Collections.unmodifiableMap(new HashMap<Integer, FieldMetaData>() {{
+      put(ENTITIES, new FieldMetaData("entities", TFieldRequirementType.DEFAULT, 
+          new ListMetaData(TType.LIST, 
+              new StructMetaData(TType.STRUCT, Entity.class))));
+    }});
+
+    static {
+      FieldMetaData.addStructMetaDataMap(remove_multi_args.class, metaDataMap);
+    }
+
+    public remove_multi_args() {
+    }
+
+    public remove_multi_args(
+      List<Entity> entities)
+    {
+      this();
+      this.entities = entities;
+    }
+
+    /**
+     * Performs a deep copy on <i>other</i>.
+     */
+    public remove_multi_args(remove_multi_args other) {
+      if (other.isSetEntities()) {
+        List<Entity> __this__entities = new ArrayList<Entity>();
+        for (Entity other_element : other.entities) {
+          __this__entities.add(new Entity(other_element));
+        }
+        this.entities = __this__entities;
+      }
+    }
+
+    @Override
+    public remove_multi_args clone() {
+      return new remove_multi_args(this);
+    }
+
+    public int getEntitiesSize() {
+      return (this.entities == null) ? 0 : this.entities.size();
+    }
+
+    public java.util.Iterator<Entity> getEntitiesIterator() {
+      return (this.entities == null) ? null : this.entities.iterator();
+    }
+
+    public void addToEntities(Entity elem) {
+      if (this.entities == null) {
+        this.entities = new ArrayList<Entity>();
+      }
+      this.entities.add(elem);
+    }
+
+    public List<Entity> getEntities() {
+      return this.entities;
+    }
+
+    public void setEntities(List<Entity> entities) {
+      this.entities = entities;
+    }
+
+    public void unsetEntities() {
+      this.entities = null;
+    }
+
+    // Returns true if field entities is set (has been asigned a value) and false otherwise
+    public boolean isSetEntities() {
+      return this.entities != null;
+    }
+
+    public void setEntitiesIsSet(boolean value) {
+      if (!value) {
+        this.entities = null;
+      }
+    }
+
+    public void setFieldValue(int fieldID, Object value) {
+      switch (fieldID) {
+      case ENTITIES:
+        if (value == null) {
+          unsetEntities();
+        } else {
+          setEntities((List<Entity>)value);
+        }
+        break;
+
+      default:
+        throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
+      }
+    }
+
+    public Object getFieldValue(int fieldID) {
+      switch (fieldID) {
+      case ENTITIES:
+        return getEntities();
+
+      default:
+        throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
+      }
+    }
+
+    // Returns true if field corresponding to fieldID is set (has been asigned a value) and false otherwise
+    public boolean isSet(int fieldID) {
+      switch (fieldID) {
+      case ENTITIES:
+        return isSetEntities();
+      default:
+        throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
+      }
+    }
+
+    @Override
+    public boolean equals(Object that) {
+      if (that == null)
+        return false;
+      if (that instanceof remove_multi_args)
+        return this.equals((remove_multi_args)that);
+      return false;
+    }
+
+    public boolean equals(remove_multi_args that) {
+      if (that == null)
+        return false;
+
+      boolean this_present_entities = true && this.isSetEntities();
+      boolean that_present_entities = true && that.isSetEntities();
+      if (this_present_entities || that_present_entities) {
+        if (!(this_present_entities && that_present_entities))
+          return false;
+        if (!this.entities.equals(that.entities))
+          return false;
+      }
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+
+    public void read(TProtocol iprot) throws TException {
+      TField field;
+      iprot.readStructBegin();
+      while (true)
+      {
+        field = iprot.readFieldBegin();
+        if (field.type == TType.STOP) { 
+          break;
+        }
+        switch (field.id)
+        {
+          case ENTITIES:
+            if (field.type == TType.LIST) {
+              {
+                TList _list24 = iprot.readListBegin();
+                this.entities = new ArrayList<Entity>(_list24.size);
+                for (int _i25 = 0; _i25 < _list24.size; ++_i25)
+                {
+                  Entity _elem26;
+                  _elem26 = new Entity();
+                  _elem26.read(iprot);
+                  this.entities.add(_elem26);
+                }
+                iprot.readListEnd();
+              }
+            } else { 
+              TProtocolUtil.skip(iprot, field.type);
+            }
+            break;
+          default:
+            TProtocolUtil.skip(iprot, field.type);
+            break;
+        }
+        iprot.readFieldEnd();
+      }
+      iprot.readStructEnd();
+
+
+      // check for required fields of primitive type, which can't be checked in the validate method
+      validate();
+    }
+
+    public void write(TProtocol oprot) throws TException {
+      validate();
+
+      oprot.writeStructBegin(STRUCT_DESC);
+      if (this.entities != null) {
+        oprot.writeFieldBegin(ENTITIES_FIELD_DESC);
+        {
+          oprot.writeListBegin(new TList(TType.STRUCT, this.entities.size()));
+          for (Entity _iter27 : this.entities)          {
+            _iter27.write(oprot);
+          }
+          oprot.writeListEnd();
+        }
+        oprot.writeFieldEnd();
+      }
+      oprot.writeFieldStop();
+      oprot.writeStructEnd();
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("remove_multi_args(");
+      boolean first = true;
+
+      sb.append("entities:");
+      if (this.entities == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.entities);
+      }
+      first = false;
+      sb.append(")");
+      return sb.toString();
+    }
+
+    public void validate() throws TException {
+      // check for required fields
+      // check that fields of type enum have valid values
+    }
+
+  }
+
+  public static class remove_multi_result implements TBase, java.io.Serializable, Cloneable   {
+    private static final TStruct STRUCT_DESC = new TStruct("remove_multi_result");
+    private static final TField EX1_FIELD_DESC = new TField("ex1", TType.STRUCT, (short)1);
+    private static final TField EX2_FIELD_DESC = new TField("ex2", TType.STRUCT, (short)2);
+
+    public ThrudocException ex1;
+    public static final int EX1 = 1;
+    public InvalidBucketException ex2;
+    public static final int EX2 = 2;
+
+    private final Isset __isset = new Isset();
+    private static final class Isset implements java.io.Serializable {
+    }
+
+    public static final Map<Integer, FieldMetaData> metaDataMap = Collections.unmodifiableMap(new HashMap<Integer, FieldMetaData>() {{
+      put(EX1, new FieldMetaData("ex1", TFieldRequirementType.DEFAULT, 
+          new FieldValueMetaData(TType.STRUCT)));
+      put(EX2, new FieldMetaData("ex2", TFieldRequirementType.DEFAULT, 
+          new FieldValueMetaData(TType.STRUCT)));
+    }});
+
+    static {
+      FieldMetaData.addStructMetaDataMap(remove_multi_result.class, metaDataMap);
+    }
+
+    public remove_multi_result() {
+    }
+
+    public remove_multi_result(
+      ThrudocException ex1,
+      InvalidBucketException ex2)
+    {
+      this();
+      this.ex1 = ex1;
+      this.ex2 = ex2;
+    }
+
+    /**
+     * Performs a deep copy on <i>other</i>.
+     */
+    public remove_multi_result(remove_multi_result other) {
+      if (other.isSetEx1()) {
+        this.ex1 = new ThrudocException(other.ex1);
+      }
+      if (other.isSetEx2()) {
+        this.ex2 = new InvalidBucketException(other.ex2);
+      }
+    }
+
+    @Override
+    public remove_multi_result clone() {
+      return new remove_multi_result(this);
+    }
+
+    public ThrudocException getEx1() {
+      return this.ex1;
+    }
+
+    public void setEx1(ThrudocException ex1) {
+      this.ex1 = ex1;
+    }
+
+    public void unsetEx1() {
+      this.ex1 = null;
+    }
+
+    // Returns true if field ex1 is set (has been asigned a value) and false otherwise
+    public boolean isSetEx1() {
+      return this.ex1 != null;
+    }
+
+    public void setEx1IsSet(boolean value) {
+      if (!value) {
+        this.ex1 = null;
+      }
+    }
+
+    public InvalidBucketException getEx2() {
+      return this.ex2;
+    }
+
+    public void setEx2(InvalidBucketException ex2) {
+      this.ex2 = ex2;
+    }
+
+    public void unsetEx2() {
+      this.ex2 = null;
+    }
+
+    // Returns true if field ex2 is set (has been asigned a value) and false otherwise
+    public boolean isSetEx2() {
+      return this.ex2 != null;
+    }
+
+    public void setEx2IsSet(boolean value) {
+      if (!value) {
+        this.ex2 = null;
+      }
+    }
+
+    public void setFieldValue(int fieldID, Object value) {
+      switch (fieldID) {
+      case EX1:
+        if (value == null) {
+          unsetEx1();
+        } else {
+          setEx1((ThrudocException)value);
+        }
+        break;
+
+      case EX2:
+        if (value == null) {
+          unsetEx2();
+        } else {
+          setEx2((InvalidBucketException)value);
+        }
+        break;
+
+      default:
+        throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
+      }
+    }
+
+    public Object getFieldValue(int fieldID) {
+      switch (fieldID) {
+      case EX1:
+        return getEx1();
+
+      case EX2:
+        return getEx2();
+
+      default:
+        throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
+      }
+    }
+
+    // Returns true if field corresponding to fieldID is set (has been asigned a value) and false otherwise
+    public boolean isSet(int fieldID) {
+      switch (fieldID) {
+      case EX1:
+        return isSetEx1();
+      case EX2:
+        return isSetEx2();
+      default:
+        throw new IllegalArgumentException("Field " + fieldID + " doesn't exist!");
+      }
+    }
+
+    @Override
+    public boolean equals(Object that) {
+      if (that == null)
+        return false;
+      if (that instanceof remove_multi_result)
+        return this.equals((remove_multi_result)that);
+      return false;
+    }
+
+    public boolean equals(remove_multi_result that) {
+      if (that == null)
+        return false;
+
+      boolean this_present_ex1 = true && this.isSetEx1();
+      boolean that_present_ex1 = true && that.isSetEx1();
+      if (this_present_ex1 || that_present_ex1) {
+        if (!(this_present_ex1 && that_present_ex1))
+          return false;
+        if (!this.ex1.equals(that.ex1))
+          return false;
+      }
+
+      boolean this_present_ex2 = true && this.isSetEx2();
+      boolean that_present_ex2 = true && that.isSetEx2();
+      if (this_present_ex2 || that_present_ex2) {
+        if (!(this_present_ex2 && that_present_ex2))
+          return false;
+        if (!this.ex2.equals(that.ex2))
+          return false;
+      }
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+
+    public void read(TProtocol iprot) throws TException {
+      TField field;
+      iprot.readStructBegin();
+      while (true)
+      {
+        field = iprot.readFieldBegin();
+        if (field.type == TType.STOP) { 
+          break;
+        }
+        switch (field.id)
+        {
+          case EX1:
+            if (field.type == TType.STRUCT) {
+              this.ex1 = new ThrudocException();
+              this.ex1.read(iprot);
+            } else { 
+              TProtocolUtil.skip(iprot, field.type);
+            }
+            break;
+          case EX2:
+            if (field.type == TType.STRUCT) {
+              this.ex2 = new InvalidBucketException();
+              this.ex2.read(iprot);
+            } else { 
+              TProtocolUtil.skip(iprot, field.type);
+            }
+            break;
+          default:
+            TProtocolUtil.skip(iprot, field.type);
+            break;
+        }
+        iprot.readFieldEnd();
+      }
+      iprot.readStructEnd();
+
+
+      // check for required fields of primitive type, which can't be checked in the validate method
+      validate();
+    }
+
+    public void write(TProtocol oprot) throws TException {
+      oprot.writeStructBegin(STRUCT_DESC);
+
+      if (this.isSetEx1()) {
+        oprot.writeFieldBegin(EX1_FIELD_DESC);
+        this.ex1.write(oprot);
+        oprot.writeFieldEnd();
+      } else if (this.isSetEx2()) {
+        oprot.writeFieldBegin(EX2_FIELD_DESC);
+        this.ex2.write(oprot);
+        oprot.writeFieldEnd();
+      }
+      oprot.writeFieldStop();
+      oprot.writeStructEnd();
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("remove_multi_result(");
+      boolean first = true;
+
+      sb.append("ex1:");
+      if (this.ex1 == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.ex1);
+      }
+      first = false;
+      if (!first) sb.append(", ");
+      sb.append("ex2:");
+      if (this.ex2 == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.ex2);
+      }
+      first = false;
+      sb.append(")");
+      return sb.toString();
+    }
+
+    public void validate() throws TException {
+      // check for required fields
+      // check that fields of type enum have valid values
+    }
+
+  }
+
   public static class admin_args implements TBase, java.io.Serializable, Cloneable   {
     private static final TStruct STRUCT_DESC = new TStruct("admin_args");
     private static final TField OP_FIELD_DESC = new TField("op", TType.STRING, (short)1);
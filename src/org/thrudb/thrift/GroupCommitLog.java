@@ -0,0 +1,213 @@
+package org.thrudb.thrift;
+
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+import org.apache.thrift.transport.TTransportException;
+import org.thrudb.util.log.RedoLog;
+
+/**
+ * Shares redo log syncs between connections.
+ *
+ * Records from every connection are appended right away, a single
+ * flusher thread syncs the log for all of them at once. Anything that
+ * commits while a sync is running goes out with the next one.
+ *
+ * <ul>
+ * <li>SYNC: a commit returns once a sync covered it, the client isn't
+ * acknowledged before its write is on disk</li>
+ * <li>ASYNC: commits return right away, the log is synced every window
+ * so at most that much is lost on a crash</li>
+ * <li>NONE: the log is never synced, the OS decides</li>
+ * </ul>
+ *
+ * @author jake
+ *
+ */
+public class GroupCommitLog implements Runnable {
+
+	public enum Durability { SYNC, ASYNC, NONE }
+
+	private Logger     logger = Logger.getLogger(getClass());
+	private RedoLog    log;
+	private Durability durability;
+	private long       window;   //ms to gather commits before a sync
+	private int        maxBatch; //sync early once this many are waiting
+
+	private long       written;      //LSN of the last commit appended
+	private long       synced;       //LSN the log is known to be on disk up to
+	private long       syncs    = 0;
+	private boolean    running  = true;
+	private boolean    stopped  = false;
+	private Thread     flusher;
+
+	/**
+	 * @param log         the redo log
+	 * @param durability  when a commit may return
+	 * @param window      ms to wait for more commits, in ASYNC the loss window
+	 * @param maxBatch    commits that trigger a sync before the window ends
+	 */
+	public GroupCommitLog(RedoLog log, Durability durability, long window, int maxBatch) {
+		this.log        = log;
+		this.durability = durability;
+		this.window     = window;
+		this.maxBatch   = Math.max(1, maxBatch);
+		this.written    = log.getLastLsn();
+		this.synced     = written;
+
+		if(durability != Durability.NONE){
+			flusher = new Thread(this, "log-flusher");
+			flusher.setDaemon(true);
+			flusher.start();
+		}
+	}
+
+	public RedoLog getLog() {
+		return log;
+	}
+
+	public Durability getDurability() {
+		return durability;
+	}
+
+	/**
+	 * Appends a committed write
+	 *
+	 * @param op     the method called
+	 * @param bucket the bucket written to
+	 * @param frame  the request frame
+	 * @param wait   block until the durability level is met
+	 * @return the LSN of the record
+	 */
+	public long commit(String op, String bucket, byte[] frame, int off, int len, boolean wait) throws TTransportException {
+		long lsn = append(op, bucket, frame, off, len);
+
+		if(wait)
+			await(lsn);
+
+		return lsn;
+	}
+
+	/**
+	 * Appends a write without waiting for the disk, so the caller can
+	 * apply it before {@link #await}ing the sync
+	 *
+	 * @return the LSN of the record
+	 */
+	public long append(String op, String bucket, byte[] frame, int off, int len) throws TTransportException {
+
+		long lsn;
+		try{
+			lsn = log.append(op, bucket, frame, off, len);
+		}catch(IOException e){
+			throw new TTransportException("Logging commit err:"+e.getMessage());
+		}
+
+		if(durability == Durability.NONE)
+			return lsn;
+
+		//a record is only appended once the ones before it are, so a sync
+		//covering lsn covers them too
+		synchronized(this){
+			long pending = written - synced;
+			written = Math.max(written, lsn);
+
+			if(written - synced >= maxBatch || pending == 0)
+				notifyAll();
+		}
+
+		return lsn;
+	}
+
+	/**
+	 * Blocks until the durability level is met for the record at lsn
+	 */
+	public void await(long lsn) throws TTransportException {
+
+		if(durability != Durability.SYNC)
+			return;
+
+		synchronized(this){
+			while(synced < lsn){
+				if(stopped)
+					throw new TTransportException("Log is closed");
+
+				try{
+					wait();
+				}catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+					throw new TTransportException("Interrupted waiting for log sync");
+				}
+			}
+		}
+	}
+
+	public synchronized long getSyncCount() {
+		return syncs;
+	}
+
+	public void run() {
+
+		while(true){
+			long target;
+
+			synchronized(this){
+				try{
+					while(running && written == synced)
+						wait();
+
+					//let more commits pile up
+					long deadline = System.currentTimeMillis() + window;
+					long remaining;
+					while(running && written - synced < maxBatch
+							&& (remaining = deadline - System.currentTimeMillis()) > 0)
+						wait(remaining);
+
+				}catch(InterruptedException e){
+					running = false;
+				}
+
+				if(!running && written == synced){
+					stopped = true;
+					notifyAll();
+					return;
+				}
+
+				target = written;
+			}
+
+			//writers keep appending while we sync
+			try{
+				log.sync();
+			}catch(IOException e){
+				logger.error("Log sync failed", e);
+			}
+
+			synchronized(this){
+				synced = target;
+				syncs++;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Syncs anything outstanding and stops the flusher
+	 */
+	public void close() {
+		synchronized(this){
+			running = false;
+			notifyAll();
+		}
+
+		if(flusher != null){
+			try{
+				flusher.join();
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		log.close();
+	}
+}
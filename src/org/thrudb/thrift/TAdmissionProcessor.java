@@ -0,0 +1,133 @@
+package org.thrudb.thrift;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+import org.thrudb.util.stats.ServiceStats;
+
+/**
+ * Caps the calls in flight per class of operation, a call over its
+ * class's limit is answered right away with the service's exception
+ * instead of waiting for a worker.
+ *
+ * The rejection is written as field 1 of the call's result, where every
+ * Thrudoc and Thrudex method declares its service exception. Methods that
+ * don't declare it get a TApplicationException.
+ *
+ * @author jake
+ *
+ */
+public class TAdmissionProcessor implements TProcessor {
+
+	private TProcessor             processor;
+	private TBase                  rejection;
+	private ServiceStats           stats;
+	private Set<String>            declaring = new HashSet<String>(); //methods that throw the rejection
+	private Map<String,Semaphore>  limits    = new HashMap<String,Semaphore>();
+
+	/**
+	 * @param iface     the service interface, to find the methods that throw rejection
+	 * @param rejection the exception sent back when saturated
+	 */
+	public TAdmissionProcessor(TProcessor processor, Class<?> iface, TBase rejection, ServiceStats stats) {
+		this.processor = processor;
+		this.rejection = rejection;
+		this.stats     = stats;
+
+		for(Method m : iface.getMethods()){
+			if(Arrays.asList(m.getExceptionTypes()).contains(rejection.getClass()))
+				declaring.add(m.getName());
+		}
+	}
+
+	/**
+	 * Lets at most maxInFlight of ops run at once, 0 leaves them unlimited.
+	 * Set the limits before the server starts.
+	 */
+	public void setLimit(Collection<String> ops, int maxInFlight) {
+		if(maxInFlight <= 0)
+			return;
+
+		Semaphore limit = new Semaphore(maxInFlight);
+
+		for(String op : ops)
+			limits.put(op, limit);
+	}
+
+	public boolean process(TProtocol iprot, TProtocol oprot) throws TException {
+
+		TPeekingTransport peekTrans = (TPeekingTransport) iprot.getTransport();
+
+		TMessage  msg   = iprot.readMessageBegin();
+		Semaphore limit = limits.get(msg.name);
+
+		if(limit != null && !limit.tryAcquire()){
+			reject(msg, iprot, oprot);
+			return true;
+		}
+
+		peekTrans.rewind();
+
+		try{
+			return processor.process(iprot, oprot);
+		}finally{
+			if(limit != null)
+				limit.release();
+		}
+	}
+
+	/**
+	 * @return a processor that rejects every call, for when the request
+	 * queue is full
+	 */
+	public TProcessor getRejectingProcessor() {
+		return new TProcessor() {
+			public boolean process(TProtocol iprot, TProtocol oprot) throws TException {
+				reject(iprot.readMessageBegin(), iprot, oprot);
+				return true;
+			}
+		};
+	}
+
+	private void reject(TMessage msg, TProtocol iprot, TProtocol oprot) throws TException {
+		TProtocolUtil.skip(iprot, TType.STRUCT);
+		iprot.readMessageEnd();
+
+		if(stats != null)
+			stats.reject(msg.name);
+
+		if(declaring.contains(msg.name)){
+			oprot.writeMessageBegin(new TMessage(msg.name, TMessageType.REPLY, msg.seqid));
+			oprot.writeStructBegin(new TStruct(msg.name+"_result"));
+			oprot.writeFieldBegin(new TField("ex", TType.STRUCT, (short)1));
+			rejection.write(oprot);
+			oprot.writeFieldEnd();
+			oprot.writeFieldStop();
+			oprot.writeStructEnd();
+		}else{
+			TApplicationException x = new TApplicationException(TApplicationException.UNKNOWN, "Server busy");
+			oprot.writeMessageBegin(new TMessage(msg.name, TMessageType.EXCEPTION, msg.seqid));
+			x.write(oprot);
+		}
+
+		oprot.writeMessageEnd();
+		oprot.getTransport().flush();
+	}
+}
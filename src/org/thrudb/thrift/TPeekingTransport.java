@@ -1,205 +1,183 @@
 package org.thrudb.thrift;
 
-import org.apache.log4j.Logger;
-import org.apache.thrift.TApplicationException;
-import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.TByteArrayOutputStream;
 import org.apache.thrift.transport.TTransport;
 import org.apache.thrift.transport.TTransportException;
 
-import tokyocabinet.HDB;
-
 /**
- * Allows a way to peek at the content of the message and rewind back to start.
- * 
- * This is used to log certain actions to disk for redo-logging
- * 
+ * Framed transport that allows a way to peek at the content of the message
+ * and rewind back to start.
+ *
+ * The whole request frame is read into one buffer up front, so the method
+ * header can be replayed and the frame handed to the redo log without
+ * copying it again. Frame and reply buffers are pooled per thread, the
+ * server makes a new transport for every request.
+ *
  * @author jake
- * 
+ *
  */
-public class TPeekingTransport extends TFramedTransport {
-	
-	private Logger  logger      = Logger.getLogger(getClass());
-	private byte[]  peekBuffer  = new byte[] {};
-	private byte[]  writeBuffer = new byte[] {}; 
-	private int     writeMax    = 1024; //only store the initial output message
-	private int     writePos    = 0;
-	
-	private int     replayPos  = 0;
-	private boolean replayMode = false;
-	private int     replayEnd  = 0; //stop reply at this point in the buf
-	private boolean recording  = false;
-	
-	private boolean logging    = false;
-	private HDB     log;
-	private String  nextLogId  = "-1";
-	
-
-	public TPeekingTransport(TTransport baseTransport, HDB log) {
-		super(baseTransport);
-		this.log = log;
+public class TPeekingTransport extends TTransport {
+
+	private static final int    MAX_POOLED = 1024 * 1024; //bigger frames aren't kept
+	private static final byte[] NO_SIZE    = new byte[4];
+
+	private static final ThreadLocal<byte[]> framePool = new ThreadLocal<byte[]>() {
+		protected byte[] initialValue() {
+			return new byte[4096];
+		}
+	};
+
+	private static final ThreadLocal<TByteArrayOutputStream> replyPool = new ThreadLocal<TByteArrayOutputStream>() {
+		protected TByteArrayOutputStream initialValue() {
+			return new TByteArrayOutputStream(4096);
+		}
+	};
+
+	private TTransport     transport;
+	private GroupCommitLog commitLog;
+
+	private byte[]  frame;        //request frame without the size
+	private int     frameLen = 0;
+	private int     framePos = 0;
+
+	private TByteArrayOutputStream reply;
+	private int     replyStart = 0; //where the unflushed reply frame begins
+
+
+	public TPeekingTransport(TTransport baseTransport, GroupCommitLog commitLog) {
+		this.transport = baseTransport;
+		this.commitLog = commitLog;
 	}
 
 	@Override
 	public void close() {
-		super.close();
+		transport.close();
 	}
 
 	@Override
 	public boolean isOpen() {
-		return super.isOpen();
-	}
-
-	public boolean isRecording() {
-		return recording;
-	}
-
-	public void setRecording(boolean recording) {
-		this.recording = recording;
+		return transport.isOpen();
 	}
 
 	@Override
 	public void open() throws TTransportException {
-		super.open();
+		transport.open();
 	}
 
 	@Override
 	public int read(byte[] buf, int off, int len) throws TTransportException {
-		int sz = 0;
-		
-		if (replayMode && replayPos + len <= replayEnd ) {
-			
-			System.arraycopy(peekBuffer, replayPos, buf, 0, len);
-			
-			replayPos += len;
-			
-			sz = len;
-			
-		}else{
-			
-			sz = super.read(buf, off, len);
-			
-			// Add to peek buffer
-			if (recording && sz > 0) {
-				byte[] newPeekBuffer = new byte[peekBuffer.length + sz];
-				
-				System.arraycopy(peekBuffer, 0, newPeekBuffer, 0, peekBuffer.length);
-				System.arraycopy(buf, 0, newPeekBuffer, peekBuffer.length, sz);
-				
-				peekBuffer = newPeekBuffer;							
-			}
-			
-		}
-		
-		if(logging){
-			if(!log.putcat(nextLogId.getBytes(), buf)){
-				throw new TTransportException("Log message"+nextLogId+" is corrupt");
-			}
-		}
-		
+
+		if(frame == null || framePos >= frameLen)
+			readFrame();
+
+		int sz = Math.min(len, frameLen - framePos);
+
+		System.arraycopy(frame, framePos, buf, off, sz);
+		framePos += sz;
+
 		return sz;
 	}
 
+	private void readFrame() throws TTransportException {
+		frame = framePool.get();
+
+		transport.readAll(frame, 0, 4);
+		int size =
+			((frame[0] & 0xff) << 24) |
+			((frame[1] & 0xff) << 16) |
+			((frame[2] & 0xff) <<  8) |
+			((frame[3] & 0xff));
+
+		if(size < 0)
+			throw new TTransportException("Invalid frame size "+size);
+
+		if(size > frame.length){
+			frame = new byte[size];
+
+			if(size <= MAX_POOLED)
+				framePool.set(frame);
+		}
+
+		transport.readAll(frame, 0, size);
+
+		frameLen = size;
+		framePos = 0;
+	}
+
 	@Override
 	public void write(byte[] buf, int off, int len) throws TTransportException {
-		
-		if(writeBuffer.length + len < writeMax){
-			byte[] newWriteBuffer = new byte[writeBuffer.length + len];
-		
-			System.arraycopy(writeBuffer, 0, newWriteBuffer, 0, writeBuffer.length);
-			System.arraycopy(buf, 0, newWriteBuffer, writeBuffer.length, len);
-		
-			writeBuffer = newWriteBuffer;			
+
+		if(reply == null){
+			reply = replyPool.get();
+			reply.reset();
 		}
-		
-		super.write(buf, off, len);
-	}
 
-	public boolean isReplayMode() {
-		return replayMode;
+		//leave room for the frame size
+		if(reply.len() == replyStart)
+			reply.write(NO_SIZE, 0, 4);
+
+		reply.write(buf, off, len);
 	}
 
-	public void setReplayMode(boolean replayMode) {
-		this.replayMode = replayMode;
-		
-		if(replayMode == true)
-			replayEnd = peekBuffer.length;
+	@Override
+	public void flush() throws TTransportException {
+
+		if(reply == null || reply.len() == replyStart){
+			transport.flush();
+			return;
+		}
+
+		byte[] out  = reply.get();
+		int    size = reply.len() - replyStart - 4;
+
+		out[replyStart]     = (byte)(0xff & (size >> 24));
+		out[replyStart + 1] = (byte)(0xff & (size >> 16));
+		out[replyStart + 2] = (byte)(0xff & (size >> 8));
+		out[replyStart + 3] = (byte)(0xff & (size));
+
+		transport.write(out, replyStart, size + 4);
+		transport.flush();
+
+		replyStart = reply.len();
+
+		//don't hold on to a huge reply
+		if(reply.get().length > MAX_POOLED)
+			replyPool.remove();
 	}
-	
-	
+
 	/**
-	 * This is a hack for reading the output struct type
-	 * 
+	 * Replays the request from the start of its frame
 	 */
-	public void swapInWriteBuffer(){
-		peekBuffer = writeBuffer;
-		replayPos  = 0;
-		replayMode = true;
-		recording  = false;
-		replayEnd  = writeMax;
-	}
-	
-	public void reset(){
-		peekBuffer  = new byte[] {};
-		replayPos  = 0;
-		replayMode = false;
-	    recording  = false;
-	    logging    = false;
-	    
-	    writeBuffer = new byte[] {};
-		writePos    = 0;
-	
+	public void rewind() {
+		framePos = 0;
 	}
-	
-	public byte[] getBuffer(){
-		return peekBuffer;
-	}
-	
-	public boolean isLogging() {
-		return logging;
+
+	public byte[] getFrame() {
+		return frame;
 	}
 
-	public void setLogging(boolean logging) throws TTransportException {
-		this.logging = logging;
-		
-		//get new log in sequence
-		if(logging){
-			int lsn = log.addint("LSN", 1);
-			if(lsn == Integer.MIN_VALUE){
-				throw new TTransportException("Logging error:"+log.errmsg());
-			}else{
-				logger.info("LSN is now "+lsn);
-			}
-			
-			nextLogId = String.valueOf(lsn)+";";
-		}
-	
+	public int getFrameLength() {
+		return frameLen;
 	}
-	
+
 	/**
-	 * marks this message as having failed and should not be replicated
+	 * appends the request frame to the redo log without waiting for the
+	 * disk, see {@link #await}
+	 *
+	 * @return the LSN of the request
+	 * @throws TTransportException
 	 */
-	public void rollback() throws TTransportException{
-		if(logging){
-			//log.out(String.valueOf(nextLogId));
-			if(!log.put(nextLogId+"r", "e")){
-				throw new TTransportException("Logging rollback err:"+log.errmsg());
-			}
-			log.sync();
-		}
+	public long append(String op, String bucket) throws TTransportException{
+		if(commitLog == null)
+			throw new TTransportException("No redo log");
+
+		return commitLog.append(op, bucket, frame, 0, frameLen);
 	}
-	
+
 	/**
-	 * marks this message as a success
-	 * @throws TTransportException
+	 * returns once the log's durability level is met for lsn
 	 */
-	public void commit() throws TTransportException{
-		if(logging){
-			if(!log.put(nextLogId+"r", "c")){
-				throw new TTransportException("Logging commit err:"+log.errmsg());
-			}
-			log.sync();
-		}	
+	public void await(long lsn) throws TTransportException{
+		commitLog.await(lsn);
 	}
 }
-
-
@@ -1,42 +1,64 @@
 package org.thrudb.thrift;
 
 import java.io.File;
+import java.io.IOException;
 
 import org.apache.thrift.TException;
 import org.apache.thrift.transport.TFramedTransport;
 import org.apache.thrift.transport.TTransport;
-
-import tokyocabinet.HDB;
+import org.thrudb.util.log.RedoLog;
 
 public class TPeekingTransportFactory extends TFramedTransport.Factory {
-	private HDB hdb;
+	private GroupCommitLog commitLog;
+
+	/**
+	 * A factory for servers that don't keep a redo log
+	 */
+	public TPeekingTransportFactory() {
+	}
 
 	public TPeekingTransportFactory(String logDir, String logName)
 			throws TException {
-		int hdbFlags = HDB.OWRITER;
-
-		// verify db file
-		String logFileName = logDir + File.separatorChar + logName + ".tch";
-		File logFile = new File(logFileName);
-
-		if (logFile.isFile() && !logFile.canWrite())
-			throw new TException(logFileName + " is not writable");
-
-		if (logFile.isDirectory())
-			throw new TException(logFileName + " should not be a directory");
+		this(logDir, logName, GroupCommitLog.Durability.SYNC, 0, 256);
+	}
+	
+	/**
+	 * @param durability when a commit is acknowledged
+	 * @param syncWindow ms to gather commits for one sync
+	 * @param syncBatch  commits that force a sync before the window ends
+	 */
+	public TPeekingTransportFactory(String logDir, String logName,
+			GroupCommitLog.Durability durability, long syncWindow, int syncBatch)
+			throws TException {
+		// the log is a directory of segment files
+		File logFile = new File(logDir, logName);
 
-		if (!logFile.exists())
-			hdbFlags |= HDB.OCREAT;
+		if (logFile.isFile())
+			throw new TException(logFile + " should be a directory");
 
-		hdb = new HDB();
-		if (!hdb.open(logFileName, hdbFlags)) {
-			throw new TException(hdb.errmsg());
+		RedoLog log;
+		try {
+			log = new RedoLog(logFile);
+		} catch (IOException e) {
+			throw new TException("Unable to open " + logFile + ": " + e.getMessage());
 		}
 
+		commitLog = new GroupCommitLog(log, durability, syncWindow, syncBatch);
+		
+		//don't lose the async window on a clean stop
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				commitLog.close();
+			}
+		});
+	}
+
+	public GroupCommitLog getCommitLog() {
+		return commitLog;
 	}
 
 	@Override
 	public TTransport getTransport(TTransport trans) {
-		return new TPeekingTransport(trans, hdb);
+		return new TPeekingTransport(trans, commitLog);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+package org.thrudb.thrift;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TProtocol;
+import org.thrudb.util.stats.ServiceStats;
+
+/**
+ * Times every call through another processor, the op name is peeked from
+ * the request frame and replayed.
+ * 
+ * @author jake
+ *
+ */
+public class TStatsProcessor implements TProcessor {
+
+	private TProcessor   processor;
+	private ServiceStats stats;
+	
+	public TStatsProcessor(TProcessor processor, ServiceStats stats) {
+		this.processor = processor;
+		this.stats     = stats;
+	}
+	
+	public boolean process(TProtocol iprot, TProtocol oprot) throws TException {
+		
+		TPeekingTransport peekTrans = (TPeekingTransport) iprot.getTransport();
+		
+		long     start = System.nanoTime();
+		TMessage msg   = iprot.readMessageBegin();
+		
+		peekTrans.rewind();
+		
+		try{
+			return processor.process(iprot, oprot);
+		}finally{
+			stats.record(msg.name, peekTrans.getFrameLength(), System.nanoTime() - start);
+		}
+	}
+}
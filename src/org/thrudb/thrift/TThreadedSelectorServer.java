@@ -0,0 +1,616 @@
+package org.thrudb.thrift;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.apache.thrift.TByteArrayOutputStream;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.TProcessorFactory;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.apache.thrift.transport.TNonblockingServerTransport;
+import org.apache.thrift.transport.TNonblockingTransport;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.apache.thrift.transport.TTransportFactory;
+
+/**
+ * Half-sync/half-async server with more than one selector.
+ *
+ * One thread accepts connections and hands them round robin to the
+ * selector threads. Each selector reads and writes only the connections
+ * it owns and passes complete frames to a shared worker pool. Frames are
+ * handed to the transport factories the same way THsHaServer does, size
+ * included, so framed and peeking transports work unchanged.
+ *
+ * Once queueDepth frames are waiting the selector handing over the next
+ * one blocks, which stops it reading until the workers catch up. With a
+ * rejectingProcessor set the selector answers the frame with it instead,
+ * so overload is turned away rather than queued.
+ *
+ * @author jake
+ *
+ */
+public class TThreadedSelectorServer extends TServer {
+
+	private static final Logger logger = Logger.getLogger(TThreadedSelectorServer.class);
+
+	public static class Options {
+		public int  selectorThreads    = 2;
+		public int  workerThreads      = 5;
+		public int  queueDepth         = 0;              //frames waiting for a worker, 0 is unbounded
+		public long maxReadBufferBytes = Long.MAX_VALUE; //frame bytes held across all connections
+		public TProcessor rejectingProcessor = null;     //answers frames that don't fit in the queue
+
+		public void validate() {
+			if(selectorThreads <= 0)
+				throw new IllegalArgumentException("selectorThreads must be positive");
+
+			if(workerThreads <= 0)
+				throw new IllegalArgumentException("workerThreads must be positive");
+
+			if(queueDepth < 0)
+				throw new IllegalArgumentException("queueDepth can't be negative");
+
+			if(maxReadBufferBytes <= 1024)
+				throw new IllegalArgumentException("maxReadBufferBytes must be more than 1kb");
+		}
+	}
+
+	private final Options            options;
+	private final AtomicLong         readBufferBytes = new AtomicLong();
+	private final ConcurrentLinkedQueue<FrameBuffer> budgetWaiters = new ConcurrentLinkedQueue<FrameBuffer>();
+	private volatile boolean         stopped = false;
+
+	private AcceptThread             acceptThread;
+	private List<SelectThread>       selectThreads = new ArrayList<SelectThread>();
+	private ThreadPoolExecutor       invoker;
+
+
+	public TThreadedSelectorServer(TProcessor processor, TNonblockingServerTransport serverTransport,
+			TTransportFactory transportFactory, TProtocolFactory protocolFactory, Options options) {
+		this(new TProcessorFactory(processor), serverTransport, transportFactory, transportFactory,
+				protocolFactory, protocolFactory, options);
+	}
+
+	public TThreadedSelectorServer(TProcessorFactory processorFactory, TNonblockingServerTransport serverTransport,
+			TTransportFactory inputTransportFactory, TTransportFactory outputTransportFactory,
+			TProtocolFactory inputProtocolFactory, TProtocolFactory outputProtocolFactory, Options options) {
+		super(processorFactory, serverTransport, inputTransportFactory, outputTransportFactory,
+				inputProtocolFactory, outputProtocolFactory);
+
+		options.validate();
+		this.options = options;
+	}
+
+	public TThreadedSelectorServer(TProcessor processor, TNonblockingServerTransport serverTransport, Options options) {
+		this(processor, serverTransport, new TPeekingTransportFactory(), new TBinaryProtocol.Factory(), options);
+	}
+
+	public void serve() {
+		try{
+			serverTransport_.listen();
+		}catch(TTransportException e){
+			logger.error("Failed to start listening on server socket", e);
+			return;
+		}
+
+		BlockingQueue<Runnable> queue = options.queueDepth > 0
+			? new LinkedBlockingQueue<Runnable>(options.queueDepth)
+			: new LinkedBlockingQueue<Runnable>();
+
+		invoker = new ThreadPoolExecutor(options.workerThreads, options.workerThreads,
+				60, TimeUnit.SECONDS, queue,
+				options.rejectingProcessor == null ? new BlockingHandoff() : new ThreadPoolExecutor.AbortPolicy());
+
+		try{
+			for(int i = 0; i < options.selectorThreads; i++)
+				selectThreads.add(new SelectThread(i));
+
+			acceptThread = new AcceptThread((TNonblockingServerTransport)serverTransport_);
+		}catch(IOException e){
+			logger.error("Failed to open selectors", e);
+			invoker.shutdownNow();
+			serverTransport_.close();
+			return;
+		}
+
+		for(SelectThread t : selectThreads)
+			t.start();
+
+		acceptThread.start();
+
+		try{
+			acceptThread.join();
+
+			for(SelectThread t : selectThreads)
+				t.join();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+
+		invoker.shutdown();
+		try{
+			invoker.awaitTermination(60, TimeUnit.SECONDS);
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+
+		serverTransport_.close();
+	}
+
+	public void stop() {
+		stopped = true;
+
+		if(acceptThread != null)
+			acceptThread.selector.wakeup();
+
+		for(SelectThread t : selectThreads)
+			t.selector.wakeup();
+	}
+
+	/**
+	 * Waits for room in the queue instead of dropping the frame
+	 */
+	private class BlockingHandoff implements RejectedExecutionHandler {
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if(executor.isShutdown())
+				throw new RejectedExecutionException("Server is stopping");
+
+			try{
+				executor.getQueue().put(r);
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("Interrupted waiting for a worker");
+			}
+		}
+	}
+
+	/**
+	 * Accepts connections and spreads them over the selectors
+	 */
+	private class AcceptThread extends Thread {
+		private final TNonblockingServerTransport serverTransport;
+		private final Selector selector;
+		private int next = 0;
+
+		AcceptThread(TNonblockingServerTransport serverTransport) throws IOException {
+			super("thrift-acceptor");
+			this.serverTransport = serverTransport;
+			this.selector        = SelectorProvider.provider().openSelector();
+
+			serverTransport.registerSelector(selector);
+		}
+
+		public void run() {
+			try{
+				while(!stopped){
+					selector.select();
+
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while(!stopped && keys.hasNext()){
+						SelectionKey key = keys.next();
+						keys.remove();
+
+						if(key.isValid() && key.isAcceptable())
+							accept();
+					}
+				}
+			}catch(IOException e){
+				logger.error("Accept loop failed", e);
+			}finally{
+				try{
+					selector.close();
+				}catch(IOException e){
+					logger.warn("Unable to close accept selector", e);
+				}
+
+				//the selectors can't get new connections anymore
+				TThreadedSelectorServer.this.stop();
+			}
+		}
+
+		private void accept() {
+			TNonblockingTransport client;
+			try{
+				client = (TNonblockingTransport)serverTransport.accept();
+			}catch(TTransportException e){
+				logger.warn("Exception trying to accept", e);
+				return;
+			}
+
+			if(client == null)
+				return;
+
+			selectThreads.get(next).addConnection(client);
+			next = (next + 1) % selectThreads.size();
+		}
+	}
+
+	/**
+	 * Does the reads and writes for its share of the connections
+	 */
+	private class SelectThread extends Thread {
+		private final Selector selector;
+		private final ConcurrentLinkedQueue<TNonblockingTransport> accepted =
+			new ConcurrentLinkedQueue<TNonblockingTransport>();
+		private final Set<FrameBuffer> interestChanges = new HashSet<FrameBuffer>();
+
+		SelectThread(int id) throws IOException {
+			super("thrift-selector-"+id);
+			this.selector = SelectorProvider.provider().openSelector();
+		}
+
+		void addConnection(TNonblockingTransport client) {
+			accepted.add(client);
+			selector.wakeup();
+		}
+
+		void requestInterestChange(FrameBuffer buffer) {
+			synchronized(interestChanges){
+				interestChanges.add(buffer);
+			}
+			selector.wakeup();
+		}
+
+		public void run() {
+			try{
+				while(!stopped){
+					select();
+					registerAccepted();
+					processInterestChanges();
+				}
+			}finally{
+				for(SelectionKey key : selector.keys())
+					cleanup(key);
+
+				try{
+					selector.close();
+				}catch(IOException e){
+					logger.warn("Unable to close selector", e);
+				}
+			}
+		}
+
+		private void select() {
+			try{
+				selector.select();
+			}catch(IOException e){
+				logger.warn("Got an IOException while selecting", e);
+				return;
+			}
+
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while(!stopped && keys.hasNext()){
+				SelectionKey key = keys.next();
+				keys.remove();
+
+				if(!key.isValid()){
+					cleanup(key);
+					continue;
+				}
+
+				FrameBuffer buffer = (FrameBuffer)key.attachment();
+
+				if(key.isReadable()){
+					if(!buffer.read())
+						cleanup(key);
+					else if(buffer.isFrameFullyRead())
+						invoke(buffer);
+
+				}else if(key.isWritable()){
+					if(!buffer.write())
+						cleanup(key);
+				}
+			}
+		}
+
+		private void invoke(final FrameBuffer buffer) {
+			try{
+				invoker.execute(new Runnable() {
+					public void run() {
+						buffer.invoke(null);
+					}
+				});
+			}catch(RejectedExecutionException e){
+				if(!invoker.isShutdown() && options.rejectingProcessor != null){
+					//the queue is full, answer here without waiting for a worker
+					buffer.invoke(options.rejectingProcessor);
+					return;
+				}
+
+				logger.warn("Dropping connection: "+e.getMessage());
+				buffer.release();
+				cleanup(buffer.selectionKey);
+			}
+		}
+
+		private void registerAccepted() {
+			TNonblockingTransport client;
+
+			while((client = accepted.poll()) != null){
+				try{
+					SelectionKey key = client.registerSelector(selector, SelectionKey.OP_READ);
+					key.attach(new FrameBuffer(this, client, key));
+				}catch(IOException e){
+					logger.warn("Unable to register connection", e);
+					client.close();
+				}
+			}
+		}
+
+		private void processInterestChanges() {
+			synchronized(interestChanges){
+				for(FrameBuffer buffer : interestChanges)
+					buffer.changeSelectInterests();
+
+				interestChanges.clear();
+			}
+		}
+
+		private void cleanup(SelectionKey key) {
+			FrameBuffer buffer = (FrameBuffer)key.attachment();
+
+			if(buffer != null)
+				buffer.close();
+
+			key.cancel();
+		}
+	}
+
+	/**
+	 * Gives back read buffer space and lets the connections waiting on it
+	 * read again
+	 */
+	private void freeReadBuffer(long bytes) {
+		readBufferBytes.addAndGet(-bytes);
+		wakeBudgetWaiters();
+	}
+
+	private void wakeBudgetWaiters() {
+		FrameBuffer waiter;
+
+		while((waiter = budgetWaiters.poll()) != null)
+			waiter.owner.requestInterestChange(waiter);
+	}
+
+	/**
+	 * One connection's frame being read, processed or written
+	 */
+	private class FrameBuffer {
+		private static final int READING_FRAME_SIZE      = 1;
+		private static final int READING_FRAME           = 2;
+		private static final int READ_FRAME_COMPLETE     = 3;
+		private static final int AWAITING_REGISTER_WRITE = 4;
+		private static final int WRITING                 = 5;
+		private static final int AWAITING_REGISTER_READ  = 6;
+		private static final int AWAITING_CLOSE          = 7;
+		private static final int AWAITING_BUDGET         = 8;
+
+		private final SelectThread          owner;
+		private final TNonblockingTransport trans;
+		private final SelectionKey          selectionKey;
+
+		private volatile int   state = READING_FRAME_SIZE;
+		private ByteBuffer     buffer;
+		private TByteArrayOutputStream response;
+
+		FrameBuffer(SelectThread owner, TNonblockingTransport trans, SelectionKey selectionKey) {
+			this.owner        = owner;
+			this.trans        = trans;
+			this.selectionKey = selectionKey;
+			this.buffer       = ByteBuffer.allocate(4);
+		}
+
+		/**
+		 * @return false if the connection should be closed
+		 */
+		boolean read() {
+			if(state == READING_FRAME_SIZE){
+				if(!internalRead())
+					return false;
+
+				if(buffer.remaining() > 0)
+					return true;
+
+				int frameSize = buffer.getInt(0);
+				if(frameSize <= 0){
+					logger.error("Read an invalid frame size of "+frameSize+", is the client framed?");
+					return false;
+				}
+
+				if(frameSize + 4 > options.maxReadBufferBytes){
+					logger.error("Read a frame size of "+frameSize+", bigger than the read buffer limit");
+					return false;
+				}
+
+				//stop reading until other frames are released, or the selector spins on it
+				if(readBufferBytes.addAndGet(frameSize + 4) > options.maxReadBufferBytes){
+					readBufferBytes.addAndGet(-(frameSize + 4));
+
+					selectionKey.interestOps(0);
+					state = AWAITING_BUDGET;
+					budgetWaiters.add(this);
+
+					//a release may have come before we were queued
+					if(readBufferBytes.get() + frameSize + 4 <= options.maxReadBufferBytes)
+						wakeBudgetWaiters();
+
+					return true;
+				}
+
+				buffer = ByteBuffer.allocate(frameSize + 4);
+				buffer.putInt(frameSize);
+
+				state = READING_FRAME;
+			}
+
+			if(state == READING_FRAME){
+				if(!internalRead())
+					return false;
+
+				if(buffer.remaining() == 0){
+					selectionKey.interestOps(0);
+					state = READ_FRAME_COMPLETE;
+				}
+
+				return true;
+			}
+
+			logger.error("Read was called but state is invalid ("+state+")");
+			return false;
+		}
+
+		boolean isFrameFullyRead() {
+			return state == READ_FRAME_COMPLETE;
+		}
+
+		/**
+		 * @return false if the connection should be closed
+		 */
+		boolean write() {
+			if(state != WRITING){
+				logger.error("Write was called but state is invalid ("+state+")");
+				return false;
+			}
+
+			try{
+				if(trans.write(buffer) < 0)
+					return false;
+			}catch(IOException e){
+				logger.warn("Got an IOException during write", e);
+				return false;
+			}
+
+			if(buffer.remaining() == 0)
+				prepareRead();
+
+			return true;
+		}
+
+		/**
+		 * Runs on a worker, or on the selector when rejecting
+		 *
+		 * @param processor null to get one from the factory
+		 */
+		void invoke(TProcessor processor) {
+			TTransport inTrans  = inputTransportFactory_.getTransport(
+					new TIOStreamTransport(new ByteArrayInputStream(buffer.array())));
+
+			response = new TByteArrayOutputStream();
+			TTransport outTrans = outputTransportFactory_.getTransport(new TIOStreamTransport(response));
+
+			TProtocol inProt  = inputProtocolFactory_.getProtocol(inTrans);
+			TProtocol outProt = outputProtocolFactory_.getProtocol(outTrans);
+
+			try{
+				if(processor == null)
+					processor = processorFactory_.getProcessor(inTrans);
+
+				processor.process(inProt, outProt);
+				responseReady();
+				return;
+			}catch(TException e){
+				logger.warn("Exception while invoking", e);
+			}catch(Exception e){
+				logger.error("Unexpected exception while invoking", e);
+			}
+
+			release();
+
+			state = AWAITING_CLOSE;
+			owner.requestInterestChange(this);
+		}
+
+		/**
+		 * Gives back the read buffer space of a complete frame
+		 */
+		void release() {
+			freeReadBuffer(buffer.array().length);
+		}
+
+		private void responseReady() {
+			release();
+
+			if(response.len() == 0){
+				state  = AWAITING_REGISTER_READ;
+				buffer = null;
+			}else{
+				buffer = ByteBuffer.wrap(response.get(), 0, response.len());
+				state  = AWAITING_REGISTER_WRITE;
+			}
+
+			response = null;
+			owner.requestInterestChange(this);
+		}
+
+		/**
+		 * Runs on the owning selector
+		 */
+		void changeSelectInterests() {
+			if(!selectionKey.isValid())
+				return;
+
+			if(state == AWAITING_REGISTER_WRITE){
+				selectionKey.interestOps(SelectionKey.OP_WRITE);
+				state = WRITING;
+			}else if(state == AWAITING_REGISTER_READ){
+				prepareRead();
+			}else if(state == AWAITING_CLOSE){
+				close();
+				selectionKey.cancel();
+			}else if(state == AWAITING_BUDGET){
+				//the frame size is still in the buffer, the next read retries it
+				selectionKey.interestOps(SelectionKey.OP_READ);
+				state = READING_FRAME_SIZE;
+			}else{
+				logger.error("changeSelectInterests was called but state is invalid ("+state+")");
+			}
+		}
+
+		void close() {
+			//a complete frame belongs to a worker, it releases it when done
+			if(state == READING_FRAME)
+				freeReadBuffer(buffer.array().length);
+
+			trans.close();
+		}
+
+		private boolean internalRead() {
+			try{
+				return trans.read(buffer) >= 0;
+			}catch(IOException e){
+				logger.warn("Got an IOException in internalRead", e);
+				return false;
+			}
+		}
+
+		private void prepareRead() {
+			selectionKey.interestOps(SelectionKey.OP_READ);
+			buffer = ByteBuffer.allocate(4);
+			state  = READING_FRAME_SIZE;
+		}
+	}
+}
@@ -2,23 +2,68 @@ package org.thrudb.thrudex;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
 import org.apache.thrift.TProcessor;
+import org.apache.thrift.TProcessorFactory;
+import org.apache.thrift.protocol.TBinaryProtocol;
 import org.apache.thrift.server.THsHaServer;
 import org.apache.thrift.server.TServer;
 import org.apache.thrift.server.THsHaServer.Options;
 import org.apache.thrift.transport.TNonblockingServerSocket;
 import org.apache.thrift.transport.TNonblockingServerTransport;
+import org.thrudb.thrift.TAdmissionProcessor;
+import org.thrudb.thrift.TPeekingTransportFactory;
+import org.thrudb.thrift.TStatsProcessor;
+import org.thrudb.thrift.TThreadedSelectorServer;
+import org.thrudb.thrudex.lucene.FilterCache;
+import org.thrudb.thrudex.lucene.FlushBudget;
+import org.thrudb.thrudex.lucene.FlushPolicy;
+import org.thrudb.thrudex.lucene.ParsedQueryCache;
+import org.thrudb.thrudex.lucene.RealTimeLuceneIndex;
+import org.thrudb.thrudex.lucene.ResultCache;
 import org.thrudb.thrudex.lucene.ThrudexLuceneHandler;
 
 public class ThrudexServer {
 	
+	/**
+	 * Ops limited by maxSearches
+	 */
+	public static final Set<String> SEARCH_OPS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(new String[]{
+			"search","searchList"
+	})));
+	
+	/**
+	 * Ops limited by maxWrites
+	 */
+	public static final Set<String> WRITE_OPS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(new String[]{
+			"put","remove","putList","removeList"
+	})));
+	
 	private String indexRoot;
 	private int    port;
 	private int    threadCount;
+	private int    selectorThreads = 0;
+	private int    queueDepth      = 0;
+	private int    maxSearches     = 0;
+	private int    maxWrites       = 0;
+	private long   refreshInterval = RealTimeLuceneIndex.DEFAULT_REFRESH_INTERVAL;
+	private int    queryCacheSize  = ParsedQueryCache.DEFAULT_SIZE;
+	private Map<String,Integer> indexQueryCacheSizes = new HashMap<String,Integer>();
+	private long   resultCacheSize = ResultCache.DEFAULT_SIZE;
+	private int    filterCacheSize = FilterCache.DEFAULT_SIZE;
+	private FlushPolicy flushPolicy = new FlushPolicy();
+	private int    analysisThreads = Runtime.getRuntime().availableProcessors();
+	private int    searchThreads   = Runtime.getRuntime().availableProcessors();
+	private long   searchListTimeout = 0;
 	private Logger logger = Logger.getLogger(this.getClass().getSimpleName());
 	
 	
@@ -46,6 +91,139 @@ public class ThrudexServer {
 		this.threadCount = threadCount;
 	}
 
+	public int getSelectorThreads() {
+		return selectorThreads;
+	}
+
+	/**
+	 * More than 0 serves with that many selectors instead of THsHaServer's one
+	 */
+	public void setSelectorThreads(int selectorThreads) {
+		this.selectorThreads = selectorThreads;
+	}
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	public void setQueueDepth(int queueDepth) {
+		this.queueDepth = queueDepth;
+	}
+
+	public int getMaxSearches() {
+		return maxSearches;
+	}
+
+	/**
+	 * Searches allowed in flight before more are rejected, 0 is unlimited
+	 */
+	public void setMaxSearches(int maxSearches) {
+		this.maxSearches = maxSearches;
+	}
+
+	public int getMaxWrites() {
+		return maxWrites;
+	}
+
+	/**
+	 * Writes allowed in flight before more are rejected, 0 is unlimited
+	 */
+	public void setMaxWrites(int maxWrites) {
+		this.maxWrites = maxWrites;
+	}
+
+	public long getRefreshInterval() {
+		return refreshInterval;
+	}
+
+	/**
+	 * Most ms a search can miss a write by
+	 */
+	public void setRefreshInterval(long refreshInterval) {
+		this.refreshInterval = refreshInterval;
+	}
+
+	public int getQueryCacheSize() {
+		return queryCacheSize;
+	}
+
+	/**
+	 * Parsed queries cached per index, 0 disables the cache
+	 */
+	public void setQueryCacheSize(int queryCacheSize) {
+		this.queryCacheSize = queryCacheSize;
+	}
+
+	public void setQueryCacheSize(String index, int queryCacheSize) {
+		indexQueryCacheSizes.put(index, queryCacheSize);
+	}
+
+	public long getResultCacheSize() {
+		return resultCacheSize;
+	}
+
+	/**
+	 * Bytes of search responses cached per index, 0 disables the cache
+	 */
+	public void setResultCacheSize(long resultCacheSize) {
+		this.resultCacheSize = resultCacheSize;
+	}
+
+	public int getFilterCacheSize() {
+		return filterCacheSize;
+	}
+
+	/**
+	 * SearchQuery filters cached per index, 0 disables the cache
+	 */
+	public void setFilterCacheSize(int filterCacheSize) {
+		this.filterCacheSize = filterCacheSize;
+	}
+
+	public FlushPolicy getFlushPolicy() {
+		return flushPolicy;
+	}
+
+	/**
+	 * When indexes write their RAM buffer to disk
+	 */
+	public void setFlushPolicy(FlushPolicy flushPolicy) {
+		this.flushPolicy = flushPolicy;
+	}
+
+	public int getAnalysisThreads() {
+		return analysisThreads;
+	}
+
+	/**
+	 * Threads that analyze putList documents, 1 or less puts them in order
+	 */
+	public void setAnalysisThreads(int analysisThreads) {
+		this.analysisThreads = analysisThreads;
+	}
+
+	public int getSearchThreads() {
+		return searchThreads;
+	}
+
+	/**
+	 * Threads that run searchList queries, 1 or less runs them in order
+	 */
+	public void setSearchThreads(int searchThreads) {
+		this.searchThreads = searchThreads;
+	}
+
+	public long getSearchListTimeout() {
+		return searchListTimeout;
+	}
+
+	/**
+	 * ms a searchList waits for its queries, 0 waits for all
+	 */
+	public void setSearchListTimeout(long searchListTimeout) {
+		this.searchListTimeout = searchListTimeout;
+	}
+
 	
 	public void start() {
 		//Start the server
@@ -54,20 +232,68 @@ public class ThrudexServer {
 			logger.info("index root: " + this.getIndexRoot());
 			logger.info("service port: " + this.getPort());
 			logger.info("thread count: " + this.getThreadCount());
+			logger.info("selector threads: " + this.getSelectorThreads());
+			logger.info("queue depth: " + this.getQueueDepth());
+			logger.info("max searches: " + this.getMaxSearches());
+			logger.info("max writes: " + this.getMaxWrites());
+			logger.info("refresh interval: " + this.getRefreshInterval() + "ms");
+			logger.info("query cache size: " + this.getQueryCacheSize());
+			logger.info("result cache size: " + this.getResultCacheSize());
+			logger.info("filter cache size: " + this.getFilterCacheSize());
+			logger.info("flush at: " + flushPolicy.maxRamBytes + " bytes, " + flushPolicy.maxDocs + " docs, "
+					+ flushPolicy.maxAge + "ms, heap budget "
+					+ (flushPolicy.budget == null ? 0 : flushPolicy.budget.getMaxBytes()) + " bytes");
+			logger.info("analysis threads: " + this.getAnalysisThreads());
+			logger.info("search threads: " + this.getSearchThreads());
+			logger.info("search list timeout: " + this.getSearchListTimeout() + "ms");
 
 			//Transport
 			TNonblockingServerTransport serverSocket =
 				new TNonblockingServerSocket(port);
 
 			//Processor
-			TProcessor  processor = 
-				new Thrudex.Processor(new ThrudexLuceneHandler(indexRoot)); 
+			ThrudexLuceneHandler handler = new ThrudexLuceneHandler(indexRoot);
+			handler.setRefreshInterval(refreshInterval);
+			handler.setQueryCacheSize(queryCacheSize);
+			handler.setResultCacheSize(resultCacheSize);
+			handler.setFilterCacheSize(filterCacheSize);
+			handler.setFlushPolicy(flushPolicy);
+			handler.setAnalysisThreads(analysisThreads);
+			handler.setSearchThreads(searchThreads);
+			handler.setSearchListTimeout(searchListTimeout);
+			
+			for(Map.Entry<String,Integer> e : indexQueryCacheSizes.entrySet())
+				handler.setQueryCacheSize(e.getKey(), e.getValue());
+			TAdmissionProcessor admission = new TAdmissionProcessor(new Thrudex.Processor(handler),
+					Thrudex.Iface.class, new ThrudexException("Server busy"), handler.getStats());
+			admission.setLimit(SEARCH_OPS, maxSearches);
+			admission.setLimit(WRITE_OPS, maxWrites);
+			
+			TProcessor  processor = new TStatsProcessor(admission, handler.getStats()); 
 
 			Options opt = new Options();
+			//the pool only grows past its core size when the queue is full, which it never is
+			opt.minWorkerThreads = threadCount;
 			opt.maxWorkerThreads = threadCount;
 
-			//Server
-			TServer server = new THsHaServer(processor,serverSocket);
+			//Server, the peeking transport lets the stats see the op name
+			TServer server;
+			if(selectorThreads > 0){
+				TThreadedSelectorServer.Options selectorOpt = new TThreadedSelectorServer.Options();
+				selectorOpt.selectorThreads = selectorThreads;
+				selectorOpt.workerThreads   = threadCount;
+				selectorOpt.queueDepth      = queueDepth;
+				selectorOpt.rejectingProcessor = admission.getRejectingProcessor();
+
+				server = new TThreadedSelectorServer(processor, serverSocket, selectorOpt);
+			}else{
+				TPeekingTransportFactory peekFactory = new TPeekingTransportFactory();
+
+				server = new THsHaServer(new TProcessorFactory(processor), serverSocket,
+						peekFactory, peekFactory,
+						new TBinaryProtocol.Factory(), new TBinaryProtocol.Factory(),
+						opt);
+			}
 			
 			//Serve
 			server.serve();
@@ -132,6 +358,78 @@ public class ThrudexServer {
 		int threadCount = Integer.valueOf(properties.getProperty("THREAD_COUNT", "5"));
 		thrudexServer.setThreadCount(threadCount);
 
+		//selector threads, 0 keeps the single selector server
+		int selectorThreads = Integer.valueOf(properties.getProperty("SELECTOR_THREADS", "0"));
+		thrudexServer.setSelectorThreads(selectorThreads);
+
+		//requests waiting for a worker before more are rejected, 0 is unbounded
+		int queueDepth = Integer.valueOf(properties.getProperty("QUEUE_DEPTH", "0"));
+		thrudexServer.setQueueDepth(queueDepth);
+
+		//searches and writes in flight before more are rejected, 0 is unlimited
+		int maxSearches = Integer.valueOf(properties.getProperty("MAX_SEARCHES", "0"));
+		thrudexServer.setMaxSearches(maxSearches);
+
+		int maxWrites = Integer.valueOf(properties.getProperty("MAX_WRITES", "0"));
+		thrudexServer.setMaxWrites(maxWrites);
+
+		//ms a search can miss writes by, a search can ask for them with refresh
+		long refreshInterval = Long.valueOf(properties.getProperty("REFRESH_INTERVAL",
+				String.valueOf(RealTimeLuceneIndex.DEFAULT_REFRESH_INTERVAL)));
+		thrudexServer.setRefreshInterval(refreshInterval);
+
+		//parsed queries cached per index, QUERY_CACHE_SIZE.<index> overrides it
+		int queryCacheSize = Integer.valueOf(properties.getProperty("QUERY_CACHE_SIZE",
+				String.valueOf(ParsedQueryCache.DEFAULT_SIZE)));
+		thrudexServer.setQueryCacheSize(queryCacheSize);
+
+		for(String name : properties.stringPropertyNames()){
+			if(!name.startsWith("QUERY_CACHE_SIZE."))
+				continue;
+
+			String index = name.substring("QUERY_CACHE_SIZE.".length());
+			thrudexServer.setQueryCacheSize(index, Integer.valueOf(properties.getProperty(name)));
+		}
+
+		//bytes of responses cached per index, for searches that set cache
+		long resultCacheSize = Long.valueOf(properties.getProperty("RESULT_CACHE_SIZE",
+				String.valueOf(ResultCache.DEFAULT_SIZE)));
+		thrudexServer.setResultCacheSize(resultCacheSize);
+
+		//SearchQuery filters per index to keep the matching documents of
+		int filterCacheSize = Integer.valueOf(properties.getProperty("FILTER_CACHE_SIZE",
+				String.valueOf(FilterCache.DEFAULT_SIZE)));
+		thrudexServer.setFilterCacheSize(filterCacheSize);
+
+		//flush an index's RAM buffer at this many bytes, docs or ms old, 0 is never
+		FlushPolicy flushPolicy = new FlushPolicy();
+		flushPolicy.maxRamBytes = Long.valueOf(properties.getProperty("FLUSH_RAM_BYTES",
+				String.valueOf(FlushPolicy.DEFAULT_RAM_BYTES)));
+		flushPolicy.maxDocs = Integer.valueOf(properties.getProperty("FLUSH_DOCS", "0"));
+		flushPolicy.maxAge = Long.valueOf(properties.getProperty("FLUSH_AGE",
+				String.valueOf(FlushPolicy.DEFAULT_MAX_AGE)));
+
+		//RAM buffer bytes across all indexes, the biggest flushes first once over, 0 is no cap
+		long heapBudget = Long.valueOf(properties.getProperty("FLUSH_HEAP_BUDGET", "0"));
+		if(heapBudget > 0)
+			flushPolicy.budget = new FlushBudget(heapBudget);
+
+		thrudexServer.setFlushPolicy(flushPolicy);
+
+		//threads that analyze the documents of a putList ahead of the index
+		int analysisThreads = Integer.valueOf(properties.getProperty("ANALYSIS_THREADS",
+				String.valueOf(Runtime.getRuntime().availableProcessors())));
+		thrudexServer.setAnalysisThreads(analysisThreads);
+
+		//threads that run the queries of a searchList side by side
+		int searchThreads = Integer.valueOf(properties.getProperty("SEARCH_THREADS",
+				String.valueOf(Runtime.getRuntime().availableProcessors())));
+		thrudexServer.setSearchThreads(searchThreads);
+
+		//ms a searchList waits before slow queries come back with a timeout, 0 is forever
+		long searchListTimeout = Long.valueOf(properties.getProperty("SEARCH_LIST_TIMEOUT", "0"));
+		thrudexServer.setSearchListTimeout(searchListTimeout);
+
 		thrudexServer.start();
 	}
 	
@@ -0,0 +1,62 @@
+package org.thrudb.thrudex.lucene;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.OpenBitSet;
+
+/**
+ * Lets through the documents every one of its filters lets through
+ *
+ * @author jake
+ *
+ */
+public class AndFilter extends Filter {
+
+	private static final long serialVersionUID = 1L;
+
+	private final List<Filter> filters;
+
+	public AndFilter(List<Filter> filters) {
+		this.filters = filters;
+	}
+
+	public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+		OpenBitSet result = null;
+
+		for(Filter filter : filters){
+			OpenBitSet bits = toBits(filter.getDocIdSet(reader), reader.maxDoc());
+
+			if(result == null){
+				//filters may hand out shared bits
+				result = (OpenBitSet) bits.clone();
+			}else{
+				result.intersect(bits);
+			}
+		}
+
+		if(result == null){
+			result = new OpenBitSet(reader.maxDoc());
+			result.set(0, reader.maxDoc());
+		}
+
+		return result;
+	}
+
+	private static OpenBitSet toBits(DocIdSet set, int maxDoc) throws IOException {
+		if(set instanceof OpenBitSet)
+			return (OpenBitSet) set;
+
+		OpenBitSet bits = new OpenBitSet(maxDoc);
+
+		DocIdSetIterator it = set.iterator();
+		while(it.next())
+			bits.set(it.doc());
+
+		return bits;
+	}
+}
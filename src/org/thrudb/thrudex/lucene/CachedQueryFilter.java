@@ -0,0 +1,69 @@
+package org.thrudb.thrudex.lucene;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.HitCollector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.OpenBitSet;
+
+/**
+ * Filters to the documents matching a query, keeping the bits per reader.
+ *
+ * A reader the index swaps in gets its bits the first time it is searched,
+ * the bits of a reader that is no longer referenced go with it.
+ *
+ * @author jake
+ *
+ */
+public class CachedQueryFilter extends Filter {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Query query;
+	private final transient Map<IndexReader,OpenBitSet> bits = new WeakHashMap<IndexReader,OpenBitSet>();
+
+	public CachedQueryFilter(Query query) {
+		this.query = query;
+	}
+
+	/**
+	 * @return the matching documents, shared so don't change it
+	 */
+	public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+		synchronized(bits){
+			OpenBitSet cached = bits.get(reader);
+
+			if(cached != null)
+				return cached;
+		}
+
+		//two searches may both build it, either result is fine
+		final OpenBitSet result = new OpenBitSet(reader.maxDoc());
+
+		new IndexSearcher(reader).search(query, new HitCollector() {
+			public void collect(int doc, float score) {
+				result.set(doc);
+			}
+		});
+
+		synchronized(bits){
+			bits.put(reader, result);
+		}
+
+		return result;
+	}
+
+	public Query getQuery() {
+		return query;
+	}
+
+	public String toString() {
+		return "CachedQueryFilter(" + query + ")";
+	}
+}
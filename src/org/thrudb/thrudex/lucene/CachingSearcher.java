@@ -0,0 +1,202 @@
+package org.thrudb.thrudex.lucene;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Searcher;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.thrudb.thrudex.Element;
+import org.thrudb.thrudex.SearchQuery;
+import org.thrudb.thrudex.SearchResponse;
+import org.thrudb.thrudex.ThrudexException;
+import org.thrudb.thrudex.ThrudexExceptionImpl;
+
+/**
+ * Runs a SearchQuery on an index's searchers, through the index's parsed
+ * query, result and filter caches.
+ *
+ * @author jake
+ *
+ */
+public class CachingSearcher {
+
+	private volatile ParsedQueryCache queryCache  = new ParsedQueryCache(ParsedQueryCache.DEFAULT_SIZE);
+	private volatile ResultCache      resultCache = new ResultCache(ResultCache.DEFAULT_SIZE);
+	private volatile FilterCache      filterCache = new FilterCache(FilterCache.DEFAULT_SIZE);
+
+	private Logger logger = Logger.getLogger(getClass());
+
+	/**
+	 * Sets how many parsed queries to keep, 0 parses every search
+	 */
+	public void setQueryCacheSize(int queries) {
+		queryCache = new ParsedQueryCache(queries);
+	}
+
+	public ParsedQueryCache getQueryCache() {
+		return queryCache;
+	}
+
+	/**
+	 * Sets the bytes of responses searches that ask for it can reuse, 0
+	 * disables the cache
+	 */
+	public void setResultCacheSize(long bytes) {
+		resultCache = new ResultCache(bytes);
+	}
+
+	public ResultCache getResultCache() {
+		return resultCache;
+	}
+
+	/**
+	 * Sets how many query filters to keep the matching documents of, 0
+	 * rebuilds them every search
+	 */
+	public void setFilterCacheSize(int filters) {
+		filterCache = new FilterCache(filters);
+	}
+
+	public FilterCache getFilterCache() {
+		return filterCache;
+	}
+
+	/**
+	 * @param searcher   what to search, null if the index is empty
+	 * @param readers    the readers under searcher, in doc id order
+	 * @param filter     applied to every search, may be null
+	 * @param generation goes up whenever searcher sees new writes
+	 */
+	public SearchResponse search(SearchQuery query, Analyzer analyzer, Searcher searcher, IndexReader[] readers, Filter filter, long generation) throws ThrudexException {
+
+		SearchResponse response = new SearchResponse();
+
+		//empty index
+		if(searcher == null){
+			if(query.isSetCursor())
+				response.setCursor(query.getCursor());
+
+			return response;
+		}
+
+		try{
+
+			//an identical search on this snapshot may have run already
+			ResultCache   myResultCache = resultCache;
+			QueryAnalyzer cacheAnalyzer = null;
+			if(analyzer instanceof QueryAnalyzer && myResultCache.accepts(query, (QueryAnalyzer)analyzer)){
+				cacheAnalyzer = (QueryAnalyzer)analyzer;
+
+				SearchResponse cached = myResultCache.get(query, cacheAnalyzer, generation);
+				if(cached != null)
+					return cached;
+			}
+
+			//parse query
+			Query parsedQuery;
+			try{
+				parsedQuery = queryCache.parse(query, analyzer);
+
+				if(query.getFiltersSize() > 0)
+					filter = filterCache.getFilter(query, analyzer, filter);
+			}catch(org.apache.lucene.queryParser.ParseException e){
+				throw new ThrudexExceptionImpl(e.toString());
+			}
+
+			//a cursor page only collects the hits after the cursor
+			if(query.isSetCursor()){
+				searchAfter(query, searcher, readers, parsedQuery, filter, response);
+			}else{
+				//Set Sort
+				Sort    sortBy = new Sort();
+
+				if(query.isSetSortby() && !query.sortby.trim().equals(""))
+					sortBy.setSort(query.getSortby() + "_sort", query.desc);
+
+
+				//Search
+				TopDocs result = null;
+				try{
+					result = searcher.search(parsedQuery,filter,query.offset + query.limit,sortBy);
+				}catch(Exception e){
+					logger.debug("Sortby failed, trying non sorted search");
+					result = searcher.search(parsedQuery,filter,query.offset + query.limit);
+				}
+
+				response.setTotal(result.totalHits);
+
+				//only payloads need stored fields
+				KeyColumn     keys          = new KeyColumn(readers);
+				FieldSelector fieldSelector = new MapFieldSelector(new String[]{LuceneIndex.PAYLOAD_KEY});
+
+				for(int i=query.offset; i<result.totalHits && i<(query.offset + query.limit); i++){
+
+					Element el = new Element();
+					el.setIndex(query.index);
+					el.setKey(keys.get(result.scoreDocs[i].doc));
+
+					if(query.isSetPayload() && query.payload)
+						el.setPayload(searcher.doc(result.scoreDocs[i].doc,fieldSelector).get(LuceneIndex.PAYLOAD_KEY));
+
+					response.addToElements(el);
+				}
+			}
+
+			if(cacheAnalyzer != null)
+				myResultCache.put(query, cacheAnalyzer, generation, response);
+
+			return response;
+
+		}catch(IOException e){
+			throw new ThrudexException(e.toString());
+		}
+	}
+
+	/**
+	 * Collects limit hits after the query's cursor rather than offset +
+	 * limit from the top, the keys come from the key column
+	 */
+	private void searchAfter(SearchQuery query, Searcher searcher, IndexReader[] readers, Query parsedQuery, Filter filter, SearchResponse response) throws IOException, ThrudexException {
+		SearchCursor after = query.getCursor().length() == 0 ? null : SearchCursor.parse(query.getCursor());
+
+		String sortField = null;
+		if(query.isSetSortby() && !query.sortby.trim().equals(""))
+			sortField = query.getSortby() + "_sort";
+
+		if(after != null && after.isScore() != (sortField == null))
+			throw new ThrudexExceptionImpl("Cursor is from a search with another sort");
+
+		CursorCollector collector = new CursorCollector(readers, sortField, query.desc, after, query.limit);
+		searcher.search(parsedQuery, filter, collector);
+
+		response.setTotal(collector.getTotalHits());
+
+		FieldSelector fieldSelector = new MapFieldSelector(new String[]{LuceneIndex.PAYLOAD_KEY});
+
+		List<CursorCollector.Hit> hits = collector.getHits();
+		for(CursorCollector.Hit hit : hits){
+			Element el = new Element();
+			el.setIndex(query.index);
+			el.setKey(hit.getKey());
+
+			if(query.isSetPayload() && query.payload)
+				el.setPayload(searcher.doc(hit.getDoc(), fieldSelector).get(LuceneIndex.PAYLOAD_KEY));
+
+			response.addToElements(el);
+		}
+
+		//the last page hands its own cursor back
+		if(hits.isEmpty())
+			response.setCursor(query.getCursor());
+		else
+			response.setCursor(collector.cursor(hits.get(hits.size() - 1)).toString());
+	}
+}
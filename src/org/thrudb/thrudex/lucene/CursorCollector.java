@@ -0,0 +1,192 @@
+package org.thrudb.thrudex.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.HitCollector;
+
+/**
+ * Collects the top hits that order after a cursor, so a page only queues
+ * limit hits however deep it is.
+ *
+ * Reads the keys from the key column and the sort values from the
+ * FieldCache of the readers the searcher's doc ids run over, in the same
+ * order.
+ *
+ * @author jake
+ *
+ */
+public class CursorCollector extends HitCollector {
+
+	private final KeyColumn    keys;
+	private final Object[]     values; //per reader, null when sorting by score
+	private final boolean      score;
+	private final boolean      desc;
+	private final SearchCursor after;
+	private final int          limit;
+	private final PriorityQueue<Hit> queue; //worst first
+	private int                totalHits = 0;
+
+	/**
+	 * A collected hit
+	 */
+	public static class Hit {
+		final int           doc;
+		final Comparable<?> value;
+		final String        key;
+
+		Hit(int doc, Comparable<?> value, String key) {
+			this.doc   = doc;
+			this.value = value;
+			this.key   = key;
+		}
+
+		public int getDoc() {
+			return doc;
+		}
+
+		public String getKey() {
+			return key;
+		}
+	}
+
+	/**
+	 * @param sortField null orders by score
+	 * @param after     null starts from the top
+	 */
+	public CursorCollector(IndexReader[] readers, String sortField, boolean desc, SearchCursor after, int limit) throws IOException {
+		this.keys   = new KeyColumn(readers);
+		this.values = new Object[readers.length];
+		this.score  = sortField == null;
+		this.desc   = desc;
+		this.after  = after;
+		this.limit  = limit;
+
+		for(int i=0; i<readers.length && sortField != null; i++){
+			try{
+				values[i] = FieldCache.DEFAULT.getAuto(readers[i], sortField);
+			}catch(RuntimeException e){
+				//no doc in this reader has the field, they all sort as missing
+				values[i] = null;
+			}
+		}
+
+		queue = new PriorityQueue<Hit>(Math.max(1, limit), new Comparator<Hit>() {
+			public int compare(Hit a, Hit b) {
+				return CursorCollector.this.compare(b.value, b.key, a.value, a.key);
+			}
+		});
+	}
+
+	public void collect(int doc, float docScore) {
+		totalHits++;
+
+		if(limit <= 0)
+			return;
+
+		String key = keys.get(doc);
+
+		Comparable<?> value = score ? Float.valueOf(docScore) : sortValue(doc);
+
+		if(after != null && compare(value, key, after.getValue(), after.getKey()) <= 0)
+			return;
+
+		if(queue.size() >= limit){
+			Hit worst = queue.peek();
+
+			if(compare(value, key, worst.value, worst.key) >= 0)
+				return;
+
+			queue.poll();
+		}
+
+		queue.add(new Hit(doc, value, key));
+	}
+
+	/**
+	 * @return every hit, not only the ones after the cursor
+	 */
+	public int getTotalHits() {
+		return totalHits;
+	}
+
+	/**
+	 * @return the collected hits, best first
+	 */
+	public List<Hit> getHits() {
+		List<Hit> hits = new ArrayList<Hit>(queue.size());
+
+		while(!queue.isEmpty())
+			hits.add(queue.poll());
+
+		Collections.reverse(hits);
+
+		return hits;
+	}
+
+	/**
+	 * @return the cursor after a hit
+	 */
+	public SearchCursor cursor(Hit hit) {
+		return new SearchCursor(hit.value, hit.key, score);
+	}
+
+	private Comparable<?> sortValue(int doc) {
+		int    i = keys.reader(doc);
+		Object v = values[i];
+
+		doc -= keys.getStart(i);
+
+		if(v instanceof int[])
+			return Integer.valueOf(((int[]) v)[doc]);
+
+		if(v instanceof float[])
+			return Float.valueOf(((float[]) v)[doc]);
+
+		if(v instanceof FieldCache.StringIndex){
+			FieldCache.StringIndex index = (FieldCache.StringIndex) v;
+			return index.lookup[index.order[doc]];
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return below 0 if a comes first
+	 */
+	private int compare(Comparable<?> a, String aKey, Comparable<?> b, String bKey) {
+		int c = compareValues(a, b);
+
+		if(score || desc)
+			c = -c;
+
+		if(c != 0)
+			return c;
+
+		if(aKey == null || bKey == null)
+			return aKey == null ? (bKey == null ? 0 : -1) : 1;
+
+		return aKey.compareTo(bKey);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static int compareValues(Comparable<?> a, Comparable<?> b) {
+		//missing values first, like lucene's sort
+		if(a == null || b == null)
+			return a == null ? (b == null ? 0 : -1) : 1;
+
+		if(a.getClass() == b.getClass())
+			return ((Comparable<Object>) a).compareTo(b);
+
+		if(a instanceof Number && b instanceof Number)
+			return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+
+		return a.toString().compareTo(b.toString());
+	}
+}
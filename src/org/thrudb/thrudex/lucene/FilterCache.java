@@ -0,0 +1,90 @@
+package org.thrudb.thrudex.lucene;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.Filter;
+import org.thrudb.thrudex.SearchQuery;
+import org.thrudb.util.cache.LruCache;
+
+/**
+ * Keeps an index's most used SearchQuery filters, each with its matching
+ * documents per reader.
+ *
+ * Like {@link ParsedQueryCache} only filters parsed with a
+ * {@link QueryAnalyzer} that matches the SearchQuery are cached.
+ *
+ * @author jake
+ *
+ */
+public class FilterCache {
+
+	public static final int DEFAULT_SIZE = 64; //filters
+
+	private final LruCache<ParsedQueryCache.Key,CachedQueryFilter> cache;
+	private final AtomicLong uncached = new AtomicLong();
+
+	/**
+	 * @param maxFilters 0 builds the filters every search
+	 */
+	public FilterCache(int maxFilters) {
+		cache = maxFilters > 0 ? new LruCache<ParsedQueryCache.Key,CachedQueryFilter>(maxFilters) : null;
+	}
+
+	/**
+	 * @param filter applied too, may be null
+	 * @return filter and the query's filters combined
+	 */
+	public Filter getFilter(SearchQuery query, Analyzer analyzer, Filter filter) throws ParseException {
+		List<Filter> filters = new ArrayList<Filter>();
+
+		if(filter != null)
+			filters.add(filter);
+
+		boolean cacheable = cache != null && analyzer instanceof QueryAnalyzer
+			&& ((QueryAnalyzer)analyzer).describes(query);
+
+		for(String f : query.getFilters()){
+			if(!cacheable){
+				uncached.incrementAndGet();
+				filters.add(new CachedQueryFilter(new QueryParser(LuceneIndex.DOCUMENT_KEY, analyzer).parse(f)));
+				continue;
+			}
+
+			ParsedQueryCache.Key key = new ParsedQueryCache.Key((QueryAnalyzer)analyzer, f);
+			CachedQueryFilter cached = cache.get(key);
+
+			if(cached == null){
+				cached = new CachedQueryFilter(new QueryParser(LuceneIndex.DOCUMENT_KEY, analyzer).parse(f));
+				cache.put(key, cached);
+			}
+
+			filters.add(cached);
+		}
+
+		return new AndFilter(filters);
+	}
+
+	public long getHits() {
+		return cache == null ? 0 : cache.getHits();
+	}
+
+	public long getMisses() {
+		return cache == null ? 0 : cache.getMisses();
+	}
+
+	/**
+	 * @return filters built without the cache
+	 */
+	public long getUncached() {
+		return uncached.get();
+	}
+
+	public int size() {
+		return cache == null ? 0 : cache.size();
+	}
+}
@@ -0,0 +1,68 @@
+package org.thrudb.thrudex.lucene;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Caps the RAM buffers of a set of indexes together. While they hold more
+ * than the budget the biggest buffer, or the oldest of equal ones, is
+ * flushed first.
+ *
+ * @author jake
+ *
+ */
+public class FlushBudget {
+
+	private final long maxBytes;
+	private final List<RealTimeLuceneIndex> indexes = new ArrayList<RealTimeLuceneIndex>();
+
+	/**
+	 * @param maxBytes RAM buffer bytes across every index
+	 */
+	public FlushBudget(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	public synchronized void register(RealTimeLuceneIndex index) {
+		indexes.add(index);
+	}
+
+	public synchronized void unregister(RealTimeLuceneIndex index) {
+		indexes.remove(index);
+	}
+
+	/**
+	 * Don't call holding an index's monitor
+	 *
+	 * @return the index to flush, null while under budget
+	 */
+	public synchronized RealTimeLuceneIndex getVictim() {
+		long total = 0;
+
+		RealTimeLuceneIndex victim      = null;
+		long                victimBytes = -1;
+		long                victimWrite = 0;
+
+		for(RealTimeLuceneIndex index : indexes){
+			long bytes = index.getRamBytes();
+			long write = index.getFirstWrite();
+			total += bytes;
+
+			//nothing to flush
+			if(write == 0)
+				continue;
+
+			if(bytes > victimBytes || (bytes == victimBytes && write < victimWrite)){
+				victim      = index;
+				victimBytes = bytes;
+				victimWrite = write;
+			}
+		}
+
+		return total > maxBytes ? victim : null;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+}
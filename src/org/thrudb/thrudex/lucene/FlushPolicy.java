@@ -0,0 +1,44 @@
+package org.thrudb.thrudex.lucene;
+
+/**
+ * When a RealTimeLuceneIndex writes its RAM buffer to disk. Any trigger
+ * that is reached flushes, 0 turns a trigger off.
+ *
+ * @author jake
+ *
+ */
+public class FlushPolicy {
+
+	public static final long DEFAULT_RAM_BYTES = 1024 * 1024;
+	public static final long DEFAULT_MAX_AGE   = 60 * 1000; //ms
+
+	public long maxRamBytes = DEFAULT_RAM_BYTES;
+
+	/**
+	 * Documents written since the last flush
+	 */
+	public int maxDocs = 0;
+
+	/**
+	 * ms since the first write after the last flush
+	 */
+	public long maxAge = DEFAULT_MAX_AGE;
+
+	/**
+	 * Shared by indexes that compete for the same heap, may be null
+	 */
+	public FlushBudget budget = null;
+
+	/**
+	 * @param firstWrite ms time of the oldest unflushed write, 0 if none
+	 */
+	public boolean shouldFlush(long ramBytes, int docs, long firstWrite) {
+		if(maxRamBytes > 0 && ramBytes >= maxRamBytes)
+			return true;
+
+		if(maxDocs > 0 && docs >= maxDocs)
+			return true;
+
+		return maxAge > 0 && firstWrite > 0 && System.currentTimeMillis() - firstWrite >= maxAge;
+	}
+}
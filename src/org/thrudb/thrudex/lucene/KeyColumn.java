@@ -0,0 +1,100 @@
+package org.thrudb.thrudex.lucene;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldCache;
+
+/**
+ * The document key of every doc id in a searcher's readers, held in
+ * memory so result pages don't read stored fields for keys.
+ *
+ * Each reader's keys are loaded once and dropped with the reader. The disk
+ * reader's come from the key walk RealTimeDiskFilter already does when a
+ * flush opens it. A RAM reader's are loaded on first search, and stay
+ * with it while it is flushed.
+ *
+ * @author jake
+ *
+ */
+public class KeyColumn {
+
+	private static final Map<IndexReader,String[]> columns =
+		Collections.synchronizedMap(new WeakHashMap<IndexReader,String[]>());
+
+	private final int[]      starts;
+	private final String[][] keys;
+
+	/**
+	 * @param readers the readers under a searcher, in doc id order
+	 */
+	public KeyColumn(IndexReader[] readers) throws IOException {
+		starts = new int[readers.length];
+		keys   = new String[readers.length][];
+
+		int start = 0;
+		for(int i=0; i<readers.length; i++){
+			starts[i] = start;
+			start    += readers[i].maxDoc();
+			keys[i]   = getKeys(readers[i]);
+		}
+	}
+
+	/**
+	 * Keys read elsewhere, by doc id
+	 */
+	static void load(IndexReader reader, String[] keys) {
+		columns.put(reader, keys);
+	}
+
+	/**
+	 * @return the keys of reader by doc id
+	 */
+	static String[] getKeys(IndexReader reader) throws IOException {
+		String[] keys = columns.get(reader);
+
+		if(keys == null){
+			keys = FieldCache.DEFAULT.getStrings(reader, LuceneIndex.DOCUMENT_KEY);
+			columns.put(reader, keys);
+		}
+
+		return keys;
+	}
+
+	/**
+	 * @return the key of a searcher doc id
+	 */
+	public String get(int doc) {
+		int i = reader(doc);
+
+		return keys[i][doc - starts[i]];
+	}
+
+	/**
+	 * @return the index of the reader holding a searcher doc id
+	 */
+	int reader(int doc) {
+		int lo = 0, hi = starts.length - 1;
+
+		while(lo < hi){
+			int mid = (lo + hi + 1) >>> 1;
+
+			if(starts[mid] <= doc)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+
+		return lo;
+	}
+
+	/**
+	 * @return the first searcher doc id of a reader
+	 */
+	int getStart(int reader) {
+		return starts[reader];
+	}
+}
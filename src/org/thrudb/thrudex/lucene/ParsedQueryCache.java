@@ -0,0 +1,100 @@
+package org.thrudb.thrudex.lucene;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.Query;
+import org.thrudb.thrudex.SearchQuery;
+import org.thrudb.util.cache.LruCache;
+
+/**
+ * Caches an index's parsed queries by query string and analyzers.
+ *
+ * Only queries parsed with a {@link QueryAnalyzer} that matches what the
+ * SearchQuery asks for are cached, anything else is parsed every time.
+ * Cached queries are shared between searches and must not be changed.
+ *
+ * @author jake
+ *
+ */
+public class ParsedQueryCache {
+
+	public static final int DEFAULT_SIZE = 1000; //queries
+
+	private final LruCache<Key,Query> cache;
+	private final AtomicLong          uncached = new AtomicLong();
+
+	/**
+	 * @param maxQueries 0 parses every query
+	 */
+	public ParsedQueryCache(int maxQueries) {
+		cache = maxQueries > 0 ? new LruCache<Key,Query>(maxQueries) : null;
+	}
+
+	public Query parse(SearchQuery query, Analyzer analyzer) throws ParseException {
+
+		if(cache == null || !(analyzer instanceof QueryAnalyzer) || !((QueryAnalyzer)analyzer).describes(query)){
+			uncached.incrementAndGet();
+			return new QueryParser(LuceneIndex.DOCUMENT_KEY, analyzer).parse(query.getQuery());
+		}
+
+		Key   key    = new Key((QueryAnalyzer)analyzer, query.getQuery());
+		Query parsed = cache.get(key);
+
+		//two searches may both parse it, either result is fine
+		if(parsed == null){
+			parsed = new QueryParser(LuceneIndex.DOCUMENT_KEY, analyzer).parse(query.getQuery());
+			cache.put(key, parsed);
+		}
+
+		return parsed;
+	}
+
+	public long getHits() {
+		return cache == null ? 0 : cache.getHits();
+	}
+
+	public long getMisses() {
+		return cache == null ? 0 : cache.getMisses();
+	}
+
+	/**
+	 * @return parses that skipped the cache
+	 */
+	public long getUncached() {
+		return uncached.get();
+	}
+
+	public int size() {
+		return cache == null ? 0 : cache.size();
+	}
+
+	static class Key {
+		private final String              query;
+		private final int                 defaultType;
+		private final Map<String,Integer> fieldTypes;
+
+		Key(QueryAnalyzer analyzer, String query) {
+			this.query       = query;
+			this.defaultType = analyzer.getDefaultType();
+			this.fieldTypes  = new TreeMap<String,Integer>(analyzer.getFieldTypes());
+		}
+
+		public boolean equals(Object o) {
+			if(!(o instanceof Key))
+				return false;
+
+			Key k = (Key) o;
+
+			return defaultType == k.defaultType && query.equals(k.query) && fieldTypes.equals(k.fieldTypes);
+		}
+
+		public int hashCode() {
+			return (query.hashCode() * 31 + defaultType) * 31 + fieldTypes.hashCode();
+		}
+	}
+}
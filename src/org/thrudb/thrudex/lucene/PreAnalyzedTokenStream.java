@@ -0,0 +1,54 @@
+package org.thrudb.thrudex.lucene;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.TokenStream;
+
+/**
+ * The tokens of a field value analyzed ahead of time, so a bulk put can
+ * run the analyzers outside the index lock and the writer only inverts.
+ *
+ * @author jake
+ *
+ */
+public class PreAnalyzedTokenStream extends TokenStream {
+
+	private final List<Token> tokens;
+	private int               next = 0;
+
+	/**
+	 * Runs the analyzer over the value now
+	 */
+	public PreAnalyzedTokenStream(Analyzer analyzer, String field, String value) throws IOException {
+		tokens = new ArrayList<Token>();
+
+		TokenStream stream = analyzer.tokenStream(field, new StringReader(value));
+		try{
+			Token reusable = new Token();
+			for(Token token = stream.next(reusable); token != null; token = stream.next(reusable))
+				tokens.add((Token) token.clone());
+		}finally{
+			stream.close();
+		}
+	}
+
+	public Token next(Token reusableToken) throws IOException {
+		if(next >= tokens.size())
+			return null;
+
+		return tokens.get(next++);
+	}
+
+	public void reset() throws IOException {
+		next = 0;
+	}
+
+	public int size() {
+		return tokens.size();
+	}
+}
@@ -0,0 +1,61 @@
+package org.thrudb.thrudex.lucene;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.PerFieldAnalyzerWrapper;
+import org.thrudb.thrudex.SearchQuery;
+
+/**
+ * The analyzer a search parses with, remembering which thrudex analyzer
+ * types it was built from so a parsed query can be cached by them.
+ *
+ * @author jake
+ *
+ */
+public class QueryAnalyzer extends PerFieldAnalyzerWrapper {
+
+	private final int                  defaultType;
+	private final Map<String,Integer>  fieldTypes = new TreeMap<String,Integer>();
+	private boolean                    untyped    = false; //has analyzers we can't name
+
+	public QueryAnalyzer(Analyzer defaultAnalyzer, int defaultType) {
+		super(defaultAnalyzer);
+
+		this.defaultType = defaultType;
+	}
+
+	public void addAnalyzer(String field, Analyzer analyzer, int type) {
+		super.addAnalyzer(field, analyzer);
+
+		fieldTypes.put(field, type);
+	}
+
+	public void addAnalyzer(String field, Analyzer analyzer) {
+		super.addAnalyzer(field, analyzer);
+
+		untyped = true;
+	}
+
+	/**
+	 * @return true if this is the analyzer query asks for
+	 */
+	public boolean describes(SearchQuery query) {
+		if(untyped || query.getDefaultAnalyzer() != defaultType)
+			return false;
+
+		if(!query.isSetFieldAnalyzers())
+			return fieldTypes.isEmpty();
+
+		return fieldTypes.equals(query.getFieldAnalyzers());
+	}
+
+	public int getDefaultType() {
+		return defaultType;
+	}
+
+	public Map<String,Integer> getFieldTypes() {
+		return fieldTypes;
+	}
+}
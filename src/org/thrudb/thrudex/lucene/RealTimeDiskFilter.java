@@ -1,91 +1,265 @@
 package org.thrudb.thrudex.lucene;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.UnsupportedEncodingException;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.util.OpenBitSet;
+import org.thrudb.util.hash.Hash;
+import org.thrudb.util.hash.MurmurHash;
 
+/**
+ * Hides the disk documents that have been updated or removed since the
+ * disk reader was opened.
+ *
+ * The document id of every key on disk is indexed in memory by a 64 bit
+ * hash of the key when the filter is built, so hiding a key never looks
+ * at the disk index unless two keys share a hash. The same walk loads the
+ * reader's KeyColumn.
+ *
+ * Searches may be running on a filter once it's published, so later hides
+ * go on a copy.
+ *
+ */
 public class RealTimeDiskFilter extends Filter {
 
 	/**
-	 * 
+	 *
 	 */
 	private static final long serialVersionUID = 1L;
 	private IndexReader diskReader = null;
 	private OpenBitSet  diskFilter = null;
-	private Map<Term,Boolean>   termSet    = null;
+	private Set<Term>   termSet    = null; //hidden so far
+	private KeyIndex    keyIndex   = null;
+	private String[]    keys       = null; //by doc id
 	private Logger logger = Logger.getLogger(getClass());
-	
-	
-	public RealTimeDiskFilter(IndexReader diskReader) {
+
+
+	public RealTimeDiskFilter(IndexReader diskReader) throws IOException {
 		this.diskReader = diskReader;
 		diskFilter      = new OpenBitSet(diskReader.maxDoc());
 		diskFilter.set(0, diskReader.maxDoc());
-		termSet = new HashMap<Term,Boolean>();
+		termSet  = new HashSet<Term>();
+		keys     = new String[diskReader.maxDoc()];
+		keyIndex = buildKeyIndex(diskReader, keys);
 	}
-	
-	
+
+	/**
+	 * A copy to hide more docs in, sharing the key index
+	 */
+	public RealTimeDiskFilter(RealTimeDiskFilter filter) {
+		diskReader = filter.diskReader;
+		diskFilter = (OpenBitSet) filter.diskFilter.clone();
+		termSet    = new HashSet<Term>(filter.termSet);
+		keyIndex   = filter.keyIndex;
+		keys       = filter.keys;
+	}
+
+
 	@Override
 	public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
-			
+
 		if(reader != diskReader){
 			OpenBitSet rset = new OpenBitSet(reader.maxDoc());
 			rset.set(0, reader.maxDoc());
-		
+
 			return rset;
 		}
-		
-		return diskFilter;		
+
+		return diskFilter;
 	}
-	
+
+	/**
+	 * Hides the disk documents with term
+	 *
+	 * @return false if there weren't any
+	 */
 	public boolean hideTerm(Term term) throws IOException {
-		
+
 		//check we haven't hidden already
-		if(termSet.containsKey(term))
-			return termSet.get(term).booleanValue();
-		
-		
+		if(termSet.contains(term))
+			return true;
+
+		if(term.field().equals(LuceneIndex.DOCUMENT_KEY)){
+			int doc = keyIndex.get(hash(term.text()));
+
+			//a new key, nothing to hide
+			if(doc == KeyIndex.ABSENT)
+				return false;
+
+			if(doc != KeyIndex.SHARED){
+				//another key with the same hash, a key on disk would have shared it
+				if(!term.text().equals(keys[doc]))
+					return false;
+
+				diskFilter.clear(doc);
+				termSet.add(term);
+				return true;
+			}
+		}
+
 		//Find terms and filter them out
 		TermDocs termDocs = diskReader.termDocs(term);
-	
-		if(termDocs == null){
-			//add this term to the termSet
-			termSet.put(term, new Boolean(false));
-			
+
+		if(termDocs == null)
 			return false;
-		}
 
 		boolean found = false;
-		
+
 		while(termDocs.next()){
 			diskFilter.clear(termDocs.doc());
 			found = true;
 		}
-	
-		//add this term to the termSet
-		termSet.put(term, new Boolean(found));
-		return found;		
+
+		termDocs.close();
+
+		if(found)
+			termSet.add(term);
+
+		return found;
 	}
-	
+
 	public Set<Term> getTermSet(){
-		Set<Term> tmpTermSet = new HashSet<Term>();
-		
-		for(Map.Entry<Term, Boolean> e : termSet.entrySet()){
-			if(e.getValue()){
-				tmpTermSet.add(e.getKey());
-			}
+		return new HashSet<Term>(termSet);
+	}
+
+	private KeyIndex buildKeyIndex(IndexReader reader, String[] keys) throws IOException {
+		long start = System.currentTimeMillis();
+
+		KeyIndex index    = new KeyIndex(reader.numDocs());
+		TermEnum terms    = reader.terms(new Term(LuceneIndex.DOCUMENT_KEY, ""));
+		TermDocs termDocs = reader.termDocs();
+
+		try{
+			do{
+				Term term = terms.term();
+				if(term == null || !term.field().equals(LuceneIndex.DOCUMENT_KEY))
+					break;
+
+				termDocs.seek(terms);
+
+				String  key    = term.text();
+				int     first  = KeyIndex.ABSENT;
+				boolean shared = false;
+
+				while(termDocs.next()){
+					keys[termDocs.doc()] = key;
+
+					if(first == KeyIndex.ABSENT)
+						first = termDocs.doc();
+					else
+						shared = true;
+				}
+
+				//deleted docs are skipped
+				if(first == KeyIndex.ABSENT)
+					continue;
+
+				//a key on more than one doc is looked up the slow way
+				index.put(hash(key), shared ? KeyIndex.SHARED : first);
+
+			}while(terms.next());
+		}finally{
+			terms.close();
+			termDocs.close();
+		}
+
+		//searches read result keys from these
+		KeyColumn.load(reader, keys);
+
+		logger.debug("indexed "+index.size()+" disk keys in "+(System.currentTimeMillis() - start)+"ms");
+
+		return index;
+	}
+
+	private static long hash(String key) {
+		byte[] bytes;
+		try{
+			bytes = key.getBytes("UTF-8");
+		}catch(UnsupportedEncodingException e){
+			throw new RuntimeException(e);
 		}
-		
-		return tmpTermSet;
+
+		Hash murmur = MurmurHash.getInstance();
+		int  h1     = murmur.hash(bytes, 0);
+		int  h2     = murmur.hash(bytes, h1);
+
+		return ((long)h1 << 32) | (h2 & 0xffffffffL);
 	}
 
+	/**
+	 * Open addressing map of key hash to doc id, without boxing
+	 */
+	static class KeyIndex {
+		static final int ABSENT = -1;
+		static final int SHARED = -2; //several docs or keys share the hash
+
+		private final long[] hashes;
+		private final int[]  docs;
+		private final int    mask;
+		private boolean      hasZero; //0 marks an empty slot, so it's kept aside
+		private int          zeroDoc;
+		private int          size;
+
+		KeyIndex(int expected) {
+			int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+
+			hashes = new long[capacity];
+			docs   = new int[capacity];
+			mask   = capacity - 1;
+		}
+
+		void put(long hash, int doc) {
+			if(hash == 0){
+				zeroDoc = hasZero ? SHARED : doc;
+				if(!hasZero)
+					size++;
+				hasZero = true;
+				return;
+			}
+
+			int i = slot(hash);
+			while(hashes[i] != 0){
+				if(hashes[i] == hash){
+					docs[i] = SHARED;
+					return;
+				}
+				i = (i + 1) & mask;
+			}
+
+			hashes[i] = hash;
+			docs[i]   = doc;
+			size++;
+		}
+
+		int get(long hash) {
+			if(hash == 0)
+				return hasZero ? zeroDoc : ABSENT;
+
+			int i = slot(hash);
+			while(hashes[i] != 0){
+				if(hashes[i] == hash)
+					return docs[i];
+				i = (i + 1) & mask;
+			}
+
+			return ABSENT;
+		}
+
+		int size() {
+			return size;
+		}
+
+		private int slot(long hash) {
+			return (int)(hash ^ (hash >>> 32)) & mask;
+		}
+	}
 }
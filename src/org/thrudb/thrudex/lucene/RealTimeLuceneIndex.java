@@ -2,9 +2,7 @@ package org.thrudb.thrudex.lucene;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -13,56 +11,90 @@ import org.apache.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.FieldSelector;
-import org.apache.lucene.document.MapFieldSelector;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.queryParser.QueryParser;
-import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.ParallelMultiSearcher;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.Searchable;
-import org.apache.lucene.search.Sort;
-import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.NIOFSDirectory;
 import org.apache.lucene.store.RAMDirectory;
-import org.thrudb.thrudex.Element;
 import org.thrudb.thrudex.SearchQuery;
 import org.thrudb.thrudex.SearchResponse;
 import org.thrudb.thrudex.ThrudexException;
 import org.thrudb.thrudex.ThrudexExceptionImpl;
 
+/**
+ * Index that takes writes in a RAM index and merges them to disk in the
+ * background.
+ *
+ * Searches don't commit or reopen anything. A refresher thread commits the
+ * RAM writes and publishes new searchers every refresh interval, so a
+ * search sees writes at most that old. A search that sets refresh does
+ * the refresh itself first and sees every earlier write.
+ *
+ * The monitor thread writes the RAM buffer to disk when the
+ * {@link FlushPolicy} says so, or when its {@link FlushBudget} picks this
+ * index to free memory.
+ *
+ * Searches never take the index monitor, they run on a snapshot from the
+ * {@link SearcherManager}. Readers swapped out here are only dropped with
+ * decRef, the last search on them closes them.
+ *
+ * @author jake
+ *
+ */
 public class RealTimeLuceneIndex implements LuceneIndex, Runnable {
 
+	public static final long DEFAULT_REFRESH_INTERVAL = 100; //ms
+	public static final long FLUSH_CHECK_INTERVAL     = 1000; //ms
+
 	Analyzer      analyzer = new StandardAnalyzer();
 	
 	IndexWriter   ramWriter;
 	IndexReader   ramReader;
-	IndexSearcher ramSearcher;
-	RAMDirectory  ramDirectory;
+	volatile RAMDirectory ramDirectory;
+	volatile int  ramDocs    = 0; //put since the last flush
+	volatile long firstWrite = 0; //ms time of the oldest unflushed write
 	
 	IndexReader   prevRamReader;
-	IndexSearcher prevRamSearcher;
 	RAMDirectory  prevRamDirectory;
 		
 	IndexWriter   diskWriter;
 	IndexReader   diskReader;
-	IndexSearcher diskSearcher;
 	Directory     diskDirectory;
 	RealTimeDiskFilter diskFilter;
 	Set<Term>     deletedDocuments; //disk only
+	Set<Term>     pendingHides = new HashSet<Term>(); //written since the last refresh
+	Set<Term>     flushedWrites; //hidden during a flush, null otherwise
 	
 	AtomicBoolean  hasWrite    = new AtomicBoolean(false);
-	CountDownLatch shutdownLatch;
+	volatile CountDownLatch shutdownLatch;
+	
+	//what searches run against, replaced whole on every refresh
+	SearcherManager searcherManager = new SearcherManager();
+	long           refreshInterval;
+	
+	CachingSearcher cachingSearcher = new CachingSearcher();
+	
+	volatile FlushPolicy flushPolicy = new FlushPolicy();
+	final Object   flushLock = new Object();
+	boolean        flushRequested = false;
 	
 	Thread  monitor;
+	Thread  refresher;
 	
 	Logger logger = Logger.getLogger(getClass());
 	
 	
 	RealTimeLuceneIndex(String indexRoot, String indexName) throws IOException, ThrudexException {
+		this(indexRoot, indexName, DEFAULT_REFRESH_INTERVAL);
+	}
+	
+	/**
+	 * @param refreshInterval most ms a search can miss a write by
+	 */
+	RealTimeLuceneIndex(String indexRoot, String indexName, long refreshInterval) throws IOException, ThrudexException {
+		this.refreshInterval = Math.max(1, refreshInterval);
+		
 		File rootFile = new File(indexRoot);
 		
 		if(!rootFile.isDirectory())
@@ -88,7 +120,6 @@ public class RealTimeLuceneIndex implements LuceneIndex, Runnable {
 		
 		//open this read only
 		diskReader   = IndexReader.open(diskDirectory, true);
-		diskSearcher = new IndexSearcher(diskReader);
 		diskFilter   = new RealTimeDiskFilter(diskReader);
 		deletedDocuments = new HashSet<Term>();
 		
@@ -96,12 +127,81 @@ public class RealTimeLuceneIndex implements LuceneIndex, Runnable {
 		ramDirectory = new RAMDirectory();
 		ramWriter    = new IndexWriter(ramDirectory,analyzer,true, IndexWriter.MaxFieldLength.UNLIMITED);
 		ramReader    = IndexReader.open(ramDirectory,true);
-		ramSearcher  = new IndexSearcher(ramReader);
+		
+		publish();
 		
 		//Monitors the index
 		monitor = new Thread(this);
 		monitor.start();
 		
+		//Makes writes searchable
+		refresher = new Thread("refresher-"+indexName) {
+			public void run() {
+				while(shutdownLatch == null){
+					try{
+						Thread.sleep(RealTimeLuceneIndex.this.refreshInterval);
+						refresh();
+					}catch(InterruptedException e){
+						break;
+					}catch(Exception e){
+						logger.warn("refresh failed", e);
+					}
+				}
+			}
+		};
+		refresher.setDaemon(true);
+		refresher.start();
+	}
+	
+	/**
+	 * Commits the RAM writes and publishes searchers that see them, does
+	 * nothing if there weren't any
+	 */
+	public synchronized void refresh() throws IOException {
+		if(!hasWrite.getAndSet(false))
+			return;
+		
+		ramWriter.commit();
+		
+		//Reopen index reader
+		IndexReader newReader = ramReader.reopen();
+		if(ramReader != newReader){	
+			ramReader.decRef();
+			ramReader = newReader;
+		}
+		
+		hidePending();
+		publish();
+	}
+	
+	/**
+	 * Hides the disk docs of the writes the RAM readers now have. The
+	 * published filter is left alone, so old docs and new ones swap in the
+	 * same publish. Call holding the lock.
+	 */
+	private void hidePending() throws IOException {
+		if(pendingHides.isEmpty())
+			return;
+		
+		diskFilter = new RealTimeDiskFilter(diskFilter);
+		
+		for(Term term : pendingHides){
+			if(diskFilter.hideTerm(term))
+				deletedDocuments.add(term);
+			
+			//the flush's filter is hidden again once it's built
+			if(flushedWrites != null)
+				flushedWrites.add(term);
+		}
+		
+		pendingHides.clear();
+	}
+	
+	/**
+	 * Publishes the current readers, call holding the lock
+	 */
+	private void publish() throws IOException {
+		searcherManager.publish(new IndexReader[]{ramReader, prevRamReader, diskReader}, diskFilter);
 	}
 	
 	public synchronized void put(String key, Document document, Analyzer analyzer) throws ThrudexException{
@@ -110,9 +210,12 @@ public class RealTimeLuceneIndex implements LuceneIndex, Runnable {
 		
 		try{
 			ramWriter.updateDocument(term, document, analyzer);
+			ramDocs++;
+			
+			if(firstWrite == 0)
+				firstWrite = System.currentTimeMillis();
 	
-			if(diskFilter.hideTerm(term))
-				deletedDocuments.add(term);
+			pendingHides.add(term); //hidden on disk with the next refresh
 					
 			hasWrite.set(true);
 			
@@ -129,8 +232,10 @@ public class RealTimeLuceneIndex implements LuceneIndex, Runnable {
 			ramWriter.deleteDocuments(term);
 			hasWrite.set(true);
 			
-			if(diskFilter.hideTerm(term))
-				deletedDocuments.add(term);
+			if(firstWrite == 0)
+				firstWrite = System.currentTimeMillis();
+			
+			pendingHides.add(term); //hidden on disk with the next refresh
 			
 			
 		}catch(IOException e){
@@ -138,118 +243,108 @@ public class RealTimeLuceneIndex implements LuceneIndex, Runnable {
 		}
 	}
 
-	public SearchResponse search(SearchQuery query, Analyzer analyzer) throws ThrudexException {
-		if(!query.isSetQuery() || query.query.trim().equals(""))
-			throw new ThrudexExceptionImpl("Empty Query");
+	/**
+	 * Sets when the RAM buffer is written to disk
+	 */
+	public void setFlushPolicy(FlushPolicy policy) {
+		FlushPolicy old = flushPolicy;
 		
-		//Parse Query
-		Query parsedQuery;
-		SearchResponse response = new SearchResponse();
+		if(old.budget != null)
+			old.budget.unregister(this);
 		
-		//Construct the multiSearcher
-		ParallelMultiSearcher multiSearcher = null;
-		RealTimeDiskFilter    myFilter      = null;
-		try{
-
-			//This section needs to be thread safe
-			synchronized(this){
-						
-				//Commit any prev writes
-				if(hasWrite.getAndSet(false)){
-					ramWriter.commit();
-					
-					//Reopen index reader
-					IndexReader newReader = ramReader.reopen();
-					if(ramReader != newReader){	
-						//ramReader.close();
-						ramSearcher.close();
-						ramReader   = newReader;			
-						ramSearcher = new IndexSearcher(ramReader);
-					}				
-				}
-				
-				
-				List<Searchable> searchersList = new ArrayList<Searchable>();
-				
-				if(ramSearcher.maxDoc() > 0)
-					searchersList.add(ramSearcher);
-				
-				if(prevRamSearcher != null && prevRamSearcher.maxDoc() > 0)
-					searchersList.add(prevRamSearcher);
-				
-				if(diskSearcher.maxDoc() > 0)
-					searchersList.add(diskSearcher);
-				
-				//empty index
-				if(searchersList.size() == 0)
-					return response;
-				
-				Searchable[] searchers = new Searchable[]{};
-				multiSearcher = new ParallelMultiSearcher(searchersList.toArray(searchers));
-				
-				myFilter      = diskFilter;
-			
-			
-			}
-						
-			QueryParser    queryParser = new QueryParser(DOCUMENT_KEY, analyzer);
-			
-			//parse query
-			//TODO: Cache?
-			try{
-				parsedQuery = queryParser.parse(query.getQuery());
-			}catch(org.apache.lucene.queryParser.ParseException e){
-				throw new ThrudexExceptionImpl(e.toString());
+		if(policy.budget != null)
+			policy.budget.register(this);
+		
+		flushPolicy = policy;
+	}
+	
+	/**
+	 * @return bytes held by the RAM buffer
+	 */
+	public long getRamBytes() {
+		return ramDirectory.sizeInBytes();
+	}
+	
+	/**
+	 * @return ms time of the oldest write not on disk yet, 0 if none
+	 */
+	public long getFirstWrite() {
+		return firstWrite;
+	}
+	
+	/**
+	 * Wakes the monitor thread to flush the RAM buffer
+	 */
+	public void requestFlush() {
+		synchronized(flushLock){
+			flushRequested = true;
+			flushLock.notify();
+		}
+	}
+	
+	/**
+	 * @return true if the RAM buffer should go to disk now
+	 */
+	private boolean needsFlush() {
+		synchronized(flushLock){
+			if(flushRequested){
+				flushRequested = false;
+				return firstWrite != 0;
 			}
-			
+		}
+		
+		FlushPolicy policy = flushPolicy;
+		
+		if(policy.shouldFlush(getRamBytes(), ramDocs, firstWrite))
+			return true;
+		
+		if(policy.budget == null)
+			return false;
+		
+		RealTimeLuceneIndex victim = policy.budget.getVictim();
+		if(victim == this)
+			return true;
+		
+		if(victim != null)
+			victim.requestFlush();
+		
+		return false;
+	}
 	
-			
-			//Set Sort
-			Sort    sortBy = new Sort();
-			
-			if(query.isSetSortby() && !query.sortby.trim().equals(""))
-				sortBy.setSort(query.getSortby() + "_sort", query.desc);
+	/**
+	 * @return runs the searches, holds the index's caches
+	 */
+	public CachingSearcher getCachingSearcher() {
+		return cachingSearcher;
+	}
+	
+	/**
+	 * @return the searchers of this index
+	 */
+	public SearcherManager getSearcherManager() {
+		return searcherManager;
+	}
+	
+	public SearchResponse search(SearchQuery query, Analyzer analyzer) throws ThrudexException {
+		if(!query.isSetQuery() || query.query.trim().equals(""))
+			throw new ThrudexExceptionImpl("Empty Query");
 		
-			
-			//Search		
-			TopDocs result = null;
+		//read your writes
+		if(query.isRefresh()){
 			try{
-				result = multiSearcher.search(parsedQuery,myFilter,query.offset + query.limit,sortBy);
-			}catch(Exception e){
-				logger.debug("Sortby failed, trying non sorted search");
-				result = multiSearcher.search(parsedQuery,myFilter,query.offset + query.limit);
-			}
-			
-			response.setTotal(result.totalHits);
-			
-			FieldSelector fieldSelector;
-			if(query.isPayload()){
-				fieldSelector = new MapFieldSelector(new String[]{DOCUMENT_KEY,PAYLOAD_KEY});
-			}else{
-				fieldSelector = new MapFieldSelector(new String[]{DOCUMENT_KEY});
+				refresh();
+			}catch(IOException e){
+				throw new ThrudexException(e.toString());
 			}
-			
-			
-			for(int i=query.offset; i<result.totalHits && i<(query.offset + query.limit); i++){
-				
-				Element el = new Element();
-				el.setIndex(query.index);
-										
-				Document d = multiSearcher.doc(result.scoreDocs[i].doc,fieldSelector);
-				el.setKey(d.get(DOCUMENT_KEY));
-				
-				if(query.isSetPayload() && query.payload)
-					el.setPayload(d.get(PAYLOAD_KEY));
-			
-				response.addToElements(el);
-			}
-			
-			return response;
-			
-		}catch(IOException e){
-			throw new ThrudexException(e.toString());
 		}
-			
+		
+		//the readers stay open for this whole call
+		SearcherManager.Snapshot snapshot = searcherManager.acquire();
+		try{
+			return cachingSearcher.search(query, analyzer, snapshot.getSearcher(), snapshot.getReaders(), snapshot.getFilter(), snapshot.getGeneration());
+		}finally{
+			searcherManager.release(snapshot);
+		}
 	}
 	
 	
@@ -257,11 +352,14 @@ public class RealTimeLuceneIndex implements LuceneIndex, Runnable {
 		while(true){
 			try{
 			
-				logger.debug("ram dir size: "+ramDirectory.sizeInBytes());
+				logger.debug("ram dir size: "+getRamBytes());
 				
-				//do nothing until we have enough changes
-				if(ramDirectory.sizeInBytes() < 1024*1024*1 && shutdownLatch == null){	
-					Thread.currentThread().sleep(10000);
+				//do nothing until the policy says so
+				if(shutdownLatch == null && !needsFlush()){
+					synchronized(flushLock){
+						if(!flushRequested)
+							flushLock.wait(FLUSH_CHECK_INTERVAL);
+					}
 					continue;
 				}
 						
@@ -270,14 +368,14 @@ public class RealTimeLuceneIndex implements LuceneIndex, Runnable {
 				synchronized(this){
 					prevRamDirectory = ramDirectory;
 					prevRamReader    = ramReader;
-					prevRamSearcher  = ramSearcher;			
 					IndexWriter prevRamWriter    = ramWriter;
 					
 					//
 					ramDirectory = new RAMDirectory();
 					ramWriter    = new IndexWriter(ramDirectory,analyzer,true, IndexWriter.MaxFieldLength.UNLIMITED);
 					ramReader    = IndexReader.open(ramDirectory,true);
-					ramSearcher  = new IndexSearcher(ramReader);
+					ramDocs      = 0;
+					firstWrite   = 0;
 					
 					//Commit any prev writes
 					hasWrite.getAndSet(false);
@@ -286,12 +384,16 @@ public class RealTimeLuceneIndex implements LuceneIndex, Runnable {
 						
 					//Reopen index reader
 					IndexReader newReader = prevRamReader.reopen();
-					if(prevRamReader != prevRamReader){	
-						prevRamReader.close();
-						prevRamSearcher.close();
-						prevRamReader = newReader;			
-						prevRamSearcher = new IndexSearcher(prevRamReader);
-					}						
+					if(prevRamReader != newReader){	
+						prevRamReader.decRef();
+						prevRamReader = newReader;
+					}
+					
+					hidePending();
+					publish();
+					
+					//later writes are in the new RAM index, not the flushed one
+					flushedWrites = new HashSet<Term>();
 				}
 				
 				
@@ -311,6 +413,7 @@ public class RealTimeLuceneIndex implements LuceneIndex, Runnable {
 				
 				diskWriter.addIndexesNoOptimize(new Directory[]{prevRamDirectory});
 				
+				IndexReader newReader;
 				synchronized(this){			
 					
 					//any new disk updates?
@@ -322,16 +425,36 @@ public class RealTimeLuceneIndex implements LuceneIndex, Runnable {
 					
 					diskWriter.commit();
 					
-					diskReader   = diskReader.reopen();
-					diskSearcher = new IndexSearcher(diskReader);
-					diskFilter   = new RealTimeDiskFilter(diskReader);
+					newReader = diskReader.reopen();
+				}
+				
+				//walks every disk key, so writes go on meanwhile
+				RealTimeDiskFilter newFilter = new RealTimeDiskFilter(newReader);
+				
+				synchronized(this){
+					
+					//writes since the RAM swap may have an older doc in the flushed segment
+					for(Term term : flushedWrites){
+						if(newFilter.hideTerm(term))
+							deletedDocuments.add(term);
+					}
+					
+					flushedWrites = null;
+					
+					if(diskReader != newReader){
+						diskReader.decRef();
+						diskReader = newReader;
+					}
+					
+					diskFilter   = newFilter;
 					
 					logger.debug("Have "+diskReader.numDocs()+" docs on disk");
 					
-					prevRamSearcher = null;
+					prevRamReader.decRef();
 					prevRamReader   = null;
 					prevRamDirectory= null;
 					
+					publish();
 				}
 				
 				logger.debug("finsihed updating disk");
@@ -349,7 +472,11 @@ public class RealTimeLuceneIndex implements LuceneIndex, Runnable {
 	}
 	
 	public void shutdown() {
+		if(flushPolicy.budget != null)
+			flushPolicy.budget.unregister(this);
+		
 		shutdownLatch = new CountDownLatch(1);
+		requestFlush();
 		try{
 			shutdownLatch.await();
 		}catch(InterruptedException e){
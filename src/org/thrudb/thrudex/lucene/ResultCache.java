@@ -0,0 +1,185 @@
+package org.thrudb.thrudex.lucene;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.thrudb.thrudex.Element;
+import org.thrudb.thrudex.SearchQuery;
+import org.thrudb.thrudex.SearchResponse;
+import org.thrudb.util.cache.LruCache;
+
+/**
+ * Caches an index's search responses for the searcher generation they
+ * were computed on.
+ *
+ * The first lookup or store for a newer generation empties the cache, so
+ * a hit is never older than the snapshot the search would have used.
+ * Responses computed on an older generation are dropped.
+ *
+ * @author jake
+ *
+ */
+public class ResultCache {
+
+	public static final long DEFAULT_SIZE = 16 * 1024 * 1024; //bytes
+
+	//rough cost of a cached response and of each element in it
+	private static final int RESPONSE_OVERHEAD = 256;
+	private static final int ELEMENT_OVERHEAD  = 64;
+
+	private final LruCache<Key,SearchResponse> cache;
+	private long generation;
+
+	/**
+	 * @param maxBytes bound on the responses held, 0 disables the cache
+	 */
+	public ResultCache(long maxBytes) {
+		cache = maxBytes <= 0 ? null : new LruCache<Key,SearchResponse>(maxBytes) {
+			protected long weigh(Key key, SearchResponse response) {
+				return ResultCache.weigh(key, response);
+			}
+		};
+	}
+
+	/**
+	 * @return false if the query's result can't be cached
+	 */
+	public boolean accepts(SearchQuery query, QueryAnalyzer analyzer) {
+		return cache != null && query.isCache() && !query.isRandomize() && analyzer.describes(query);
+	}
+
+	/**
+	 * @return a copy of the response cached at generation or null
+	 */
+	public SearchResponse get(SearchQuery query, QueryAnalyzer analyzer, long generation) {
+		synchronized(this){
+			if(!advance(generation))
+				return null;
+		}
+
+		SearchResponse response = cache.get(new Key(query, analyzer));
+
+		return response == null ? null : new SearchResponse(response);
+	}
+
+	public void put(SearchQuery query, QueryAnalyzer analyzer, long generation, SearchResponse response) {
+		synchronized(this){
+			if(!advance(generation))
+				return;
+
+			cache.put(new Key(query, analyzer), new SearchResponse(response));
+		}
+	}
+
+	/**
+	 * Moves to generation, clearing older responses
+	 *
+	 * @return false if generation is already stale
+	 */
+	private boolean advance(long generation) {
+		if(generation < this.generation)
+			return false;
+
+		if(generation > this.generation){
+			cache.clear();
+			this.generation = generation;
+		}
+
+		return true;
+	}
+
+	public long getHits() {
+		return cache == null ? 0 : cache.getHits();
+	}
+
+	public long getMisses() {
+		return cache == null ? 0 : cache.getMisses();
+	}
+
+	public long getBytes() {
+		return cache == null ? 0 : cache.getWeight();
+	}
+
+	private static long weigh(Key key, SearchResponse response) {
+		long bytes = RESPONSE_OVERHEAD + 2 * key.query.length();
+
+		for(String filter : key.filters)
+			bytes += 2 * filter.length();
+
+		if(key.cursor != null)
+			bytes += 2 * key.cursor.length();
+
+		if(response.isSetCursor())
+			bytes += 2 * response.getCursor().length();
+
+		if(response.isSetElements()){
+			for(Element el : response.getElements()){
+				bytes += ELEMENT_OVERHEAD;
+
+				if(el.isSetKey())
+					bytes += 2 * el.getKey().length();
+
+				if(el.isSetPayload())
+					bytes += 2 * el.getPayload().length();
+			}
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Everything in a SearchQuery that changes the response
+	 */
+	static class Key {
+		private final String              query;
+		private final String              sortby;
+		private final boolean             desc;
+		private final int                 offset;
+		private final int                 limit;
+		private final boolean             payload;
+		private final int                 defaultType;
+		private final Map<String,Integer> fieldTypes;
+		private final List<String>        filters;
+		private final String              cursor;
+
+		Key(SearchQuery q, QueryAnalyzer analyzer) {
+			query       = q.getQuery();
+			sortby      = q.isSetSortby() ? q.getSortby().trim() : "";
+			desc        = sortby.length() > 0 && q.isDesc();
+			offset      = q.getOffset();
+			limit       = q.getLimit();
+			payload     = q.isPayload();
+			defaultType = analyzer.getDefaultType();
+			fieldTypes  = new TreeMap<String,Integer>(analyzer.getFieldTypes());
+			filters     = q.isSetFilters() ? new ArrayList<String>(q.getFilters()) : new ArrayList<String>();
+			cursor      = q.isSetCursor() ? q.getCursor() : null;
+		}
+
+		public boolean equals(Object o) {
+			if(!(o instanceof Key))
+				return false;
+
+			Key k = (Key) o;
+
+			return query.equals(k.query) && sortby.equals(k.sortby) && desc == k.desc
+				&& offset == k.offset && limit == k.limit && payload == k.payload
+				&& defaultType == k.defaultType && fieldTypes.equals(k.fieldTypes)
+				&& filters.equals(k.filters)
+				&& (cursor == null ? k.cursor == null : cursor.equals(k.cursor));
+		}
+
+		public int hashCode() {
+			int h = query.hashCode();
+			h = h * 31 + sortby.hashCode();
+			h = h * 31 + offset;
+			h = h * 31 + limit;
+			h = h * 31 + (desc ? 1 : 0) + (payload ? 2 : 0);
+			h = h * 31 + defaultType;
+			h = h * 31 + fieldTypes.hashCode();
+			h = h * 31 + filters.hashCode();
+			return h * 31 + (cursor == null ? 0 : cursor.hashCode());
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package org.thrudb.thrudex.lucene;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+
+import org.thrudb.thrudex.ThrudexException;
+import org.thrudb.thrudex.ThrudexExceptionImpl;
+
+/**
+ * Where a page of a cursor search ended, the sort value and key of its
+ * last hit. The next page only collects hits that order after it.
+ *
+ * Hits order by score, or by sortby value, then by key, so the order
+ * holds across snapshots where doc ids don't.
+ *
+ * @author jake
+ *
+ */
+public class SearchCursor {
+
+	private static final char SCORE   = 's';
+	private static final char INT     = 'i';
+	private static final char FLOAT   = 'f';
+	private static final char STRING  = 't';
+	private static final char MISSING = 'n';
+
+	private final Comparable<?> value;
+	private final String        key;
+	private final boolean       score;
+
+	/**
+	 * @param value Float score, or Integer, Float or String sort value, null
+	 *              if the hit has none
+	 * @param score if value is a score
+	 */
+	SearchCursor(Comparable<?> value, String key, boolean score) {
+		this.value = value;
+		this.key   = key;
+		this.score = score;
+	}
+
+	public Comparable<?> getValue() {
+		return value;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public boolean isScore() {
+		return score;
+	}
+
+	/**
+	 * Reads a cursor a search response handed out
+	 */
+	public static SearchCursor parse(String token) throws ThrudexException {
+		String[] parts = token.split(":", -1);
+
+		if(parts.length != 3 || parts[0].length() != 1)
+			throw new ThrudexExceptionImpl("Invalid cursor: "+token);
+
+		try{
+			String value = URLDecoder.decode(parts[1], "UTF-8");
+			String key   = URLDecoder.decode(parts[2], "UTF-8");
+
+			switch(parts[0].charAt(0)){
+			case SCORE:
+				return new SearchCursor(Float.intBitsToFloat((int) Long.parseLong(value, 16)), key, true);
+			case FLOAT:
+				return new SearchCursor(Float.intBitsToFloat((int) Long.parseLong(value, 16)), key, false);
+			case INT:
+				return new SearchCursor(Integer.valueOf(value), key, false);
+			case STRING:
+				return new SearchCursor(value, key, false);
+			case MISSING:
+				return new SearchCursor(null, key, false);
+			default:
+				throw new ThrudexExceptionImpl("Invalid cursor: "+token);
+			}
+		}catch(IllegalArgumentException e){
+			throw new ThrudexExceptionImpl("Invalid cursor: "+token);
+		}catch(UnsupportedEncodingException e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @return the token a response hands out
+	 */
+	public String toString() {
+		char   type;
+		String v;
+
+		if(value == null){
+			type = MISSING;
+			v    = "";
+		}else if(value instanceof Float){
+			type = score ? SCORE : FLOAT;
+			v    = Integer.toHexString(Float.floatToIntBits((Float) value));
+		}else if(value instanceof Integer){
+			type = INT;
+			v    = value.toString();
+		}else{
+			type = STRING;
+			v    = value.toString();
+		}
+
+		try{
+			return type + ":" + URLEncoder.encode(v, "UTF-8") + ":" + URLEncoder.encode(key, "UTF-8");
+		}catch(UnsupportedEncodingException e){
+			throw new RuntimeException(e);
+		}
+	}
+}
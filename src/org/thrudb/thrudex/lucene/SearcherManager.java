@@ -0,0 +1,170 @@
+package org.thrudb.thrudex.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ParallelMultiSearcher;
+import org.apache.lucene.search.Searchable;
+import org.apache.lucene.search.Searcher;
+import org.apache.lucene.store.AlreadyClosedException;
+
+/**
+ * Hands out the current searchers of an index without locking.
+ *
+ * The index publishes a snapshot of its readers whenever it swaps one.
+ * Searches acquire the snapshot, which keeps its readers open until they
+ * release it. Every snapshot holds a reference on its readers, so a reader
+ * the index replaces is only closed once the last search using it is done.
+ *
+ * @author jake
+ *
+ */
+public class SearcherManager {
+
+	private Logger            logger = Logger.getLogger(getClass());
+	private volatile Snapshot current;
+	private volatile boolean  closed = false;
+
+	/**
+	 * An immutable view of the index, release it after searching
+	 */
+	public class Snapshot {
+		private final IndexReader[] readers;
+		private final Searcher      searcher;
+		private final Filter        filter;
+		private final long          generation;
+		private final AtomicInteger refs = new AtomicInteger(1); //the manager's
+
+		Snapshot(IndexReader[] readers, Searcher searcher, Filter filter, long generation) {
+			this.readers    = readers;
+			this.searcher   = searcher;
+			this.filter     = filter;
+			this.generation = generation;
+		}
+
+		/**
+		 * @return null if the index is empty
+		 */
+		public Searcher getSearcher() {
+			return searcher;
+		}
+
+		public Filter getFilter() {
+			return filter;
+		}
+
+		/**
+		 * @return the readers searched, without the empty ones
+		 */
+		public IndexReader[] getReaders() {
+			return readers;
+		}
+
+		/**
+		 * @return goes up by one every publish
+		 */
+		public long getGeneration() {
+			return generation;
+		}
+
+		private boolean tryIncRef() {
+			int n;
+			do{
+				n = refs.get();
+
+				if(n <= 0)
+					return false;
+
+			}while(!refs.compareAndSet(n, n + 1));
+
+			return true;
+		}
+
+		private void decRef() {
+			if(refs.decrementAndGet() > 0)
+				return;
+
+			for(IndexReader reader : readers){
+				try{
+					reader.decRef();
+				}catch(IOException e){
+					logger.warn("Unable to close reader", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Makes readers the ones new searches use. Readers without documents
+	 * are left out. The caller keeps its own reference on the readers and
+	 * drops it with decRef once it replaces them.
+	 *
+	 * @param filter applied to every search, may be null
+	 */
+	public synchronized void publish(IndexReader[] readers, Filter filter) throws IOException {
+		List<IndexReader> used = new ArrayList<IndexReader>();
+
+		for(IndexReader reader : readers){
+			if(reader != null && reader.maxDoc() > 0)
+				used.add(reader);
+		}
+
+		Searcher searcher = null;
+
+		if(used.size() == 1){
+			searcher = new IndexSearcher(used.get(0));
+		}else if(used.size() > 1){
+			Searchable[] searchables = new Searchable[used.size()];
+			for(int i = 0; i < searchables.length; i++)
+				searchables[i] = new IndexSearcher(used.get(i));
+
+			searcher = new ParallelMultiSearcher(searchables);
+		}
+
+		for(IndexReader reader : used)
+			reader.incRef();
+
+		Snapshot previous = current;
+		current = new Snapshot(used.toArray(new IndexReader[used.size()]), searcher, filter,
+				previous == null ? 1 : previous.generation + 1);
+
+		if(previous != null)
+			previous.decRef();
+	}
+
+	/**
+	 * @return the current snapshot, which must be released
+	 */
+	public Snapshot acquire() {
+		while(true){
+			Snapshot snapshot = current;
+
+			//lost a race with publish, the next one is already there
+			if(snapshot.tryIncRef())
+				return snapshot;
+
+			if(closed)
+				throw new AlreadyClosedException("Index is closed");
+		}
+	}
+
+	public void release(Snapshot snapshot) {
+		snapshot.decRef();
+	}
+
+	/**
+	 * Drops the current snapshot, its readers close once searches release it
+	 */
+	public synchronized void close() {
+		closed = true;
+
+		if(current != null)
+			current.decRef();
+	}
+}
@@ -0,0 +1,236 @@
+package org.thrudb.thrudex.lucene;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.ParallelMultiSearcher;
+import org.apache.lucene.search.Searchable;
+import org.apache.lucene.search.Searcher;
+import org.apache.lucene.util.OpenBitSet;
+import org.thrudb.thrudex.SearchQuery;
+import org.thrudb.thrudex.SearchResponse;
+import org.thrudb.thrudex.ThrudexException;
+import org.thrudb.thrudex.ThrudexExceptionImpl;
+import org.thrudb.util.hash.MurmurHash;
+
+/**
+ * Splits an index into RealTimeLuceneIndex shards by a hash of the
+ * document key, so writes to different shards run in parallel.
+ *
+ * Searches run on one ParallelMultiSearcher over every shard's snapshot,
+ * which scores with index wide term stats and merges the top hits by
+ * score or sortby like a single index would.
+ *
+ * The shards live in the index directory with a file holding their count,
+ * which can't change once the index is created.
+ *
+ * @author jake
+ *
+ */
+public class ShardedLuceneIndex implements LuceneIndex {
+
+	static final String SHARDS_FILE = "shards";
+
+	private final RealTimeLuceneIndex[] shards;
+	private final CachingSearcher       cachingSearcher = new CachingSearcher();
+
+	/**
+	 * @param shardCount 0 opens an existing index with its own count
+	 */
+	ShardedLuceneIndex(String indexRoot, String indexName, int shardCount, long refreshInterval) throws IOException, ThrudexException {
+		File dir   = new File(indexRoot, indexName);
+		int  saved = getShardCount(indexRoot, indexName);
+
+		if(saved > 0){
+			if(shardCount > 0 && shardCount != saved)
+				throw new ThrudexExceptionImpl(indexName+" already has "+saved+" shards");
+
+			shardCount = saved;
+		}else{
+			if(shardCount < 1)
+				throw new ThrudexExceptionImpl("Invalid shard count: "+shardCount);
+
+			//its docs would be left behind in the unsharded index
+			if(IndexReader.indexExists(dir))
+				throw new ThrudexExceptionImpl(indexName+" already exists unsharded");
+
+			if(!dir.isDirectory() && !dir.mkdirs())
+				throw new IOException("can't create "+dir);
+
+			FileWriter out = new FileWriter(new File(dir, SHARDS_FILE));
+			try{
+				out.write(String.valueOf(shardCount));
+			}finally{
+				out.close();
+			}
+		}
+
+		shards = new RealTimeLuceneIndex[shardCount];
+		for(int i=0; i<shardCount; i++)
+			shards[i] = new RealTimeLuceneIndex(dir.getPath(), "shard"+i, refreshInterval);
+	}
+
+	/**
+	 * @return the shards of an index on disk, 0 if it isn't sharded
+	 */
+	public static int getShardCount(String indexRoot, String indexName) throws IOException {
+		if(indexName == null)
+			return 0;
+
+		File file = new File(new File(indexRoot, indexName), SHARDS_FILE);
+
+		if(!file.isFile())
+			return 0;
+
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try{
+			String line = in.readLine();
+
+			if(line == null)
+				throw new IOException("empty "+file);
+
+			return Integer.parseInt(line.trim());
+		}catch(NumberFormatException e){
+			throw new IOException("invalid "+file);
+		}finally{
+			in.close();
+		}
+	}
+
+	private RealTimeLuceneIndex shard(String key) {
+		byte[] bytes;
+		try{
+			bytes = key.getBytes("UTF-8");
+		}catch(UnsupportedEncodingException e){
+			throw new RuntimeException(e);
+		}
+
+		return shards[(MurmurHash.getInstance().hash(bytes) & Integer.MAX_VALUE) % shards.length];
+	}
+
+	public void put(String key, Document document, Analyzer analyzer) throws ThrudexException {
+		shard(key).put(key, document, analyzer);
+	}
+
+	public void remove(String key) throws ThrudexException {
+		shard(key).remove(key);
+	}
+
+	public SearchResponse search(SearchQuery query, Analyzer analyzer) throws ThrudexException {
+		if(!query.isSetQuery() || query.query.trim().equals(""))
+			throw new ThrudexExceptionImpl("Empty Query");
+
+		//read your writes
+		if(query.isRefresh()){
+			try{
+				for(RealTimeLuceneIndex shard : shards)
+					shard.refresh();
+			}catch(IOException e){
+				throw new ThrudexException(e.toString());
+			}
+		}
+
+		SearcherManager.Snapshot[] snapshots = new SearcherManager.Snapshot[shards.length];
+		try{
+			List<Searchable>              searchables = new ArrayList<Searchable>();
+			List<IndexReader>             readers     = new ArrayList<IndexReader>();
+			Map<IndexReader,Filter>       filters     = new IdentityHashMap<IndexReader,Filter>();
+			long                          generation  = 0;
+
+			for(int i=0; i<shards.length; i++){
+				snapshots[i] = shards[i].getSearcherManager().acquire();
+
+				//every shard's generation only goes up, so the sum does too
+				generation += snapshots[i].getGeneration();
+
+				if(snapshots[i].getSearcher() == null)
+					continue;
+
+				searchables.add(snapshots[i].getSearcher());
+
+				for(IndexReader reader : snapshots[i].getReaders()){
+					readers.add(reader);
+					filters.put(reader, snapshots[i].getFilter());
+				}
+			}
+
+			Searcher searcher = null;
+			if(searchables.size() == 1)
+				searcher = (Searcher) searchables.get(0);
+			else if(searchables.size() > 1)
+				searcher = new ParallelMultiSearcher(searchables.toArray(new Searchable[searchables.size()]));
+
+			return cachingSearcher.search(query, analyzer, searcher,
+					readers.toArray(new IndexReader[readers.size()]), new ShardFilter(filters), generation);
+
+		}catch(IOException e){
+			throw new ThrudexException(e.toString());
+		}finally{
+			for(int i=0; i<snapshots.length; i++){
+				if(snapshots[i] != null)
+					shards[i].getSearcherManager().release(snapshots[i]);
+			}
+		}
+	}
+
+	public CachingSearcher getCachingSearcher() {
+		return cachingSearcher;
+	}
+
+	public void setFlushPolicy(FlushPolicy policy) {
+		for(RealTimeLuceneIndex shard : shards)
+			shard.setFlushPolicy(policy);
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	public void optimize() throws ThrudexException {
+		for(RealTimeLuceneIndex shard : shards)
+			shard.optimize();
+	}
+
+	public void shutdown() {
+		for(RealTimeLuceneIndex shard : shards)
+			shard.shutdown();
+	}
+
+	/**
+	 * Applies each shard's filter to that shard's readers
+	 */
+	static class ShardFilter extends Filter {
+		private static final long serialVersionUID = 1L;
+
+		private final Map<IndexReader,Filter> filters;
+
+		ShardFilter(Map<IndexReader,Filter> filters) {
+			this.filters = filters;
+		}
+
+		public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+			Filter filter = filters.get(reader);
+
+			if(filter != null)
+				return filter.getDocIdSet(reader);
+
+			OpenBitSet all = new OpenBitSet(reader.maxDoc());
+			all.set(0, reader.maxDoc());
+
+			return all;
+		}
+	}
+}
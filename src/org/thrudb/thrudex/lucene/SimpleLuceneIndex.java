@@ -14,8 +14,8 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryParser.QueryParser;
-import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Searcher;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TopFieldDocs;
 import org.apache.lucene.store.Directory;
@@ -29,16 +29,18 @@ import org.thrudb.thrudex.ThrudexExceptionImpl;
 /**
  * Very straight forward implementation of lucene api
  *
+ * Writes are committed by the next search, searches run on a snapshot
+ * from the {@link SearcherManager} without holding the index monitor.
+ *
  */
 public class SimpleLuceneIndex implements LuceneIndex {
 
 	Analyzer      analyzer = new StandardAnalyzer();
 	IndexWriter   writer;
 	IndexReader   reader;
-	IndexSearcher searcher;
 	Directory     directory;
-	QueryParser   queryParser = new QueryParser(DOCUMENT_KEY,analyzer);
 	AtomicBoolean hasWrite = new AtomicBoolean(false);
+	SearcherManager searcherManager = new SearcherManager();
 	
 	Logger logger = Logger.getLogger(getClass());
 	
@@ -68,7 +70,26 @@ public class SimpleLuceneIndex implements LuceneIndex {
 		
 		//open this read only
 		reader   = IndexReader.open(directory, true);
-		searcher = new IndexSearcher(reader);
+		searcherManager.publish(new IndexReader[]{reader}, null);
+	}
+	
+	/**
+	 * Commits any writes and publishes a reader that sees them
+	 */
+	private synchronized void refresh() throws IOException {
+		if(!hasWrite.getAndSet(false))
+			return;
+		
+		writer.commit();
+		
+		//Reopen index reader
+		IndexReader newReader = reader.reopen();
+		if(reader != newReader){
+			reader.decRef();
+			reader = newReader;
+		}
+		
+		searcherManager.publish(new IndexReader[]{reader}, null);
 	}
 	
 	public void put(String key, Document document, Analyzer analyzer) throws ThrudexException{
@@ -107,36 +128,30 @@ public class SimpleLuceneIndex implements LuceneIndex {
 		//Parse Query
 		Query parsedQuery;
 		
-		//MySearcher represents the searcher instance we'll use
-		//for the duration of this function call, since other threads
-		//may change searcher on us...
-		IndexSearcher mySearcher;
+		//Commit any prev writes
 		try{
-
-			//This section needs to be thread safe
-			synchronized(this){
-						
-				//Commit any prev writes
-				if(hasWrite.getAndSet(false)){
-					writer.commit();
-			
-					//Reopen index reader
-					IndexReader newReader = reader.reopen();
-					if(reader != newReader){	
-						//reader.close();
-						searcher.close();
-						reader   = newReader;			
-						searcher = new IndexSearcher(reader);
-					}				
-				}
-				
-				mySearcher = searcher;
-				
-				try{
-					parsedQuery = queryParser.parse(query.getQuery());
-				}catch(org.apache.lucene.queryParser.ParseException e){
-					throw new ThrudexExceptionImpl(e.toString());
-				}
+			refresh();
+		}catch(IOException e){
+			throw new ThrudexException(e.toString());
+		}
+		
+		//the reader stays open for this whole call
+		SearcherManager.Snapshot snapshot = searcherManager.acquire();
+		try{
+			
+			//empty index
+			if(snapshot.getSearcher() == null){
+				SearchResponse response = new SearchResponse();
+				response.setTotal(0);
+				return response;
+			}
+			
+			Searcher mySearcher = snapshot.getSearcher();
+			
+			try{
+				parsedQuery = new QueryParser(DOCUMENT_KEY,this.analyzer).parse(query.getQuery());
+			}catch(org.apache.lucene.queryParser.ParseException e){
+				throw new ThrudexExceptionImpl(e.toString());
 			}
 		
 			//Set Sort
@@ -179,6 +194,8 @@ public class SimpleLuceneIndex implements LuceneIndex {
 			
 		}catch(IOException e){
 			throw new ThrudexException(e.toString());
+		}finally{
+			searcherManager.release(snapshot);
 		}
 			
 	}
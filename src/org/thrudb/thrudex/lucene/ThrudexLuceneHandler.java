@@ -3,8 +3,18 @@ package org.thrudb.thrudex.lucene;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
@@ -24,6 +34,7 @@ import org.thrudb.thrudex.SearchResponse;
 import org.thrudb.thrudex.ThrudexException;
 import org.thrudb.thrudex.ThrudexExceptionImpl;
 import org.thrudb.thrudex.Thrudex.Iface;
+import org.thrudb.util.stats.ServiceStats;
 
 /**
  * Manages a set of lucene indexes. We keep this one lucene backend per index
@@ -33,26 +44,175 @@ import org.thrudb.thrudex.Thrudex.Iface;
  */
 public class ThrudexLuceneHandler implements Iface {
 
-	private volatile Map<Integer, Analyzer> analyzers = new HashMap<Integer, Analyzer>();
+	private volatile Map<Integer, Analyzer> analyzers = new ConcurrentHashMap<Integer, Analyzer>();
 	private Logger logger = Logger.getLogger(this.getClass().getSimpleName());
-	private volatile Map<String, LuceneIndex> indexMap = new HashMap<String, LuceneIndex>();
+	private volatile Map<String, LuceneIndex> indexMap = new ConcurrentHashMap<String, LuceneIndex>();
 	private String indexRoot;
+	private ServiceStats stats = new ServiceStats();
+	private long refreshInterval = RealTimeLuceneIndex.DEFAULT_REFRESH_INTERVAL;
+	private int queryCacheSize = ParsedQueryCache.DEFAULT_SIZE;
+	private Map<String, Integer> indexQueryCacheSizes = new HashMap<String, Integer>();
+	private long resultCacheSize = ResultCache.DEFAULT_SIZE;
+	private int filterCacheSize = FilterCache.DEFAULT_SIZE;
+	private FlushPolicy flushPolicy = new FlushPolicy();
+	private volatile ExecutorService analysisPool;
+	private int analysisThreads = 0;
+	private volatile ExecutorService searchPool;
+	private volatile long searchListTimeout = 0;
+
+	/**
+	 * Documents queued for analysis per analysis thread
+	 */
+	static final int ANALYSIS_WINDOW = 16;
+
+	private final Thread shutdownHook = new IndexShutdownHandler(indexMap);
 
 	public ThrudexLuceneHandler(String indexRoot) {
 		this.indexRoot = indexRoot;
 
-		Runtime.getRuntime()
-				.addShutdownHook(new IndexShutdownHandler(indexMap));
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+		setAnalysisThreads(Runtime.getRuntime().availableProcessors());
+		setSearchThreads(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Shuts down every open index and the worker pools, for when the
+	 * handler goes away before the process does
+	 */
+	public synchronized void shutdown() {
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException e) {
+			// the hook is already running
+			return;
+		}
+
+		shutdownHook.run();
+		indexMap.clear();
+
+		if (analysisPool != null)
+			analysisPool.shutdown();
+
+		if (searchPool != null)
+			searchPool.shutdown();
+	}
+
+	/**
+	 * Sets how many threads analyze the documents of a putList, 1 or less
+	 * puts them one at a time
+	 */
+	public synchronized void setAnalysisThreads(int threads) {
+		ExecutorService old = analysisPool;
+
+		analysisThreads = threads;
+		analysisPool = threads > 1 ? Executors.newFixedThreadPool(threads,
+				new DaemonThreadFactory("analysis-")) : null;
+
+		if (old != null)
+			old.shutdown();
+	}
+
+	/**
+	 * Sets how many threads run the queries of a searchList, 1 or less runs
+	 * them one at a time
+	 */
+	public synchronized void setSearchThreads(int threads) {
+		ExecutorService old = searchPool;
+
+		searchPool = threads > 1 ? Executors.newFixedThreadPool(threads,
+				new DaemonThreadFactory("search-")) : null;
+
+		if (old != null)
+			old.shutdown();
+	}
+
+	/**
+	 * Sets the ms a searchList waits for its queries, the ones still
+	 * running then come back with a timeout in ex. 0 waits for all.
+	 */
+	public void setSearchListTimeout(long searchListTimeout) {
+		this.searchListTimeout = searchListTimeout;
+	}
+
+	/**
+	 * Sets how many ms old the writes a search misses can be, for indexes
+	 * opened after this
+	 */
+	public void setRefreshInterval(long refreshInterval) {
+		this.refreshInterval = refreshInterval;
+	}
+
+	/**
+	 * Sets how many parsed queries each index keeps, 0 disables the cache
+	 */
+	public void setQueryCacheSize(int queryCacheSize) {
+		this.queryCacheSize = queryCacheSize;
+	}
+
+	/**
+	 * Overrides the query cache size for one index
+	 */
+	public void setQueryCacheSize(String index, int queryCacheSize) {
+		indexQueryCacheSizes.put(index, queryCacheSize);
+	}
+
+	/**
+	 * Sets the bytes of search responses each index keeps for searches
+	 * that set cache, 0 disables the cache
+	 */
+	public void setResultCacheSize(long resultCacheSize) {
+		this.resultCacheSize = resultCacheSize;
+	}
+
+	/**
+	 * Sets how many SearchQuery filters each index keeps the matching
+	 * documents of, 0 disables the cache
+	 */
+	public void setFilterCacheSize(int filterCacheSize) {
+		this.filterCacheSize = filterCacheSize;
+	}
+
+	/**
+	 * Sets when indexes opened after this write their RAM buffer to disk,
+	 * give the policy a budget to cap the buffers of every index together
+	 */
+	public void setFlushPolicy(FlushPolicy flushPolicy) {
+		this.flushPolicy = flushPolicy;
+	}
+
+	/**
+	 * @return the per op stats the server records calls in
+	 */
+	public ServiceStats getStats() {
+		return stats;
 	}
 
 	public String admin(String op, String data) throws ThrudexException,
 			TException {
 
-		if (op.equals("create_index"))
-			addIndex(data);
+		if (op.equals("stats"))
+			return ServiceStats.format(getStats(stats.getStats()));
+
+		// name or name:shards
+		if (op.equals("create_index")) {
+			int split = data == null ? -1 : data.lastIndexOf(':');
+
+			if (split < 0) {
+				addIndex(data);
+			} else {
+				try {
+					addIndex(data.substring(0, split), Integer.parseInt(data
+							.substring(split + 1).trim()));
+				} catch (NumberFormatException e) {
+					throw new ThrudexExceptionImpl("Invalid shard count: "
+							+ data);
+				}
+			}
+		}
 
 		if (op.equals("optimize")) {
-			if (indexMap.containsKey(data)) {
+			if (data != null && indexMap.containsKey(data)) {
 				try {
 					indexMap.get(data).optimize();
 				} catch (ThrudexException e) {
@@ -66,16 +226,64 @@ public class ThrudexLuceneHandler implements Iface {
 	}
 
 	public synchronized void addIndex(String name) throws ThrudexException {
+		addIndex(name, 1);
+	}
+
+	/**
+	 * Creates or opens an index, more than one shard splits it by document
+	 * key. An existing index keeps the shards it was created with.
+	 */
+	public synchronized void addIndex(String name, int shards)
+			throws ThrudexException {
 
 		if (name == null || name.trim().equals(""))
 			return;
 
-		if (indexMap.containsKey(name))
+		LuceneIndex open = indexMap.get(name);
+		if (open != null) {
+			int count = open instanceof ShardedLuceneIndex ? ((ShardedLuceneIndex) open)
+					.getShardCount()
+					: 1;
+
+			if (shards > 1 && shards != count)
+				throw new ThrudexExceptionImpl(name + " already has " + count
+						+ " shards");
+
 			return;
+		}
+
+		if (shards < 1)
+			throw new ThrudexExceptionImpl("Invalid shard count: " + shards);
 
 		try {
 			// indexMap.put(name, new SimpleLuceneIndex(indexRoot,name));
-			indexMap.put(name, new RealTimeLuceneIndex(indexRoot, name));
+			LuceneIndex index;
+			CachingSearcher searcher;
+
+			if (shards > 1
+					|| ShardedLuceneIndex.getShardCount(indexRoot, name) > 0) {
+				ShardedLuceneIndex sharded = new ShardedLuceneIndex(indexRoot,
+						name, shards > 1 ? shards : 0, refreshInterval);
+				sharded.setFlushPolicy(flushPolicy);
+
+				index = sharded;
+				searcher = sharded.getCachingSearcher();
+			} else {
+				RealTimeLuceneIndex realTime = new RealTimeLuceneIndex(
+						indexRoot, name, refreshInterval);
+				realTime.setFlushPolicy(flushPolicy);
+
+				index = realTime;
+				searcher = realTime.getCachingSearcher();
+			}
+
+			Integer cacheSize = indexQueryCacheSizes.get(name);
+			searcher.setQueryCacheSize(cacheSize == null ? queryCacheSize
+					: cacheSize);
+			searcher.setResultCacheSize(resultCacheSize);
+			searcher.setFilterCacheSize(filterCacheSize);
+
+			indexMap.put(name, index);
 		} catch (IOException e) {
 			throw new ThrudexException(e.toString());
 		}
@@ -99,6 +307,16 @@ public class ThrudexLuceneHandler implements Iface {
 	 * Add/Replace a document
 	 */
 	public void put(Document d) throws ThrudexException, TException {
+		analyze(d, false).put();
+	}
+
+	/**
+	 * Builds the lucene document for a put
+	 * 
+	 * @param tokenize analyze the fields now rather than in the index
+	 */
+	private AnalyzedDocument analyze(Document d, boolean tokenize)
+			throws ThrudexException {
 
 		// make sure index is valid
 		if (!isValidIndex(d.index))
@@ -134,10 +352,30 @@ public class ThrudexLuceneHandler implements Iface {
 			else
 				fieldStoreType = org.apache.lucene.document.Field.Store.NO;
 
+			Analyzer fieldAnalyzer = getAnalyzer(field.getAnalyzer());
+
 			// Create Lucene Field
-			org.apache.lucene.document.Field luceneField = new org.apache.lucene.document.Field(
-					field.key, field.value, fieldStoreType,
-					org.apache.lucene.document.Field.Index.ANALYZED);
+			org.apache.lucene.document.Field luceneField;
+			if (tokenize) {
+				// the value is stored apart from the tokens
+				if (field.isStore())
+					luceneDocument.add(new org.apache.lucene.document.Field(
+							field.key, field.value,
+							org.apache.lucene.document.Field.Store.YES,
+							org.apache.lucene.document.Field.Index.NO));
+
+				try {
+					luceneField = new org.apache.lucene.document.Field(
+							field.key, new PreAnalyzedTokenStream(
+									fieldAnalyzer, field.key, field.value));
+				} catch (IOException e) {
+					throw new ThrudexExceptionImpl(e.toString());
+				}
+			} else {
+				luceneField = new org.apache.lucene.document.Field(field.key,
+						field.value, fieldStoreType,
+						org.apache.lucene.document.Field.Index.ANALYZED);
+			}
 
 			if (field.isSetWeight())
 				luceneField.setBoost(field.weight);
@@ -154,7 +392,7 @@ public class ThrudexLuceneHandler implements Iface {
 			}
 
 			// Add field specific analyzer to qAnalyzer
-			qAnalyzer.addAnalyzer(field.key, getAnalyzer(field.getAnalyzer()));
+			qAnalyzer.addAnalyzer(field.key, fieldAnalyzer);
 		}
 
 		// Add payload
@@ -165,8 +403,8 @@ public class ThrudexLuceneHandler implements Iface {
 					org.apache.lucene.document.Field.Index.NOT_ANALYZED));
 		}
 
-		// Document is not ready to put into the index
-		indexMap.get(d.index).put(d.key, luceneDocument, qAnalyzer);
+		return new AnalyzedDocument(indexMap.get(d.index), d.key,
+				luceneDocument, qAnalyzer);
 	}
 
 	/**
@@ -174,21 +412,77 @@ public class ThrudexLuceneHandler implements Iface {
 	 * 
 	 * Rather than returning on any error, this code captures any errors for
 	 * specific documents and puts them into a list
+	 * 
+	 * The analysis pool builds and tokenizes the documents ahead, they go
+	 * into the indexes in list order so the last put of a key wins
 	 */
 	public List<ThrudexException> putList(List<Document> documents)
 			throws ThrudexException, TException {
 
 		List<ThrudexException> exList = new ArrayList<ThrudexException>();
 
-		for (Document document : documents) {
-			try {
-				put(document);
-			} catch (ThrudexException ex) {
+		ExecutorService pool = analysisPool;
 
-				ex.what += document.key;
+		if (pool == null || documents.size() < 2) {
+			for (Document document : documents) {
+				try {
+					put(document);
+				} catch (ThrudexException ex) {
 
-				exList.add(ex);
+					ex.what += document.key;
+
+					exList.add(ex);
+				}
 			}
+
+			return exList;
+		}
+
+		// bounds the tokens held in memory
+		int window = analysisThreads * ANALYSIS_WINDOW;
+
+		List<Future<AnalyzedDocument>> pending = new LinkedList<Future<AnalyzedDocument>>();
+		int submitted = 0;
+
+		try {
+			for (Document document : documents) {
+
+				while (submitted < documents.size()
+						&& pending.size() < window) {
+					final Document next = documents.get(submitted++);
+
+					pending.add(pool.submit(new Callable<AnalyzedDocument>() {
+						public AnalyzedDocument call() throws ThrudexException {
+							return analyze(next, true);
+						}
+					}));
+				}
+
+				try {
+					pending.remove(0).get().put();
+				} catch (ExecutionException e) {
+					ThrudexException ex;
+					if (e.getCause() instanceof ThrudexException)
+						ex = (ThrudexException) e.getCause();
+					else
+						ex = new ThrudexExceptionImpl(e.getCause().toString());
+
+					ex.what += document.key;
+
+					exList.add(ex);
+				} catch (ThrudexException ex) {
+
+					ex.what += document.key;
+
+					exList.add(ex);
+				}
+			}
+		} catch (InterruptedException e) {
+			for (Future<AnalyzedDocument> f : pending)
+				f.cancel(true);
+
+			Thread.currentThread().interrupt();
+			throw new ThrudexException(e.toString());
 		}
 
 		return exList;
@@ -241,12 +535,12 @@ public class ThrudexLuceneHandler implements Iface {
 
 		// Build the query analyzer
 		Analyzer defaultAnalyzer = getAnalyzer(s.getDefaultAnalyzer());
-		PerFieldAnalyzerWrapper qAnalyzer = new PerFieldAnalyzerWrapper(
-				defaultAnalyzer);
+		QueryAnalyzer qAnalyzer = new QueryAnalyzer(defaultAnalyzer, s
+				.getDefaultAnalyzer());
 		if (s.isSetFieldAnalyzers()) {
 			for (String field : s.fieldAnalyzers.keySet())
 				qAnalyzer.addAnalyzer(field, getAnalyzer(s.fieldAnalyzers
-						.get(field)));
+						.get(field)), s.fieldAnalyzers.get(field));
 		}
 
 		return indexMap.get(s.index).search(s, qAnalyzer);
@@ -257,14 +551,161 @@ public class ThrudexLuceneHandler implements Iface {
 
 		List<SearchResponse> responses = new ArrayList<SearchResponse>();
 
-		for (SearchQuery query : queries) {
-			responses.add(search(query));
+		ExecutorService pool = searchPool;
+
+		if (pool == null || queries.size() < 2) {
+			for (SearchQuery query : queries) {
+				try {
+					responses.add(search(query));
+				} catch (ThrudexException ex) {
+					responses.add(failed(ex));
+				}
+			}
+
+			return responses;
+		}
+
+		List<Future<SearchResponse>> pending = new ArrayList<Future<SearchResponse>>();
+
+		for (final SearchQuery query : queries) {
+			pending.add(pool.submit(new Callable<SearchResponse>() {
+				public SearchResponse call() throws Exception {
+					return search(query);
+				}
+			}));
+		}
+
+		long timeout = searchListTimeout;
+		long deadline = System.currentTimeMillis() + timeout;
+
+		for (int i = 0; i < pending.size(); i++) {
+			Future<SearchResponse> future = pending.get(i);
+
+			try {
+				if (timeout > 0)
+					responses.add(future.get(Math.max(0, deadline
+							- System.currentTimeMillis()),
+							TimeUnit.MILLISECONDS));
+				else
+					responses.add(future.get());
+
+			} catch (TimeoutException e) {
+				// interrupting a running search can close the index files
+				// under it, so only queued ones are stopped
+				future.cancel(false);
+
+				responses.add(failed(new ThrudexExceptionImpl(
+						"Search timed out: " + queries.get(i).index)));
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof ThrudexException)
+					responses.add(failed((ThrudexException) e.getCause()));
+				else
+					responses.add(failed(new ThrudexExceptionImpl(e
+							.getCause().toString())));
+			} catch (InterruptedException e) {
+				for (Future<SearchResponse> f : pending)
+					f.cancel(false);
+
+				Thread.currentThread().interrupt();
+				throw new ThrudexException(e.toString());
+			}
 		}
 
 		return responses;
 	}
 
+	private SearchResponse failed(ThrudexException ex) {
+		SearchResponse response = new SearchResponse();
+		response.setEx(ex);
+
+		return response;
+	}
+
+	/**
+	 * Adds each index's query, result and filter cache counters to the op
+	 * stats
+	 */
+	private Map<String, Long> getStats(Map<String, Long> stats) {
+		for (Map.Entry<String, LuceneIndex> e : indexMap.entrySet()) {
+			CachingSearcher searcher;
+
+			if (e.getValue() instanceof RealTimeLuceneIndex)
+				searcher = ((RealTimeLuceneIndex) e.getValue())
+						.getCachingSearcher();
+			else if (e.getValue() instanceof ShardedLuceneIndex)
+				searcher = ((ShardedLuceneIndex) e.getValue())
+						.getCachingSearcher();
+			else
+				continue;
+
+			ParsedQueryCache cache = searcher.getQueryCache();
+
+			stats.put("qc_hits_" + e.getKey(), cache.getHits());
+			stats.put("qc_misses_" + e.getKey(), cache.getMisses());
+			stats.put("qc_uncached_" + e.getKey(), cache.getUncached());
+			stats.put("qc_size_" + e.getKey(), (long) cache.size());
+
+			ResultCache results = searcher.getResultCache();
+
+			stats.put("rc_hits_" + e.getKey(), results.getHits());
+			stats.put("rc_misses_" + e.getKey(), results.getMisses());
+			stats.put("rc_bytes_" + e.getKey(), results.getBytes());
+
+			FilterCache filters = searcher.getFilterCache();
+
+			stats.put("fc_hits_" + e.getKey(), filters.getHits());
+			stats.put("fc_misses_" + e.getKey(), filters.getMisses());
+			stats.put("fc_uncached_" + e.getKey(), filters.getUncached());
+			stats.put("fc_size_" + e.getKey(), (long) filters.size());
+		}
+
+		return stats;
+	}
+
+	/**
+	 * Names the pool threads, they don't keep the server up
+	 */
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private int count = 0;
+
+		DaemonThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		public synchronized Thread newThread(Runnable r) {
+			Thread t = new Thread(r, prefix + (count++));
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	/**
+	 * A put ready to go into its index
+	 */
+	private static class AnalyzedDocument {
+		private final LuceneIndex index;
+		private final String key;
+		private final org.apache.lucene.document.Document document;
+		private final Analyzer analyzer;
+
+		AnalyzedDocument(LuceneIndex index, String key,
+				org.apache.lucene.document.Document document, Analyzer analyzer) {
+			this.index = index;
+			this.key = key;
+			this.document = document;
+			this.analyzer = analyzer;
+		}
+
+		void put() throws ThrudexException {
+			index.put(key, document, analyzer);
+		}
+	}
+
 	public boolean isValidIndex(String indexName) throws ThrudexException {
+		if (indexName == null)
+			return false;
+
 		if (indexMap.containsKey(indexName))
 			return true;
 
@@ -276,6 +717,15 @@ public class ThrudexLuceneHandler implements Iface {
 
 			String indexLocation = indexRoot + "/" + indexName;
 
+			try {
+				if (ShardedLuceneIndex.getShardCount(indexRoot, indexName) > 0) {
+					addIndex(indexName); // reopens with its shards
+					return true;
+				}
+			} catch (IOException e) {
+				throw new ThrudexException(e.toString());
+			}
+
 			if (IndexReader.indexExists(indexLocation)) {
 				addIndex(indexName); // really just reopening
 				return true;
@@ -0,0 +1,61 @@
+package org.thrudb.thrudoc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Orders logged writes on a bucket.
+ *
+ * A write holds its bucket from the moment its redo log record is
+ * appended until it has been applied, so each bucket's writes are applied
+ * in LSN order, the order replay and replicas apply them in. Batches span
+ * buckets and hold them all, as does a checkpoint reading the last LSN.
+ *
+ * @author jake
+ *
+ */
+public class BucketLocks {
+
+	private static final String ALL = ""; //the bucket of batch records
+
+	private final ReentrantReadWriteLock                 all     = new ReentrantReadWriteLock();
+	private final ConcurrentHashMap<String,ReentrantLock> buckets = new ConcurrentHashMap<String,ReentrantLock>();
+
+	/**
+	 * @param bucket "" locks every bucket
+	 */
+	public void lock(String bucket) {
+		if(ALL.equals(bucket)){
+			all.writeLock().lock();
+			return;
+		}
+
+		all.readLock().lock();
+		getLock(bucket).lock();
+	}
+
+	public void unlock(String bucket) {
+		if(ALL.equals(bucket)){
+			all.writeLock().unlock();
+			return;
+		}
+
+		getLock(bucket).unlock();
+		all.readLock().unlock();
+	}
+
+	private ReentrantLock getLock(String bucket) {
+		ReentrantLock lock = buckets.get(bucket);
+
+		if(lock == null){
+			ReentrantLock created = new ReentrantLock();
+
+			lock = buckets.putIfAbsent(bucket, created);
+			if(lock == null)
+				lock = created;
+		}
+
+		return lock;
+	}
+}
@@ -0,0 +1,26 @@
+package org.thrudb.thrudoc;
+
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+public class BucketShutdownHandler extends Thread {
+
+	private Map<String, ThrudocBackend> buckets;
+	private Logger logger = Logger.getLogger(getClass());
+	
+	public BucketShutdownHandler(Map<String, ThrudocBackend> buckets){
+		this.buckets = buckets;
+	}
+	
+	@Override
+	public void run() {
+
+		for(Map.Entry<String,ThrudocBackend> bucket : buckets.entrySet()){
+			logger.info("Shutting down bucket: " + bucket.getKey());
+			bucket.getValue().shutdown();
+		}
+		
+	}
+	
+}
@@ -0,0 +1,231 @@
+package org.thrudb.thrudoc;
+
+import java.util.List;
+
+import org.apache.thrift.TException;
+import org.thrudb.util.cache.TinyLfuCache;
+
+/**
+ * Read-through value cache in front of a bucket's backend.
+ * 
+ * Only map values are cached, list operations live in their own keyspace
+ * and pass straight through. Every map mutation drops the cached value
+ * before returning.
+ * 
+ * A miss fills the cache with what it read from the backend only if no
+ * write to the key's stripe dropped anything in the meantime, so a read
+ * racing a write can't cache the value the write replaced.
+ * 
+ * The cache is split into segments by key hash, each with its own
+ * monitor, so reads of different keys don't queue on one lock. A version
+ * stripe always falls in the same segment and is guarded by it.
+ * 
+ * @author jake
+ *
+ */
+public class CachingBackend implements ThrudocBackend {
+
+	private static final int STRIPES  = 1024;
+	private static final int SEGMENTS = 16;
+	
+	private ThrudocBackend       backend;
+	private final TinyLfuCache[] caches   = new TinyLfuCache[SEGMENTS];
+	private final long[]         versions = new long[STRIPES]; //guarded by their segment
+	
+	public CachingBackend(ThrudocBackend backend, long cacheBytes) {
+		this.backend = backend;
+		
+		for(int i=0; i<SEGMENTS; i++)
+			caches[i] = new TinyLfuCache(cacheBytes / SEGMENTS);
+	}
+	
+	public long getHits() {
+		long hits = 0;
+		for(TinyLfuCache cache : caches)
+			hits += cache.getHits();
+		
+		return hits;
+	}
+	
+	public long getMisses() {
+		long misses = 0;
+		for(TinyLfuCache cache : caches)
+			misses += cache.getMisses();
+		
+		return misses;
+	}
+	
+	public long getEvictions() {
+		long evictions = 0;
+		for(TinyLfuCache cache : caches)
+			evictions += cache.getEvictions();
+		
+		return evictions;
+	}
+	
+	public long getBytes() {
+		long bytes = 0;
+		for(TinyLfuCache cache : caches)
+			bytes += cache.getBytes();
+		
+		return bytes;
+	}
+	
+	public byte[] get(String key) {
+		int          stripe = stripe(key);
+		TinyLfuCache cache  = segment(stripe);
+		
+		long version;
+		synchronized(cache){
+			byte[] value = cache.get(key);
+			
+			if(value != null)
+				return value;
+			
+			version = versions[stripe];
+		}
+		
+		byte[] value = backend.get(key);
+		
+		if(value != null){
+			synchronized(cache){
+				if(versions[stripe] == version)
+					cache.put(key, value);
+			}
+		}
+		
+		return value;
+	}
+
+	public void put(String key, byte[] value) {
+		backend.put(key, value);
+		invalidate(key);
+	}
+
+	public void remove(String key) {
+		backend.remove(key);
+		invalidate(key);
+	}
+	
+	/**
+	 * Drops a key after a write, and stops the fills of reads that started
+	 * before it
+	 */
+	private void invalidate(String key) {
+		int          stripe = stripe(key);
+		TinyLfuCache cache  = segment(stripe);
+		
+		synchronized(cache){
+			versions[stripe]++;
+			cache.remove(key);
+		}
+	}
+	
+	private void invalidateAll() {
+		for(int segment=0; segment<SEGMENTS; segment++){
+			synchronized(caches[segment]){
+				for(int i=segment; i<STRIPES; i += SEGMENTS)
+					versions[i]++;
+				
+				caches[segment].clear();
+			}
+		}
+	}
+	
+	private static int stripe(String key) {
+		return key.hashCode() & (STRIPES - 1);
+	}
+	
+	private TinyLfuCache segment(int stripe) {
+		return caches[stripe & (SEGMENTS - 1)];
+	}
+
+	public List<String> scan(String seed, int limit) {
+		return backend.scan(seed, limit);
+	}
+
+	public int incr(String key, int amount) {
+		int value = backend.incr(key, amount);
+		invalidate(key);
+		
+		return value;
+	}
+
+	public int decr(String key, int amount) {
+		int value = backend.decr(key, amount);
+		invalidate(key);
+		
+		return value;
+	}
+
+	public void push_back(String key, byte[] value) throws TException {
+		backend.push_back(key, value);
+	}
+
+	public byte[] pop_back(String key) throws TException {
+		return backend.pop_back(key);
+	}
+
+	public void push_front(String key, byte[] value) throws TException {
+		backend.push_front(key, value);
+	}
+
+	public byte[] pop_front(String key) throws TException {
+		return backend.pop_front(key);
+	}
+
+	public byte[] remove_at(String key, int position) {
+		return backend.remove_at(key, position);
+	}
+
+	public void insert_at(String key, byte[] value, int position) {
+		backend.insert_at(key, value, position);
+	}
+
+	public void replace_at(String key, byte[] value, int position) {
+		backend.replace_at(key, value, position);
+	}
+
+	public byte[] retrieve_at(String key, int position) {
+		return backend.retrieve_at(key, position);
+	}
+
+	public List<byte[]> range(String key, int start, int end) {
+		return backend.range(key, start, end);
+	}
+
+	public int length(String key) {
+		return backend.length(key);
+	}
+
+	public void put_multi(List<Entity> entities) throws TException {
+		backend.put_multi(entities);
+		
+		for(Entity entity : entities)
+			invalidate(entity.key);
+	}
+
+	public void remove_multi(List<Entity> entities) throws TException {
+		backend.remove_multi(entities);
+		
+		for(Entity entity : entities)
+			invalidate(entity.key);
+	}
+
+	public boolean erase() {
+		boolean erased = backend.erase();
+		invalidateAll();
+		
+		return erased;
+	}
+	
+	public void sync() throws TException {
+		backend.sync();
+	}
+
+	public void shutdown() {
+		invalidateAll();
+		backend.shutdown();
+	}
+
+}
@@ -0,0 +1,56 @@
+package org.thrudb.thrudoc;
+
+/**
+ * The redo log record the current thread is applying.
+ *
+ * Backends store the LSN of the last logged write with the write itself,
+ * atomically, so after a crash they know which records they already have.
+ * A replay skips those, which keeps incr and the list ops from being
+ * applied twice.
+ *
+ * @author jake
+ *
+ */
+public class LoggedWrite {
+
+	private static final ThreadLocal<LoggedWrite> current = new ThreadLocal<LoggedWrite>();
+
+	private final long    lsn;
+	private final boolean replay;
+
+	private LoggedWrite(long lsn, boolean replay) {
+		this.lsn    = lsn;
+		this.replay = replay;
+	}
+
+	/**
+	 * @param replay the record may already be applied, recovery and
+	 *               replicas replay, a new write never is
+	 */
+	public static void begin(long lsn, boolean replay) {
+		current.set(new LoggedWrite(lsn, replay));
+	}
+
+	public static void end() {
+		current.remove();
+	}
+
+	/**
+	 * @return the write being applied, null if it isn't logged
+	 */
+	public static LoggedWrite get() {
+		return current.get();
+	}
+
+	public long getLsn() {
+		return lsn;
+	}
+
+	/**
+	 * @param applied the LSN of the last logged write a db has
+	 * @return true if the db has this write already
+	 */
+	public boolean isApplied(long applied) {
+		return replay && lsn <= applied;
+	}
+}
@@ -0,0 +1,375 @@
+package org.thrudb.thrudoc;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.thrift.TException;
+
+/**
+ * Segmented list storage on top of a plain key/value store.
+ *
+ * Every list has a small header record holding the absolute slot of its
+ * first element and the slot just past its last element. Values are packed
+ * SEGMENT_SIZE slots at a time into segment records keyed by list key and
+ * segment number, so length is a header read and any position is a header
+ * read plus one segment read.
+ *
+ * push/pop touch one segment, insert_at/remove_at shift whichever side of
+ * the list is shorter.
+ *
+ * @author jake
+ *
+ */
+public class SegmentedList {
+
+	public static final int SEGMENT_SIZE = 64;
+
+	/**
+	 * The records a SegmentedList is kept in. Keys handed to the store
+	 * never collide with each other but may collide with anything else
+	 * written to it, so give each SegmentedList a keyspace of its own.
+	 */
+	public interface Store {
+		
+		byte[] get(byte[] key);
+		
+		void   put(byte[] key, byte[] value);
+		
+		void   out(byte[] key);
+	}
+	
+	private Store store;
+
+	public SegmentedList(Store store) {
+		this.store = store;
+	}
+
+	public synchronized int length(String key){
+		long[] header = getHeader(key);
+
+		return (int)(header[1] - header[0]);
+	}
+
+	public synchronized void push_back(String key, byte[] value) throws TException {
+		long[] header = getHeader(key);
+
+		long seg = segment(header[1]);
+		List<byte[]> values = getSegment(key, seg);
+		values.add(value);
+		putSegment(key, seg, values);
+
+		header[1]++;
+		putHeader(key, header);
+	}
+
+	public synchronized void push_front(String key, byte[] value) throws TException {
+		long[] header = getHeader(key);
+
+		long seg = segment(header[0] - 1);
+		List<byte[]> values = getSegment(key, seg);
+		values.add(0, value);
+		putSegment(key, seg, values);
+
+		header[0]--;
+		putHeader(key, header);
+	}
+
+	public synchronized byte[] pop_back(String key) throws TException {
+		long[] header = getHeader(key);
+
+		if(header[0] == header[1])
+			return new byte[]{};
+
+		long seg = segment(header[1] - 1);
+		List<byte[]> values = getSegment(key, seg);
+
+		if(values.isEmpty())
+			throw new TException("list "+key+" is missing segment "+seg);
+
+		byte[] value = values.remove(values.size() - 1);
+		putSegment(key, seg, values);
+
+		header[1]--;
+		putHeader(key, header);
+
+		return value;
+	}
+
+	public synchronized byte[] pop_front(String key) throws TException {
+		long[] header = getHeader(key);
+
+		if(header[0] == header[1])
+			return new byte[]{};
+
+		long seg = segment(header[0]);
+		List<byte[]> values = getSegment(key, seg);
+
+		if(values.isEmpty())
+			throw new TException("list "+key+" is missing segment "+seg);
+
+		byte[] value = values.remove(0);
+		putSegment(key, seg, values);
+
+		header[0]++;
+		putHeader(key, header);
+
+		return value;
+	}
+
+	public synchronized byte[] retrieve_at(String key, int position){
+		long[] header = getHeader(key);
+
+		if(position < 0 || position >= header[1] - header[0])
+			return null;
+
+		long slot = header[0] + position;
+
+		return getSegment(key, segment(slot)).get(offset(header, slot));
+	}
+
+	public synchronized void replace_at(String key, byte[] value, int position){
+		long[] header = getHeader(key);
+
+		if(position < 0 || position >= header[1] - header[0])
+			return;
+
+		long slot = header[0] + position;
+		long seg  = segment(slot);
+
+		List<byte[]> values = getSegment(key, seg);
+		values.set(offset(header, slot), value);
+		putSegment(key, seg, values);
+	}
+
+	public synchronized void insert_at(String key, byte[] value, int position){
+		long[] header = getHeader(key);
+		long   length = header[1] - header[0];
+
+		if(position < 0 || position >= length)
+			throw new RuntimeException("Unable to insert at position: "+position);
+
+		long slot = header[0] + position;
+
+		if(position < length / 2){
+			//shift the head side down one slot
+			long firstSeg = segment(header[0]);
+			long lastSeg  = segment(slot);
+
+			List<byte[]> values = getSegments(key, firstSeg, lastSeg);
+			values.add(position, value);
+
+			rewrite(key, firstSeg, lastSeg, header[0] - 1, values);
+			header[0]--;
+
+		}else{
+			//shift the tail side up one slot
+			long firstSeg = segment(slot);
+			long lastSeg  = segment(header[1] - 1);
+
+			List<byte[]> values = getSegments(key, firstSeg, lastSeg);
+			values.add(offset(header, slot), value);
+
+			rewrite(key, firstSeg, lastSeg, Math.max(header[0], firstSeg * SEGMENT_SIZE), values);
+			header[1]++;
+		}
+
+		putHeader(key, header);
+	}
+
+	public synchronized byte[] remove_at(String key, int position){
+		long[] header = getHeader(key);
+		long   length = header[1] - header[0];
+
+		if(position < 0 || position >= length)
+			return null;
+
+		long   slot = header[0] + position;
+		byte[] value;
+
+		if(position < length / 2){
+			//shift the head side up one slot
+			long firstSeg = segment(header[0]);
+			long lastSeg  = segment(slot);
+
+			List<byte[]> values = getSegments(key, firstSeg, lastSeg);
+			value = values.remove(position);
+
+			rewrite(key, firstSeg, lastSeg, header[0] + 1, values);
+			header[0]++;
+
+		}else{
+			//shift the tail side down one slot
+			long firstSeg = segment(slot);
+			long lastSeg  = segment(header[1] - 1);
+
+			List<byte[]> values = getSegments(key, firstSeg, lastSeg);
+			value = values.remove(offset(header, slot));
+
+			rewrite(key, firstSeg, lastSeg, Math.max(header[0], firstSeg * SEGMENT_SIZE), values);
+			header[1]--;
+		}
+
+		putHeader(key, header);
+
+		return value;
+	}
+
+	public synchronized List<byte[]> range(String key, int start, int end){
+		if(start > end || end < 0 || start < 0)
+			throw new RuntimeException("Invalid start and/or end context");
+
+		long[] header = getHeader(key);
+		long   length = header[1] - header[0];
+
+		if(start >= length)
+			return null;
+
+		long firstSlot = header[0] + start;
+		long lastSlot  = header[0] + Math.min(end, length - 1);
+
+		List<byte[]> response = new ArrayList<byte[]>();
+
+		for(long seg = segment(firstSlot); seg <= segment(lastSlot); seg++){
+			List<byte[]> values = getSegment(key, seg);
+
+			long segStart = Math.max(header[0], seg * SEGMENT_SIZE);
+			long from     = Math.max(firstSlot, segStart) - segStart;
+			long to       = Math.min(lastSlot + 1, segStart + values.size()) - segStart;
+
+			response.addAll(values.subList((int)from, (int)to));
+		}
+
+		return response;
+	}
+
+	/**
+	 * Writes values back starting at firstSlot, removing any of the old
+	 * segments [oldFirstSeg, oldLastSeg] the values no longer reach.
+	 */
+	private void rewrite(String key, long oldFirstSeg, long oldLastSeg, long firstSlot, List<byte[]> values){
+		long newFirstSeg = segment(firstSlot);
+		long newLastSeg  = values.isEmpty() ? newFirstSeg - 1 : segment(firstSlot + values.size() - 1);
+
+		int pos = 0;
+		for(long seg = newFirstSeg; seg <= newLastSeg; seg++){
+			long segEnd = (seg + 1) * SEGMENT_SIZE;
+			int  count  = (int)Math.min(values.size() - pos, segEnd - Math.max(firstSlot, seg * SEGMENT_SIZE));
+
+			putSegment(key, seg, values.subList(pos, pos + count));
+			pos += count;
+		}
+
+		for(long seg = oldFirstSeg; seg <= oldLastSeg; seg++){
+			if(seg < newFirstSeg || seg > newLastSeg)
+				store.out(segmentKey(key, seg));
+		}
+	}
+
+	/**
+	 * offset of a slot within its segment record
+	 */
+	private int offset(long[] header, long slot){
+		long seg = segment(slot);
+
+		return (int)(slot - Math.max(header[0], seg * SEGMENT_SIZE));
+	}
+
+	private static long segment(long slot){
+		//floor, slots go negative on push_front
+		return slot >= 0 ? slot / SEGMENT_SIZE : (slot + 1) / SEGMENT_SIZE - 1;
+	}
+
+	/**
+	 * @return {first slot, last slot + 1}
+	 */
+	private long[] getHeader(String key){
+		byte[] value = store.get(headerKey(key));
+
+		if(value == null)
+			return new long[]{0,0};
+
+		ByteBuffer buf = ByteBuffer.wrap(value);
+
+		return new long[]{buf.getLong(), buf.getLong()};
+	}
+
+	private void putHeader(String key, long[] header){
+
+		//empty lists leave nothing behind
+		if(header[0] == header[1]){
+			store.out(headerKey(key));
+			return;
+		}
+
+		ByteBuffer buf = ByteBuffer.allocate(16);
+		buf.putLong(header[0]);
+		buf.putLong(header[1]);
+
+		store.put(headerKey(key), buf.array());
+	}
+
+	private List<byte[]> getSegments(String key, long firstSeg, long lastSeg){
+		List<byte[]> values = new ArrayList<byte[]>();
+
+		for(long seg = firstSeg; seg <= lastSeg; seg++)
+			values.addAll(getSegment(key, seg));
+
+		return values;
+	}
+
+	private List<byte[]> getSegment(String key, long seg){
+		List<byte[]> values = new ArrayList<byte[]>(SEGMENT_SIZE);
+		byte[] record = store.get(segmentKey(key, seg));
+
+		if(record == null)
+			return values;
+
+		ByteBuffer buf = ByteBuffer.wrap(record);
+		while(buf.hasRemaining()){
+			byte[] value = new byte[buf.getInt()];
+			buf.get(value);
+			values.add(value);
+		}
+
+		return values;
+	}
+
+	private void putSegment(String key, long seg, List<byte[]> values){
+
+		if(values.isEmpty()){
+			store.out(segmentKey(key, seg));
+			return;
+		}
+
+		int size = 0;
+		for(byte[] value : values)
+			size += 4 + value.length;
+
+		ByteBuffer buf = ByteBuffer.allocate(size);
+		for(byte[] value : values){
+			buf.putInt(value.length);
+			buf.put(value);
+		}
+
+		store.put(segmentKey(key, seg), buf.array());
+	}
+
+	/**
+	 * keys are length prefixed so a header can never collide with
+	 * another list's segment
+	 */
+	private static byte[] headerKey(String key){
+		byte[] keyBytes = key.getBytes();
+
+		return ByteBuffer.allocate(4 + keyBytes.length)
+			.putInt(keyBytes.length).put(keyBytes).array();
+	}
+
+	private static byte[] segmentKey(String key, long seg){
+		byte[] keyBytes = key.getBytes();
+
+		return ByteBuffer.allocate(12 + keyBytes.length)
+			.putInt(keyBytes.length).put(keyBytes).putLong(seg).array();
+	}
+}
@@ -40,7 +40,25 @@ public interface ThrudocBackend {
 	
 	int length(String key);
 	
+	/**
+	 * Applies a batch of puts atomically, the entity buckets are ignored
+	 */
+	void put_multi(List<Entity> entities) throws TException;
+	
+	/**
+	 * Applies a batch of removes atomically, the entity buckets are ignored
+	 */
+	void remove_multi(List<Entity> entities) throws TException;
+	
 	boolean erase();
 	
+	/**
+	 * Forces every write applied so far to disk, used for redo log checkpoints
+	 */
+	void sync() throws TException;
 	
+	/**
+	 * Flushes and closes the bucket, called once when the server stops
+	 */
+	void shutdown();
 }
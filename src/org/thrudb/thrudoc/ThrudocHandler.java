@@ -1,25 +1,121 @@
 package org.thrudb.thrudoc;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 import org.apache.thrift.TException;
+import org.thrudb.logEntry;
 import org.thrudb.thrudoc.Thrudoc.Iface;
+import org.thrudb.thrudoc.logstore.LogStoreDB;
 import org.thrudb.thrudoc.tokyocabinet.TokyoCabinetDB;
+import org.thrudb.util.log.RedoLog;
+import org.thrudb.util.stats.ServiceStats;
 
 
 public class ThrudocHandler implements Iface {
 
+	public static final String TOKYOCABINET = "tokyocabinet";
+	public static final String LOGSTORE     = "logstore";
+	
 	private Logger logger = Logger.getLogger(getClass());
-	private volatile Map<String,TokyoCabinetDB> bucketMap = new HashMap<String,TokyoCabinetDB>(); 
+	private volatile Map<String,ThrudocBackend> bucketMap = new ConcurrentHashMap<String,ThrudocBackend>(); 
 	private String docRoot;
+	private String backend = TOKYOCABINET;
+	private Map<String,String> bucketBackends = new HashMap<String,String>();
+	private long   cacheSize = 0;
+	private RedoLog redoLog;
+	private ServiceStats stats = new ServiceStats();
+	private BucketLocks bucketLocks = new BucketLocks();
 	
 	public ThrudocHandler(String docRoot){
 		this.docRoot = docRoot;
+		
+		Runtime.getRuntime()
+				.addShutdownHook(new BucketShutdownHandler(bucketMap));
+	}
+	
+	/**
+	 * Sets the backend used for buckets without a backend of their own
+	 */
+	public void setBackend(String backend) {
+		this.backend = backend;
+	}
+
+	/**
+	 * Sets the backend used for a single bucket
+	 */
+	public void setBucketBackend(String bucketName, String backend) {
+		bucketBackends.put(bucketName, backend);
+	}
+	
+	/**
+	 * Sets the bytes of values cached per bucket, 0 disables the cache
+	 */
+	public void setCacheSize(long cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+	
+	/**
+	 * Sets the redo log served to replicas by getLogSince
+	 */
+	public void setRedoLog(RedoLog redoLog) {
+		this.redoLog = redoLog;
+	}
+	
+	/**
+	 * @return the per op stats the server records calls in
+	 */
+	public ServiceStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * @return the locks logged writes hold from append to apply
+	 */
+	public BucketLocks getBucketLocks() {
+		return bucketLocks;
+	}
+	
+	private String getBackend(String bucketName) {
+		String bucketBackend = bucketBackends.get(bucketName);
+		
+		return bucketBackend == null ? backend : bucketBackend;
+	}
+	
+	private boolean backendExists(String bucketName) {
+		
+		if(LOGSTORE.equals(getBackend(bucketName)))
+			return LogStoreDB.exists(docRoot, bucketName);
+		
+		String dbFileName = docRoot+File.separatorChar+bucketName+".tcb";
+		File   dbFile     = new File(dbFileName);
+		
+		return dbFile.isFile() && dbFile.canWrite();
+	}
+	
+	private ThrudocBackend openBackend(String bucketName) throws TException {
+		String bucketBackend = getBackend(bucketName);
+		ThrudocBackend db;
+		
+		if(TOKYOCABINET.equals(bucketBackend))
+			db = new TokyoCabinetDB(docRoot,bucketName);
+		else if(LOGSTORE.equals(bucketBackend))
+			db = new LogStoreDB(docRoot,bucketName);
+		else
+			throw new TException("Unknown backend "+bucketBackend+" for bucket "+bucketName);
+		
+		if(cacheSize > 0)
+			db = new CachingBackend(db, cacheSize);
+		
+		return db;
 	}
 	
 	public boolean isValidBucket(String bucketName) throws TException {
@@ -32,13 +128,10 @@ public class ThrudocHandler implements Iface {
 			//double lock check
 			if(bucketMap.containsKey(bucketName))
 				return true;
-	
-			String dbFileName = docRoot+File.separatorChar+bucketName+".tcb";
-			File   dbFile     = new File(dbFileName);
 			
 			//open this index if it already exists
-			if(dbFile.isFile() && dbFile.canWrite()){
-				bucketMap.put(bucketName, new TokyoCabinetDB(docRoot,bucketName));
+			if(backendExists(bucketName)){
+				bucketMap.put(bucketName, openBackend(bucketName));
 				return true;
 			}else{
 				return false;
@@ -46,10 +139,21 @@ public class ThrudocHandler implements Iface {
 		}
 	}
 	
+	/**
+	 * Forces a bucket's writes to disk, does nothing if it isn't open
+	 */
+	public void sync(String bucketName) throws TException {
+		ThrudocBackend db = bucketMap.get(bucketName);
+		
+		if(db != null)
+			db.sync();
+	}
+	
 	public String admin(String op, String data) throws ThrudocException,
 			TException {
 		
-		
+		if("stats".equals(op))
+			return ServiceStats.format(getServiceStats());
 		
 		return "ok";
 	}
@@ -86,7 +190,7 @@ public class ThrudocHandler implements Iface {
 		if(bucketMap.containsKey(bucket))
 			return;
 				
-		bucketMap.put(bucket, new TokyoCabinetDB(docRoot,bucket));
+		bucketMap.put(bucket, openBackend(bucket));
 		
 	}
 
@@ -97,7 +201,7 @@ public class ThrudocHandler implements Iface {
 			this.create_bucket(bucket);
 		
 		
-		TokyoCabinetDB db = bucketMap.get(bucket);
+		ThrudocBackend db = bucketMap.get(bucket);
 		
 		if(db == null)
 			return; //this can't happen
@@ -105,6 +209,9 @@ public class ThrudocHandler implements Iface {
 		db.erase();
 		
 		bucketMap.remove(bucket);
+		
+		//stops its threads and closes its files
+		db.shutdown();
 	}
 
 	public Set<String> get_bucket_list() throws ThrudocException, TException {
@@ -223,5 +330,136 @@ public class ThrudocHandler implements Iface {
 		
 		return bucketMap.get(bucket).scan(seed,count);	
 	}
+	
+	/**
+	 * Gets many keys at once, missing keys come back without a value
+	 */
+	public List<Entity> get_multi(List<Entity> entities) throws InvalidBucketException, TException {
+		
+		List<Entity> result = new ArrayList<Entity>(entities.size());
+		
+		for(Entity entity : entities){
+			if(!isValidBucket(entity.bucket))
+				throw new InvalidBucketException();
+			
+			byte[] value = bucketMap.get(entity.bucket).get(entity.key);
+			
+			result.add(new Entity(entity.bucket, entity.key, value));
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Puts many keys at once, each bucket's share is one transaction
+	 */
+	public void put_multi(List<Entity> entities) throws InvalidBucketException, TException {
+		
+		for(Entity entity : entities){
+			if(!entity.isSetValue())
+				entity.value = new byte[]{};
+		}
+		
+		for(Map.Entry<String,List<Entity>> batch : byBucket(entities).entrySet())
+			bucketMap.get(batch.getKey()).put_multi(batch.getValue());
+	}
+	
+	/**
+	 * Removes many keys at once, each bucket's share is one transaction
+	 */
+	public void remove_multi(List<Entity> entities) throws InvalidBucketException, TException {
+		
+		for(Map.Entry<String,List<Entity>> batch : byBucket(entities).entrySet())
+			bucketMap.get(batch.getKey()).remove_multi(batch.getValue());
+	}
+	
+	/**
+	 * Splits a batch by bucket, checking every bucket before anything is applied
+	 */
+	private Map<String,List<Entity>> byBucket(List<Entity> entities) throws InvalidBucketException, TException {
+		
+		Map<String,List<Entity>> batches = new LinkedHashMap<String,List<Entity>>();
+		
+		for(Entity entity : entities){
+			List<Entity> batch = batches.get(entity.bucket);
+			
+			if(batch == null){
+				if(!isValidBucket(entity.bucket))
+					throw new InvalidBucketException();
+				
+				batch = new ArrayList<Entity>();
+				batches.put(entity.bucket, batch);
+			}
+			
+			batch.add(entity);
+		}
+		
+		return batches;
+	}
+
+	public Map<String, Long> getServiceStats() throws TException {
+		Map<String,Long> stats = this.stats.getStats();
+		
+		for(Map.Entry<String,ThrudocBackend> e : bucketMap.entrySet()){
+			if(!(e.getValue() instanceof CachingBackend))
+				continue;
+			
+			CachingBackend cache = (CachingBackend)e.getValue();
+			
+			stats.put("cache_hits_"+e.getKey(),      cache.getHits());
+			stats.put("cache_misses_"+e.getKey(),    cache.getMisses());
+			stats.put("cache_evictions_"+e.getKey(), cache.getEvictions());
+			stats.put("cache_bytes_"+e.getKey(),     cache.getBytes());
+		}
+		
+		return stats;
+	}
+
+	/**
+	 * This method does nothing, but lets client check the server
+	 */
+	public void ping() throws TException {
+		
+	}
+
+	/**
+	 * Returns redo log records from lsn on, stopping once kbLimit of
+	 * messages is reached. At least one record is returned if there is
+	 * one, an empty bucket means every bucket.
+	 */
+	public List<logEntry> getLogSince(String server, String bucket, String lsn, int kbLimit) throws TException {
+		
+		if(redoLog == null)
+			throw new TException("This server has no redo log");
+		
+		long from;
+		try{
+			from = Long.parseLong(lsn);
+		}catch(NumberFormatException e){
+			throw new TException("Invalid lsn: "+lsn);
+		}
+		
+		long limit = Math.max(1, kbLimit) * 1024L;
+		long bytes = 0;
+		
+		List<logEntry> entries = new ArrayList<logEntry>();
+		
+		try{
+			RedoLog.Cursor cursor = redoLog.cursor(from);
+			RedoLog.Record record;
+			
+			while(bytes < limit && (record = cursor.next()) != null){
+				if(bucket != null && bucket.length() > 0 && !bucket.equals(record.bucket))
+					continue;
+				
+				entries.add(new logEntry(record.bucket, String.valueOf(record.lsn), record.frame));
+				bytes += record.frame.length;
+			}
+		}catch(IOException e){
+			throw new TException("Unable to read redo log: "+e.getMessage());
+		}
+		
+		return entries;
+	}
 
 }
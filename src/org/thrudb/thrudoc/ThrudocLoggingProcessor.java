@@ -1,83 +1,111 @@
 package org.thrudb.thrudoc;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TField;
 import org.apache.thrift.protocol.TMessage;
-import org.apache.thrift.protocol.TMessageType;
 import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TType;
 import org.thrudb.thrift.TPeekingTransport;
-import org.thrudb.thrudoc.Thrudoc.Iface;
 import org.thrudb.thrudoc.Thrudoc.Processor;
 
-import tokyocabinet.HDB;
-
 public class ThrudocLoggingProcessor extends Processor {
 
-	private Set<String> writeOps;
+	/**
+	 * Every op that alters the db
+	 */
+	public static final Set<String> WRITE_OPS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(new String[]{
+			"create_bucket","delete_bucket","put","remove",
+			"push_front","push_back","pop_front","pop_back",
+			"remove_at","insert_at","replace_at","incr","decr",
+			"put_multi","remove_multi"
+	})));
+	
+	/**
+	 * Every op that only reads the db
+	 */
+	public static final Set<String> READ_OPS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(new String[]{
+			"get_bucket_list","get","retrieve_at","range","length",
+			"scan","get_multi"
+	})));
+	
+	private Set<String>  writeOps = WRITE_OPS;
+	private BucketLocks  bucketLocks;
 	private Logger logger = Logger.getLogger(getClass());
 	
-	public ThrudocLoggingProcessor(Iface iface) {
-		super(iface);
+	public ThrudocLoggingProcessor(ThrudocHandler handler) {
+		super(handler);
 		
-		writeOps = new HashSet<String>();
-		writeOps.addAll(Arrays.asList(new String[]{
-				"create_bucket","delete_bucket","put",
-				"push_front","push_back","pop_front","pop_back",
-				"erase_at","insert_at","replace_at","incr","decr"
-		}));
+		this.bucketLocks = handler.getBucketLocks();
 	}
 	
+	/**
+	 * Writes are logged before they are applied, both while their bucket is
+	 * locked, so each bucket's writes get LSNs in the order they are applied.
+	 * The wait for the log sync happens after the bucket is let go.
+	 *
+	 * A write that fails is logged all the same, replaying it fails again.
+	 */
 	@Override
 	public boolean process(TProtocol iprot, TProtocol oprot) throws TException {
 		
 		TPeekingTransport peekTrans = (TPeekingTransport) iprot.getTransport();
-		TPeekingTransport writeTrans = (TPeekingTransport) oprot.getTransport();
-		
-		//Just peek at the initial message
-		peekTrans.setRecording(true);
 		
+		//Just peek at the initial message, it's replayed from the frame
 		TMessage msg = iprot.readMessageBegin();
 		
-		peekTrans.setRecording(false);
-		
-		if(writeOps.contains(msg.name)){
-			logger.info("logging "+msg.name);
-
-			peekTrans.setLogging(true);
+		//only log operations that alter the db
+		if(!writeOps.contains(msg.name)){
+			peekTrans.rewind();
+			
+			return super.process(iprot, oprot);
 		}
 		
-		peekTrans.setReplayMode(true);
+		logger.info("logging "+msg.name);
 		
+		String bucket = readBucket(iprot);
 		
-		boolean result = super.process(iprot, oprot);
-	
-		//only log operations that alter the db
-		if(writeOps.contains(msg.name)){
-			writeTrans.swapInWriteBuffer();
-			
-			msg = oprot.readMessageBegin();
+		peekTrans.rewind();
+		
+		boolean result;
+		long    lsn;
+		
+		bucketLocks.lock(bucket);
+		try{
+			lsn = peekTrans.append(msg.name, bucket);
 			
-			//dont log operations that caused an exceptions
-			if(msg.type == TMessageType.EXCEPTION){		
-				peekTrans.rollback(); 
-			} else {
-				peekTrans.commit(); 
+			LoggedWrite.begin(lsn, false);
+			try{
+				result = super.process(iprot, oprot);
+			}finally{
+				LoggedWrite.end();
 			}
-			
+		}finally{
+			bucketLocks.unlock(bucket);
 		}
 		
-		
-		peekTrans.reset();
+		peekTrans.await(lsn);
 		
 		return result;
 	}
 	
-	private void writeLog(byte[] logMessage){
+	/**
+	 * Every single bucket write takes the bucket as its first arg,
+	 * batches span buckets and get an empty one
+	 */
+	private String readBucket(TProtocol prot) throws TException {
+		prot.readStructBegin();
+		
+		TField field = prot.readFieldBegin();
+		if(field.id == 1 && field.type == TType.STRING)
+			return prot.readString();
 		
+		return "";
 	}
 	
 
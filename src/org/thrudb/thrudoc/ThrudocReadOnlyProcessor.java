@@ -0,0 +1,21 @@
+package org.thrudb.thrudoc;
+
+import org.thrudb.thrudoc.Thrudoc.Iface;
+import org.thrudb.thrudoc.Thrudoc.Processor;
+
+/**
+ * Serves reads only, used by replicas whose buckets are written from the
+ * primary's redo log. Writes get an unknown method exception.
+ * 
+ * @author jake
+ *
+ */
+public class ThrudocReadOnlyProcessor extends Processor {
+
+	public ThrudocReadOnlyProcessor(Iface iface) {
+		super(iface);
+		
+		for(String op : ThrudocLoggingProcessor.WRITE_OPS)
+			processMap_.remove(op);
+	}
+}
@@ -0,0 +1,349 @@
+package org.thrudb.thrudoc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.thrudb.util.log.RedoLog;
+
+/**
+ * Replays the redo log into the buckets after a crash and records
+ * checkpoints as the buckets are synced.
+ *
+ * A bucket's checkpoint is an LSN whose writes, and every one before it,
+ * are on disk in the bucket. A write holds its bucket from its append to
+ * its apply, so the last LSN read while holding every bucket has been
+ * applied, and syncing a bucket afterwards makes it a checkpoint for it.
+ * Buckets without one of their own use the default checkpoint, which
+ * every sync round moves up.
+ *
+ * Records are replayed through a plain {@link Thrudoc.Processor}, so they
+ * are not logged again. Each bucket's records are replayed in order, the
+ * buckets in parallel. Batches span buckets and are replayed on their own.
+ *
+ * Writes after the checkpoint may already be in the bucket when the
+ * process died without the OS going down. The backends keep the LSN of
+ * the last write they have with the write, see {@link LoggedWrite}, and
+ * skip the records they already applied, so none is applied twice.
+ *
+ * @author jake
+ *
+ */
+public class ThrudocRecovery implements Runnable {
+
+	public static final String CHECKPOINT_FILE = "checkpoints";
+
+	private static final String DEFAULT     = ""; //also the bucket of batch records
+	private static final long   BATCH_BYTES = 16 * 1024 * 1024; //replayed per round
+
+	private Logger          logger = Logger.getLogger(getClass());
+	private ThrudocHandler  handler;
+	private RedoLog         log;
+	private File            checkpointFile;
+	private int             threads;
+	private long            interval;
+	private Thread          checkpointer;
+	private Map<String,Long> checkpoints = new HashMap<String,Long>();
+
+	/**
+	 * @param threads buckets replayed at once
+	 */
+	public ThrudocRecovery(ThrudocHandler handler, RedoLog log, int threads) throws TException {
+		this.handler        = handler;
+		this.log            = log;
+		this.threads        = Math.max(1, threads);
+		this.checkpointFile = new File(log.getDir(), CHECKPOINT_FILE);
+
+		loadCheckpoints();
+	}
+
+	private void loadCheckpoints() throws TException {
+		if(!checkpointFile.exists())
+			return;
+
+		Properties props = new Properties();
+		try{
+			FileInputStream in = new FileInputStream(checkpointFile);
+			try{
+				props.load(in);
+			}finally{
+				in.close();
+			}
+		}catch(IOException e){
+			throw new TException("Unable to read "+checkpointFile+": "+e.getMessage());
+		}
+
+		for(String bucket : props.stringPropertyNames())
+			checkpoints.put(bucket, Long.valueOf(props.getProperty(bucket)));
+	}
+
+	private void saveCheckpoints() throws TException {
+		Properties props = new Properties();
+		for(Map.Entry<String,Long> e : checkpoints.entrySet())
+			props.setProperty(e.getKey(), String.valueOf(e.getValue()));
+
+		File tmp = new File(log.getDir(), CHECKPOINT_FILE+".tmp");
+		try{
+			FileOutputStream out = new FileOutputStream(tmp);
+			try{
+				props.store(out, "redo log checkpoints per bucket");
+				out.getFD().sync();
+			}finally{
+				out.close();
+			}
+		}catch(IOException e){
+			throw new TException("Unable to write "+tmp+": "+e.getMessage());
+		}
+
+		if(!tmp.renameTo(checkpointFile))
+			throw new TException("Unable to replace "+checkpointFile);
+	}
+
+	/**
+	 * @return the LSN the bucket's writes are on disk up to
+	 */
+	public synchronized long getCheckpoint(String bucket) {
+		Long lsn = checkpoints.get(bucket);
+
+		if(lsn == null)
+			lsn = checkpoints.get(DEFAULT);
+
+		return lsn == null ? 0 : lsn;
+	}
+
+	private synchronized long getLowestCheckpoint() {
+		long lowest = Long.MAX_VALUE;
+
+		for(Long lsn : checkpoints.values())
+			lowest = Math.min(lowest, lsn);
+
+		return lowest == Long.MAX_VALUE ? 0 : lowest;
+	}
+
+	/**
+	 * Replays every record after its bucket's checkpoint, then checkpoints
+	 * the result so it isn't replayed again
+	 *
+	 * @return the number of records replayed
+	 */
+	public long replay() throws TException {
+		long start    = System.currentTimeMillis();
+		long replayed = 0;
+		long lowest   = getLowestCheckpoint();
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+		try{
+			RedoLog.Cursor cursor = log.cursor(lowest + 1);
+			RedoLog.Record record;
+
+			Map<String,List<RedoLog.Record>> round = new LinkedHashMap<String,List<RedoLog.Record>>();
+			long bytes = 0;
+
+			while((record = cursor.next()) != null){
+
+				if(DEFAULT.equals(record.bucket)){
+					//batches touch many buckets, they replay between rounds
+					if(record.lsn <= lowest)
+						continue;
+
+					replayed += replay(pool, round);
+					bytes = 0;
+
+					apply(new Thrudoc.Processor(handler), record);
+					replayed++;
+					continue;
+				}
+
+				if(record.lsn <= getCheckpoint(record.bucket))
+					continue;
+
+				List<RedoLog.Record> records = round.get(record.bucket);
+				if(records == null){
+					records = new ArrayList<RedoLog.Record>();
+					round.put(record.bucket, records);
+				}
+
+				records.add(record);
+				bytes += record.frame.length;
+
+				if(bytes >= BATCH_BYTES){
+					replayed += replay(pool, round);
+					bytes = 0;
+				}
+			}
+
+			replayed += replay(pool, round);
+
+		}catch(IOException e){
+			throw new TException("Unable to read redo log: "+e.getMessage());
+		}finally{
+			pool.shutdown();
+		}
+
+		logger.info("Replayed "+replayed+" redo log records in "+(System.currentTimeMillis() - start)+"ms");
+
+		if(replayed > 0)
+			checkpoint();
+
+		return replayed;
+	}
+
+	/**
+	 * Replays a round of records, one task per bucket
+	 */
+	private long replay(ExecutorService pool, Map<String,List<RedoLog.Record>> round) throws TException {
+		List<Future<Integer>> tasks = new ArrayList<Future<Integer>>();
+
+		for(final List<RedoLog.Record> records : round.values()){
+			tasks.add(pool.submit(new Callable<Integer>() {
+				public Integer call() throws TException {
+					TProcessor processor = new Thrudoc.Processor(handler);
+
+					for(RedoLog.Record record : records)
+						apply(processor, record);
+
+					return records.size();
+				}
+			}));
+		}
+
+		round.clear();
+
+		long replayed = 0;
+		try{
+			for(Future<Integer> task : tasks)
+				replayed += task.get();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new TException("Interrupted during replay");
+		}catch(ExecutionException e){
+			throw new TException("Replay failed: "+e.getCause().getMessage());
+		}
+
+		return replayed;
+	}
+
+	private void apply(TProcessor processor, RedoLog.Record record) throws TException {
+		if(!apply(processor, record.lsn, record.frame))
+			logger.warn("Replaying "+record.op+" at LSN "+record.lsn+" on "+record.bucket+" failed");
+	}
+
+	/**
+	 * Runs a logged request frame through processor, backends that already
+	 * have its LSN skip it
+	 *
+	 * @return false if the request failed
+	 */
+	static boolean apply(TProcessor processor, long lsn, byte[] frame) throws TException {
+		TMemoryBuffer in  = new TMemoryBuffer(frame.length);
+		TMemoryBuffer out = new TMemoryBuffer(64);
+
+		in.write(frame);
+
+		LoggedWrite.begin(lsn, true);
+		try{
+			processor.process(new TBinaryProtocol(in), new TBinaryProtocol(out));
+		}finally{
+			LoggedWrite.end();
+		}
+
+		TMessage reply = new TBinaryProtocol(out).readMessageBegin();
+
+		return reply.type != TMessageType.EXCEPTION;
+	}
+
+	/**
+	 * Syncs every open bucket and moves their checkpoints up to the last
+	 * LSN logged before the sync, then drops the log segments no bucket
+	 * needs anymore
+	 */
+	public synchronized void checkpoint() throws TException {
+		BucketLocks locks = handler.getBucketLocks();
+		long        lsn;
+
+		locks.lock(DEFAULT);
+		try{
+			lsn = log.getLastLsn();
+		}finally{
+			locks.unlock(DEFAULT);
+		}
+
+		Map<String,Long> next = new HashMap<String,Long>();
+		next.put(DEFAULT, lsn);
+
+		List<String> buckets;
+		try{
+			buckets = new ArrayList<String>(handler.get_bucket_list());
+		}catch(ThrudocException e){
+			throw new TException(e.toString());
+		}
+
+		for(String bucket : buckets){
+			try{
+				handler.sync(bucket);
+			}catch(TException e){
+				//keep the old checkpoint so its writes are replayed
+				logger.error("Unable to sync "+bucket, e);
+				next.put(bucket, getCheckpoint(bucket));
+			}
+		}
+
+		//buckets that aren't open have nothing newer than the last round
+		checkpoints = next;
+		saveCheckpoints();
+
+		log.deleteBefore(getLowestCheckpoint());
+	}
+
+	/**
+	 * Checkpoints every interval ms in the background
+	 */
+	public void start(long interval) {
+		this.interval = interval;
+
+		checkpointer = new Thread(this, "checkpointer");
+		checkpointer.setDaemon(true);
+		checkpointer.start();
+	}
+
+	public void stop() {
+		if(checkpointer != null)
+			checkpointer.interrupt();
+	}
+
+	public void run() {
+		while(true){
+			try{
+				Thread.sleep(interval);
+			}catch(InterruptedException e){
+				return;
+			}
+
+			try{
+				checkpoint();
+			}catch(TException e){
+				logger.error("Checkpoint failed", e);
+			}
+		}
+	}
+}
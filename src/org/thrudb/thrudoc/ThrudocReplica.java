@@ -0,0 +1,241 @@
+package org.thrudb.thrudoc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+import org.thrudb.Thrudb;
+import org.thrudb.logEntry;
+
+/**
+ * Keeps a read replica up to date by tailing the primary's redo log.
+ *
+ * Entries are pulled with getLogSince and applied in LSN order through a
+ * plain {@link Thrudoc.Processor}. The applied LSN is saved once the
+ * buckets are synced, so after a restart the replica picks up from there.
+ *
+ * @author jake
+ *
+ */
+public class ThrudocReplica implements Runnable {
+
+	public static final String STATE_FILE = "replica";
+
+	private Logger         logger = Logger.getLogger(getClass());
+	private ThrudocHandler handler;
+	private TProcessor     processor;
+	private String         host;
+	private int            port;
+	private File           stateFile;
+
+	private int            kbLimit      = 1024;
+	private long           pollInterval = 500;       //ms to wait once caught up
+	private long           saveInterval = 60 * 1000; //ms between syncs
+
+	private volatile long  applied = 0;
+	private long           saved   = 0;
+	private long           lastSave;
+	private volatile boolean running = true;
+
+	private TTransport     transport;
+	private Thrudb.Iface   primary;
+
+	/**
+	 * @param stateDir where the applied LSN is kept
+	 */
+	public ThrudocReplica(ThrudocHandler handler, String host, int port, File stateDir) throws TException {
+		this.handler   = handler;
+		this.processor = new Thrudoc.Processor(handler);
+		this.host      = host;
+		this.port      = port;
+		this.stateFile = new File(stateDir, STATE_FILE);
+		this.lastSave  = System.currentTimeMillis();
+
+		if(stateFile.exists()){
+			Properties props = new Properties();
+			try{
+				FileInputStream in = new FileInputStream(stateFile);
+				try{
+					props.load(in);
+				}finally{
+					in.close();
+				}
+			}catch(IOException e){
+				throw new TException("Unable to read "+stateFile+": "+e.getMessage());
+			}
+
+			applied = saved = Long.valueOf(props.getProperty("lsn", "0"));
+		}
+
+		logger.info("Replicating "+host+":"+port+" from LSN "+(applied + 1));
+	}
+
+	public void setKbLimit(int kbLimit) {
+		this.kbLimit = kbLimit;
+	}
+
+	public void setPollInterval(long pollInterval) {
+		this.pollInterval = pollInterval;
+	}
+
+	public void setSaveInterval(long saveInterval) {
+		this.saveInterval = saveInterval;
+	}
+
+	/**
+	 * @return the LSN of the last primary write applied here
+	 */
+	public long getAppliedLsn() {
+		return applied;
+	}
+
+	protected Thrudb.Iface connect() throws TException {
+		transport = new TFramedTransport(new TSocket(host, port));
+		transport.open();
+
+		return new Thrudb.Client(new TBinaryProtocol(transport));
+	}
+
+	private void disconnect() {
+		if(transport != null)
+			transport.close();
+
+		transport = null;
+		primary   = null;
+	}
+
+	/**
+	 * Pulls and applies one batch of entries
+	 *
+	 * @return the number applied, 0 once caught up
+	 */
+	public int poll() throws TException {
+		if(primary == null)
+			primary = connect();
+
+		List<logEntry> entries = primary.getLogSince("", "", String.valueOf(applied + 1), kbLimit);
+
+		int count = 0;
+		for(logEntry entry : entries){
+			long lsn = Long.parseLong(entry.lsn);
+
+			if(lsn <= applied)
+				continue;
+
+			//the primary dropped log segments this replica still needed
+			if(lsn != applied + 1)
+				throw new ReplicaGapException("Primary log starts at "+lsn+" but LSN "+(applied + 1)+" is needed, the replica must be reseeded");
+
+			if(!ThrudocRecovery.apply(processor, lsn, entry.message))
+				logger.warn("Applying LSN "+lsn+" on "+entry.bucket+" failed");
+
+			applied = lsn;
+			count++;
+		}
+
+		if(System.currentTimeMillis() - lastSave >= saveInterval)
+			save();
+
+		return count;
+	}
+
+	/**
+	 * Syncs the buckets then records the applied LSN
+	 */
+	public synchronized void save() throws TException {
+		long lsn = applied;
+		lastSave = System.currentTimeMillis();
+
+		if(lsn == saved)
+			return;
+
+		List<String> buckets;
+		try{
+			buckets = new ArrayList<String>(handler.get_bucket_list());
+		}catch(ThrudocException e){
+			throw new TException(e.toString());
+		}
+
+		for(String bucket : buckets)
+			handler.sync(bucket);
+
+		Properties props = new Properties();
+		props.setProperty("lsn", String.valueOf(lsn));
+
+		File tmp = new File(stateFile.getParentFile(), STATE_FILE+".tmp");
+		try{
+			FileOutputStream out = new FileOutputStream(tmp);
+			try{
+				props.store(out, "last primary LSN applied");
+				out.getFD().sync();
+			}finally{
+				out.close();
+			}
+		}catch(IOException e){
+			throw new TException("Unable to write "+tmp+": "+e.getMessage());
+		}
+
+		if(!tmp.renameTo(stateFile))
+			throw new TException("Unable to replace "+stateFile);
+
+		saved = lsn;
+	}
+
+	public void stop() {
+		running = false;
+	}
+
+	public void run() {
+		while(running){
+			try{
+				if(poll() == 0)
+					Thread.sleep(pollInterval);
+
+			}catch(ReplicaGapException e){
+				logger.error(e.getMessage());
+				break;
+			}catch(TException e){
+				logger.warn("Replication from "+host+":"+port+" failed, retrying", e);
+				disconnect();
+
+				try{
+					Thread.sleep(pollInterval);
+				}catch(InterruptedException ie){
+					break;
+				}
+			}catch(InterruptedException e){
+				break;
+			}
+		}
+
+		try{
+			save();
+		}catch(TException e){
+			logger.error("Unable to save applied LSN", e);
+		}
+
+		disconnect();
+	}
+
+	/**
+	 * The primary no longer has the entries this replica needs next
+	 */
+	static class ReplicaGapException extends TException {
+		private static final long serialVersionUID = 1L;
+
+		ReplicaGapException(String message) {
+			super(message);
+		}
+	}
+}
@@ -2,6 +2,8 @@ package org.thrudb.thrudoc;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import org.apache.log4j.PropertyConfigurator;
@@ -13,7 +15,12 @@ import org.apache.thrift.server.TServer;
 import org.apache.thrift.server.THsHaServer.Options;
 import org.apache.thrift.transport.TNonblockingServerSocket;
 import org.apache.thrift.transport.TNonblockingServerTransport;
+import org.thrudb.thrift.GroupCommitLog;
+import org.thrudb.thrift.TAdmissionProcessor;
 import org.thrudb.thrift.TPeekingTransportFactory;
+import org.thrudb.thrift.TStatsProcessor;
+import org.thrudb.thrift.TThreadedSelectorServer;
+import org.thrudb.util.log.RedoLog;
 
 public class ThrudocServer {
 
@@ -31,6 +38,19 @@ public class ThrudocServer {
 
 	private int    port;
 	private int    threadCount;
+	private int    selectorThreads = 0;
+	private int    queueDepth      = 0;
+	private int    maxReads        = 0;
+	private int    maxWrites       = 0;
+	private String backend = ThrudocHandler.TOKYOCABINET;
+	private Map<String,String> bucketBackends = new HashMap<String,String>();
+	private long   cacheSize;
+	private GroupCommitLog.Durability logDurability = GroupCommitLog.Durability.SYNC;
+	private long   logSyncWindow = 0;
+	private int    logSyncBatch  = 256;
+	private long   checkpointInterval = 60 * 1000;
+	private String replicaHost;
+	private int    replicaPort;
 	private TServer server;
 	
 	public String getDocRoot() {
@@ -57,6 +77,111 @@ public class ThrudocServer {
 		this.threadCount = threadCount;
 	}
 
+	public int getSelectorThreads() {
+		return selectorThreads;
+	}
+
+	/**
+	 * More than 0 serves with that many selectors instead of THsHaServer's one
+	 */
+	public void setSelectorThreads(int selectorThreads) {
+		this.selectorThreads = selectorThreads;
+	}
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	public void setQueueDepth(int queueDepth) {
+		this.queueDepth = queueDepth;
+	}
+
+	public int getMaxReads() {
+		return maxReads;
+	}
+
+	/**
+	 * Reads allowed in flight before more are rejected, 0 is unlimited
+	 */
+	public void setMaxReads(int maxReads) {
+		this.maxReads = maxReads;
+	}
+
+	public int getMaxWrites() {
+		return maxWrites;
+	}
+
+	/**
+	 * Writes allowed in flight before more are rejected, 0 is unlimited
+	 */
+	public void setMaxWrites(int maxWrites) {
+		this.maxWrites = maxWrites;
+	}
+
+	public String getBackend() {
+		return backend;
+	}
+
+	public void setBackend(String backend) {
+		this.backend = backend;
+	}
+
+	public void setBucketBackend(String bucket, String backend) {
+		bucketBackends.put(bucket, backend);
+	}
+
+	public long getCacheSize() {
+		return cacheSize;
+	}
+
+	public void setCacheSize(long cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+	public GroupCommitLog.Durability getLogDurability() {
+		return logDurability;
+	}
+
+	public void setLogDurability(GroupCommitLog.Durability logDurability) {
+		this.logDurability = logDurability;
+	}
+
+	public long getLogSyncWindow() {
+		return logSyncWindow;
+	}
+
+	public void setLogSyncWindow(long logSyncWindow) {
+		this.logSyncWindow = logSyncWindow;
+	}
+
+	public int getLogSyncBatch() {
+		return logSyncBatch;
+	}
+
+	public void setLogSyncBatch(int logSyncBatch) {
+		this.logSyncBatch = logSyncBatch;
+	}
+
+	public long getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	public void setCheckpointInterval(long checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	public String getReplicaHost() {
+		return replicaHost;
+	}
+
+	/**
+	 * Makes this server a read replica of the primary at host:port
+	 */
+	public void setReplicaOf(String replicaHost, int replicaPort) {
+		this.replicaHost = replicaHost;
+		this.replicaPort = replicaPort;
+	}
+
 	
 	public void start(){
 		//Start the server
@@ -66,22 +191,73 @@ public class ThrudocServer {
 				new TNonblockingServerSocket(port);
 			
 			
-			//Processor
-			TProcessor  processor = 
-				new ThrudocLoggingProcessor(new ThrudocHandler(docRoot)); 
+			//Handler
+			ThrudocHandler handler = new ThrudocHandler(docRoot);
+			handler.setBackend(backend);
+			handler.setCacheSize(cacheSize);
+			
+			for(Map.Entry<String,String> e : bucketBackends.entrySet())
+				handler.setBucketBackend(e.getKey(), e.getValue());
 			
 			Options opt = new Options();
+			//the pool only grows past its core size when the queue is full, which it never is
+			opt.minWorkerThreads = threadCount;
 			opt.maxWorkerThreads = threadCount;
 			
-			TPeekingTransportFactory peekFactory = new TPeekingTransportFactory(propertyName,"thrudoc_log");
+			TPeekingTransportFactory peekFactory = new TPeekingTransportFactory(propertyName,"thrudoc_log",
+					logDurability, logSyncWindow, logSyncBatch);
+			RedoLog redoLog = peekFactory.getCommitLog().getLog();
+			
+			//Recovery, redo anything the buckets lost before taking writes
+			ThrudocRecovery recovery = new ThrudocRecovery(handler, redoLog, threadCount);
+			recovery.replay();
+			recovery.start(checkpointInterval);
+			
+			//Processor, replicas only serve reads and take writes from the primary
+			TProcessor processor;
+			
+			if(replicaHost == null){
+				handler.setRedoLog(redoLog);
+				processor = new ThrudocLoggingProcessor(handler);
+			}else{
+				ThrudocReplica replica = new ThrudocReplica(handler, replicaHost, replicaPort, new File(propertyName));
+				
+				Thread replicator = new Thread(replica, "replica");
+				replicator.setDaemon(true);
+				replicator.start();
+				
+				processor = new ThrudocReadOnlyProcessor(handler);
+			}
+			
+			//Admission, saturated op classes are turned away with a ThrudocException
+			TAdmissionProcessor admission = new TAdmissionProcessor(processor,
+					Thrudoc.Iface.class, new ThrudocException(), handler.getStats());
+			admission.setLimit(ThrudocLoggingProcessor.READ_OPS, maxReads);
+			admission.setLimit(ThrudocLoggingProcessor.WRITE_OPS, maxWrites);
+			
+			processor = new TStatsProcessor(admission, handler.getStats());
 			
 			//Server
-			//TServer server = new THsHaServer(processor,serverSocket);
-			server = new THsHaServer( new TProcessorFactory(processor), serverSocket,
-                    peekFactory, peekFactory,
-                    new TBinaryProtocol.Factory(),
-                    new TBinaryProtocol.Factory(),
-                    opt);
+			if(selectorThreads > 0){
+				TThreadedSelectorServer.Options selectorOpt = new TThreadedSelectorServer.Options();
+				selectorOpt.selectorThreads = selectorThreads;
+				selectorOpt.workerThreads   = threadCount;
+				selectorOpt.queueDepth      = queueDepth;
+				selectorOpt.rejectingProcessor = admission.getRejectingProcessor();
+				
+				server = new TThreadedSelectorServer( new TProcessorFactory(processor), serverSocket,
+						peekFactory, peekFactory,
+						new TBinaryProtocol.Factory(),
+						new TBinaryProtocol.Factory(),
+						selectorOpt);
+			}else{
+				//TServer server = new THsHaServer(processor,serverSocket);
+				server = new THsHaServer( new TProcessorFactory(processor), serverSocket,
+	                    peekFactory, peekFactory,
+	                    new TBinaryProtocol.Factory(),
+	                    new TBinaryProtocol.Factory(),
+	                    opt);
+			}
 			
 			
 			//Server
@@ -124,7 +300,19 @@ public class ThrudocServer {
 			System.out.println(propertyName+": "+property);
 		}
 		
-		return propertyName;
+		return property;
+	}
+	
+	
+	public static String checkBackendProperty(Properties properties, String propertyName, String defaultValue){
+		String property = properties.getProperty(propertyName, defaultValue);
+		
+		if(!property.equals(ThrudocHandler.TOKYOCABINET) && !property.equals(ThrudocHandler.LOGSTORE)){
+			System.err.println(propertyName+" must be "+ThrudocHandler.TOKYOCABINET+" or "+ThrudocHandler.LOGSTORE);
+			System.exit(0);
+		}
+		
+		return property;
 	}
 	
 	
@@ -187,6 +375,80 @@ public class ThrudocServer {
 		System.out.println("thread count: "+threadCount);
 		thrudocServer.setThreadCount(threadCount);
 		
+		//selector threads, 0 keeps the single selector server
+		int selectorThreads = Integer.valueOf(properties.getProperty("SELECTOR_THREADS", "0"));
+		System.out.println("selector threads: "+selectorThreads);
+		thrudocServer.setSelectorThreads(selectorThreads);
+		
+		//requests waiting for a worker before more are rejected, 0 is unbounded
+		int queueDepth = Integer.valueOf(properties.getProperty("QUEUE_DEPTH", "0"));
+		System.out.println("queue depth: "+queueDepth);
+		thrudocServer.setQueueDepth(queueDepth);
+		
+		//reads and writes in flight before more are rejected, 0 is unlimited
+		int maxReads = Integer.valueOf(properties.getProperty("MAX_READS", "0"));
+		System.out.println("max reads: "+maxReads);
+		thrudocServer.setMaxReads(maxReads);
+		
+		int maxWrites = Integer.valueOf(properties.getProperty("MAX_WRITES", "0"));
+		System.out.println("max writes: "+maxWrites);
+		thrudocServer.setMaxWrites(maxWrites);
+		
+		//storage engine, BACKEND.<bucket> overrides the default per bucket
+		String backend = checkBackendProperty(properties, "BACKEND", ThrudocHandler.TOKYOCABINET);
+		System.out.println("backend: "+backend);
+		thrudocServer.setBackend(backend);
+		
+		for(String name : properties.stringPropertyNames()){
+			if(!name.startsWith("BACKEND."))
+				continue;
+			
+			String bucket = name.substring("BACKEND.".length());
+			String bucketBackend = checkBackendProperty(properties, name, backend);
+			System.out.println("backend for "+bucket+": "+bucketBackend);
+			thrudocServer.setBucketBackend(bucket, bucketBackend);
+		}
+		
+		//bytes of hot values to cache per bucket
+		long cacheSize = Long.valueOf(properties.getProperty("CACHE_SIZE", "0"));
+		System.out.println("cache size: "+cacheSize);
+		thrudocServer.setCacheSize(cacheSize);
+		
+		//redo log group commit: sync, async (lose at most LOG_SYNC_WINDOW ms) or none
+		String durability = properties.getProperty("LOG_DURABILITY", "sync");
+		try{
+			thrudocServer.setLogDurability(GroupCommitLog.Durability.valueOf(durability.toUpperCase()));
+		}catch(IllegalArgumentException e){
+			System.err.println("LOG_DURABILITY must be sync, async or none");
+			System.exit(0);
+		}
+		System.out.println("log durability: "+thrudocServer.getLogDurability());
+		
+		String defaultWindow = thrudocServer.getLogDurability() == GroupCommitLog.Durability.ASYNC ? "1000" : "0";
+		long logSyncWindow = Long.valueOf(properties.getProperty("LOG_SYNC_WINDOW", defaultWindow));
+		System.out.println("log sync window: "+logSyncWindow+"ms");
+		thrudocServer.setLogSyncWindow(logSyncWindow);
+		
+		int logSyncBatch = Integer.valueOf(properties.getProperty("LOG_SYNC_BATCH", "256"));
+		thrudocServer.setLogSyncBatch(logSyncBatch);
+		
+		//seconds between bucket syncs that let the redo log be trimmed
+		long checkpointInterval = Long.valueOf(properties.getProperty("CHECKPOINT_INTERVAL", "60"));
+		System.out.println("checkpoint interval: "+checkpointInterval+"s");
+		thrudocServer.setCheckpointInterval(checkpointInterval * 1000);
+		
+		//host:port of the primary when this server is a read replica
+		String replicaOf = properties.getProperty("REPLICA_OF");
+		if(replicaOf != null){
+			String[] hostPort = replicaOf.split(":");
+			if(hostPort.length != 2){
+				System.err.println("REPLICA_OF must be host:port");
+				System.exit(0);
+			}
+			
+			System.out.println("replica of: "+replicaOf);
+			thrudocServer.setReplicaOf(hostPort[0], Integer.valueOf(hostPort[1]));
+		}
 		
 		thrudocServer.start();	
 	}
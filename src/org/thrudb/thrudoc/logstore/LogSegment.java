@@ -0,0 +1,214 @@
+package org.thrudb.thrudoc.logstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * One append-only data file of a {@link LogStoreDB}.
+ *
+ * Records are laid out as:
+ *
+ * <pre>
+ * int  crc      crc32 of everything that follows
+ * byte type     PUT or DELETE, or'd with LIST for the list keyspace and
+ *               BATCH on all but the last record of a batch. LSN records
+ *               have no key and the 8 byte LSN of the logged write they
+ *               close as value
+ * int  keyLen
+ * int  valueLen
+ * key
+ * value
+ * </pre>
+ *
+ * @author jake
+ *
+ */
+class LogSegment {
+
+	static final byte PUT    = 1;
+	static final byte DELETE = 2;
+	static final byte LSN    = 4;
+	static final byte LIST   = 0x10;
+	static final byte BATCH  = 0x20;
+
+	static final int  HEADER_SIZE = 13;
+	static final String SUFFIX    = ".seg";
+
+	final long  id;
+	final File  file;
+	final AtomicLong dead = new AtomicLong(0); //bytes no longer reachable from the index
+
+	private final RandomAccessFile raf;
+	private final FileChannel      channel;
+	private volatile long          size;
+
+
+	LogSegment(File dir, long id) throws IOException {
+		this.id   = id;
+		this.file = new File(dir, String.format("%016d", id) + SUFFIX);
+
+		raf     = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		size    = channel.size();
+	}
+
+	/**
+	 * A record read back from disk
+	 */
+	static class Record {
+		byte   type;
+		byte[] key;
+		byte[] value;
+		long   offset;
+		int    size;
+
+		boolean isList(){
+			return (type & LIST) != 0;
+		}
+
+		boolean isDelete(){
+			return (type & ~(LIST | BATCH)) == DELETE;
+		}
+
+		boolean isLsn(){
+			return (type & ~BATCH) == LSN;
+		}
+
+		boolean isBatched(){
+			return (type & BATCH) != 0;
+		}
+	}
+
+	static ByteBuffer encode(byte type, byte[] key, byte[] value){
+		ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + key.length + value.length);
+
+		buf.position(4);
+		buf.put(type);
+		buf.putInt(key.length);
+		buf.putInt(value.length);
+		buf.put(key);
+		buf.put(value);
+
+		CRC32 crc = new CRC32();
+		crc.update(buf.array(), 4, buf.capacity() - 4);
+		buf.putInt(0, (int)crc.getValue());
+
+		buf.flip();
+		return buf;
+	}
+
+	long size(){
+		return size;
+	}
+
+	/**
+	 * Appends a record, callers serialize appends.
+	 *
+	 * @return offset of the record in this segment
+	 */
+	long append(ByteBuffer record) throws IOException {
+		long offset = size;
+
+		while(record.hasRemaining())
+			size += channel.write(record, size);
+
+		return offset;
+	}
+
+	/**
+	 * @return the bytes or null if this segment was removed under us
+	 */
+	byte[] read(long position, int length) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(length);
+
+		try{
+			while(buf.hasRemaining()){
+				if(channel.read(buf, position + buf.position()) < 0)
+					throw new IOException(file+" truncated at "+position);
+			}
+		}catch(ClosedChannelException e){
+			return null;
+		}
+
+		return buf.array();
+	}
+
+	/**
+	 * Reads the record at offset.
+	 *
+	 * @return the record or null if there is no complete, valid record there
+	 */
+	Record readRecord(long offset) throws IOException {
+
+		if(offset + HEADER_SIZE > size)
+			return null;
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while(header.hasRemaining()){
+			if(channel.read(header, offset + header.position()) < 0)
+				return null;
+		}
+		header.flip();
+
+		int  crc      = header.getInt();
+		byte type     = header.get();
+		int  keyLen   = header.getInt();
+		int  valueLen = header.getInt();
+
+		if(keyLen < 0 || valueLen < 0 || offset + HEADER_SIZE + keyLen + valueLen > size)
+			return null;
+
+		byte[] body = read(offset + HEADER_SIZE, keyLen + valueLen);
+		if(body == null)
+			return null;
+
+		CRC32 check = new CRC32();
+		check.update(header.array(), 4, HEADER_SIZE - 4);
+		check.update(body);
+
+		if((int)check.getValue() != crc)
+			return null;
+
+		Record record = new Record();
+		record.type   = type;
+		record.offset = offset;
+		record.size   = HEADER_SIZE + keyLen + valueLen;
+		record.key    = new byte[keyLen];
+		record.value  = new byte[valueLen];
+		System.arraycopy(body, 0, record.key, 0, keyLen);
+		System.arraycopy(body, keyLen, record.value, 0, valueLen);
+
+		return record;
+	}
+
+	/**
+	 * Drops a torn or corrupt tail
+	 */
+	void truncate(long length) throws IOException {
+		channel.truncate(length);
+		size = length;
+	}
+
+	void sync() throws IOException {
+		channel.force(false);
+	}
+
+	void close() {
+		try{
+			raf.close();
+		}catch(IOException e){
+			//nothing to do
+		}
+	}
+
+	void delete() {
+		close();
+		file.delete();
+	}
+}
@@ -0,0 +1,784 @@
+package org.thrudb.thrudoc.logstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.log4j.Logger;
+import org.apache.thrift.TException;
+import org.thrudb.thrudoc.Entity;
+import org.thrudb.thrudoc.LoggedWrite;
+import org.thrudb.thrudoc.SegmentedList;
+import org.thrudb.thrudoc.ThrudocBackend;
+
+/**
+ * Implements thrudoc api in pure java as an append only log.
+ *
+ * Every write is appended to the active segment file and the in memory
+ * index is pointed at it. Reads are a single positional read. Once the
+ * active segment is full a new one is started, older segments with
+ * mostly dead records are rewritten by a background thread.
+ *
+ * On startup the segments are scanned in order to rebuild the index, a
+ * torn record at the tail of a segment is truncated away. Batches are
+ * written to a single segment and only applied once their last record
+ * is read back, so a torn batch is dropped as a whole.
+ *
+ * A logged write's records are batched and closed by a record holding
+ * its LSN, so the LSN of the last logged write is recovered with it and
+ * a replay can skip what the store already has.
+ *
+ * @author jake
+ *
+ */
+public class LogStoreDB implements ThrudocBackend, Runnable {
+
+	public static final String SUFFIX = ".lsd";
+
+	private static final long   MAX_SEGMENT_SIZE  = 64 * 1024 * 1024;
+	private static final double COMPACT_THRESHOLD = 0.5;
+	private static final long   COMPACT_INTERVAL  = 30 * 1000;
+
+	private Logger logger = Logger.getLogger(getClass());
+	private File   dir;
+
+	private final ConcurrentSkipListMap<Long,LogSegment> segments  = new ConcurrentSkipListMap<Long,LogSegment>();
+	private volatile LogSegment                          active;
+
+	//map keyspace is ordered for scan()
+	private final ConcurrentSkipListMap<String,Location> keys     = new ConcurrentSkipListMap<String,Location>();
+	private final ConcurrentHashMap<String,Location>     listKeys = new ConcurrentHashMap<String,Location>();
+	private final SegmentedList                          lists;
+
+	private Thread compactor;
+
+	//guarded by this
+	private long       appliedLsn = 0;     //of the last logged write
+	private LogSegment lsnSegment;         //holds the record of appliedLsn
+	private boolean    logging    = false; //batching a logged write's records
+
+	/**
+	 * Where the current value of a key lives
+	 */
+	private static class Location {
+		final LogSegment segment;
+		final long       offset;
+		final int        size;
+		final int        valueLength;
+
+		Location(LogSegment segment, long offset, int size, int valueLength){
+			this.segment     = segment;
+			this.offset      = offset;
+			this.size        = size;
+			this.valueLength = valueLength;
+		}
+	}
+
+	/**
+	 * Opens or creates the log store for a bucket, replaying any existing
+	 * segments.
+	 *
+	 * @param docRoot      where all the dbs live.
+	 * @param bucketName   db name really
+	 *
+	 * @throws TException
+	 */
+	public LogStoreDB(String docRoot, String bucketName) throws TException {
+		dir = new File(docRoot, bucketName + SUFFIX);
+
+		if(dir.isFile())
+			throw new TException(dir+" should be a directory");
+
+		if(!dir.exists() && !dir.mkdirs())
+			throw new TException("Unable to create "+dir);
+
+		if(!dir.canWrite())
+			throw new TException(dir+" is not writable");
+
+		try{
+			recover();
+		}catch(IOException e){
+			throw new TException(e);
+		}
+
+		lists = new SegmentedList(new SegmentedList.Store(){
+			public byte[] get(byte[] key) {
+				return read(listKeys, latin1(key));
+			}
+
+			public void put(byte[] key, byte[] value) {
+				write(listKeys, latin1(key), key, value, (byte)(LogSegment.PUT | LogSegment.LIST));
+			}
+
+			public void out(byte[] key) {
+				write(listKeys, latin1(key), key, new byte[]{}, (byte)(LogSegment.DELETE | LogSegment.LIST));
+			}
+		});
+
+		compactor = new Thread(this, "compactor-"+bucketName);
+		compactor.setDaemon(true);
+		compactor.start();
+	}
+
+	/**
+	 * @return true if a log store for this bucket is on disk
+	 */
+	public static boolean exists(String docRoot, String bucketName){
+		return new File(docRoot, bucketName + SUFFIX).isDirectory();
+	}
+
+
+	/**
+	 * Rebuilds the index from the segments on disk
+	 */
+	private void recover() throws IOException {
+
+		File[] files = dir.listFiles();
+		Arrays.sort(files);
+
+		for(File file : files){
+			String name = file.getName();
+
+			if(!name.endsWith(LogSegment.SUFFIX))
+				continue;
+
+			long id = Long.parseLong(name.substring(0, name.length() - LogSegment.SUFFIX.length()));
+
+			LogSegment segment = new LogSegment(dir, id);
+			segments.put(id, segment);
+
+			long offset = 0;
+			LogSegment.Record record;
+			List<LogSegment.Record> batch = new ArrayList<LogSegment.Record>();
+			while((record = segment.readRecord(offset)) != null){
+				offset += record.size;
+				batch.add(record);
+
+				if(record.isBatched())
+					continue;
+
+				for(LogSegment.Record r : batch)
+					apply(segment, r);
+
+				batch.clear();
+			}
+
+			//an unfinished batch is torn too
+			if(!batch.isEmpty())
+				offset = batch.get(0).offset;
+
+			if(offset < segment.size()){
+				logger.warn("Truncating "+(segment.size() - offset)+" bytes from "+segment.file);
+				segment.truncate(offset);
+			}
+		}
+
+		if(segments.isEmpty())
+			active = newSegment(1);
+		else
+			active = segments.lastEntry().getValue();
+
+		logger.info("Recovered "+keys.size()+" keys from "+segments.size()+" segments in "+dir);
+	}
+
+	private void apply(LogSegment segment, LogSegment.Record record) throws UnsupportedEncodingException {
+
+		if(record.isLsn()){
+			appliedLsn = ByteBuffer.wrap(record.value).getLong();
+			lsnSegment = segment;
+			segment.dead.addAndGet(record.size);
+			return;
+		}
+
+		ConcurrentMap<String,Location> index = record.isList() ? listKeys : keys;
+		String key = record.isList() ? latin1(record.key) : new String(record.key, "UTF-8");
+
+		Location old;
+		if(record.isDelete()){
+			old = index.remove(key);
+			segment.dead.addAndGet(record.size);
+		}else{
+			old = index.put(key, new Location(segment, record.offset, record.size, record.value.length));
+		}
+
+		if(old != null)
+			old.segment.dead.addAndGet(old.size);
+	}
+
+	private LogSegment newSegment(long id) throws IOException {
+		LogSegment segment = new LogSegment(dir, id);
+		segments.put(id, segment);
+
+		return segment;
+	}
+
+	private byte[] read(Map<String,Location> index, String key){
+
+		try{
+			Location loc = index.get(key);
+
+			while(loc != null){
+				byte[] value = loc.segment.read(loc.offset + loc.size - loc.valueLength, loc.valueLength);
+
+				if(value != null)
+					return value;
+
+				//segment was compacted away, the index has moved on
+				Location moved = index.get(key);
+
+				if(moved == loc)
+					throw new IOException("segment of "+key+" in "+dir+" is closed");
+
+				loc = moved;
+			}
+
+			return null;
+		}catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Appends a record and points the index at it
+	 */
+	private synchronized void write(Map<String,Location> index, String key, byte[] keyBytes, byte[] value, byte type){
+
+		try{
+			roll();
+			append(index, key, keyBytes, value, type);
+		}catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Appends map records as one batch, the batch never spans segments
+	 */
+	private synchronized void writeBatch(List<String> batchKeys, List<byte[]> values, byte type){
+
+		try{
+			roll();
+
+			for(int i=0; i<batchKeys.size(); i++){
+				String key = batchKeys.get(i);
+				byte   recordType = i < batchKeys.size() - 1 ? (byte)(type | LogSegment.BATCH) : type;
+
+				append(keys, key, utf8(key), values.get(i), recordType);
+			}
+		}catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void roll() throws IOException {
+		//a batch never spans segments, a logged write rolls in begin()
+		if(logging)
+			return;
+
+		if(active.size() >= MAX_SEGMENT_SIZE){
+			active.sync();
+			active = newSegment(active.id + 1);
+		}
+	}
+
+	private void append(Map<String,Location> index, String key, byte[] keyBytes, byte[] value, byte type) throws IOException {
+		if(logging)
+			type |= LogSegment.BATCH;
+
+		ByteBuffer record = LogSegment.encode(type, keyBytes, value);
+		int        size   = record.remaining();
+		long       offset = active.append(record);
+
+		Location old;
+		if((type & ~(LogSegment.LIST | LogSegment.BATCH)) == LogSegment.DELETE){
+			old = index.remove(key);
+			active.dead.addAndGet(size);
+		}else{
+			old = index.put(key, new Location(active, offset, size, value.length));
+		}
+
+		if(old != null)
+			old.segment.dead.addAndGet(old.size);
+	}
+
+	/**
+	 * Starts a write, called holding the monitor until {@link #commit}
+	 *
+	 * @return false if the store already has this logged write
+	 */
+	private boolean begin() {
+		LoggedWrite write = LoggedWrite.get();
+
+		if(write == null)
+			return true;
+
+		if(write.isApplied(appliedLsn))
+			return false;
+
+		try{
+			roll();
+		}catch(IOException e){
+			throw new RuntimeException(e);
+		}
+
+		logging = true;
+		return true;
+	}
+
+	/**
+	 * Closes a logged write's batch with its LSN. One that failed half way
+	 * keeps what it wrote, in the index it already has.
+	 */
+	private void commit() {
+		if(!logging)
+			return;
+
+		logging = false;
+
+		try{
+			appendLsn(LoggedWrite.get().getLsn());
+		}catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void appendLsn(long lsn) throws IOException {
+		ByteBuffer record = LogSegment.encode(LogSegment.LSN, new byte[]{}, ByteBuffer.allocate(8).putLong(lsn).array());
+		int        size   = record.remaining();
+
+		active.append(record);
+
+		//the next one replaces it, compaction keeps the newest
+		active.dead.addAndGet(size);
+
+		appliedLsn = lsn;
+		lsnSegment = active;
+	}
+
+	/**
+	 * Gets a key from the db.
+	 *
+	 * @param key the key name
+	 * @return the value for this key (binary)
+	 */
+	public byte[] get(String key) {
+		return read(keys, key);
+	}
+
+	/**
+	 * Creates or Replaces a key in the db with a binary value
+	 * @param key the key name
+	 * @param value the binary value
+	 */
+	public synchronized void put(String key, byte[] value) {
+		if(!begin())
+			return;
+
+		try{
+			write(keys, key, utf8(key), value, LogSegment.PUT);
+		}finally{
+			commit();
+		}
+	}
+
+	/**
+	 * Removes a key/value from the db.
+	 *
+	 * @param key the name of key to remove
+	 */
+	public synchronized void remove(String key) {
+		if(!begin())
+			return;
+
+		try{
+			if(keys.containsKey(key))
+				write(keys, key, utf8(key), new byte[]{}, LogSegment.DELETE);
+		}finally{
+			commit();
+		}
+	}
+
+	/**
+	 * Puts a batch of keys, after a crash either all or none are recovered
+	 *
+	 * @param entities the keys and values, buckets are ignored
+	 */
+	public synchronized void put_multi(List<Entity> entities) {
+
+		if(entities.isEmpty() || !begin())
+			return;
+
+		List<String> batchKeys = new ArrayList<String>(entities.size());
+		List<byte[]> values    = new ArrayList<byte[]>(entities.size());
+
+		for(Entity entity : entities){
+			batchKeys.add(entity.key);
+			values.add(entity.value);
+		}
+
+		try{
+			writeBatch(batchKeys, values, LogSegment.PUT);
+		}finally{
+			commit();
+		}
+	}
+
+	/**
+	 * Removes a batch of keys, after a crash either all or none are recovered
+	 *
+	 * @param entities the keys to remove, buckets and values are ignored
+	 */
+	public synchronized void remove_multi(List<Entity> entities) {
+
+		if(!begin())
+			return;
+
+		List<String> batchKeys = new ArrayList<String>(entities.size());
+		List<byte[]> values    = new ArrayList<byte[]>(entities.size());
+
+		for(Entity entity : entities){
+			if(keys.containsKey(entity.key)){
+				batchKeys.add(entity.key);
+				values.add(new byte[]{});
+			}
+		}
+
+		try{
+			if(!batchKeys.isEmpty())
+				writeBatch(batchKeys, values, LogSegment.DELETE);
+		}finally{
+			commit();
+		}
+	}
+
+	/**
+	 * Returns a list of keys that start with the seed.
+	 *
+	 * @param seed the starting key to search from
+	 * @param limit the max results
+	 * @return list of keys starting with the seed
+	 */
+	public List<String> scan(String seed, int limit) {
+		List<String> result = new ArrayList<String>();
+
+		for(String key : keys.tailMap(seed, true).keySet()){
+			if(!key.startsWith(seed) || (limit >= 0 && result.size() >= limit))
+				break;
+
+			result.add(key);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Increments a counter by a specified amount.
+	 *
+	 * Counters are stored as 4 byte little endian ints like tokyo cabinet
+	 *
+	 * @param key the counter name
+	 * @param amount the amount to increment by
+	 * @return
+	 */
+	public synchronized int incr(String key, int amount) {
+		//a replay ignores the result
+		if(!begin())
+			return 0;
+
+		try{
+			byte[] value = get(key);
+
+			int counter = 0;
+			if(value != null && value.length == 4)
+				counter = ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN).getInt();
+
+			counter += amount;
+
+			write(keys, key, utf8(key), ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(counter).array(), LogSegment.PUT);
+
+			return counter;
+		}finally{
+			commit();
+		}
+	}
+
+	/**
+	 * Decrements a counter by a specified amount
+	 *
+	 * @param key the counter name
+	 * @param amount the amount to decrement by
+	 * @return
+	 */
+	public int decr(String key, int amount) {
+
+		if(amount > 0)
+			amount *= -1;
+
+		return incr(key, amount);
+	}
+
+	/*
+	 * List mutations write several records, they hold the monitor so a
+	 * logged one's batch isn't interleaved with other writes.
+	 */
+
+	public synchronized void push_back(String key, byte[] value) throws TException {
+		if(!begin())
+			return;
+
+		try{
+			lists.push_back(key, value);
+		}finally{
+			commit();
+		}
+	}
+
+	public synchronized byte[] pop_back(String key) throws TException {
+		if(!begin())
+			return new byte[]{};
+
+		try{
+			return lists.pop_back(key);
+		}finally{
+			commit();
+		}
+	}
+
+	public synchronized void push_front(String key, byte[] value) throws TException {
+		if(!begin())
+			return;
+
+		try{
+			lists.push_front(key, value);
+		}finally{
+			commit();
+		}
+	}
+
+	public synchronized byte[] pop_front(String key) throws TException {
+		if(!begin())
+			return new byte[]{};
+
+		try{
+			return lists.pop_front(key);
+		}finally{
+			commit();
+		}
+	}
+
+	public synchronized byte[] remove_at(String key, int position) {
+		if(!begin())
+			return null;
+
+		try{
+			return lists.remove_at(key, position);
+		}finally{
+			commit();
+		}
+	}
+
+	public synchronized void insert_at(String key, byte[] value, int position) {
+		if(!begin())
+			return;
+
+		try{
+			lists.insert_at(key, value, position);
+		}finally{
+			commit();
+		}
+	}
+
+	public synchronized void replace_at(String key, byte[] value, int position) {
+		if(!begin())
+			return;
+
+		try{
+			lists.replace_at(key, value, position);
+		}finally{
+			commit();
+		}
+	}
+
+	public byte[] retrieve_at(String key, int position) {
+		return lists.retrieve_at(key, position);
+	}
+
+	public List<byte[]> range(String key, int start, int end) {
+		return lists.range(key, start, end);
+	}
+
+	public int length(String key) {
+		return lists.length(key);
+	}
+
+	/**
+	 * Removes every segment and starts over empty
+	 */
+	public synchronized boolean erase() {
+		LoggedWrite write = LoggedWrite.get();
+
+		if(write != null && write.isApplied(appliedLsn))
+			return true;
+
+		for(LogSegment segment : segments.values())
+			segment.delete();
+
+		segments.clear();
+		keys.clear();
+		listKeys.clear();
+
+		appliedLsn = 0;
+		lsnSegment = null;
+
+		try{
+			active = newSegment(active.id + 1);
+
+			//the LSN of the erase itself
+			if(write != null)
+				appendLsn(write.getLsn());
+		}catch(IOException e){
+			logger.error("Unable to erase "+dir, e);
+			return false;
+		}
+
+		return true;
+	}
+
+	LogSegment getActiveSegment() {
+		return active;
+	}
+
+	/**
+	 * Forces the active segment to disk
+	 */
+	public void sync() throws TException {
+		try{
+			active.sync();
+		}catch(IOException e){
+			throw new TException("Unable to sync "+dir+": "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Stops compacting, syncs and closes every segment
+	 */
+	public synchronized void shutdown() {
+		compactor.interrupt();
+
+		try{
+			sync();
+		}catch(TException e){
+			logger.error(e.getMessage(), e);
+		}
+
+		for(LogSegment segment : segments.values())
+			segment.close();
+	}
+
+
+	/**
+	 * Compacts any sealed segments whose dead records passed the threshold
+	 */
+	public void run() {
+		while(true){
+			try{
+				Thread.sleep(COMPACT_INTERVAL);
+
+				for(LogSegment segment : segments.values()){
+
+					if(segment == active || segment.size() == 0)
+						continue;
+
+					if((double)segment.dead.get() / segment.size() >= COMPACT_THRESHOLD)
+						compact(segment);
+				}
+
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				return;
+			}catch(Exception e){
+				logger.error("Compaction of "+dir+" failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Copies the live records of a segment to the active one and drops it.
+	 */
+	void compact(LogSegment segment) throws IOException {
+		logger.info("Compacting "+segment.file+" ("+segment.dead.get()+" of "+segment.size()+" bytes dead)");
+
+		//never copy a segment into itself
+		synchronized(this){
+			if(segment == active)
+				active = newSegment(active.id + 1);
+		}
+
+		//tombstones only matter while an older segment could still hold the key
+		boolean keepDeletes = segments.firstKey() < segment.id;
+
+		long offset = 0;
+		LogSegment.Record record;
+		while((record = segment.readRecord(offset)) != null){
+			offset += record.size;
+
+			if(record.isLsn())
+				continue;
+
+			Map<String,Location> index = record.isList() ? listKeys : keys;
+			String key = record.isList() ? latin1(record.key) : new String(record.key, "UTF-8");
+
+			//hold the write lock so a concurrent write can't land in between
+			synchronized(this){
+				Location loc = index.get(key);
+
+				//live records are copied one by one, their batch is already whole
+				byte type = (byte)(record.type & ~LogSegment.BATCH);
+
+				if(record.isDelete()){
+					if(keepDeletes && loc == null)
+						write(index, key, record.key, record.value, type);
+
+				}else if(loc != null && loc.segment == segment && loc.offset == record.offset){
+					write(index, key, record.key, record.value, type);
+				}
+			}
+		}
+
+		//the newest LSN outlives its segment
+		synchronized(this){
+			if(lsnSegment == segment)
+				appendLsn(appliedLsn);
+		}
+
+		active.sync();
+
+		segments.remove(segment.id);
+		segment.delete();
+	}
+
+	private static String latin1(byte[] key){
+		try{
+			return new String(key, "ISO-8859-1");
+		}catch(UnsupportedEncodingException e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static byte[] utf8(String key){
+		try{
+			return key.getBytes("UTF-8");
+		}catch(UnsupportedEncodingException e){
+			throw new RuntimeException(e);
+		}
+	}
+}
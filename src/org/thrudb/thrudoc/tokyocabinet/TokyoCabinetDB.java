@@ -1,13 +1,25 @@
 package org.thrudb.thrudoc.tokyocabinet;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import org.apache.log4j.Logger;
 import org.apache.thrift.TException;
+import org.thrudb.thrudoc.Entity;
+import org.thrudb.thrudoc.LoggedWrite;
+import org.thrudb.thrudoc.SegmentedList;
 import org.thrudb.thrudoc.ThrudocBackend;
+import org.thrudb.util.bloom.CountingBloomFilter;
+import org.thrudb.util.bloom.Key;
+import org.thrudb.util.hash.Hash;
 
 import tokyocabinet.BDB;
 import tokyocabinet.BDBCUR;
@@ -15,6 +27,20 @@ import tokyocabinet.BDBCUR;
 /**
  * Implements thrudoc api using TokyoCabinet.
  * 
+ * Map operations go straight to the bucket's bdb, list operations are
+ * handled by a {@link SegmentedList} kept in a separate .tcl file.
+ * Buckets written before that kept lists as duplicate records in the bdb,
+ * they are moved over the first time the bucket is opened.
+ * 
+ * Counting bloom filters of the map and list keys answer lookups for
+ * absent keys without going to tokyo cabinet. A filter that fills past
+ * the keys it was sized for is rebuilt twice as big. They are written to
+ * a .bloom file on shutdown and deleted once loaded, so after a crash
+ * they are rebuilt from the dbs rather than trusted.
+ * 
+ * Each db keeps the LSN of the last logged write it has under a key of
+ * its own, put in the same transaction as the write.
+ * 
  * @author jake
  *
  */
@@ -24,6 +50,37 @@ public class TokyoCabinetDB implements ThrudocBackend {
 	private String docRoot;
 	private String bucketName;
 	private BDB    bdb;
+	private BDB    listBdb;
+	private SegmentedList lists;
+	
+	private static final int BUCKETS_PER_KEY = 10;  //~1% false positives with 5 hashes
+	private static final int MIN_FILTER      = 1 << 16;
+	private static final int FILTER_HASHES   = 5;
+	
+	//marks a list db the old lists were moved into, list record keys are 4+ bytes
+	private static final byte[] LISTS_MIGRATED = new byte[]{0,0,0};
+	private static final byte[] LIST_LSN       = new byte[]{0,0,1};
+	
+	//no string key encodes to this in UTF-8, scan hides it
+	private static final byte[] MAP_LSN        = new byte[]{(byte)0xff,(byte)0xff,'l','s','n'};
+	private static final String MAP_LSN_KEY    = new String(MAP_LSN);
+	
+	//probed without a lock, a probe racing a write can only miss a key
+	//that isn't committed yet
+	private File                         filterFile;
+	private volatile CountingBloomFilter mapFilter;
+	private volatile CountingBloomFilter listFilter;
+	private long                         mapKeys;  //counted in mapFilter
+	private long                         listKeys; //counted in listFilter
+	
+	private AppliedLsn mapLsn;
+	private AppliedLsn listLsn;
+	
+	//filter changes hold these, erase swaps the filters so lock on these
+	//instead, writes hold them across the db change too so a key is never
+	//uncounted before it's counted
+	private final Object mapLock  = new Object();
+	private final Object listLock = new Object();
 	
 	/**
 	 * Allocates a new tokyo cabinet bdb.
@@ -40,10 +97,223 @@ public class TokyoCabinetDB implements ThrudocBackend {
 		this.docRoot    = docRoot;
 		this.bucketName = bucketName;
 		
+		bdb = open(docRoot+File.separatorChar+bucketName+".tcb");
+		
+		//lists live in their own segmented db next to this one
+		listBdb = open(docRoot+File.separatorChar+bucketName+".tcl");
+		lists   = new SegmentedList(new SegmentedList.Store(){
+			public byte[] get(byte[] key) {
+				return listBdb.get(key);
+			}
+
+			public void put(byte[] key, byte[] value) {
+				if(!listBdb.put(key, value))
+					throw new RuntimeException(listBdb.errmsg());
+			}
+
+			public void out(byte[] key) {
+				listBdb.out(key);
+			}
+		});
+		
+		mapLsn  = new AppliedLsn(bdb, MAP_LSN);
+		listLsn = new AppliedLsn(listBdb, LIST_LSN);
+		
+		filterFile = new File(docRoot+File.separatorChar+bucketName+".bloom");
+		
+		//saved filters don't know the moved lists
+		if(migrateLists())
+			filterFile.delete();
+		
+		if(!loadFilters())
+			rebuildFilters();
+	}
+	
+	/**
+	 * Moves the lists of an older bucket, kept as duplicate records of a
+	 * bdb key, into the list db. A key with a single record can't be told
+	 * from a map value so it stays one, get still reads it.
+	 * 
+	 * @return true if any list was moved
+	 */
+	private boolean migrateLists() throws TException {
+		
+		if(listBdb.get(LISTS_MIGRATED) != null)
+			return false;
+		
+		List<byte[]> keys = new ArrayList<byte[]>();
+		
+		BDBCUR cursor = new BDBCUR(bdb);
+		if(cursor.first()){
+			byte[] last = null;
+			do{
+				byte[] key = cursor.key();
+				
+				//the cursor visits each duplicate
+				if(last == null || !Arrays.equals(key, last)){
+					if(bdb.vnum(key) > 1)
+						keys.add(key);
+					
+					last = key;
+				}
+			}while(cursor.next());
+		}
+		
+		if(!keys.isEmpty()){
+			logger.info("Moving "+keys.size()+" lists of "+bucketName+" to "+bucketName+".tcl");
+			
+			if(!listBdb.tranbegin())
+				throw new TException(listBdb.errmsg());
+			
+			for(byte[] key : keys){
+				String listKey = new String(key);
+				
+				//already moved by a run that died before the bdb commit
+				if(lists.length(listKey) > 0)
+					continue;
+				
+				for(Object value : bdb.getlist(key))
+					lists.push_back(listKey, (byte[]) value);
+			}
+			
+			if(!listBdb.trancommit())
+				throw new TException(listBdb.errmsg());
+			
+			//the map keeps the one value get returned
+			if(!bdb.tranbegin())
+				throw new TException(bdb.errmsg());
+			
+			for(byte[] key : keys){
+				byte[] first = bdb.get(key);
+				
+				if(!bdb.outlist(key) || !bdb.put(key, first)){
+					String err = bdb.errmsg();
+					bdb.tranabort();
+					
+					throw new TException(err);
+				}
+			}
+			
+			if(!bdb.trancommit())
+				throw new TException(bdb.errmsg());
+		}
+		
+		if(!listBdb.put(LISTS_MIGRATED, new byte[]{1}) || !listBdb.sync())
+			throw new TException(listBdb.errmsg());
+		
+		return !keys.isEmpty();
+	}
+	
+	
+	/**
+	 * The LSN of the last logged write a db has. A logged write runs in a
+	 * transaction that also stores its LSN, a replayed one the db already
+	 * has is skipped. Only used with the db's lock held.
+	 */
+	private static class AppliedLsn {
+		private final BDB    db;
+		private final byte[] key;
+		private long         lsn  = 0;
+		private boolean      tran = false;
+		
+		AppliedLsn(BDB db, byte[] key) {
+			this.db  = db;
+			this.key = key;
+			
+			byte[] value = db.get(key);
+			if(value != null && value.length == 8)
+				lsn = ByteBuffer.wrap(value).getLong();
+		}
+		
+		/**
+		 * Starts a write, in a transaction if it's logged or a batch
+		 * 
+		 * @return false if the db already has it
+		 */
+		boolean begin(boolean batch) {
+			LoggedWrite write = LoggedWrite.get();
+			
+			if(write != null && write.isApplied(lsn))
+				return false;
+			
+			if(write != null || batch){
+				if(!db.tranbegin())
+					throw new RuntimeException(db.errmsg());
+				
+				tran = true;
+			}
+			
+			return true;
+		}
+		
+		/**
+		 * Stores the LSN of a logged write and commits it
+		 */
+		void commit() {
+			LoggedWrite write = LoggedWrite.get();
+			
+			if(!tran)
+				return;
+			
+			if(write != null && !db.put(key, encode(write.getLsn())))
+				throw new RuntimeException(db.errmsg());
+			
+			tran = false;
+			
+			if(!db.trancommit()){
+				String err = db.errmsg();
+				db.tranabort();
+				
+				throw new RuntimeException(err);
+			}
+			
+			if(write != null)
+				lsn = write.getLsn();
+		}
+		
+		/**
+		 * Rolls back a write that didn't commit
+		 */
+		void end() {
+			if(tran){
+				tran = false;
+				db.tranabort();
+			}
+		}
+		
+		private static byte[] encode(long lsn) {
+			return ByteBuffer.allocate(8).putLong(lsn).array();
+		}
+		
+		/**
+		 * Empties the db, keeping the LSN of a logged erase
+		 */
+		boolean vanish() {
+			LoggedWrite write = LoggedWrite.get();
+			
+			if(write != null && write.isApplied(lsn))
+				return true;
+			
+			if(!db.vanish())
+				return false;
+			
+			lsn = 0;
+			
+			if(write != null){
+				if(!db.put(key, encode(write.getLsn())))
+					return false;
+				
+				lsn = write.getLsn();
+			}
+			
+			return true;
+		}
+	}
+	
+	private BDB open(String dbFileName) throws TException {
 		int bdbFlags = BDB.OWRITER;
 	
 		//verify db file
-		String dbFileName = docRoot+File.separatorChar+bucketName+".tcb";
 		File   dbFile     = new File(dbFileName);
 		
 		if(dbFile.isFile() && !dbFile.canWrite())
@@ -56,12 +326,162 @@ public class TokyoCabinetDB implements ThrudocBackend {
 			bdbFlags |= BDB.OCREAT; 
 		
 		
-		bdb = new BDB();
-		if(!bdb.open(dbFileName,bdbFlags)){
-			throw new TException(bdb.errmsg());
-		}		
+		BDB db = new BDB();
+		if(!db.open(dbFileName,bdbFlags)){
+			throw new TException(db.errmsg());
+		}
+		
+		return db;
+	}
+	
+	/**
+	 * Reads the filters and their key counts saved by the last clean shutdown
+	 * 
+	 * @return false if they are missing or too small for the dbs now
+	 */
+	private boolean loadFilters() {
+		
+		if(!filterFile.isFile())
+			return false;
+		
+		try{
+			DataInputStream in = new DataInputStream(new FileInputStream(filterFile));
+			
+			try{
+				mapFilter  = new CountingBloomFilter();
+				mapFilter.readFields(in);
+				
+				listFilter = new CountingBloomFilter();
+				listFilter.readFields(in);
+				
+				mapKeys  = in.readLong();
+				listKeys = in.readLong();
+			}finally{
+				in.close();
+			}
+			
+		}catch(IOException e){
+			logger.warn("Unable to read "+filterFile+", rebuilding", e);
+			return false;
+		}finally{
+			//anything written after this point would make it stale
+			filterFile.delete();
+		}
+		
+		return mapFilter.getVectorSize()  >= filterSize(bdb.rnum())
+			&& listFilter.getVectorSize() >= filterSize(listBdb.rnum());
+	}
+	
+	private void rebuildFilters() {
+		logger.info("Building bloom filters for "+bucketName);
+		
+		rebuildMapFilter(bdb.rnum());
+		rebuildListFilter(listBdb.rnum());
+	}
+	
+	/**
+	 * Scans the map db into a filter with room for twice the keys, it's only
+	 * swapped in once it's full since probes don't lock
+	 */
+	private void rebuildMapFilter(long keys) {
+		CountingBloomFilter filter  = new CountingBloomFilter(filterSize(keys * 2), FILTER_HASHES, Hash.MURMUR_HASH);
+		long                counted = 0;
+		
+		BDBCUR cursor = new BDBCUR(bdb);
+		if(cursor.first()){
+			do{
+				filter.add(filterKey(cursor.key()));
+				counted++;
+			}while(cursor.next());
+		}
+		
+		mapFilter = filter;
+		mapKeys   = counted;
+	}
+	
+	/**
+	 * Scans the list db like {@link #rebuildMapFilter}
+	 */
+	private void rebuildListFilter(long keys) {
+		CountingBloomFilter filter  = new CountingBloomFilter(filterSize(keys * 2), FILTER_HASHES, Hash.MURMUR_HASH);
+		long                counted = 0;
+		
+		//only header records, segment keys carry a trailing segment number
+		BDBCUR cursor = new BDBCUR(listBdb);
+		if(cursor.first()){
+			do{
+				byte[] key = cursor.key();
+				
+				if(key.length >= 4 && key.length == 4 + ByteBuffer.wrap(key).getInt()){
+					byte[] listKey = new byte[key.length - 4];
+					System.arraycopy(key, 4, listKey, 0, listKey.length);
+					
+					filter.add(filterKey(listKey));
+					counted++;
+				}
+			}while(cursor.next());
+		}
+		
+		listFilter = filter;
+		listKeys   = counted;
 	}
 	
+	/*
+	 * Count keys in and out of the filters, called holding their lock.
+	 * Past the keys a filter was sized for its false positives climb.
+	 */
+	
+	private void countKey(byte[] key) {
+		mapFilter.add(filterKey(key));
+		
+		if(++mapKeys > mapFilter.getVectorSize() / BUCKETS_PER_KEY)
+			rebuildMapFilter(mapKeys);
+	}
+	
+	private void uncountKey(byte[] key) {
+		mapFilter.delete(filterKey(key));
+		mapKeys--;
+	}
+	
+	private void countList(String key) {
+		listFilter.add(filterKey(key.getBytes()));
+		
+		if(++listKeys > listFilter.getVectorSize() / BUCKETS_PER_KEY)
+			rebuildListFilter(listKeys);
+	}
+	
+	private void uncountList(String key) {
+		listFilter.delete(filterKey(key.getBytes()));
+		listKeys--;
+	}
+	
+	/**
+	 * @return the buckets of the map filter
+	 */
+	int getMapFilterSize() {
+		return mapFilter.getVectorSize();
+	}
+	
+	private static int filterSize(long keys) {
+		return (int)Math.min(Integer.MAX_VALUE, Math.max(MIN_FILTER, keys * BUCKETS_PER_KEY));
+	}
+	
+	private static Key filterKey(byte[] key) {
+		
+		//the hash functions reject empty keys
+		if(key.length == 0)
+			return new Key(new byte[]{0});
+		
+		return new Key(key);
+	}
+	
+	private boolean mayContainKey(String key) {
+		return mapFilter.membershipTest(filterKey(key.getBytes()));
+	}
+	
+	private boolean mayContainList(String key) {
+		return listFilter.membershipTest(filterKey(key.getBytes()));
+	}
 	
 	/**
 	 * Gets a key from the db.
@@ -71,6 +491,9 @@ public class TokyoCabinetDB implements ThrudocBackend {
 	 */
 	public byte[] get(String key) {
 		
+		if(!mayContainKey(key))
+			return null;
+		
 		byte[] value = bdb.get(key.getBytes());
 		
 		return value;
@@ -84,7 +507,24 @@ public class TokyoCabinetDB implements ThrudocBackend {
 	 */
 	public void put(String key, byte[] value) {			
 		
-		bdb.put(key.getBytes(), value);
+		byte[] keyBytes = key.getBytes();
+		
+		synchronized(mapLock){
+			if(!mapLsn.begin(false))
+				return;
+			
+			try{
+				//only new keys are counted so remove can take them back out
+				if(bdb.putkeep(keyBytes, value))
+					countKey(keyBytes);
+				else
+					bdb.put(keyBytes, value);
+				
+				mapLsn.commit();
+			}finally{
+				mapLsn.end();
+			}
+		}
 	}
 	
 	/**
@@ -93,7 +533,83 @@ public class TokyoCabinetDB implements ThrudocBackend {
 	 * @param key the name of key to remove
 	 */
 	public void remove(String key) {
-		bdb.out(key);
+		
+		synchronized(mapLock){
+			if(!mapLsn.begin(false))
+				return;
+			
+			try{
+				boolean removed = bdb.out(key);
+				
+				mapLsn.commit();
+				
+				if(removed)
+					uncountKey(key.getBytes());
+			}finally{
+				mapLsn.end();
+			}
+		}
+	}
+	
+	/**
+	 * Puts a batch of keys inside one bdb transaction
+	 * 
+	 * @param entities the keys and values, buckets are ignored
+	 */
+	public void put_multi(List<Entity> entities) throws TException {
+		
+		synchronized(mapLock){
+			if(!mapLsn.begin(true))
+				return;
+			
+			try{
+				for(Entity entity : entities){
+					byte[] keyBytes = entity.key.getBytes();
+					
+					//counted before commit, an abort only leaves a false positive
+					if(bdb.putkeep(keyBytes, entity.value))
+						countKey(keyBytes);
+					else if(!bdb.put(keyBytes, entity.value))
+						throw new TException(bdb.errmsg());
+				}
+				
+				mapLsn.commit();
+			}finally{
+				mapLsn.end();
+			}
+		}
+	}
+	
+	/**
+	 * Removes a batch of keys inside one bdb transaction
+	 * 
+	 * @param entities the keys to remove, buckets and values are ignored
+	 */
+	public void remove_multi(List<Entity> entities) throws TException {
+		
+		synchronized(mapLock){
+			if(!mapLsn.begin(true))
+				return;
+			
+			try{
+				List<byte[]> removed = new ArrayList<byte[]>();
+				
+				for(Entity entity : entities){
+					byte[] keyBytes = entity.key.getBytes();
+					
+					if(bdb.out(keyBytes))
+						removed.add(keyBytes);
+				}
+				
+				mapLsn.commit();
+				
+				//only uncount keys once they are really gone
+				for(byte[] keyBytes : removed)
+					uncountKey(keyBytes);
+			}finally{
+				mapLsn.end();
+			}
+		}
 	}
 	
 	/**
@@ -105,7 +621,14 @@ public class TokyoCabinetDB implements ThrudocBackend {
 	 */
 	@SuppressWarnings("unchecked")
 	public List<String> scan(String seed, int limit) {
-		return bdb.fwmkeys(seed, limit);
+		
+		List<String> keys = bdb.fwmkeys(seed, limit < 0 ? limit : limit + 1);
+		
+		//one more in case the lsn key is among them
+		if(!keys.remove(MAP_LSN_KEY) && limit >= 0 && keys.size() > limit)
+			keys.remove(limit);
+		
+		return keys;
 	}
 	
 	/**
@@ -116,7 +639,27 @@ public class TokyoCabinetDB implements ThrudocBackend {
 	 * @return
 	 */
 	public int incr(String key, int amount){
-		return bdb.addint(key, amount);
+		
+		byte[] keyBytes = key.getBytes();
+		
+		synchronized(mapLock){
+			//a replay ignores the result
+			if(!mapLsn.begin(false))
+				return 0;
+			
+			try{
+				if(bdb.vsiz(keyBytes) < 0)
+					countKey(keyBytes);
+				
+				int counter = bdb.addint(keyBytes, amount);
+				
+				mapLsn.commit();
+				
+				return counter;
+			}finally{
+				mapLsn.end();
+			}
+		}
 	}
 	
 	
@@ -132,285 +675,215 @@ public class TokyoCabinetDB implements ThrudocBackend {
 		if(amount > 0)
 			amount *= -1;
 		
-		return bdb.addint(key, amount);
+		return incr(key, amount);
 	}
 	
 	
-	@SuppressWarnings("unchecked")
+	/*
+	 * List mutations hold the list lock so a list is counted exactly once
+	 * between being created and being emptied.
+	 */
+	
 	public void push_back(String key, byte[] value) throws TException {
-		
-		//first get the next key.
-		List<byte[]> nextKey = bdb.fwmkeys(key.getBytes(),2);
-		
-		BDBCUR cursor = new BDBCUR(bdb);
-		
-		//look for edge cases
-		
-		//no forward keys
-		if(nextKey.isEmpty() ){
-			this.put(key, value);
-			return;
-		}
-				
-		//the input is all that was found. jump to last record.
-		if( Arrays.equals(nextKey.get(0),key.getBytes()) && nextKey.size() == 1){
-			if(!cursor.last())
-				throw new RuntimeException("Can't jump to last record");
-		}else{
-		
-			//jump to key ahead of our input key
-			if(nextKey.size() == 1){		
-				if(!cursor.jump(nextKey.get(0)))
-					throw new RuntimeException("Key should exist but failed to jump to it's location");				
-			} else {
-				if(!cursor.jump(nextKey.get(1)))
-					throw new RuntimeException("Key should exist but failed to jump to it's location");
-			}		
-		}
-		
-		//back one should be the input key, if it's not then the key 
-		//does not exist yet, so we add it
-		if(!Arrays.equals(cursor.key(),key.getBytes())){
-			if(!cursor.prev()){
-				this.put(key, value);
+		synchronized(listLock){
+			if(!listLsn.begin(false))
 				return;
+			
+			try{
+				boolean created = lists.length(key) == 0;
+				
+				lists.push_back(key, value);
+				
+				if(created)
+					countList(key);
+				
+				listLsn.commit();
+			}finally{
+				listLsn.end();
 			}
 		}
-		
-		// the key under this cursor should match, if not we add a new key
-		//based on input
-		if(!Arrays.equals(cursor.key(),key.getBytes())){
-			this.put(key, value);
-			return;
-		}
-		
-		//we are at the right spot, now append the value
-		if(!cursor.put(value, BDBCUR.CPAFTER))		
-			throw new TException(bdb.errmsg());
-			
 	}
 	
-	@SuppressWarnings("unchecked")
 	public byte[] pop_back(String key) throws TException{
-		
-		//first get the next key.
-		List<byte[]> nextKey = bdb.fwmkeys(key.getBytes(),2);
-		
-		BDBCUR cursor = new BDBCUR(bdb);
-		
-		if(nextKey.isEmpty()){
-			return new byte[]{};		
-		}
-		
-		//first entry should match, if not the input key is missing so fail
-		if(!Arrays.equals(nextKey.get(0),key.getBytes())){
-			
-			return new byte[]{};
-		
-		}
-		
-		//the input key is at the end of the index so jump to end
-		if(nextKey.size() == 1) {
-			
-			if(!cursor.last())
-				throw new RuntimeException("Unable to jump to last key");
-			
-		} else {
-			
-			if(!cursor.jump(nextKey.get(1)))
-				throw new RuntimeException("Key should exist but failed to jump to it's location");
+		synchronized(listLock){
+			if(!listFilter.membershipTest(filterKey(key.getBytes())) || !listLsn.begin(false))
+				return new byte[]{};
 			
+			try{
+				boolean emptied = lists.length(key) == 1;
+				
+				byte[] value = lists.pop_back(key);
+				
+				listLsn.commit();
+				
+				if(emptied)
+					uncountList(key);
+				
+				return value;
+			}finally{
+				listLsn.end();
+			}
 		}
-		
-			
-		//move back one, to tail of the input key
-		if(!cursor.prev())
-			throw new RuntimeException("Key should exist but failed to jump to it's location");
-		
-		if(!Arrays.equals(cursor.key(),key.getBytes()))
-			throw new TException("key mismatch "+key+" vs "+cursor.key2());
-	
-		byte[] value = cursor.val();
-		
-		//delete
-		if(!cursor.out())
-			throw new TException(bdb.errmsg());
-		
-		
-		return value;
 	}
 	
 	public void push_front(String key, byte[] value) throws TException {
-
-		BDBCUR cursor = new BDBCUR(bdb);
-		
-		if(!cursor.jump(key)){
-			this.put(key, value);
-			return;
-		}
-		
-		//not matching key so add new
-		if(!Arrays.equals(cursor.key(),key.getBytes())){
-			this.put(key, value);
-			return;
+		synchronized(listLock){
+			if(!listLsn.begin(false))
+				return;
+			
+			try{
+				boolean created = lists.length(key) == 0;
+				
+				lists.push_front(key, value);
+				
+				if(created)
+					countList(key);
+				
+				listLsn.commit();
+			}finally{
+				listLsn.end();
+			}
 		}
-		
-		if(!cursor.put(value, BDBCUR.CPBEFORE))
-			throw new TException(bdb.errmsg());
-		
 	}
 	
 	public byte[] pop_front(String key) throws TException{
-		
-		BDBCUR cursor = new BDBCUR(bdb);
-		
-		if(!cursor.jump(key))
-			return new byte[]{};
-		
-		if(!Arrays.equals(cursor.key(),key.getBytes()))
-			return new byte[]{};
-	
-		
-		//save value
-		byte[] value = cursor.val();
-			
-		
-		//delete
-		if(!cursor.out())
-			throw new TException(bdb.errmsg());
-		
-		return value;
-	}
-	
-	private BDBCUR goto_position(String key, int position) {
-		if(position < 0)
-			return null;
-		
-		BDBCUR cursor = new BDBCUR(bdb);
-		
-		if(!cursor.jump(key))
-			return null;
-		
-		int currentPos = 0;
-		int checkMod = 10; //verify key every few records
-		while(currentPos < position){
-			cursor.next();
+		synchronized(listLock){
+			if(!listFilter.membershipTest(filterKey(key.getBytes())) || !listLsn.begin(false))
+				return new byte[]{};
 			
-			if(currentPos % checkMod == 0){
+			try{
+				boolean emptied = lists.length(key) == 1;
+				
+				byte[] value = lists.pop_front(key);
 				
-				if(!Arrays.equals(cursor.key(), key.getBytes()))
-					return null;
+				listLsn.commit();
 				
+				if(emptied)
+					uncountList(key);
+				
+				return value;
+			}finally{
+				listLsn.end();
 			}
-			
-			currentPos++;
 		}
-		
-		//at position
-		if(!Arrays.equals(cursor.key(), key.getBytes()))
-			return null;
-		
-		
-		return cursor;
 	}
 	
 	public byte[] remove_at(String key, int position){
-		
-		BDBCUR cursor = this.goto_position(key, position);
-		
-		//if position not found
-		if(cursor == null)
-			return null;
-		
-		byte[] value = cursor.val();
-		
-		if(!cursor.out())
-			throw new RuntimeException("Unable to remove record");
-	
-		return value;
+		synchronized(listLock){
+			if(!listLsn.begin(false))
+				return null;
+			
+			try{
+				boolean emptied = lists.length(key) == 1;
+				
+				byte[] value = lists.remove_at(key, position);
+				
+				listLsn.commit();
+				
+				if(emptied && value != null)
+					uncountList(key);
+				
+				return value;
+			}finally{
+				listLsn.end();
+			}
+		}
 	}
 	
 	public void insert_at(String key, byte[] value, int position) {
-		BDBCUR cursor = this.goto_position(key, position);
-		
-		if(cursor == null)
-			throw new RuntimeException("Unable to insert at position: "+position);
-		
-		if(!cursor.put(value, BDBCUR.CPBEFORE))
-			throw new RuntimeException("Unable to replace record");
+		synchronized(listLock){
+			if(!listLsn.begin(false))
+				return;
+			
+			try{
+				lists.insert_at(key, value, position);
+				
+				listLsn.commit();
+			}finally{
+				listLsn.end();
+			}
+		}
 	}
 	
 	public void replace_at(String key, byte[] value, int position) {
-		BDBCUR cursor = this.goto_position(key, position);
-		
-		if(cursor == null)
-			return;
-		
-		if(!cursor.put(value, BDBCUR.CPCURRENT))
-			throw new RuntimeException("Unable to replace record");
+		synchronized(listLock){
+			if(!listLsn.begin(false))
+				return;
+			
+			try{
+				lists.replace_at(key, value, position);
+				
+				listLsn.commit();
+			}finally{
+				listLsn.end();
+			}
+		}
 	}
 	
 	public byte[] retrieve_at(String key, int position){
-		BDBCUR cursor = this.goto_position(key, position);
-		
-		//if position not found
-		if(cursor == null)
-			return null;
-		
-		byte[] value = cursor.val();
-		
-	
-		return value;
+		return lists.retrieve_at(key, position);
 	}
 	
 	public List<byte[]> range(String key, int start, int end){
-		if(start > end || end < 0 || start < 0)
-			throw new RuntimeException("Invalid start and/or end context");
-		
-		BDBCUR cursor = this.goto_position(key, start);
-		
-		if(cursor == null)
-			return null;
-		
-		int currentPos = 0;
-		int distance   = end - start;
-		List<byte[]> response = new ArrayList<byte[]>();
-		
-		while(currentPos <= distance){
-			response.add(cursor.val());
-			
-			if(!cursor.next())
-				break;
-			
-			currentPos++;
-		}
-		
-		return response;
+		return lists.range(key, start, end);
 	}
 	
 	public int length(String key) {
-		BDBCUR cursor = new BDBCUR(bdb);
-		
-		if(!cursor.jump(key))
-			return 0;
 		
-		if(!Arrays.equals(cursor.key(),key.getBytes()))
+		if(!mayContainList(key))
 			return 0;
 		
-		int length = 0;
-		while(Arrays.equals(cursor.key(),key.getBytes())){
-			length++;
-			
-			if(!cursor.next())
-				return length;
+		return lists.length(key);
+	}
+	
+	public boolean erase(){
+		synchronized(listLock){
+			synchronized(mapLock){
+				boolean erased = mapLsn.vanish() && listLsn.vanish();
+				
+				rebuildFilters();
+				
+				return erased;
+			}
 		}
+	}
+	
+	/**
+	 * Flushes both dbs to disk, the bloom filters are only saved on
+	 * shutdown
+	 */
+	public void sync() throws TException {
+		if(!bdb.sync())
+			throw new TException(bdb.errmsg());
 		
-		
-		return length;
+		if(!listBdb.sync())
+			throw new TException(listBdb.errmsg());
 	}
 	
-	public boolean erase(){
-		return bdb.vanish();
+	public void shutdown(){
+		synchronized(listLock){
+			synchronized(mapLock){
+				try{
+					DataOutputStream out = new DataOutputStream(new FileOutputStream(filterFile));
+					
+					try{
+						mapFilter.write(out);
+						listFilter.write(out);
+						
+						out.writeLong(mapKeys);
+						out.writeLong(listKeys);
+					}finally{
+						out.close();
+					}
+				}catch(IOException e){
+					logger.warn("Unable to save "+filterFile, e);
+					filterFile.delete();
+				}
+				
+				bdb.close();
+				listBdb.close();
+			}
+		}
 	}
 	
 }
@@ -186,6 +186,11 @@ public abstract class Filter {
     }
   }//end add()
   
+  /** @return the number of buckets in <i>this</i> filter */
+  public int getVectorSize() {
+    return this.vectorSize;
+  }
+  
   // Writable interface
   
   public void write(DataOutput out) throws IOException {
@@ -0,0 +1,113 @@
+package org.thrudb.util.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache bounded by the total weight of its entries.
+ * Every entry weighs 1 unless a subclass overrides {@link #weigh}, so by
+ * default the bound is an entry count.
+ *
+ * All operations take the cache monitor.
+ *
+ * @author jake
+ *
+ */
+public class LruCache<K,V> {
+
+	private final long maxWeight;
+	private final LinkedHashMap<K,V> map = new LinkedHashMap<K,V>(16, 0.75f, true);
+
+	private long weight;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * @param maxWeight weight held before the least recently used entries go
+	 */
+	public LruCache(long maxWeight) {
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * @return what an entry counts against the bound
+	 */
+	protected long weigh(K key, V value) {
+		return 1;
+	}
+
+	/**
+	 * @return the cached value or null
+	 */
+	public synchronized V get(K key) {
+		V value = map.get(key);
+
+		if(value == null)
+			misses++;
+		else
+			hits++;
+
+		return value;
+	}
+
+	/**
+	 * Adds or replaces a value, one heavier than the whole cache isn't kept
+	 */
+	public synchronized void put(K key, V value) {
+		remove(key);
+
+		long w = weigh(key, value);
+		if(w > maxWeight)
+			return;
+
+		map.put(key, value);
+		weight += w;
+
+		Iterator<Map.Entry<K,V>> it = map.entrySet().iterator();
+		while(weight > maxWeight && it.hasNext()){
+			Map.Entry<K,V> eldest = it.next();
+			it.remove();
+			weight -= weigh(eldest.getKey(), eldest.getValue());
+
+			evictions++;
+		}
+	}
+
+	public synchronized void remove(K key) {
+		V value = map.remove(key);
+
+		if(value != null)
+			weight -= weigh(key, value);
+	}
+
+	public synchronized void clear() {
+		map.clear();
+		weight = 0;
+	}
+
+	public synchronized int size() {
+		return map.size();
+	}
+
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+}
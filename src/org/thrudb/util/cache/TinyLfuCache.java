@@ -0,0 +1,266 @@
+package org.thrudb.util.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A byte bounded value cache using the W-TinyLFU policy.
+ *
+ * New entries land in a small LRU window. When the window overflows its
+ * eldest entry competes with the main region's eviction victim and is only
+ * admitted if a count-min sketch says it has been seen more often. The main
+ * region is a segmented LRU (probation, protected) so one-off scans can't
+ * flush out the hot set.
+ *
+ * All operations take the cache monitor, callers with many threads
+ * should spread their keys over several caches.
+ *
+ * @author jake
+ *
+ */
+public class TinyLfuCache {
+
+	//rough per entry cost of the maps and the key itself
+	private static final int ENTRY_OVERHEAD = 64;
+
+	private final long windowMax;
+	private final long protectedMax;
+	private final long mainMax;
+
+	private final LinkedHashMap<String,byte[]> window          = new LinkedHashMap<String,byte[]>(16, 0.75f, true);
+	private final LinkedHashMap<String,byte[]> probation       = new LinkedHashMap<String,byte[]>(16, 0.75f, true);
+	private final LinkedHashMap<String,byte[]> protectedRegion = new LinkedHashMap<String,byte[]>(16, 0.75f, true);
+
+	private long windowBytes;
+	private long protectedBytes;
+	private long mainBytes; //probation + protected
+
+	private final FrequencySketch sketch;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * @param maxBytes upper bound on the keys and values held
+	 */
+	public TinyLfuCache(long maxBytes) {
+		windowMax    = Math.max(1, maxBytes / 100);
+		mainMax      = maxBytes - windowMax;
+		protectedMax = mainMax * 8 / 10;
+
+		//assume ~1k entries, the sketch just needs to be in the right ballpark
+		sketch = new FrequencySketch((int)Math.min(1 << 20, Math.max(64, maxBytes / 1024)));
+	}
+
+	/**
+	 * @return the cached value or null
+	 */
+	public synchronized byte[] get(String key) {
+		sketch.increment(key);
+
+		byte[] value = window.get(key);
+		if(value != null){
+			hits++;
+			return value;
+		}
+
+		value = protectedRegion.get(key);
+		if(value != null){
+			hits++;
+			return value;
+		}
+
+		value = probation.remove(key);
+		if(value != null){
+			hits++;
+
+			//promote, demoting the coldest protected entries if needed
+			protectedRegion.put(key, value);
+			protectedBytes += weigh(key, value);
+
+			Iterator<Map.Entry<String,byte[]>> it = protectedRegion.entrySet().iterator();
+			while(protectedBytes > protectedMax && it.hasNext()){
+				Map.Entry<String,byte[]> e = it.next();
+				it.remove();
+				protectedBytes -= weigh(e.getKey(), e.getValue());
+				probation.put(e.getKey(), e.getValue());
+			}
+
+			return value;
+		}
+
+		misses++;
+		return null;
+	}
+
+	/**
+	 * Adds or replaces a value
+	 */
+	public synchronized void put(String key, byte[] value) {
+		remove(key);
+
+		int weight = weigh(key, value);
+		if(weight > windowMax + mainMax)
+			return;
+
+		window.put(key, value);
+		windowBytes += weight;
+
+		Iterator<Map.Entry<String,byte[]>> it = window.entrySet().iterator();
+		while(windowBytes > windowMax && it.hasNext()){
+			Map.Entry<String,byte[]> candidate = it.next();
+			it.remove();
+			windowBytes -= weigh(candidate.getKey(), candidate.getValue());
+
+			admit(candidate.getKey(), candidate.getValue());
+		}
+	}
+
+	/**
+	 * Drops a key if present
+	 */
+	public synchronized void remove(String key) {
+		byte[] value;
+
+		if((value = window.remove(key)) != null){
+			windowBytes -= weigh(key, value);
+		}else if((value = probation.remove(key)) != null){
+			mainBytes -= weigh(key, value);
+		}else if((value = protectedRegion.remove(key)) != null){
+			mainBytes      -= weigh(key, value);
+			protectedBytes -= weigh(key, value);
+		}
+	}
+
+	public synchronized void clear() {
+		window.clear();
+		probation.clear();
+		protectedRegion.clear();
+
+		windowBytes    = 0;
+		protectedBytes = 0;
+		mainBytes      = 0;
+	}
+
+	/**
+	 * Moves a window eviction into probation if it beats the main victims
+	 */
+	private void admit(String key, byte[] value) {
+		int weight = weigh(key, value);
+
+		if(weight > mainMax){
+			evictions++;
+			return;
+		}
+
+		int frequency = sketch.frequency(key);
+
+		while(mainBytes + weight > mainMax){
+			LinkedHashMap<String,byte[]> region = probation.isEmpty() ? protectedRegion : probation;
+			Map.Entry<String,byte[]> victim = region.entrySet().iterator().next();
+
+			if(frequency <= sketch.frequency(victim.getKey())){
+				evictions++;
+				return;
+			}
+
+			region.remove(victim.getKey());
+			int victimWeight = weigh(victim.getKey(), victim.getValue());
+			mainBytes -= victimWeight;
+			if(region == protectedRegion)
+				protectedBytes -= victimWeight;
+
+			evictions++;
+		}
+
+		probation.put(key, value);
+		mainBytes += weight;
+	}
+
+	private static int weigh(String key, byte[] value) {
+		return ENTRY_OVERHEAD + 2 * key.length() + value.length;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized long getBytes() {
+		return windowBytes + mainBytes;
+	}
+
+	/**
+	 * Count-min sketch of 4 bit counters, halved periodically so old
+	 * popularity fades.
+	 */
+	static class FrequencySketch {
+		private final long[] table;
+		private final int    mask;
+		private final int    sampleSize;
+		private int          additions;
+
+		FrequencySketch(int capacity) {
+			int size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+
+			table      = new long[size];
+			mask       = size - 1;
+			sampleSize = 10 * size;
+		}
+
+		private static int spread(int h) {
+			h ^= (h >>> 17);
+			h *= 0xed5ad4bb;
+			h ^= (h >>> 11);
+			h *= 0xac4c1b51;
+			h ^= (h >>> 15);
+			return h;
+		}
+
+		int frequency(String key) {
+			int hash  = spread(key.hashCode());
+			int min   = 15;
+
+			for(int i=0; i<4; i++){
+				int index = (hash + i * (hash >>> 16 | 1)) & mask;
+				int count = (int)((table[index] >>> (i << 4)) & 0xfL);
+				min = Math.min(min, count);
+			}
+
+			return min;
+		}
+
+		void increment(String key) {
+			int hash  = spread(key.hashCode());
+
+			//each row uses its own nibble of the slot
+			for(int i=0; i<4; i++){
+				int  index  = (hash + i * (hash >>> 16 | 1)) & mask;
+				int  shift  = i << 4;
+				long count  = (table[index] >>> shift) & 0xfL;
+
+				if(count < 15)
+					table[index] += 1L << shift;
+			}
+
+			if(++additions >= sampleSize)
+				reset();
+		}
+
+		private void reset() {
+			for(int i=0; i<table.length; i++)
+				table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+
+			additions /= 2;
+		}
+	}
+}
@@ -2,20 +2,16 @@ package org.thrudb.util.log;
 
 import java.io.File;
 
-import org.apache.thrift.TException;
-
-import tokyocabinet.HDB;
-
 /**
  * Displays the contents of a log
- * 
+ *
  * @author jake
- * 
+ *
  */
 public class LogViewer {
 
-	private static HDB hdb;
-	
+	private static RedoLog log;
+
 	/**
 	 * @param args
 	 */
@@ -23,51 +19,37 @@ public class LogViewer {
 
 		try {
 			if (args.length == 0) {
-				System.err.println("usage: LogViewer logfile");
+				System.err.println("usage: LogViewer logdir");
 				System.exit(1);
 			}
 
-			// verify db file
-			File logFile = new File(args[0]);
+			// verify log dir
+			File logDir = new File(args[0]);
 
-			if (logFile.isFile() && !logFile.canWrite())
-				throw new Exception(args[0] + " is not writable");
+			if (!logDir.isDirectory())
+				throw new Exception(args[0] + " should be a directory");
 
-			if (logFile.isDirectory())
-				throw new Exception(args[0] + " should not be a directory");
+			log = new RedoLog(logDir);
 
-			int hdbFlags = HDB.OWRITER;
-			hdb = new HDB();
-			
-			if (!hdb.open(args[0], hdbFlags)) {
-				throw new Exception(hdb.errmsg());
-			}
-			
 			printStats();
-			
+
+			log.close();
+
 		} catch (Throwable t) {
 			System.err.println(t.getLocalizedMessage());
 			System.exit(1);
 		}
 	}
-	
-	private static void printStats(){
-		System.out.println("Total logged records: "+hdb.rnum()/2);
-		
-		int pos = hdb.addint("LSN",0);
-		
-		if(pos == Integer.MIN_VALUE)
-			System.out.println(hdb.errmsg());
-		
-		System.out.println("LSN at "+pos);
-		for(int i=1; i<pos; i++){
-			//get value size;
-			String key = String.valueOf(i)+";";
-			byte[] val = hdb.get(key.getBytes());
-			if(val == null)
-				continue;
-			
-			System.out.println("key="+key+", size="+hdb.vsiz(key)+" bytes, c/e="+new String(hdb.get(key+"r")));
+
+	private static void printStats() throws Exception {
+		System.out.println("Segments: "+log.getSegmentCount());
+		System.out.println("LSN from "+log.getFirstLsn()+" to "+log.getLastLsn());
+
+		RedoLog.Cursor cursor = log.cursor(0);
+		RedoLog.Record record;
+
+		while((record = cursor.next()) != null){
+			System.out.println("lsn="+record.lsn+", op="+record.op+", bucket="+record.bucket+", size="+record.frame.length+" bytes");
 		}
 	}
 
@@ -0,0 +1,268 @@
+package org.thrudb.util.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Append only redo log made of sequential segment files.
+ *
+ * Every record gets the next 64 bit LSN as it is appended, so there is no
+ * separate counter to update. Segments are preallocated, once one is full
+ * it is synced and a new one started. Segments whose records are all
+ * below a checkpoint can be deleted.
+ *
+ * @author jake
+ *
+ */
+public class RedoLog {
+
+	public static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private Logger logger = Logger.getLogger(getClass());
+	private File   dir;
+	private long   segmentSize;
+
+	private final ConcurrentSkipListMap<Long,RedoLogSegment> segments = new ConcurrentSkipListMap<Long,RedoLogSegment>();
+	private volatile RedoLogSegment                          active;
+	private volatile long                                    lastLsn;
+
+	//reused by append, which is synchronized
+	private ByteBuffer header = ByteBuffer.allocate(1024);
+	private CRC32      crc    = new CRC32();
+
+	/**
+	 * A record read back from the log
+	 */
+	public static class Record {
+		public long   lsn;
+		public String op;
+		public String bucket;
+		public byte[] frame;
+		int           size;
+	}
+
+	public RedoLog(File dir) throws IOException {
+		this(dir, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Opens or creates the log in dir
+	 *
+	 * @param segmentSize bytes preallocated for each segment
+	 */
+	public RedoLog(File dir, long segmentSize) throws IOException {
+		this.dir         = dir;
+		this.segmentSize = segmentSize;
+
+		if(!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Unable to create "+dir);
+
+		File[] files = dir.listFiles();
+		Arrays.sort(files);
+
+		for(File file : files){
+			String name = file.getName();
+
+			if(!name.endsWith(RedoLogSegment.SUFFIX))
+				continue;
+
+			long firstLsn = Long.parseLong(name.substring(0, name.length() - RedoLogSegment.SUFFIX.length()));
+			segments.put(firstLsn, new RedoLogSegment(dir, firstLsn, segmentSize));
+		}
+
+		if(segments.isEmpty()){
+			active = newSegment(1);
+		}else{
+			active = segments.lastEntry().getValue();
+		}
+
+		for(RedoLogSegment segment : segments.headMap(active.firstLsn).values())
+			segment.seal();
+
+		//only the tail can be torn, the rest were synced when they rolled
+		active.recover();
+		lastLsn = active.lastLsn();
+
+		logger.info("Redo log "+dir+" at LSN "+lastLsn+" in "+segments.size()+" segments");
+	}
+
+	private RedoLogSegment newSegment(long firstLsn) throws IOException {
+		RedoLogSegment segment = new RedoLogSegment(dir, firstLsn, segmentSize);
+		segments.put(firstLsn, segment);
+
+		return segment;
+	}
+
+	/**
+	 * Appends a record, it is not durable until the next {@link #sync()}.
+	 * The frame is written from the given buffer, not copied.
+	 *
+	 * @return the LSN given to the record
+	 */
+	public synchronized long append(String op, String bucket, byte[] frame, int off, int len) throws IOException {
+		long   lsn         = lastLsn + 1;
+		byte[] opBytes     = utf8(op);
+		byte[] bucketBytes = utf8(bucket);
+
+		int headerSize = RedoLogSegment.HEADER_SIZE + opBytes.length + bucketBytes.length;
+		if(header.capacity() < headerSize)
+			header = ByteBuffer.allocate(headerSize);
+
+		RedoLogSegment.encodeHeader(header, crc, lsn, opBytes, bucketBytes, frame, off, len);
+		ByteBuffer[] record = new ByteBuffer[]{ header, ByteBuffer.wrap(frame, off, len) };
+
+		if(active.position() > 0 && active.position() + headerSize + len > active.capacity()){
+			active.sync();
+			active = newSegment(lsn);
+		}
+
+		active.append(record, lsn);
+		lastLsn = lsn;
+
+		return lsn;
+	}
+
+	/**
+	 * Forces everything appended so far to disk, earlier segments were
+	 * synced when they rolled
+	 */
+	public void sync() throws IOException {
+		active.sync();
+	}
+
+	public File getDir() {
+		return dir;
+	}
+
+	/**
+	 * @return the LSN of the last record appended, 0 if there are none
+	 */
+	public long getLastLsn() {
+		return lastLsn;
+	}
+
+	/**
+	 * @return the lowest LSN still held
+	 */
+	public long getFirstLsn() {
+		return segments.firstKey();
+	}
+
+	public int getSegmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * Deletes the segments that only hold records at or below checkpoint
+	 *
+	 * @return the number of segments deleted
+	 */
+	public synchronized int deleteBefore(long checkpoint) {
+		int deleted = 0;
+
+		for(Map.Entry<Long,RedoLogSegment> e : segments.entrySet()){
+			Long next = segments.higherKey(e.getKey());
+
+			if(next == null || next - 1 > checkpoint)
+				break;
+
+			segments.remove(e.getKey());
+			e.getValue().delete();
+			deleted++;
+		}
+
+		if(deleted > 0)
+			logger.info("Deleted "+deleted+" redo log segments up to LSN "+checkpoint);
+
+		return deleted;
+	}
+
+	/**
+	 * @return a cursor over the records from lsn on
+	 */
+	public Cursor cursor(long lsn) throws IOException {
+		return new Cursor(lsn);
+	}
+
+	/**
+	 * Reads records in LSN order, following the log as it grows
+	 */
+	public class Cursor {
+		private long           nextLsn;
+		private RedoLogSegment segment;
+		private long           offset = 0;
+
+		private Cursor(long lsn) throws IOException {
+			this.nextLsn = lsn;
+
+			Map.Entry<Long,RedoLogSegment> e = segments.floorEntry(lsn);
+			segment = e == null ? segments.firstEntry().getValue() : e.getValue();
+			offset  = segment.seek(lsn);
+		}
+
+		/**
+		 * @return the next record or null if the cursor has caught up
+		 */
+		public Record next() throws IOException {
+
+			while(true){
+				Record record = segment.read(offset);
+
+				if(record == null){
+					Map.Entry<Long,RedoLogSegment> next = segments.higherEntry(segment.firstLsn);
+
+					if(next == null)
+						return null;
+
+					//a segment is complete once the next one exists, but its
+					//last record may have landed after the read above
+					record = segment.read(offset);
+
+					if(record == null){
+						segment = next.getValue();
+						offset  = 0;
+						continue;
+					}
+				}
+
+				offset += record.size;
+
+				if(record.lsn < nextLsn)
+					continue;
+
+				nextLsn = record.lsn + 1;
+				return record;
+			}
+		}
+	}
+
+	/**
+	 * Syncs and closes every segment
+	 */
+	public synchronized void close() {
+		try{
+			sync();
+		}catch(IOException e){
+			logger.error("Unable to sync "+dir, e);
+		}
+
+		for(RedoLogSegment segment : segments.values())
+			segment.close();
+	}
+
+	private static byte[] utf8(String s){
+		try{
+			return (s == null ? "" : s).getBytes("UTF-8");
+		}catch(UnsupportedEncodingException e){
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,302 @@
+package org.thrudb.util.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * One preallocated file of a {@link RedoLog}, named after the first LSN
+ * it holds.
+ *
+ * Records are laid out as:
+ *
+ * <pre>
+ * int   length     bytes that follow this int
+ * int   crc        crc32 of everything after the crc
+ * long  lsn
+ * short opLen
+ * op
+ * short bucketLen
+ * bucket
+ * frame            the rest of the record
+ * </pre>
+ *
+ * The unused tail of the file is zeroed so a length of 0 marks the end.
+ *
+ * Reads come straight from a read only mapping of the file, frames are
+ * copied once from the page cache into the record. A sparse index of
+ * every INDEX_EVERY'th record lets cursors start mid segment without
+ * decoding what comes before.
+ *
+ * @author jake
+ *
+ */
+class RedoLogSegment {
+
+	static final String SUFFIX      = ".log";
+	static final int    HEADER_SIZE = 4 + 4 + 8 + 2 + 2;
+
+	private static final int ZERO_CHUNK  = 1024 * 1024;
+	private static final int INDEX_EVERY = 256;
+
+	final long firstLsn;
+	final File file;
+
+	private final RandomAccessFile raf;
+	private final FileChannel      channel;
+	private volatile long          position; //end of the valid records
+	private long                   lastLsn;
+	private volatile MappedByteBuffer map;
+
+	private long[] index      = new long[16]; //offset of every INDEX_EVERY'th record
+	private int    indexSize  = 0;
+	private long   indexedTo  = 0;            //offset the index has scanned up to
+	private long   indexedLsn;                //lsn of the record at indexedTo
+
+
+	/**
+	 * Opens an existing segment or creates and preallocates a new one
+	 */
+	RedoLogSegment(File dir, long firstLsn, long capacity) throws IOException {
+		this.firstLsn = firstLsn;
+		this.file     = new File(dir, String.format("%020d", firstLsn) + SUFFIX);
+		this.lastLsn  = firstLsn - 1;
+		this.indexedLsn = firstLsn;
+
+		boolean created = !file.exists();
+
+		raf     = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+
+		if(created)
+			zero(0, capacity);
+	}
+
+	/**
+	 * Fills header with everything in front of the frame, the frame is
+	 * written straight from the caller's buffer after it.
+	 */
+	static void encodeHeader(ByteBuffer header, CRC32 crc, long lsn, byte[] op, byte[] bucket, byte[] frame, int off, int len){
+		int length = HEADER_SIZE - 4 + op.length + bucket.length + len;
+
+		header.clear();
+		header.putInt(length);
+		header.position(8);
+		header.putLong(lsn);
+		header.putShort((short)op.length);
+		header.put(op);
+		header.putShort((short)bucket.length);
+		header.put(bucket);
+
+		crc.reset();
+		crc.update(header.array(), 8, header.position() - 8);
+		crc.update(frame, off, len);
+		header.putInt(4, (int)crc.getValue());
+
+		header.flip();
+	}
+
+	long position(){
+		return position;
+	}
+
+	long lastLsn(){
+		return lastLsn;
+	}
+
+	long capacity() throws IOException {
+		return channel.size();
+	}
+
+	/**
+	 * Finds the end of the valid records and zeroes anything after it so
+	 * a torn write can't be mistaken for a record later.
+	 */
+	void recover() throws IOException {
+		long offset = 0;
+		RedoLog.Record record;
+
+		while((record = read(offset, channel.size())) != null && record.lsn == lastLsn + 1){
+			offset += record.size;
+			lastLsn = record.lsn;
+		}
+
+		position = offset;
+
+		ByteBuffer next = ByteBuffer.allocate(4);
+		channel.read(next, offset);
+		if(next.position() == 4 && next.getInt(0) != 0)
+			zero(offset, channel.size());
+	}
+
+	/**
+	 * Marks a segment that will not be written again as readable to its end
+	 */
+	void seal() throws IOException {
+		position = channel.size();
+	}
+
+	/**
+	 * Appends a record with a gathering write, callers serialize appends.
+	 */
+	void append(ByteBuffer[] record, long lsn) throws IOException {
+		long offset = position;
+
+		long remaining = 0;
+		for(ByteBuffer b : record)
+			remaining += b.remaining();
+
+		channel.position(offset);
+		while(remaining > 0){
+			long n = channel.write(record);
+			offset    += n;
+			remaining -= n;
+		}
+
+		lastLsn  = lsn;
+		position = offset;
+	}
+
+	/**
+	 * @return the record at offset or null if there is no complete, valid
+	 * record there yet
+	 */
+	RedoLog.Record read(long offset) throws IOException {
+		return read(offset, position);
+	}
+
+	private RedoLog.Record read(long offset, long limit) throws IOException {
+
+		if(offset + HEADER_SIZE > limit)
+			return null;
+
+		ByteBuffer buf = map(limit).duplicate();
+
+		int length = buf.getInt((int)offset);
+		if(length < HEADER_SIZE - 4 || offset + 4 + length > limit)
+			return null;
+
+		int crc = buf.getInt((int)offset + 4);
+
+		int opLen = buf.getShort((int)offset + 16) & 0xffff;
+		if(HEADER_SIZE - 4 + opLen > length)
+			return null;
+
+		int bucketLen = buf.getShort((int)offset + 18 + opLen) & 0xffff;
+		int frameLen  = length - (HEADER_SIZE - 4) - opLen - bucketLen;
+		if(frameLen < 0)
+			return null;
+
+		byte[] head  = new byte[HEADER_SIZE - 8 + opLen + bucketLen];
+		byte[] frame = new byte[frameLen];
+
+		buf.position((int)offset + 8);
+		buf.get(head);
+		buf.get(frame);
+
+		CRC32 check = new CRC32();
+		check.update(head);
+		check.update(frame);
+		if((int)check.getValue() != crc)
+			return null;
+
+		RedoLog.Record record = new RedoLog.Record();
+		record.lsn    = buf.getLong((int)offset + 8);
+		record.op     = new String(head, 10, opLen, "UTF-8");
+		record.bucket = new String(head, 12 + opLen, bucketLen, "UTF-8");
+		record.frame  = frame;
+		record.size   = 4 + length;
+
+		return record;
+	}
+
+	/**
+	 * Maps the file, again if it grew past the old mapping
+	 */
+	private MappedByteBuffer map(long end) throws IOException {
+		MappedByteBuffer current = map;
+
+		if(current == null || current.capacity() < end){
+			current = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			map     = current;
+		}
+
+		return current;
+	}
+
+	/**
+	 * @return the offset of the first record at or after lsn
+	 */
+	synchronized long seek(long lsn) throws IOException {
+		long       end = position;
+		ByteBuffer buf = map(end);
+
+		//only headers are read, records below position are complete
+		while(indexedTo + HEADER_SIZE <= end){
+			int length = buf.getInt((int)indexedTo);
+			if(length < HEADER_SIZE - 4 || indexedTo + 4 + length > end)
+				break;
+
+			if((indexedLsn - firstLsn) % INDEX_EVERY == 0){
+				if(indexSize == index.length){
+					long[] grown = new long[index.length * 2];
+					System.arraycopy(index, 0, grown, 0, indexSize);
+					index = grown;
+				}
+				index[indexSize++] = indexedTo;
+			}
+
+			indexedTo += 4 + length;
+			indexedLsn++;
+		}
+
+		if(lsn <= firstLsn || indexSize == 0)
+			return 0;
+
+		int  slot   = (int)Math.min((lsn - firstLsn) / INDEX_EVERY, indexSize - 1);
+		long offset = index[slot];
+		long at     = firstLsn + (long)slot * INDEX_EVERY;
+
+		while(at < lsn && offset < indexedTo){
+			offset += 4 + buf.getInt((int)offset);
+			at++;
+		}
+
+		return offset;
+	}
+
+	private void zero(long from, long to) throws IOException {
+		ByteBuffer zeros = ByteBuffer.allocate(ZERO_CHUNK);
+
+		for(long offset = from; offset < to; ){
+			zeros.clear();
+			zeros.limit((int)Math.min(ZERO_CHUNK, to - offset));
+
+			while(zeros.hasRemaining())
+				offset += channel.write(zeros, offset);
+		}
+
+		channel.force(true);
+	}
+
+	void sync() throws IOException {
+		channel.force(false);
+	}
+
+	void close() {
+		try{
+			raf.close();
+		}catch(IOException e){
+			//nothing to do
+		}
+	}
+
+	void delete() {
+		close();
+		file.delete();
+	}
+}
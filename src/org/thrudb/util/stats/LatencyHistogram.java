@@ -0,0 +1,99 @@
+package org.thrudb.util.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram in microseconds with log-linear buckets, in
+ * the style of HdrHistogram.
+ *
+ * Every power of two range is split into 32 buckets, so a percentile is
+ * within about 3% of the real value. Values below 64us are exact and
+ * anything over 2^36us (about 19 hours) lands in the last bucket.
+ *
+ * @author jake
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS  = 5;
+	private static final int SUB       = 1 << SUB_BITS;
+	private static final int MAX_SHIFT = 36 - SUB_BITS;
+	private static final int BUCKETS   = (MAX_SHIFT + 2) * SUB;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong      max    = new AtomicLong();
+
+	static int bucket(long value) {
+		if(value < 2 * SUB)
+			return (int)Math.max(0, value);
+
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		if(shift > MAX_SHIFT)
+			return BUCKETS - 1;
+
+		return (shift + 1) * SUB + (int)(value >> shift) - SUB;
+	}
+
+	/**
+	 * @return the highest value that lands in bucket
+	 */
+	static long highest(int bucket) {
+		if(bucket < 2 * SUB)
+			return bucket;
+
+		int  shift = bucket / SUB - 1;
+		long sub   = bucket % SUB + SUB;
+
+		return ((sub + 1) << shift) - 1;
+	}
+
+	public void record(long micros) {
+		counts.incrementAndGet(bucket(micros));
+
+		long current;
+		while(micros > (current = max.get()) && !max.compareAndSet(current, micros));
+	}
+
+	public long getCount() {
+		long count = 0;
+
+		for(int i=0; i<BUCKETS; i++)
+			count += counts.get(i);
+
+		return count;
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the latency at or under which that share of calls finished
+	 */
+	public long getPercentile(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long   total    = 0;
+
+		for(int i=0; i<BUCKETS; i++){
+			snapshot[i] = counts.get(i);
+			total      += snapshot[i];
+		}
+
+		if(total == 0)
+			return 0;
+
+		long target = Math.max(1, (long)Math.ceil(total * percentile / 100.0));
+		long seen   = 0;
+
+		for(int i=0; i<BUCKETS; i++){
+			seen += snapshot[i];
+
+			if(seen >= target)
+				return Math.min(highest(i), max.get());
+		}
+
+		return max.get();
+	}
+}
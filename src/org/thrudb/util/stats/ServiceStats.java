@@ -0,0 +1,116 @@
+package org.thrudb.util.stats;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per operation call counts, request bytes and latencies for a service,
+ * in the form Thrudb.getServiceStats describes:
+ *
+ * <ul>
+ * <li>mc_&lt;op&gt;: calls</li>
+ * <li>rj_&lt;op&gt;: calls turned away because the server was saturated</li>
+ * <li>ms_&lt;op&gt;: request bytes received</li>
+ * <li>p50_&lt;op&gt;, p99_&lt;op&gt;, p999_&lt;op&gt;, max_&lt;op&gt;: latency in microseconds</li>
+ * <li>heap: used heap in kb, cpu: load as 0-100, uptime: seconds</li>
+ * </ul>
+ *
+ * Recording a call never takes a lock once its op has been seen.
+ *
+ * @author jake
+ *
+ */
+public class ServiceStats {
+
+	private static final int    MAX_OPS = 256;     //clients can send any method name
+	private static final String OTHER   = "other";
+
+	private final long started = System.currentTimeMillis();
+	private final ConcurrentMap<String,OpStats> ops = new ConcurrentHashMap<String,OpStats>();
+
+	static class OpStats {
+		final StripedCounter   calls   = new StripedCounter();
+		final StripedCounter   rejects = new StripedCounter();
+		final StripedCounter   bytes   = new StripedCounter();
+		final LatencyHistogram latency = new LatencyHistogram();
+	}
+
+	/**
+	 * @param op    the method called
+	 * @param bytes size of the request
+	 * @param nanos time taken
+	 */
+	public void record(String op, long bytes, long nanos) {
+		OpStats stats = get(op);
+
+		stats.calls.increment();
+		stats.bytes.add(bytes);
+		stats.latency.record(nanos / 1000);
+	}
+
+	/**
+	 * Counts a call that was rejected before it ran
+	 */
+	public void reject(String op) {
+		get(op).rejects.increment();
+	}
+
+	private OpStats get(String op) {
+		OpStats stats = ops.get(op);
+
+		if(stats == null){
+			if(ops.size() >= MAX_OPS)
+				op = OTHER;
+
+			OpStats created = new OpStats();
+			stats = ops.putIfAbsent(op, created);
+			if(stats == null)
+				stats = created;
+		}
+
+		return stats;
+	}
+
+	public Map<String,Long> getStats() {
+		Map<String,Long> stats = new TreeMap<String,Long>();
+
+		for(Map.Entry<String,OpStats> e : ops.entrySet()){
+			String  op = e.getKey();
+			OpStats s  = e.getValue();
+
+			stats.put("mc_"+op,   s.calls.sum());
+			stats.put("rj_"+op,   s.rejects.sum());
+			stats.put("ms_"+op,   s.bytes.sum());
+			stats.put("p50_"+op,  s.latency.getPercentile(50));
+			stats.put("p99_"+op,  s.latency.getPercentile(99));
+			stats.put("p999_"+op, s.latency.getPercentile(99.9));
+			stats.put("max_"+op,  s.latency.getMax());
+		}
+
+		Runtime runtime = Runtime.getRuntime();
+		stats.put("heap", (runtime.totalMemory() - runtime.freeMemory()) / 1024);
+
+		double load = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+		if(load >= 0)
+			stats.put("cpu", Math.min(100, Math.round(load * 100 / runtime.availableProcessors())));
+
+		stats.put("uptime", (System.currentTimeMillis() - started) / 1000);
+
+		return stats;
+	}
+
+	/**
+	 * @return the stats as key=value lines, for admin("stats")
+	 */
+	public static String format(Map<String,Long> stats) {
+		StringBuilder sb = new StringBuilder();
+
+		for(Map.Entry<String,Long> e : new TreeMap<String,Long>(stats).entrySet())
+			sb.append(e.getKey()).append('=').append(e.getValue()).append('\n');
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,51 @@
+package org.thrudb.util.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter spread over cache line padded cells so threads adding at the
+ * same time rarely touch the same line. Reads sum the cells, so they are
+ * only as exact as a snapshot of a moving counter can be.
+ *
+ * @author jake
+ *
+ */
+public class StripedCounter {
+
+	private static final int PAD   = 8; //longs per 64 byte cache line
+	private static final int CELLS = cells(Runtime.getRuntime().availableProcessors());
+
+	private final AtomicLongArray cells = new AtomicLongArray(CELLS * PAD);
+
+	private static int cells(int processors) {
+		int n = 1;
+		while(n < processors * 2 && n < 64)
+			n <<= 1;
+
+		return n;
+	}
+
+	/**
+	 * server threads get sequential ids, so they land on different cells
+	 */
+	private static int cell() {
+		return (int)(Thread.currentThread().getId() & (CELLS - 1)) * PAD;
+	}
+
+	public void add(long x) {
+		cells.addAndGet(cell(), x);
+	}
+
+	public void increment() {
+		add(1);
+	}
+
+	public long sum() {
+		long sum = 0;
+
+		for(int i=0; i<CELLS; i++)
+			sum += cells.get(i * PAD);
+
+		return sum;
+	}
+}
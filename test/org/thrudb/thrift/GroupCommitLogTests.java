@@ -0,0 +1,73 @@
+package org.thrudb.thrift;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.thrudb.util.log.RedoLog;
+
+public class GroupCommitLogTests extends TestCase {
+	RedoLog redoLog;
+	
+	@Override
+	public void setUp() throws Exception {
+		File dir = new File("unittest_log");
+		if(dir.isDirectory()){
+			for(File f : dir.listFiles())
+				f.delete();
+		}
+		
+		redoLog = new RedoLog(dir, 1024 * 1024);
+	}
+	
+	public void testSyncBatching() throws Exception {
+		final GroupCommitLog log = new GroupCommitLog(redoLog, GroupCommitLog.Durability.SYNC, 0, 256);
+		final int threads = 20;
+		final int commits = 50;
+		
+		Thread[] writers = new Thread[threads];
+		for(int i=0; i<threads; i++){
+			final int id = i;
+			writers[i] = new Thread(){
+				public void run() {
+					try{
+						for(int j=0; j<commits; j++){
+							byte[] frame = (id+"-"+j).getBytes();
+							log.commit("put", "bucket", frame, 0, frame.length, true);
+						}
+					}catch(Exception e){
+						fail(e.getMessage());
+					}
+				}
+			};
+			writers[i].start();
+		}
+		
+		for(Thread t : writers)
+			t.join();
+		
+		//every commit was covered by a sync, but far fewer syncs were needed
+		assertTrue(log.getSyncCount() > 0);
+		assertTrue(log.getSyncCount() < threads * commits);
+		assertEquals(threads * commits, redoLog.getLastLsn());
+		
+		log.close();
+	}
+	
+	public void testAsyncWindow() throws Exception {
+		GroupCommitLog log = new GroupCommitLog(redoLog, GroupCommitLog.Durability.ASYNC, 500, 256);
+		
+		for(int i=0; i<100; i++){
+			byte[] frame = String.valueOf(i).getBytes();
+			assertEquals(i+1, log.commit("put", "bucket", frame, 0, frame.length, true));
+		}
+		
+		//nobody waited for the disk
+		assertEquals(0, log.getSyncCount());
+		
+		Thread.sleep(1000);
+		assertEquals(1, log.getSyncCount());
+		
+		log.close();
+	}
+}
@@ -0,0 +1,116 @@
+package org.thrudb.thrift;
+
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.thrudb.thrudoc.InvalidBucketException;
+import org.thrudb.thrudoc.Thrudoc;
+import org.thrudb.thrudoc.ThrudocException;
+import org.thrudb.thrudoc.ThrudocHandler;
+import org.thrudb.thrudoc.ThrudocLoggingProcessor;
+import org.thrudb.util.stats.ServiceStats;
+
+public class TAdmissionProcessorTests extends TestCase {
+	final CountDownLatch entered = new CountDownLatch(1);
+	final CountDownLatch release = new CountDownLatch(1);
+
+	ServiceStats        stats = new ServiceStats();
+	TAdmissionProcessor admission;
+
+	@Override
+	public void setUp() {
+		//gets park until released
+		ThrudocHandler handler = new ThrudocHandler(".") {
+			public byte[] get(String bucket, String key) throws InvalidBucketException, TException {
+				entered.countDown();
+				try{
+					release.await();
+				}catch(InterruptedException e){
+					throw new TException(e);
+				}
+				return key.getBytes();
+			}
+		};
+
+		admission = new TAdmissionProcessor(new Thrudoc.Processor(handler),
+				Thrudoc.Iface.class, new ThrudocException(), stats);
+		admission.setLimit(ThrudocLoggingProcessor.READ_OPS, 1);
+	}
+
+	//runs a get through processor, returns the client reading the reply
+	private Thrudoc.Client call(TProcessor processor, String op) throws Exception {
+		TMemoryBuffer request = new TMemoryBuffer(1024);
+		Thrudoc.Client sender = new Thrudoc.Client(new TBinaryProtocol(new TFramedTransport(request)));
+
+		if(op.equals("get"))
+			sender.send_get("bucket", "key");
+		else
+			sender.send_ping();
+
+		TMemoryBuffer reply = new TMemoryBuffer(1024);
+		processor.process(new TBinaryProtocol(new TPeekingTransport(request, null)),
+				new TBinaryProtocol(new TPeekingTransport(reply, null)));
+
+		return new Thrudoc.Client(new TBinaryProtocol(new TFramedTransport(reply)));
+	}
+
+	public void testLimit() throws Exception {
+		final byte[][] result = new byte[1][];
+
+		Thread first = new Thread() {
+			public void run() {
+				try{
+					result[0] = call(admission, "get").recv_get();
+				}catch(Exception e){
+					fail(e.toString());
+				}
+			}
+		};
+		first.start();
+		entered.await();
+
+		//the one read allowed is busy
+		try{
+			call(admission, "get").recv_get();
+			fail("get should have been rejected");
+		}catch(ThrudocException e){
+		}
+
+		//ops outside the class aren't limited
+		call(admission, "ping").recv_ping();
+
+		release.countDown();
+		first.join();
+		assertEquals("key", new String(result[0]));
+
+		//and the slot is free again
+		assertEquals("key", new String(call(admission, "get").recv_get()));
+		assertEquals(1, stats.getStats().get("rj_get").longValue());
+	}
+
+	public void testRejectingProcessor() throws Exception {
+		TProcessor rejecting = admission.getRejectingProcessor();
+
+		try{
+			call(rejecting, "get").recv_get();
+			fail("get should have been rejected");
+		}catch(ThrudocException e){
+		}
+
+		//ping doesn't declare ThrudocException
+		try{
+			call(rejecting, "ping").recv_ping();
+			fail("ping should have been rejected");
+		}catch(TApplicationException e){
+		}
+
+		assertEquals(1, stats.getStats().get("rj_ping").longValue());
+	}
+}
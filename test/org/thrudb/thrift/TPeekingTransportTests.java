@@ -0,0 +1,92 @@
+package org.thrudb.thrift;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.thrudb.util.log.RedoLog;
+
+public class TPeekingTransportTests extends TestCase {
+	RedoLog        redoLog;
+	GroupCommitLog commitLog;
+
+	@Override
+	public void setUp() throws Exception {
+		File dir = new File("unittest_peek");
+		if(dir.isDirectory()){
+			for(File f : dir.listFiles())
+				f.delete();
+		}
+
+		redoLog   = new RedoLog(dir, 1024 * 1024);
+		commitLog = new GroupCommitLog(redoLog, GroupCommitLog.Durability.NONE, 0, 1);
+	}
+
+	@Override
+	public void tearDown() {
+		commitLog.close();
+	}
+
+	public void testReplayAndLog() throws Exception {
+		//a framed request as a client would send it
+		TMemoryBuffer wire = new TMemoryBuffer(1024);
+		TProtocol client = new TBinaryProtocol(new TFramedTransport(wire));
+
+		client.writeMessageBegin(new TMessage("put", TMessageType.CALL, 7));
+		client.writeString("bucket");
+		client.writeMessageEnd();
+		client.getTransport().flush();
+
+		int frameLen = wire.length() - 4;
+
+		TPeekingTransport trans = new TPeekingTransport(wire, commitLog);
+		TProtocol iprot = new TBinaryProtocol(trans);
+
+		assertEquals("put", iprot.readMessageBegin().name);
+
+		//the header replays from the same frame
+		trans.rewind();
+		TMessage msg = iprot.readMessageBegin();
+		assertEquals("put", msg.name);
+		assertEquals(7, msg.seqid);
+		assertEquals("bucket", iprot.readString());
+		assertEquals(frameLen, trans.getFrameLength());
+
+		//the whole frame is what gets logged
+		long lsn = trans.append("put", "bucket");
+		assertEquals(1, lsn);
+		trans.await(lsn);
+
+		RedoLog.Record record = redoLog.cursor(1).next();
+		assertEquals("put", record.op);
+		assertEquals("bucket", record.bucket);
+		assertEquals(frameLen, record.frame.length);
+
+		TMemoryBuffer logged = new TMemoryBuffer(frameLen);
+		logged.write(record.frame);
+		assertEquals("put", new TBinaryProtocol(logged).readMessageBegin().name);
+	}
+
+	public void testReplyFramed() throws Exception {
+		TMemoryBuffer wire = new TMemoryBuffer(1024);
+
+		TPeekingTransport trans = new TPeekingTransport(wire, commitLog);
+		TProtocol oprot = new TBinaryProtocol(trans);
+
+		oprot.writeMessageBegin(new TMessage("put", TMessageType.EXCEPTION, 7));
+		oprot.writeString("failed");
+		oprot.writeMessageEnd();
+		trans.flush();
+
+		//the reply went out framed
+		TProtocol client = new TBinaryProtocol(new TFramedTransport(wire));
+		assertEquals(TMessageType.EXCEPTION, client.readMessageBegin().type);
+		assertEquals("failed", client.readString());
+	}
+}
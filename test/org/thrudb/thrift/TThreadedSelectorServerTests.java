@@ -0,0 +1,188 @@
+package org.thrudb.thrift;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.thrift.TProcessorFactory;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TNonblockingServerSocket;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+import org.thrudb.thrudoc.Thrudoc;
+import org.thrudb.thrudoc.ThrudocHandler;
+import org.thrudb.thrudoc.ThrudocLoggingProcessor;
+
+public class TThreadedSelectorServerTests extends TestCase {
+	static final int PORT = 19191;
+
+	File                     logDir = new File("unittest_selector");
+	TPeekingTransportFactory peekFactory;
+	ThrudocHandler           handler;
+	TThreadedSelectorServer  server;
+	Thread                   serverThread;
+
+	@Override
+	public void setUp() throws Exception {
+		File log = new File(logDir, "thrudoc_log");
+		if(log.isDirectory()){
+			for(File f : log.listFiles())
+				f.delete();
+		}else{
+			log.mkdirs();
+		}
+
+		handler = new ThrudocHandler(".");
+		handler.delete_bucket("selector");
+
+		peekFactory = new TPeekingTransportFactory(logDir.getPath(), "thrudoc_log",
+				GroupCommitLog.Durability.SYNC, 0, 256);
+		handler.setRedoLog(peekFactory.getCommitLog().getLog());
+	}
+
+	private void start(TThreadedSelectorServer.Options opt) throws Exception {
+		server = new TThreadedSelectorServer(new TProcessorFactory(new ThrudocLoggingProcessor(handler)),
+				new TNonblockingServerSocket(PORT), peekFactory, peekFactory,
+				new TBinaryProtocol.Factory(), new TBinaryProtocol.Factory(), opt);
+
+		serverThread = new Thread() {
+			public void run() {
+				server.serve();
+			}
+		};
+		serverThread.start();
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		if(server == null)
+			return;
+
+		server.stop();
+		serverThread.join();
+	}
+
+	private Thrudoc.Client connect(List<TTransport> open) throws Exception {
+		TTransport transport = new TFramedTransport(new TSocket("localhost", PORT, 10000));
+		transport.open();
+		open.add(transport);
+
+		return new Thrudoc.Client(new TBinaryProtocol(transport));
+	}
+
+	public void testManyClients() throws Exception {
+		TThreadedSelectorServer.Options opt = new TThreadedSelectorServer.Options();
+		opt.selectorThreads = 3;
+		opt.workerThreads   = 4;
+		opt.queueDepth      = 2;
+		start(opt);
+
+		final List<TTransport> open   = new ArrayList<TTransport>();
+		final List<Throwable>  errors = new ArrayList<Throwable>();
+
+		connect(open).create_bucket("selector");
+
+		List<Thread> clients = new ArrayList<Thread>();
+		for(int c=0; c<10; c++){
+			final Thrudoc.Client client = connect(open);
+			final int id = c;
+
+			clients.add(new Thread() {
+				public void run() {
+					try{
+						for(int i=0; i<50; i++){
+							String key = "key"+id+"_"+i;
+							client.put("selector", key, key.getBytes());
+							assertEquals(key, new String(client.get("selector", key)));
+						}
+					}catch(Throwable t){
+						synchronized(errors){
+							errors.add(t);
+						}
+					}
+				}
+			});
+		}
+
+		for(Thread t : clients)
+			t.start();
+
+		for(Thread t : clients)
+			t.join();
+
+		for(TTransport t : open)
+			t.close();
+
+		assertTrue(errors.toString(), errors.isEmpty());
+
+		//every write went through the logging processor
+		assertEquals(1 + 10 * 50, peekFactory.getCommitLog().getLog().getLastLsn());
+	}
+
+	public void testReadBudget() throws Exception {
+		TThreadedSelectorServer.Options opt = new TThreadedSelectorServer.Options();
+		opt.maxReadBufferBytes = 4096;
+		start(opt);
+
+		final List<TTransport> open   = new ArrayList<TTransport>();
+		final List<Throwable>  errors = new ArrayList<Throwable>();
+
+		connect(open).create_bucket("selector");
+
+		//frames that fail to process give their space back
+		for(int i=0; i<4; i++){
+			TTransport raw = new TSocket("localhost", PORT, 10000);
+			raw.open();
+			open.add(raw);
+
+			byte[] frame = new byte[4 + 2000];
+			frame[2] = (byte)(2000 >> 8);
+			frame[3] = (byte)(2000 & 0xff);
+			for(int b=4; b<frame.length; b++)
+				frame[b] = (byte)0xff;
+
+			raw.write(frame);
+			raw.flush();
+
+			//the server closes the connection once the frame fails
+			assertTrue(raw.read(new byte[1], 0, 1) < 0);
+		}
+
+		//only one of these frames fits at a time, the rest wait to read
+		final byte[] value = new byte[3000];
+
+		List<Thread> clients = new ArrayList<Thread>();
+		for(int c=0; c<4; c++){
+			final Thrudoc.Client client = connect(open);
+			final int id = c;
+
+			clients.add(new Thread() {
+				public void run() {
+					try{
+						for(int i=0; i<10; i++)
+							client.put("selector", "key"+id+"_"+i, value);
+					}catch(Throwable t){
+						synchronized(errors){
+							errors.add(t);
+						}
+					}
+				}
+			});
+		}
+
+		for(Thread t : clients)
+			t.start();
+
+		for(Thread t : clients)
+			t.join();
+
+		for(TTransport t : open)
+			t.close();
+
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertEquals(3000, handler.get("selector", "key3_9").length);
+	}
+}
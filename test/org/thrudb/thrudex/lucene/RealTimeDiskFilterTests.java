@@ -0,0 +1,85 @@
+package org.thrudb.thrudex.lucene;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.OpenBitSet;
+
+public class RealTimeDiskFilterTests extends TestCase {
+
+	IndexReader reader;
+
+	@Override
+	public void setUp() throws Exception {
+		RAMDirectory directory = new RAMDirectory();
+		IndexWriter  writer    = new IndexWriter(directory, new StandardAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+
+		for(int i=0; i<1000; i++)
+			writer.addDocument(newDocument("key"+i));
+
+		//a key on two docs
+		writer.addDocument(newDocument("twice"));
+		writer.addDocument(newDocument("twice"));
+
+		writer.deleteDocuments(new Term(LuceneIndex.DOCUMENT_KEY, "key7"));
+		writer.close();
+
+		reader = IndexReader.open(directory, true);
+	}
+
+	private Document newDocument(String key) {
+		Document doc = new Document();
+		doc.add(new Field(LuceneIndex.DOCUMENT_KEY, key, Field.Store.YES, Field.Index.NOT_ANALYZED));
+		return doc;
+	}
+
+	private int visible(RealTimeDiskFilter filter) throws Exception {
+		return (int)((OpenBitSet)filter.getDocIdSet(reader)).cardinality();
+	}
+
+	public void testHideTerm() throws Exception {
+		RealTimeDiskFilter filter = new RealTimeDiskFilter(reader);
+		int all = visible(filter);
+
+		assertFalse(filter.hideTerm(new Term(LuceneIndex.DOCUMENT_KEY, "new")));
+		assertFalse(filter.hideTerm(new Term(LuceneIndex.DOCUMENT_KEY, "key7")));
+		assertEquals(all, visible(filter));
+
+		assertTrue(filter.hideTerm(new Term(LuceneIndex.DOCUMENT_KEY, "key42")));
+		assertTrue(filter.hideTerm(new Term(LuceneIndex.DOCUMENT_KEY, "key42")));
+		assertEquals(all - 1, visible(filter));
+
+		TermDocs docs = reader.termDocs(new Term(LuceneIndex.DOCUMENT_KEY, "key42"));
+		assertTrue(docs.next());
+		assertFalse(((OpenBitSet)filter.getDocIdSet(reader)).get(docs.doc()));
+
+		assertTrue(filter.hideTerm(new Term(LuceneIndex.DOCUMENT_KEY, "twice")));
+		assertEquals(all - 3, visible(filter));
+
+		assertEquals(2, filter.getTermSet().size());
+	}
+
+	public void testKeyColumn() throws Exception {
+		new RealTimeDiskFilter(reader);
+
+		//the filter's key walk fills the reader's key column
+		String[] keys = KeyColumn.getKeys(reader);
+		for(int i=0; i<reader.maxDoc(); i++){
+			if(!reader.isDeleted(i))
+				assertEquals(reader.document(i).get(LuceneIndex.DOCUMENT_KEY), keys[i]);
+		}
+		assertSame(keys, KeyColumn.getKeys(reader));
+
+		//doc ids run on across readers
+		KeyColumn column = new KeyColumn(new IndexReader[]{reader, reader});
+		assertEquals("key0", column.get(reader.maxDoc()));
+		assertEquals("twice", column.get(reader.maxDoc() - 1));
+	}
+}
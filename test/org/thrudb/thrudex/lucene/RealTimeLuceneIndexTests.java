@@ -2,11 +2,14 @@ package org.thrudb.thrudex.lucene;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
 
 import junit.framework.TestCase;
 
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.thrift.TException;
 import org.thrudb.thrudex.Document;
+import org.thrudb.thrudex.Element;
 import org.thrudb.thrudex.Field;
 import org.thrudb.thrudex.Analyzer;
 import org.thrudb.thrudex.SearchQuery;
@@ -27,20 +30,41 @@ public class RealTimeLuceneIndexTests extends TestCase {
 	protected void setUp() throws Exception {
 		super.setUp();
 
-		// remove old index if exists
-		File dir = new File(INDEX_BASE_PATH + "/" + INDEX_NAME);
+		removeIndex(INDEX_NAME);
+
+		index = new ThrudexLuceneHandler(INDEX_BASE_PATH);
+		index.addIndex(INDEX_NAME);
+
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		index.shutdown();
+
+		for (String name : new String[] { INDEX_NAME, "flush_index",
+				"budget_a", "budget_b", "sharded_index", "update_index" })
+			removeIndex(name);
+
+		super.tearDown();
+	}
+
+	// remove old index if exists
+	private void removeIndex(String name) {
+		removeDir(new File(INDEX_BASE_PATH + "/" + name));
+	}
+
+	private void removeDir(File dir) {
 		if (dir.isDirectory()) {
 			for (String file : dir.list()) {
 				File f = new File(dir, file);
-				f.delete();
+				if (f.isDirectory())
+					removeDir(f);
+				else
+					f.delete();
 			}
 			if (!dir.delete())
 				fail("can't remove test index dir");
 		}
-
-		index = new ThrudexLuceneHandler(INDEX_BASE_PATH);
-		index.addIndex(INDEX_NAME);
-
 	}
 
 	public void testKeywordSearch() {
@@ -57,6 +81,7 @@ public class RealTimeLuceneIndexTests extends TestCase {
 			search.putToFieldAnalyzers("category", Analyzer.KEYWORD);
 			
 			search.setQuery("category:\"science_fiction\"");
+			search.setRefresh(true);
 			
 			SearchResponse response = index.search(search);
 			assertEquals(1, response.total);
@@ -69,6 +94,442 @@ public class RealTimeLuceneIndexTests extends TestCase {
 		} 
 	}
 
+	public void testRefreshInterval() throws Exception {
+		Document d1 = this.newDocument("doc1");
+		this.addField(d1, "title", "title number 1", true, Analyzer.STANDARD);
+		index.put(d1);
+
+		SearchQuery search = new SearchQuery();
+		search.setIndex(INDEX_NAME);
+		search.setQuery("title:number");
+
+		//the refresher publishes the write without being asked
+		long deadline = System.currentTimeMillis() + 5000;
+		while(index.search(search).total < 1 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+
+		assertEquals(1, index.search(search).total);
+
+		//refresh sees a write straight away
+		index.remove(new Element(INDEX_NAME, "doc1", null));
+		search.setRefresh(true);
+		assertEquals(0, index.search(search).total);
+	}
+
+	public void testQueryCache() throws Exception {
+		Document d1 = this.newDocument("doc1");
+		this.addField(d1, "category", "science_fiction", true, Analyzer.KEYWORD);
+		index.put(d1);
+
+		SearchQuery search = new SearchQuery();
+		search.setIndex(INDEX_NAME);
+		search.putToFieldAnalyzers("category", Analyzer.KEYWORD);
+		search.setQuery("category:\"science_fiction\"");
+		search.setRefresh(true);
+
+		assertEquals(1, index.search(search).total);
+		assertEquals(1, index.search(search).total);
+
+		//same query string, other analyzer
+		search.putToFieldAnalyzers("category", Analyzer.WHITESPACE);
+		index.search(search);
+
+		String stats = index.admin("stats", "");
+		assertTrue(stats, stats.contains("qc_hits_" + INDEX_NAME + "=1\n"));
+		assertTrue(stats, stats.contains("qc_misses_" + INDEX_NAME + "=2\n"));
+		assertTrue(stats, stats.contains("qc_size_" + INDEX_NAME + "=2\n"));
+	}
+
+	public void testResultCache() throws Exception {
+		Document d1 = this.newDocument("doc1");
+		this.addField(d1, "title", "title number 1", true, Analyzer.STANDARD);
+		index.put(d1);
+
+		SearchQuery search = new SearchQuery();
+		search.setIndex(INDEX_NAME);
+		search.setQuery("title:number");
+		search.setRefresh(true);
+		search.setCache(true);
+
+		assertEquals(1, index.search(search).total);
+		assertEquals(1, index.search(search).total);
+
+		//a write moves the searchers on, the cached page goes
+		Document d2 = this.newDocument("doc2");
+		this.addField(d2, "title", "title number 2", true, Analyzer.STANDARD);
+		index.put(d2);
+
+		assertEquals(2, index.search(search).total);
+
+		String stats = index.admin("stats", "");
+		assertTrue(stats, stats.contains("rc_hits_" + INDEX_NAME + "=1\n"));
+		assertTrue(stats, stats.contains("rc_misses_" + INDEX_NAME + "=2\n"));
+	}
+
+	public void testFilters() throws Exception {
+		Document d1 = this.newDocument("doc1");
+		this.addField(d1, "title", "title number 1", true, Analyzer.STANDARD);
+		this.addField(d1, "category", "science_fiction", true, Analyzer.KEYWORD);
+		index.put(d1);
+
+		Document d2 = this.newDocument("doc2");
+		this.addField(d2, "title", "title number 2", true, Analyzer.STANDARD);
+		this.addField(d2, "category", "romance", true, Analyzer.KEYWORD);
+		index.put(d2);
+
+		SearchQuery search = new SearchQuery();
+		search.setIndex(INDEX_NAME);
+		search.putToFieldAnalyzers("category", Analyzer.KEYWORD);
+		search.setQuery("title:number");
+		search.addToFilters("category:\"science_fiction\"");
+		search.setRefresh(true);
+
+		assertEquals(1, index.search(search).total);
+		assertEquals("doc1", index.search(search).elements.get(0).key);
+
+		//the new RAM reader gets its own bits
+		Document d3 = this.newDocument("doc3");
+		this.addField(d3, "title", "title number 3", true, Analyzer.STANDARD);
+		this.addField(d3, "category", "science_fiction", true, Analyzer.KEYWORD);
+		index.put(d3);
+
+		assertEquals(2, index.search(search).total);
+
+		String stats = index.admin("stats", "");
+		assertTrue(stats, stats.contains("fc_hits_" + INDEX_NAME + "=2\n"));
+		assertTrue(stats, stats.contains("fc_size_" + INDEX_NAME + "=1\n"));
+	}
+
+	public void testFlushPolicy() throws Exception {
+		removeIndex("flush_index");
+		RealTimeLuceneIndex flushed = new RealTimeLuceneIndex(INDEX_BASE_PATH, "flush_index");
+
+		FlushPolicy policy = new FlushPolicy();
+		policy.maxRamBytes = 0;
+		policy.maxAge      = 0;
+		policy.maxDocs     = 2;
+		flushed.setFlushPolicy(policy);
+
+		try {
+			flushed.put("doc1", luceneDocument("doc1"), new StandardAnalyzer());
+			flushed.put("doc2", luceneDocument("doc2"), new StandardAnalyzer());
+
+			long deadline = System.currentTimeMillis() + 5000;
+			while(flushed.diskReader.numDocs() < 2 && System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+
+			assertEquals(2, flushed.diskReader.numDocs());
+			assertEquals(0, flushed.getFirstWrite());
+		} finally {
+			flushed.shutdown();
+		}
+	}
+
+	public void testFlushBudget() throws Exception {
+		removeIndex("budget_a");
+		removeIndex("budget_b");
+		RealTimeLuceneIndex a = new RealTimeLuceneIndex(INDEX_BASE_PATH, "budget_a");
+		RealTimeLuceneIndex b = new RealTimeLuceneIndex(INDEX_BASE_PATH, "budget_b");
+
+		try {
+			FlushBudget budget = new FlushBudget(1024 * 1024);
+			budget.register(a);
+			budget.register(b);
+
+			for(int i=0; i<20; i++)
+				a.put("doc"+i, luceneDocument("doc"+i), new StandardAnalyzer());
+			b.put("doc", luceneDocument("doc"), new StandardAnalyzer());
+			a.refresh();
+			b.refresh();
+
+			assertNull(budget.getVictim());
+
+			//over budget, the biggest buffer goes first
+			FlushBudget tight = new FlushBudget(a.getRamBytes());
+			tight.register(a);
+			tight.register(b);
+			assertSame(a, tight.getVictim());
+		} finally {
+			a.shutdown();
+			b.shutdown();
+		}
+	}
+
+	public void testUpdateFlushedDoc() throws Exception {
+		RealTimeLuceneIndex updated = new RealTimeLuceneIndex(INDEX_BASE_PATH, "update_index", 60000);
+
+		try {
+			org.apache.lucene.document.Document doc = luceneDocument("doc1");
+			doc.add(new org.apache.lucene.document.Field("title", "old title",
+					org.apache.lucene.document.Field.Store.YES,
+					org.apache.lucene.document.Field.Index.ANALYZED));
+			updated.put("doc1", doc, new StandardAnalyzer());
+			updated.requestFlush();
+
+			long deadline = System.currentTimeMillis() + 5000;
+			while(updated.diskReader.numDocs() < 1 && System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+			assertEquals(1, updated.diskReader.numDocs());
+
+			doc = luceneDocument("doc1");
+			doc.add(new org.apache.lucene.document.Field("title", "new title",
+					org.apache.lucene.document.Field.Store.YES,
+					org.apache.lucene.document.Field.Index.ANALYZED));
+			updated.put("doc1", doc, new StandardAnalyzer());
+
+			SearchQuery search = new SearchQuery();
+			search.setQuery("title:title");
+
+			//the disk doc stays until the update is searchable
+			assertEquals(1, updated.search(search, new StandardAnalyzer()).total);
+
+			search.setRefresh(true);
+			assertEquals(1, updated.search(search, new StandardAnalyzer()).total);
+
+			search.setQuery("title:new");
+			assertEquals(1, updated.search(search, new StandardAnalyzer()).total);
+		} finally {
+			updated.shutdown();
+		}
+	}
+
+	public void testShardedIndex() throws Exception {
+		removeIndex("sharded_index");
+		index.admin("create_index", "sharded_index:4");
+
+		for (int i = 0; i < 20; i++) {
+			Document d = this.newDocument("doc" + i);
+			d.setIndex("sharded_index");
+			this.addField(d, "title", "title number " + i, true, Analyzer.STANDARD);
+			this.addField(d, "category", i % 2 == 0 ? "even" : "odd", true, Analyzer.KEYWORD);
+
+			Field rank = new Field();
+			rank.setKey("rank");
+			rank.setValue(String.format("%04d", i));
+			rank.setSortable(true);
+			d.getFields().add(rank);
+
+			index.put(d);
+		}
+
+		SearchQuery search = new SearchQuery();
+		search.setIndex("sharded_index");
+		search.setQuery("title:number");
+		search.setSortby("rank");
+		search.setDesc(true);
+		search.setLimit(5);
+		search.setRefresh(true);
+
+		//the top hits merged across every shard
+		SearchResponse response = index.search(search);
+		assertEquals(20, response.total);
+		assertEquals(5, response.elements.size());
+		for (int i = 0; i < 5; i++)
+			assertEquals("doc" + (19 - i), response.elements.get(i).key);
+
+		//cursors walk the readers of every shard
+		search.setCursor("");
+		search.setCursor(index.search(search).cursor);
+		response = index.search(search);
+		assertEquals("doc14", response.elements.get(0).key);
+		search.unsetCursor();
+
+		//removes and filters reach the right shard
+		index.remove(new Element("sharded_index", "doc19", null));
+		search.putToFieldAnalyzers("category", Analyzer.KEYWORD);
+		search.addToFilters("category:odd");
+
+		response = index.search(search);
+		assertEquals(9, response.total);
+		assertEquals("doc17", response.elements.get(0).key);
+
+		//the shard count is fixed once created
+		try {
+			new ShardedLuceneIndex(INDEX_BASE_PATH, "sharded_index", 2, 100);
+			fail("changed shard count");
+		} catch (ThrudexException e) {
+		}
+	}
+
+	public void testShardExistingIndex() throws Exception {
+		Document d = this.newDocument("doc1");
+		this.addField(d, "title", "title number 1", true, Analyzer.STANDARD);
+		index.put(d);
+		index.shutdown();
+
+		//sharding would orphan the docs already in the index
+		index = new ThrudexLuceneHandler(INDEX_BASE_PATH);
+		try {
+			index.admin("create_index", INDEX_NAME + ":4");
+			fail("sharded an unsharded index");
+		} catch (ThrudexException e) {
+		}
+		assertFalse(new File(INDEX_BASE_PATH + "/" + INDEX_NAME + "/"
+				+ ShardedLuceneIndex.SHARDS_FILE).exists());
+
+		SearchQuery search = new SearchQuery();
+		search.setIndex(INDEX_NAME);
+		search.setQuery("title:number");
+		assertEquals(1, index.search(search).total);
+
+		//nor can an open one be
+		try {
+			index.admin("create_index", INDEX_NAME + ":4");
+			fail("sharded an open unsharded index");
+		} catch (ThrudexException e) {
+		}
+	}
+
+	public void testPutList() throws Exception {
+		index.setAnalysisThreads(4);
+
+		List<Document> documents = new ArrayList<Document>();
+		for (int i = 0; i < 100; i++) {
+			Document d = this.newDocument("doc" + (i % 50));
+			this.addField(d, "title", "title number " + i, true, Analyzer.STANDARD);
+			this.addField(d, "category", i < 50 ? "old" : "new", true, Analyzer.KEYWORD);
+			d.getFields().get(0).setWeight(2);
+			documents.add(d);
+		}
+
+		Document bad = this.newDocument("bad");
+		bad.setIndex("no_such_index");
+		documents.add(10, bad);
+
+		List<ThrudexException> errors = index.putList(documents);
+		assertEquals(1, errors.size());
+		assertTrue(errors.get(0).what, errors.get(0).what.endsWith("bad"));
+
+		//the later put of each key wins
+		SearchQuery search = new SearchQuery();
+		search.setIndex(INDEX_NAME);
+		search.putToFieldAnalyzers("category", Analyzer.KEYWORD);
+		search.setQuery("category:new");
+		search.setRefresh(true);
+		assertEquals(50, index.search(search).total);
+
+		search.setQuery("category:old");
+		assertEquals(0, index.search(search).total);
+
+		//analyzed ahead of the index, searched the same
+		search.setQuery("title:99");
+		search.setLimit(1);
+		SearchResponse response = index.search(search);
+		assertEquals(1, response.total);
+		assertEquals("doc49", response.elements.get(0).key);
+	}
+
+	public void testSearchList() throws Exception {
+		index.setSearchThreads(4);
+		index.setSearchListTimeout(5000);
+
+		Document d1 = this.newDocument("doc1");
+		this.addField(d1, "title", "title number 1", true, Analyzer.STANDARD);
+		index.put(d1);
+
+		List<SearchQuery> queries = new ArrayList<SearchQuery>();
+		for (String query : new String[] { "title:number", "title:missing", "", "title:title" }) {
+			SearchQuery search = new SearchQuery();
+			search.setIndex(INDEX_NAME);
+			search.setQuery(query);
+			search.setRefresh(true);
+			queries.add(search);
+		}
+
+		SearchQuery other = new SearchQuery();
+		other.setIndex("no_such_index");
+		other.setQuery("title:number");
+		queries.add(other);
+
+		//failures come back in place, the rest still run
+		List<SearchResponse> responses = index.searchList(queries);
+		assertEquals(5, responses.size());
+		assertEquals(1, responses.get(0).total);
+		assertEquals(0, responses.get(1).total);
+		assertNotNull(responses.get(2).ex);
+		assertEquals(1, responses.get(3).total);
+		assertNotNull(responses.get(4).ex);
+		assertNull(responses.get(0).ex);
+	}
+
+	public void testCursor() throws Exception {
+		for (int i = 0; i < 25; i++) {
+			Document d = this.newDocument("doc" + i);
+			this.addField(d, "title", "title number " + i + (i % 3 == 0 ? " number" : ""), true, Analyzer.STANDARD);
+
+			Field rank = new Field();
+			rank.setKey("rank");
+			rank.setValue(String.valueOf(i % 5));
+			rank.setSortable(true);
+			d.getFields().add(rank);
+
+			index.put(d);
+		}
+
+		SearchQuery search = new SearchQuery();
+		search.setIndex(INDEX_NAME);
+		search.setQuery("title:number");
+		search.setSortby("rank");
+		search.setDesc(true);
+		search.setRefresh(true);
+
+		//pages after a cursor walk the sort order, ties by key
+		List<String> paged = pages(search, 10);
+		assertEquals(25, paged.size());
+		for (int i = 0; i < 25; i++) {
+			int rank = Integer.parseInt(paged.get(i).substring(3)) % 5;
+			assertEquals(4 - i / 5, rank);
+
+			if (i % 5 != 0)
+				assertTrue(paged.get(i - 1).compareTo(paged.get(i)) < 0);
+		}
+
+		//by score every doc comes once
+		search.setSortby("");
+		paged = pages(search, 4);
+		assertEquals(25, paged.size());
+		assertEquals(25, new java.util.HashSet<String>(paged).size());
+		assertTrue(paged.indexOf("doc0") < paged.indexOf("doc1"));
+
+		//a score cursor doesn't fit a sorted search
+		search.setCursor(index.search(search).cursor);
+		search.setSortby("rank");
+		try {
+			index.search(search);
+			fail("cursor from another sort");
+		} catch (ThrudexException e) {
+		}
+	}
+
+	private List<String> pages(SearchQuery search, int limit) throws Exception {
+		List<String> keys = new ArrayList<String>();
+
+		search.setLimit(limit);
+		search.setCursor("");
+
+		while (true) {
+			SearchResponse response = index.search(search);
+			assertEquals(25, response.total);
+
+			if (response.elements == null)
+				return keys;
+
+			assertTrue(response.elements.size() <= limit);
+			for (Element el : response.elements)
+				keys.add(el.key);
+
+			search.setCursor(response.cursor);
+		}
+	}
+
+	private org.apache.lucene.document.Document luceneDocument(String key) {
+		org.apache.lucene.document.Document doc = new org.apache.lucene.document.Document();
+		doc.add(new org.apache.lucene.document.Field(LuceneIndex.DOCUMENT_KEY, key,
+				org.apache.lucene.document.Field.Store.YES,
+				org.apache.lucene.document.Field.Index.NOT_ANALYZED));
+		return doc;
+	}
+
 	private Document newDocument(String key) {
 		Document d = new Document();
 		d.setIndex(INDEX_NAME);
@@ -0,0 +1,84 @@
+package org.thrudb.thrudex.lucene;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.RAMDirectory;
+
+public class SearcherManagerTests extends TestCase {
+
+	RAMDirectory directory;
+	IndexWriter  writer;
+
+	@Override
+	public void setUp() throws Exception {
+		directory = new RAMDirectory();
+		writer    = new IndexWriter(directory, new StandardAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+	}
+
+	private void add(String key) throws Exception {
+		Document doc = new Document();
+		doc.add(new Field("key", key, Field.Store.YES, Field.Index.NOT_ANALYZED));
+		writer.addDocument(doc);
+		writer.commit();
+	}
+
+	private void assertClosed(IndexReader reader) {
+		try{
+			reader.incRef();
+			fail("reader should be closed");
+		}catch(AlreadyClosedException e){
+		}
+	}
+
+	public void testReleaseClosesReplacedReader() throws Exception {
+		SearcherManager manager = new SearcherManager();
+
+		manager.publish(new IndexReader[]{IndexReader.open(directory, true)}, null);
+		SearcherManager.Snapshot empty = manager.acquire();
+		assertNull(empty.getSearcher());
+		manager.release(empty);
+
+		add("a");
+		IndexReader reader = IndexReader.open(directory, true);
+		manager.publish(new IndexReader[]{reader}, null);
+
+		SearcherManager.Snapshot held = manager.acquire();
+		assertEquals(2, held.getGeneration());
+
+		//the index swaps in a newer reader while a search holds the old one
+		add("b");
+		IndexReader newReader = IndexReader.open(directory, true);
+		reader.decRef();
+		manager.publish(new IndexReader[]{newReader}, null);
+
+		assertEquals(1, held.getSearcher().search(new TermQuery(new Term("key", "a")), 10).totalHits);
+
+		manager.release(held);
+
+		//released by the last search using it
+		assertClosed(reader);
+
+		SearcherManager.Snapshot current = manager.acquire();
+		assertEquals(3, current.getGeneration());
+		assertEquals(1, current.getSearcher().search(new TermQuery(new Term("key", "b")), 10).totalHits);
+		manager.release(current);
+
+		manager.close();
+		newReader.decRef();
+		assertClosed(newReader);
+
+		try{
+			manager.acquire();
+			fail("manager is closed");
+		}catch(AlreadyClosedException e){
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package org.thrudb.thrudoc;
+
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.thrudb.thrudoc.logstore.LogStoreDB;
+
+public class CachingBackendTests extends TestCase {
+
+	final CountDownLatch read   = new CountDownLatch(1);
+	final CountDownLatch resume = new CountDownLatch(1);
+	volatile boolean     pause  = false;
+
+	LogStoreDB     db;
+	CachingBackend cached;
+
+	@Override
+	public void setUp() throws Exception {
+		//holds a read between the backend and the cache fill
+		db = new LogStoreDB(".", "unittest_cache") {
+			public byte[] get(String key) {
+				byte[] value = super.get(key);
+
+				if(pause){
+					read.countDown();
+					try{
+						resume.await();
+					}catch(InterruptedException e){
+						Thread.currentThread().interrupt();
+					}
+				}
+
+				return value;
+			}
+		};
+		db.erase();
+
+		cached = new CachingBackend(db, 1024 * 1024);
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		cached.erase();
+		cached.shutdown();
+	}
+
+	public void testReadRacingWrite() throws Exception {
+		db.put("key", "old".getBytes());
+
+		pause = true;
+		Thread reader = new Thread() {
+			public void run() {
+				cached.get("key");
+			}
+		};
+		reader.start();
+
+		//the write lands after the read got the old value, before it's cached
+		read.await();
+		pause = false;
+		cached.put("key", "new".getBytes());
+		resume.countDown();
+		reader.join();
+
+		assertEquals("new", new String(cached.get("key")));
+		assertEquals("new", new String(cached.get("key")));
+	}
+
+	public void testWritesDropCachedValues() throws Exception {
+		cached.put("key", "old".getBytes());
+		assertEquals("old", new String(cached.get("key")));
+
+		cached.put("key", "new".getBytes());
+		assertEquals("new", new String(cached.get("key")));
+
+		cached.incr("counter", 1);
+		assertEquals(2, cached.incr("counter", 1));
+
+		cached.remove("key");
+		assertNull(cached.get("key"));
+	}
+
+	public void testSegmentStats() throws Exception {
+		for(int i=0; i<100; i++){
+			cached.put("key"+i, "value".getBytes());
+			cached.get("key"+i);
+		}
+
+		//keys spread over the segments, the stats add them up
+		for(int i=0; i<100; i++)
+			assertEquals("value", new String(cached.get("key"+i)));
+
+		assertEquals(100, cached.getHits());
+		assertEquals(100, cached.getMisses());
+		assertTrue(cached.getBytes() > 0);
+	}
+}
@@ -0,0 +1,201 @@
+package org.thrudb.thrudoc;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.thrudb.thrift.GroupCommitLog;
+import org.thrudb.thrift.TPeekingTransport;
+import org.thrudb.util.log.RedoLog;
+
+public class ThrudocRecoveryTests extends TestCase {
+	File           dir = new File("unittest_recovery");
+	RedoLog        log;
+	ThrudocHandler handler;
+	TMemoryBuffer  frame;
+	Thrudoc.Client client;
+
+	@Override
+	public void setUp() throws Exception {
+		if(dir.isDirectory()){
+			for(File f : dir.listFiles())
+				f.delete();
+		}
+
+		log     = new RedoLog(dir, 1024 * 1024);
+		handler = new ThrudocHandler(".");
+		handler.delete_bucket("recovery");
+		handler.delete_bucket("recovery2");
+
+		newFrame();
+	}
+
+	private void newFrame() {
+		frame  = new TMemoryBuffer(1024);
+		client = new Thrudoc.Client(new TBinaryProtocol(frame));
+	}
+
+	@Override
+	public void tearDown() {
+		log.close();
+	}
+
+	//logs whatever the client just sent
+	private void logFrame(String op, String bucket) throws Exception {
+		byte[] bytes = new byte[frame.length()];
+		frame.readAll(bytes, 0, bytes.length);
+
+		log.append(op, bucket, bytes, 0, bytes.length);
+		newFrame();
+	}
+
+	public void testReplay() throws Exception {
+		client.send_create_bucket("recovery");
+		logFrame("create_bucket", "recovery");
+		client.send_create_bucket("recovery2");
+		logFrame("create_bucket", "recovery2");
+
+		for(int i=0; i<100; i++){
+			client.send_put("recovery", "key"+i, ("value"+i).getBytes());
+			logFrame("put", "recovery");
+			client.send_incr("recovery2", "counter", 1);
+			logFrame("incr", "recovery2");
+		}
+
+		client.send_put_multi(Arrays.asList(new Entity[]{
+				new Entity("recovery", "key0", "multi".getBytes()),
+				new Entity("recovery2", "key0", "multi".getBytes())}));
+		logFrame("put_multi", "");
+
+		ThrudocRecovery recovery = new ThrudocRecovery(handler, log, 4);
+		assertEquals(203, recovery.replay());
+
+		assertEquals("value99", new String(handler.get("recovery", "key99")));
+		assertEquals("multi", new String(handler.get("recovery", "key0")));
+		assertEquals("multi", new String(handler.get("recovery2", "key0")));
+		assertEquals(101, handler.incr("recovery2", "counter", 1));
+
+		//replay checkpointed everything
+		assertEquals(203, recovery.getCheckpoint("recovery"));
+		assertEquals(0, new ThrudocRecovery(handler, log, 4).replay());
+	}
+
+	public void testCheckpoint() throws Exception {
+		client.send_create_bucket("recovery");
+		logFrame("create_bucket", "recovery");
+		handler.create_bucket("recovery");
+
+		client.send_incr("recovery", "counter", 1);
+		logFrame("incr", "recovery");
+		handler.incr("recovery", "counter", 1);
+
+		ThrudocRecovery recovery = new ThrudocRecovery(handler, log, 4);
+		recovery.checkpoint();
+		assertEquals(2, recovery.getCheckpoint("recovery"));
+
+		client.send_incr("recovery", "counter", 1);
+		logFrame("incr", "recovery");
+
+		//only the write after the checkpoint is redone
+		recovery = new ThrudocRecovery(handler, log, 4);
+		assertEquals(1, recovery.replay());
+		assertEquals(2, handler.incr("recovery", "counter", 0));
+	}
+	
+	//runs a request through processor the way the server does
+	private void call(TProcessor processor, GroupCommitLog commitLog, TMemoryBuffer request) throws Exception {
+		TPeekingTransport in  = new TPeekingTransport(request, commitLog);
+		TPeekingTransport out = new TPeekingTransport(new TMemoryBuffer(64), commitLog);
+		
+		processor.process(new TBinaryProtocol(in), new TBinaryProtocol(out));
+	}
+	
+	public void testConcurrentPuts() throws Exception {
+		final GroupCommitLog          commitLog = new GroupCommitLog(log, GroupCommitLog.Durability.NONE, 0, 1);
+		final ThrudocLoggingProcessor processor = new ThrudocLoggingProcessor(handler);
+		final Throwable[]             failure   = new Throwable[1];
+		final int                     keys      = 200;
+		
+		TMemoryBuffer request = new TMemoryBuffer(1024);
+		new Thrudoc.Client(new TBinaryProtocol(new TFramedTransport(request))).send_create_bucket("recovery");
+		call(processor, commitLog, request);
+		
+		//every thread writes every key, the last to apply one has to be the last logged
+		Thread[] threads = new Thread[8];
+		for(int t=0; t<threads.length; t++){
+			final int id = t;
+			
+			threads[t] = new Thread(){
+				public void run(){
+					try{
+						TMemoryBuffer   request = new TMemoryBuffer(1024);
+						Thrudoc.Client  client  = new Thrudoc.Client(new TBinaryProtocol(new TFramedTransport(request)));
+						
+						for(int i=0; i<keys; i++){
+							client.send_put("recovery", "key"+i, (id+"-"+i).getBytes());
+							call(processor, commitLog, request);
+						}
+					}catch(Throwable t){
+						failure[0] = t;
+					}
+				}
+			};
+			threads[t].start();
+		}
+		
+		for(Thread thread : threads)
+			thread.join();
+		
+		assertNull(failure[0]);
+		assertEquals(1 + threads.length * keys, log.getLastLsn());
+		
+		Map<String,String> primary = new HashMap<String,String>();
+		for(int i=0; i<keys; i++)
+			primary.put("key"+i, new String(handler.get("recovery", "key"+i)));
+		
+		//replaying from scratch ends up where the primary is
+		handler.delete_bucket("recovery");
+		assertEquals(1 + threads.length * keys, new ThrudocRecovery(handler, log, 4).replay());
+		
+		for(int i=0; i<keys; i++)
+			assertEquals("key"+i, primary.get("key"+i), new String(handler.get("recovery", "key"+i)));
+	}
+	
+	public void testReplayApplied() throws Exception {
+		GroupCommitLog          commitLog = new GroupCommitLog(log, GroupCommitLog.Durability.NONE, 0, 1);
+		ThrudocLoggingProcessor processor = new ThrudocLoggingProcessor(handler);
+		
+		handler.setBucketBackend("recovery2", ThrudocHandler.LOGSTORE);
+		handler.delete_bucket("recovery2");
+		
+		TMemoryBuffer  request = new TMemoryBuffer(1024);
+		Thrudoc.Client client  = new Thrudoc.Client(new TBinaryProtocol(new TFramedTransport(request)));
+		
+		for(String bucket : new String[]{"recovery", "recovery2"}){
+			client.send_create_bucket(bucket);
+			call(processor, commitLog, request);
+			
+			for(int i=0; i<10; i++){
+				client.send_incr(bucket, "counter", 1);
+				call(processor, commitLog, request);
+				client.send_push_back(bucket, "list", ("value"+i).getBytes());
+				call(processor, commitLog, request);
+			}
+		}
+		
+		//died before a checkpoint with every write in the buckets
+		assertEquals(42, new ThrudocRecovery(handler, log, 4).replay());
+		
+		for(String bucket : new String[]{"recovery", "recovery2"}){
+			assertEquals(10, handler.incr(bucket, "counter", 0));
+			assertEquals(10, handler.length(bucket, "list"));
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package org.thrudb.thrudoc;
+
+import java.io.File;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.thrudb.Thrudb;
+import org.thrudb.logEntry;
+import org.thrudb.util.log.RedoLog;
+
+public class ThrudocReplicaTests extends TestCase {
+	File           logDir     = new File("unittest_primary_log");
+	File           replicaDir = new File("unittest_replica");
+	RedoLog        log;
+	ThrudocHandler primary;
+	ThrudocHandler secondary;
+
+	@Override
+	public void setUp() throws Exception {
+		for(File dir : new File[]{logDir, replicaDir}){
+			if(dir.isDirectory()){
+				for(File f : dir.listFiles())
+					f.delete();
+			}else{
+				dir.mkdirs();
+			}
+		}
+
+		log     = new RedoLog(logDir, 1024 * 1024);
+		primary = new ThrudocHandler(".");
+		primary.setRedoLog(log);
+		primary.delete_bucket("replicated");
+
+		secondary = new ThrudocHandler(replicaDir.getPath());
+		secondary.delete_bucket("replicated");
+	}
+
+	@Override
+	public void tearDown() {
+		log.close();
+	}
+
+	//a write on the primary, logged then applied as the server does
+	private void write(String op, String bucket, int i) throws Exception {
+		TMemoryBuffer  frame  = new TMemoryBuffer(1024);
+		Thrudoc.Client client = new Thrudoc.Client(new TBinaryProtocol(frame));
+
+		if(op.equals("create_bucket"))
+			client.send_create_bucket(bucket);
+		else
+			client.send_put(bucket, "key"+i, ("value"+i).getBytes());
+
+		byte[] bytes = new byte[frame.length()];
+		frame.readAll(bytes, 0, bytes.length);
+
+		long lsn = log.append(op, bucket, bytes, 0, bytes.length);
+		ThrudocRecovery.apply(new Thrudoc.Processor(primary), lsn, bytes);
+	}
+
+	private ThrudocReplica replica() throws TException {
+		ThrudocReplica replica = new ThrudocReplica(secondary, "localhost", 0, replicaDir) {
+			protected Thrudb.Iface connect() {
+				return primary;
+			}
+		};
+		replica.setKbLimit(1);
+
+		return replica;
+	}
+
+	public void testGetLogSince() throws Exception {
+		write("create_bucket", "replicated", 0);
+		for(int i=0; i<100; i++)
+			write("put", "replicated", i);
+
+		//kbLimit bounds the batch but always returns something
+		List<logEntry> entries = primary.getLogSince("", "", "2", 1);
+		assertTrue(entries.size() > 1);
+		assertTrue(entries.size() < 100);
+		assertEquals("2", entries.get(0).lsn);
+		assertEquals("replicated", entries.get(0).bucket);
+
+		assertEquals(101, primary.getLogSince("", "replicated", "1", 1024).size());
+		assertEquals(0, primary.getLogSince("", "other", "1", 1024).size());
+		assertEquals(0, primary.getLogSince("", "", "102", 1024).size());
+	}
+
+	public void testReplicate() throws Exception {
+		write("create_bucket", "replicated", 0);
+		for(int i=0; i<100; i++)
+			write("put", "replicated", i);
+
+		ThrudocReplica replica = replica();
+
+		int applied = 0, n;
+		while((n = replica.poll()) > 0)
+			applied += n;
+
+		assertEquals(101, applied);
+		assertEquals(101, replica.getAppliedLsn());
+		assertEquals("value99", new String(secondary.get("replicated", "key99")));
+
+		replica.save();
+
+		//a restarted replica carries on from the saved LSN
+		write("put", "replicated", 100);
+
+		replica = replica();
+		assertEquals(101, replica.getAppliedLsn());
+		assertEquals(1, replica.poll());
+		assertEquals("value100", new String(secondary.get("replicated", "key100")));
+	}
+
+	public void testGap() throws Exception {
+		write("create_bucket", "replicated", 0);
+		write("put", "replicated", 1);
+
+		ThrudocReplica replica = new ThrudocReplica(secondary, "localhost", 0, replicaDir) {
+			protected Thrudb.Iface connect() {
+				return new ThrudocHandler(".") {
+					public List<logEntry> getLogSince(String server, String bucket, String lsn, int kbLimit) throws TException {
+						return primary.getLogSince(server, bucket, "2", kbLimit);
+					}
+				};
+			}
+		};
+
+		try{
+			replica.poll();
+			fail("a gap in the log should stop the replica");
+		}catch(ThrudocReplica.ReplicaGapException e){
+			assertEquals(0, replica.getAppliedLsn());
+		}
+	}
+}
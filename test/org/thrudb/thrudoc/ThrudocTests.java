@@ -82,6 +82,10 @@ public class ThrudocTests extends TestCase {
 			
 			assertTrue("value".equals(new String(client.get(bucket, "key"))));
 			
+			//every call above was counted
+			assertTrue(client.getServiceStats().get("mc_put") > 0);
+			assertTrue(client.admin("stats", "").contains("mc_get="));
+			
 		}catch(Throwable t){
 			t.printStackTrace();
 			fail(t.getMessage());
@@ -0,0 +1,227 @@
+package org.thrudb.thrudoc.logstore;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.thrudb.thrudoc.Entity;
+import org.thrudb.thrudoc.LoggedWrite;
+
+public class LogStoreTests extends TestCase {
+	LogStoreDB ldb;
+
+	@Override
+	public void setUp() {
+		try{
+			ldb = new LogStoreDB(".","unittest");
+			ldb.erase();
+		}catch(Throwable t){
+			t.printStackTrace();
+			fail(t.getMessage());
+		}
+	}
+
+
+	public void testCRUD(){
+
+		//Create
+		for(int i=0; i<100; i++){
+			ldb.put("key"+Integer.toString(i), ("value"+Integer.toString(i)).getBytes());
+		}
+
+		//Retrieve
+		for(int i=0; i<100; i++){
+			String val = new String(ldb.get("key"+Integer.toString(i)));
+			assertEquals("value"+Integer.toString(i), val);
+		}
+
+		assertEquals(11, ldb.scan("key1", -1).size());
+
+		//Delete
+		for(int i=0; i<100; i++){
+			ldb.remove("key"+Integer.toString(i));
+		}
+
+		for(int i=0; i<100; i++){
+			if(ldb.get("key"+Integer.toString(i)) != null)
+				fail("key still exists after removed");
+		}
+	}
+
+	public void testIncr() {
+
+		int val = 0;
+		for(int i=0; i<100; i++)
+			val = ldb.incr("key", 1);
+
+		assertEquals(100,val);
+
+		for(int i=0; i<100; i++)
+			val = ldb.decr("key", 1);
+
+		assertEquals(0,val);
+	}
+
+	public void testList() {
+		try{
+			for(int i=0; i<100; i++)
+				ldb.push_back("key", ("value"+String.valueOf(i)).getBytes());
+
+			assertEquals(100,ldb.length("key"));
+
+			//lists don't show up as map keys
+			assertNull(ldb.get("key"));
+
+			List<byte[]> res = ldb.range("key", 90, 10000);
+			assertEquals(10,res.size());
+
+			assertEquals("value0", new String(ldb.pop_front("key")));
+			assertEquals("value99", new String(ldb.pop_back("key")));
+			assertEquals(98,ldb.length("key"));
+
+		}catch(Throwable t){
+			t.printStackTrace();
+			fail(t.getLocalizedMessage());
+		}
+	}
+
+	public void testRecovery() {
+		try{
+			for(int i=0; i<100; i++)
+				ldb.put("key"+Integer.toString(i), ("value"+Integer.toString(i)).getBytes());
+
+			ldb.remove("key0");
+			ldb.push_back("list", "a".getBytes());
+			ldb.sync();
+
+			//tear the last record in half
+			File seg = new File("unittest"+LogStoreDB.SUFFIX).listFiles()[0];
+			RandomAccessFile raf = new RandomAccessFile(seg, "rw");
+			raf.seek(raf.length());
+			raf.write(new byte[]{1,2,3,4,5,6,7});
+			raf.close();
+
+			LogStoreDB reopened = new LogStoreDB(".","unittest");
+
+			assertNull(reopened.get("key0"));
+			assertEquals("value99", new String(reopened.get("key99")));
+			assertEquals(1, reopened.length("list"));
+
+			reopened.put("key0", "again".getBytes());
+			assertEquals("again", new String(reopened.get("key0")));
+
+		}catch(Throwable t){
+			t.printStackTrace();
+			fail(t.getLocalizedMessage());
+		}
+	}
+
+	public void testCompact() {
+		try{
+			for(int i=0; i<100; i++)
+				ldb.put("key"+Integer.toString(i), ("value"+Integer.toString(i)).getBytes());
+
+			for(int i=0; i<100; i+=2)
+				ldb.put("key"+Integer.toString(i), ("updated"+Integer.toString(i)).getBytes());
+
+			ldb.compact(ldb.getActiveSegment());
+
+			for(int i=0; i<100; i++){
+				String prefix = i % 2 == 0 ? "updated" : "value";
+				assertEquals(prefix+Integer.toString(i), new String(ldb.get("key"+Integer.toString(i))));
+			}
+
+		}catch(Throwable t){
+			t.printStackTrace();
+			fail(t.getLocalizedMessage());
+		}
+	}
+
+	public void testClosedSegment() {
+		ldb.put("key", "value".getBytes());
+		ldb.shutdown();
+
+		//nothing will move the key, so the read fails instead of retrying
+		try{
+			ldb.get("key");
+			fail("read a closed segment");
+		}catch(RuntimeException e){
+		}
+	}
+
+	public void testTornBatch() {
+		try{
+			ldb.put("before", "a".getBytes());
+
+			List<Entity> batch = new ArrayList<Entity>();
+			for(int i=0; i<10; i++)
+				batch.add(new Entity("unittest", "key"+Integer.toString(i), ("value"+Integer.toString(i)).getBytes()));
+
+			ldb.put_multi(batch);
+			assertEquals("value9", new String(ldb.get("key9")));
+			ldb.sync();
+
+			//lose the last record of the batch
+			File seg = new File("unittest"+LogStoreDB.SUFFIX).listFiles()[0];
+			RandomAccessFile raf = new RandomAccessFile(seg, "rw");
+			raf.setLength(raf.length() - 1);
+			raf.close();
+
+			LogStoreDB reopened = new LogStoreDB(".","unittest");
+
+			assertEquals("a", new String(reopened.get("before")));
+			for(int i=0; i<10; i++)
+				assertNull(reopened.get("key"+Integer.toString(i)));
+
+		}catch(Throwable t){
+			t.printStackTrace();
+			fail(t.getLocalizedMessage());
+		}
+	}
+
+	public void testAppliedLsn() {
+		try{
+			LoggedWrite.begin(1, false);
+			ldb.incr("counter", 1);
+			LoggedWrite.begin(2, false);
+			ldb.push_back("list", "a".getBytes());
+			LoggedWrite.begin(3, false);
+			ldb.push_back("list", "b".getBytes());
+			LoggedWrite.end();
+			ldb.sync();
+
+			//lose the LSN record closing the last write, and the write with it
+			File seg = new File("unittest"+LogStoreDB.SUFFIX).listFiles()[0];
+			RandomAccessFile raf = new RandomAccessFile(seg, "rw");
+			raf.setLength(raf.length() - 1);
+			raf.close();
+
+			LogStoreDB reopened = new LogStoreDB(".","unittest");
+			assertEquals(1, reopened.length("list"));
+
+			//a replay only applies what the store doesn't have
+			for(int lsn=1; lsn<=3; lsn++){
+				LoggedWrite.begin(lsn, true);
+
+				if(lsn == 1)
+					reopened.incr("counter", 1);
+				else
+					reopened.push_back("list", (lsn == 2 ? "a" : "b").getBytes());
+			}
+			LoggedWrite.end();
+
+			assertEquals(1, reopened.incr("counter", 0));
+			assertEquals(2, reopened.length("list"));
+			assertEquals("b", new String(reopened.retrieve_at("list", 1)));
+
+		}catch(Throwable t){
+			t.printStackTrace();
+			fail(t.getLocalizedMessage());
+		}finally{
+			LoggedWrite.end();
+		}
+	}
+}
@@ -1,7 +1,14 @@
 package org.thrudb.thrudoc.tokyocabinet;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 
+import org.thrudb.thrudoc.Entity;
+import org.thrudb.thrudoc.LoggedWrite;
+
+import tokyocabinet.BDB;
+
 import junit.framework.TestCase;
 
 public class TokyoCabinetTests extends TestCase {
@@ -171,4 +178,235 @@ public class TokyoCabinetTests extends TestCase {
 		}
 	}
 	
-}
\ No newline at end of file
+	public void testLongList(){
+		
+		try{
+			
+			//spread the list over several segments in both directions
+			for(int i=0; i<500; i++)
+				tdb.push_back("key", ("value"+String.valueOf(i)).getBytes());
+			
+			for(int i=1; i<=500; i++)
+				tdb.push_front("key", ("value-"+String.valueOf(i)).getBytes());
+			
+			assertEquals(1000,tdb.length("key"));
+			assertEquals("value-500", new String(tdb.retrieve_at("key", 0)));
+			assertEquals("value0", new String(tdb.retrieve_at("key", 500)));
+			assertEquals("value499", new String(tdb.retrieve_at("key", 999)));
+			assertNull(tdb.retrieve_at("key", 1000));
+			
+			//head side
+			tdb.insert_at("key", ("funk").getBytes(), 100);
+			assertEquals("funk", new String(tdb.retrieve_at("key", 100)));
+			assertEquals("value-400", new String(tdb.retrieve_at("key", 101)));
+			assertEquals("funk", new String(tdb.remove_at("key", 100)));
+			
+			//tail side
+			tdb.insert_at("key", ("soul").getBytes(), 900);
+			assertEquals("soul", new String(tdb.retrieve_at("key", 900)));
+			assertEquals("value400", new String(tdb.retrieve_at("key", 901)));
+			assertEquals("soul", new String(tdb.remove_at("key", 900)));
+			
+			assertEquals(1000,tdb.length("key"));
+			
+			List<byte[]> res = tdb.range("key", 450, 549);
+			assertEquals(100,res.size());
+			
+			for(int i=0; i<100; i++){
+				assertEquals(new String(tdb.retrieve_at("key", i+450)), new String(res.get(i)));
+			}
+			
+			for(int i=0; i<1000; i++)
+				tdb.pop_back("key");
+			
+			assertEquals(0,tdb.length("key"));
+			assertEquals(0,tdb.pop_front("key").length);
+			
+		}catch(Throwable t){
+			t.printStackTrace();
+			fail(t.getLocalizedMessage());
+		}
+	}
+	
+	public void testBloomFilter(){
+		try{
+			for(int i=0; i<100; i++)
+				tdb.put("key"+Integer.toString(i), ("value"+Integer.toString(i)).getBytes());
+			
+			tdb.push_back("list", "a".getBytes());
+			tdb.remove("key0");
+			
+			//filters survive a clean restart
+			tdb.shutdown();
+			tdb = new TokyoCabinetDB("","unittest");
+			
+			assertNull(tdb.get("key0"));
+			assertEquals("value99", new String(tdb.get("key99")));
+			assertEquals(1, tdb.length("list"));
+			
+			//and are rebuilt when the saved copy is gone
+			tdb.shutdown();
+			new File(File.separatorChar+"unittest.bloom").delete();
+			tdb = new TokyoCabinetDB("","unittest");
+			
+			assertEquals("value50", new String(tdb.get("key50")));
+			assertEquals(1, tdb.length("list"));
+			
+			assertEquals("a", new String(tdb.pop_front("list")));
+			assertEquals(0, tdb.length("list"));
+			assertEquals(0, tdb.pop_back("list").length);
+			
+			tdb.put("key0", "again".getBytes());
+			assertEquals("again", new String(tdb.get("key0")));
+			
+		}catch(Throwable t){
+			t.printStackTrace();
+			fail(t.getLocalizedMessage());
+		}
+	}
+	
+	public void testBloomFilterGrows() throws Exception {
+		int size = tdb.getMapFilterSize();
+
+		//well past what a new bucket's filter is sized for
+		for(int i=0; i<size; i++)
+			tdb.put("key"+Integer.toString(i), "value".getBytes());
+
+		assertTrue(tdb.getMapFilterSize() >= size * 2);
+
+		for(int i=0; i<size; i += 997)
+			assertEquals("value", new String(tdb.get("key"+Integer.toString(i))));
+
+		//and keeps its size across a clean restart
+		size = tdb.getMapFilterSize();
+		tdb.shutdown();
+		tdb = new TokyoCabinetDB("","unittest");
+
+		assertEquals(size, tdb.getMapFilterSize());
+	}
+
+	public void testRacingRemove() throws Exception {
+		final Throwable[] failure = new Throwable[1];
+		
+		//a remove landing between a put's store and count used to fail
+		Thread[] threads = new Thread[4];
+		for(int t=0; t<threads.length; t++){
+			final boolean putter = t % 2 == 0;
+			
+			threads[t] = new Thread(){
+				public void run(){
+					try{
+						for(int i=0; i<2000; i++){
+							if(putter)
+								tdb.put("racy", "value".getBytes());
+							else
+								tdb.remove("racy");
+						}
+					}catch(Throwable t){
+						failure[0] = t;
+					}
+				}
+			};
+			threads[t].start();
+		}
+		
+		for(Thread thread : threads)
+			thread.join();
+		
+		assertNull(failure[0]);
+		
+		tdb.put("racy", "last".getBytes());
+		assertEquals("last", new String(tdb.get("racy")));
+	}
+	
+	public void testBaselineLists() throws Exception {
+		
+		//lists used to be duplicate records of the map key
+		BDB old = new BDB();
+		assertTrue(old.open(File.separatorChar+"unittest_baseline.tcb", BDB.OWRITER | BDB.OCREAT));
+		old.vanish();
+		old.putdup("list".getBytes(), "a".getBytes());
+		old.putdup("list".getBytes(), "b".getBytes());
+		old.putdup("list".getBytes(), "c".getBytes());
+		old.put("map".getBytes(), "value".getBytes());
+		old.close();
+		
+		BDB oldLists = new BDB();
+		assertTrue(oldLists.open(File.separatorChar+"unittest_baseline.tcl", BDB.OWRITER | BDB.OCREAT));
+		oldLists.vanish();
+		oldLists.close();
+		new File(File.separatorChar+"unittest_baseline.bloom").delete();
+		
+		TokyoCabinetDB upgraded = new TokyoCabinetDB("","unittest_baseline");
+		
+		assertEquals(3, upgraded.length("list"));
+		assertEquals("b", new String(upgraded.retrieve_at("list", 1)));
+		assertEquals("a", new String(upgraded.get("list")));
+		assertEquals("value", new String(upgraded.get("map")));
+		assertEquals(0, upgraded.length("map"));
+		
+		//moved once
+		upgraded.shutdown();
+		upgraded = new TokyoCabinetDB("","unittest_baseline");
+		
+		assertEquals(3, upgraded.length("list"));
+		assertEquals("c", new String(upgraded.pop_back("list")));
+		
+		upgraded.erase();
+		upgraded.shutdown();
+	}
+	
+	public void testMulti(){
+		try{
+			List<Entity> batch = new ArrayList<Entity>();
+			for(int i=0; i<100; i++)
+				batch.add(new Entity("unittest", "key"+Integer.toString(i), ("value"+Integer.toString(i)).getBytes()));
+			
+			tdb.put_multi(batch);
+			
+			for(int i=0; i<100; i++)
+				assertEquals("value"+Integer.toString(i), new String(tdb.get("key"+Integer.toString(i))));
+			
+			tdb.remove_multi(batch.subList(0, 50));
+			
+			for(int i=0; i<100; i++)
+				assertEquals(i >= 50, tdb.get("key"+Integer.toString(i)) != null);
+			
+		}catch(Throwable t){
+			t.printStackTrace();
+			fail(t.getLocalizedMessage());
+		}
+	}
+	
+	public void testAppliedLsn() throws Exception {
+		try{
+			LoggedWrite.begin(1, false);
+			tdb.incr("counter", 1);
+			LoggedWrite.begin(2, false);
+			tdb.push_back("list", "a".getBytes());
+			LoggedWrite.end();
+			
+			tdb.shutdown();
+			tdb = new TokyoCabinetDB("","unittest");
+			
+			//a replay skips what each db already has
+			LoggedWrite.begin(1, true);
+			tdb.incr("counter", 1);
+			LoggedWrite.begin(2, true);
+			tdb.push_back("list", "a".getBytes());
+			LoggedWrite.begin(3, true);
+			tdb.push_back("list", "b".getBytes());
+			LoggedWrite.end();
+			
+			assertEquals(1, tdb.incr("counter", 0));
+			assertEquals(2, tdb.length("list"));
+			
+			//and the lsn isn't a key of the bucket
+			assertEquals(1, tdb.scan("", -1).size());
+			assertEquals(1, tdb.scan("", 1).size());
+			assertEquals("counter", tdb.scan("", 1).get(0));
+		}finally{
+			LoggedWrite.end();
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package org.thrudb.util.cache;
+
+import junit.framework.TestCase;
+
+public class TinyLfuCacheTests extends TestCase {
+
+	public void testBound() {
+		TinyLfuCache cache = new TinyLfuCache(64 * 1024);
+		
+		for(int i=0; i<10000; i++){
+			cache.get("key"+i);
+			cache.put("key"+i, new byte[100]);
+		}
+		
+		assertTrue(cache.getBytes() <= 64 * 1024);
+		assertTrue(cache.getEvictions() > 0);
+	}
+	
+	public void testScanResistance() {
+		TinyLfuCache cache = new TinyLfuCache(64 * 1024);
+		
+		//build up a hot set
+		for(int round=0; round<10; round++){
+			for(int i=0; i<100; i++){
+				if(cache.get("hot"+i) == null)
+					cache.put("hot"+i, new byte[100]);
+			}
+		}
+		
+		//one pass over lots of cold keys
+		for(int i=0; i<10000; i++){
+			if(cache.get("cold"+i) == null)
+				cache.put("cold"+i, new byte[100]);
+		}
+		
+		int hits = 0;
+		for(int i=0; i<100; i++){
+			if(cache.get("hot"+i) != null)
+				hits++;
+		}
+		
+		assertTrue("hot set was flushed, "+hits+" hits", hits > 90);
+	}
+	
+	public void testUpdateAndRemove() {
+		TinyLfuCache cache = new TinyLfuCache(64 * 1024);
+		
+		cache.put("key", "a".getBytes());
+		cache.put("key", "b".getBytes());
+		assertEquals("b", new String(cache.get("key")));
+		
+		cache.remove("key");
+		assertNull(cache.get("key"));
+		assertEquals(0, cache.getBytes());
+	}
+}
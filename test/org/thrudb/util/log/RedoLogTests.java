@@ -0,0 +1,201 @@
+package org.thrudb.util.log;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+public class RedoLogTests extends TestCase {
+	File dir = new File("unittest_redo");
+
+	@Override
+	public void setUp() {
+		if(dir.isDirectory()){
+			for(File f : dir.listFiles())
+				f.delete();
+		}
+	}
+
+	public void testAppendAndRead() throws Exception {
+		RedoLog log = new RedoLog(dir, 1024 * 1024);
+
+		for(int i=0; i<100; i++){
+			byte[] frame = ("frame"+i).getBytes();
+			assertEquals(i+1, log.append("put", "bucket"+i, frame, 0, frame.length));
+		}
+
+		RedoLog.Cursor cursor = log.cursor(50);
+		RedoLog.Record record;
+		int count = 0;
+
+		while((record = cursor.next()) != null){
+			assertEquals(50 + count, record.lsn);
+			assertEquals("put", record.op);
+			assertEquals("bucket"+(record.lsn-1), record.bucket);
+			assertEquals("frame"+(record.lsn-1), new String(record.frame));
+			count++;
+		}
+
+		assertEquals(51, count);
+
+		//the cursor follows new appends
+		log.append("incr", "b", new byte[]{1}, 0, 1);
+		assertEquals(101, cursor.next().lsn);
+		assertNull(cursor.next());
+
+		log.close();
+
+		//reopening picks up where it left off
+		log = new RedoLog(dir, 1024 * 1024);
+		assertEquals(101, log.getLastLsn());
+		assertEquals(102, log.append("put", "b", new byte[0], 0, 0));
+		log.close();
+	}
+
+	public void testSeek() throws Exception {
+		RedoLog log = new RedoLog(dir, 1024 * 1024);
+
+		for(int i=1; i<=1000; i++){
+			byte[] frame = ("frame"+i).getBytes();
+			log.append("put", "bucket", frame, 0, frame.length);
+		}
+
+		//cursors start mid segment, before and after the index catches up
+		for(long lsn : new long[]{777, 1, 256, 257, 513, 1000}){
+			RedoLog.Record record = log.cursor(lsn).next();
+			assertEquals(lsn, record.lsn);
+			assertEquals("frame"+lsn, new String(record.frame));
+		}
+
+		log.append("put", "bucket", new byte[0], 0, 0);
+		assertEquals(1001, log.cursor(1001).next().lsn);
+		assertNull(log.cursor(1002).next());
+
+		log.close();
+	}
+
+	public void testRoll() throws Exception {
+		RedoLog log = new RedoLog(dir, 4096);
+		byte[] frame = new byte[500];
+
+		for(int i=0; i<100; i++)
+			log.append("put", "bucket", frame, 0, frame.length);
+
+		assertTrue(log.getSegmentCount() > 10);
+
+		RedoLog.Cursor cursor = log.cursor(1);
+		for(int i=1; i<=100; i++)
+			assertEquals(i, cursor.next().lsn);
+		assertNull(cursor.next());
+
+		//only whole segments at or below the checkpoint go
+		int segments = log.getSegmentCount();
+		assertTrue(log.deleteBefore(50) > 0);
+		assertTrue(log.getSegmentCount() < segments);
+		assertTrue(log.getFirstLsn() <= 51);
+
+		cursor = log.cursor(51);
+		assertEquals(51, cursor.next().lsn);
+
+		//the active segment is never deleted
+		log.deleteBefore(1000);
+		assertEquals(1, log.getSegmentCount());
+		assertEquals(100, log.getLastLsn());
+
+		log.close();
+	}
+
+	public void testTornTail() throws Exception {
+		RedoLog log = new RedoLog(dir, 1024 * 1024);
+		byte[] frame = new byte[100];
+
+		for(int i=0; i<10; i++)
+			log.append("put", "bucket", frame, 0, frame.length);
+
+		log.close();
+
+		//tear the last record
+		RedoLog.Record last;
+		long end = 0;
+
+		log = new RedoLog(dir, 1024 * 1024);
+		RedoLog.Cursor cursor = log.cursor(1);
+		while((last = cursor.next()) != null)
+			end += last.size;
+		log.close();
+
+		RandomAccessFile raf = new RandomAccessFile(dir.listFiles()[0], "rw");
+		raf.seek(end - 10);
+		raf.write(new byte[]{1,2,3,4});
+		raf.close();
+
+		log = new RedoLog(dir, 1024 * 1024);
+		assertEquals(9, log.getLastLsn());
+
+		//the torn record is overwritten by the next one
+		assertEquals(10, log.append("put", "bucket", frame, 0, frame.length));
+
+		cursor = log.cursor(1);
+		int count = 0;
+		while(cursor.next() != null)
+			count++;
+		assertEquals(10, count);
+
+		log.close();
+	}
+
+	public void testTailAcrossRolls() throws Exception {
+		final RedoLog log   = new RedoLog(dir, 4096);
+		final byte[]  frame = new byte[500];
+
+		log.append("put", "bucket", frame, 0, frame.length);
+
+		RedoLog.Cursor cursor = log.cursor(1);
+		assertEquals(1, cursor.next().lsn);
+		assertNull(cursor.next());
+
+		//one more fits the segment, the next rolls, the cursor sees both
+		log.append("put", "bucket", frame, 0, frame.length);
+		int segments = log.getSegmentCount();
+		while(log.getSegmentCount() == segments)
+			log.append("put", "bucket", frame, 0, frame.length);
+
+		for(long lsn=2; lsn<=log.getLastLsn(); lsn++)
+			assertEquals(lsn, cursor.next().lsn);
+		assertNull(cursor.next());
+
+		//a cursor tailing a log that rolls under it never skips a record
+		final int records = 5000;
+		final long start  = log.getLastLsn();
+		final Throwable[] failure = new Throwable[1];
+
+		Thread writer = new Thread(){
+			public void run(){
+				try{
+					for(int i=0; i<records; i++)
+						log.append("put", "bucket", frame, 0, frame.length);
+				}catch(Throwable t){
+					failure[0] = t;
+				}
+			}
+		};
+		writer.start();
+
+		long expected = start + 1;
+		while(expected <= start + records){
+			RedoLog.Record record = cursor.next();
+
+			if(record == null){
+				assertTrue(writer.isAlive() || expected <= log.getLastLsn());
+				continue;
+			}
+
+			assertEquals(expected++, record.lsn);
+		}
+
+		writer.join();
+		assertNull(failure[0]);
+
+		log.close();
+	}
+}
@@ -0,0 +1,63 @@
+package org.thrudb.util.stats;
+
+import junit.framework.TestCase;
+
+public class ServiceStatsTests extends TestCase {
+
+	public void testBuckets() {
+		//every value lands in a bucket whose range holds it, within ~3%
+		int last = -1;
+		for(long v=0; v<10000000; v = v < 1000 ? v+1 : v+997){
+			int bucket = LatencyHistogram.bucket(v);
+
+			assertTrue(bucket >= last);
+			assertTrue(LatencyHistogram.highest(bucket) >= v);
+			assertTrue(LatencyHistogram.highest(bucket) - v <= Math.max(1, v / 32));
+
+			last = bucket;
+		}
+	}
+
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		assertEquals(0, histogram.getPercentile(99));
+
+		for(int i=1; i<=10000; i++)
+			histogram.record(i);
+
+		assertEquals(10000, histogram.getCount());
+		assertEquals(10000, histogram.getMax());
+
+		assertEquals(5000, histogram.getPercentile(50), 5000 / 32);
+		assertEquals(9900, histogram.getPercentile(99), 9900 / 32);
+		assertEquals(9990, histogram.getPercentile(99.9), 9990 / 32);
+		assertEquals(10000, histogram.getPercentile(100));
+	}
+
+	public void testConcurrentRecording() throws Exception {
+		final ServiceStats stats = new ServiceStats();
+		Thread[] threads = new Thread[8];
+
+		for(int i=0; i<threads.length; i++){
+			threads[i] = new Thread(){
+				public void run() {
+					for(int j=0; j<10000; j++)
+						stats.record("put", 10, 1000 * j);
+				}
+			};
+			threads[i].start();
+		}
+
+		for(Thread t : threads)
+			t.join();
+
+		assertEquals(80000, (long)stats.getStats().get("mc_put"));
+		assertEquals(800000, (long)stats.getStats().get("ms_put"));
+		assertEquals(9999, (long)stats.getStats().get("max_put"));
+		assertTrue(stats.getStats().containsKey("p999_put"));
+		assertTrue(stats.getStats().containsKey("uptime"));
+
+		assertTrue(ServiceStats.format(stats.getStats()).contains("mc_put=80000\n"));
+	}
+}